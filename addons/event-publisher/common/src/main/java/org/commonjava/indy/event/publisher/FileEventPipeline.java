@@ -0,0 +1,644 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.event.publisher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.commonjava.event.file.FileEvent;
+import org.commonjava.event.file.FileEventType;
+import org.commonjava.indy.core.conf.IndyEventHandlerConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.commonjava.indy.core.conf.IndyEventHandlerConfig.OVERFLOW_BLOCK;
+import static org.commonjava.indy.core.conf.IndyEventHandlerConfig.OVERFLOW_DROP;
+import static org.commonjava.indy.core.conf.IndyEventHandlerConfig.OVERFLOW_SPILL;
+
+/**
+ * Bounded queue of file events between the threads that store or serve content and the message broker.
+ * <p>
+ * {@link #offer(FileEvent, EventMetadata)} only queues the event; a single worker thread takes batches of up to
+ * {@link IndyEventHandlerConfig#getFileEventBatchSize()} events (waiting at most
+ * {@link IndyEventHandlerConfig#getFileEventLingerMillis()} for a batch to fill up), has their digests resolved by a
+ * pool of {@link IndyEventHandlerConfig#getFileEventDigestThreads()} threads, hands them to the {@link Sink} in order
+ * and flushes it once per batch. When the queue is full, the event is handled according to
+ * {@link IndyEventHandlerConfig#getFileEventOverflow()}. Spilled events are appended to a file and published once the
+ * queue runs empty, or after a restart; they are not ordered with the events queued in memory. Spilled delete events
+ * are not digested on replay, since their file is gone by then.
+ */
+public class FileEventPipeline
+{
+    static final String SPILL_FILE = "file-events.spill";
+
+    static final String REPLAY_FILE = "file-events.replay";
+
+    private static final long POLL_MILLIS = 1000;
+
+    private static final long STOP_MILLIS = 30000;
+
+    private static final int BLOCK_TIMEOUT_LOG_INTERVAL = 100;
+
+    /**
+     * Where the events go, eg. Kafka. Calls come from the worker thread only.
+     */
+    public interface Sink
+    {
+        void send( FileEvent event )
+                throws Exception;
+
+        /**
+         * Called after each batch; should not return before the events sent so far are delivered.
+         */
+        void flush()
+                throws Exception;
+    }
+
+    /**
+     * Fills in the checksums and size of an event, off the thread that fired it.
+     */
+    public interface DigestResolver
+    {
+        void resolve( FileEvent event, EventMetadata metadata )
+                throws Exception;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final BlockingQueue<Pending> queue;
+
+    private final int batchSize;
+
+    private final long lingerMillis;
+
+    private final String overflow;
+
+    private final long blockMillis;
+
+    private final int digestThreads;
+
+    private final File spillDir;
+
+    private final ObjectMapper objectMapper;
+
+    private final DigestResolver resolver;
+
+    private final Sink sink;
+
+    private final Object spillLock = new Object();
+
+    private Writer spillWriter;
+
+    private final AtomicLong spillPending = new AtomicLong();
+
+    private volatile boolean running;
+
+    private Thread worker;
+
+    private ExecutorService digestPool;
+
+    private final AtomicLong enqueued = new AtomicLong();
+
+    private final AtomicLong published = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong blocked = new AtomicLong();
+
+    private final AtomicLong blockTimeouts = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong spilled = new AtomicLong();
+
+    private final AtomicLong replayed = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong lastBatchSize = new AtomicLong();
+
+    private final AtomicLong maxBatchSize = new AtomicLong();
+
+    private final AtomicLong totalLatencyMillis = new AtomicLong();
+
+    private final AtomicLong lastLatencyMillis = new AtomicLong();
+
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+    public FileEventPipeline( final IndyEventHandlerConfig config, final ObjectMapper objectMapper,
+                              final DigestResolver resolver, final Sink sink )
+    {
+        this.queue = new ArrayBlockingQueue<>( Math.max( 1, config.getFileEventQueueSize() ) );
+        this.batchSize = Math.max( 1, config.getFileEventBatchSize() );
+        this.lingerMillis = Math.max( 0, config.getFileEventLingerMillis() );
+        this.blockMillis = Math.max( 0, config.getFileEventOverflowBlockMillis() );
+        this.digestThreads = Math.max( 1, config.getFileEventDigestThreads() );
+        this.objectMapper = objectMapper;
+        this.resolver = resolver;
+        this.sink = sink;
+
+        String policy = config.getFileEventOverflow() == null ? OVERFLOW_BLOCK : config.getFileEventOverflow();
+        File dir = config.getFileEventSpillDir() == null ? null : new File( config.getFileEventSpillDir() );
+        if ( OVERFLOW_SPILL.equals( policy ) && dir == null )
+        {
+            logger.warn( "No file.event.spill.dir configured, file events will be dropped when the queue is full" );
+            policy = OVERFLOW_DROP;
+        }
+        else if ( !OVERFLOW_SPILL.equals( policy ) && !OVERFLOW_DROP.equals( policy ) && !OVERFLOW_BLOCK.equals(
+                policy ) )
+        {
+            logger.warn( "Unknown file.event.overflow: {}, using: {}", policy, OVERFLOW_BLOCK );
+            policy = OVERFLOW_BLOCK;
+        }
+        this.overflow = policy;
+        this.spillDir = dir;
+    }
+
+    public synchronized void start()
+    {
+        if ( running )
+        {
+            return;
+        }
+
+        if ( spillDir != null && ( new File( spillDir, SPILL_FILE ).exists() || new File( spillDir,
+                                                                                          REPLAY_FILE ).exists() ) )
+        {
+            logger.info( "Found file events spilled to {} before restart, they will be published", spillDir );
+            spillPending.incrementAndGet();
+        }
+
+        digestPool = Executors.newFixedThreadPool( digestThreads, r -> {
+            Thread t = new Thread( r, "file-event-digester" );
+            t.setDaemon( true );
+            return t;
+        } );
+
+        running = true;
+        worker = new Thread( this::run, "file-event-publisher" );
+        worker.setDaemon( true );
+        worker.start();
+    }
+
+    /**
+     * Stop accepting events, and wait for the ones already queued to be published.
+     */
+    public synchronized void stop()
+    {
+        if ( !running )
+        {
+            return;
+        }
+
+        running = false;
+        try
+        {
+            worker.join( STOP_MILLIS );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if ( worker.isAlive() )
+        {
+            logger.warn( "File event publisher did not stop in {}ms, {} queued events are lost", STOP_MILLIS,
+                         queue.size() );
+            worker.interrupt();
+        }
+
+        digestPool.shutdownNow();
+
+        synchronized ( spillLock )
+        {
+            closeSpillWriter();
+        }
+    }
+
+    /**
+     * Queue an event for publishing.
+     *
+     * @param metadata metadata to resolve the event digests with, or null if the event is complete
+     * @return false if the event was dropped
+     */
+    public boolean offer( final FileEvent event, final EventMetadata metadata )
+    {
+        if ( !running )
+        {
+            drop( event, "publisher is not running" );
+            return false;
+        }
+
+        final Pending pending = new Pending( event, metadata, System.currentTimeMillis() );
+        if ( queue.offer( pending ) )
+        {
+            enqueued.incrementAndGet();
+            return true;
+        }
+
+        switch ( overflow )
+        {
+            case OVERFLOW_SPILL:
+            {
+                if ( spill( event ) )
+                {
+                    return true;
+                }
+                break;
+            }
+            case OVERFLOW_BLOCK:
+            {
+                blocked.incrementAndGet();
+                try
+                {
+                    if ( queue.offer( pending, blockMillis, TimeUnit.MILLISECONDS ) )
+                    {
+                        enqueued.incrementAndGet();
+                        return true;
+                    }
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                dropped.incrementAndGet();
+                if ( blockTimeouts.incrementAndGet() % BLOCK_TIMEOUT_LOG_INTERVAL == 1 )
+                {
+                    logger.warn( "No room in the file event queue after waiting {}ms, dropping file event: {}. "
+                                         + "Timed out so far: {}", blockMillis, event.getTargetPath(),
+                                 blockTimeouts.get() );
+                }
+                return false;
+            }
+            default:
+                break;
+        }
+
+        drop( event, "queue is full" );
+        return false;
+    }
+
+    public Map<String, Long> getMetrics()
+    {
+        final long b = batches.get();
+        final long p = published.get() + failed.get();
+
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "queueDepth", (long) queue.size() );
+        metrics.put( "queueCapacity", (long) ( queue.size() + queue.remainingCapacity() ) );
+        metrics.put( "enqueued", enqueued.get() );
+        metrics.put( "published", published.get() );
+        metrics.put( "failed", failed.get() );
+        metrics.put( "blocked", blocked.get() );
+        metrics.put( "blockTimeouts", blockTimeouts.get() );
+        metrics.put( "dropped", dropped.get() );
+        metrics.put( "spilled", spilled.get() );
+        metrics.put( "replayed", replayed.get() );
+        metrics.put( "batches", b );
+        metrics.put( "lastBatchSize", lastBatchSize.get() );
+        metrics.put( "maxBatchSize", maxBatchSize.get() );
+        metrics.put( "avgBatchSize", b == 0 ? 0 : p / b );
+        metrics.put( "lastPublishLatencyMillis", lastLatencyMillis.get() );
+        metrics.put( "maxPublishLatencyMillis", maxLatencyMillis.get() );
+        metrics.put( "avgPublishLatencyMillis", p == 0 ? 0 : totalLatencyMillis.get() / p );
+        return metrics;
+    }
+
+    private void run()
+    {
+        final List<Pending> batch = new ArrayList<>( batchSize );
+        while ( running || !queue.isEmpty() )
+        {
+            try
+            {
+                final Pending first = queue.poll( POLL_MILLIS, TimeUnit.MILLISECONDS );
+                if ( first != null )
+                {
+                    batch.add( first );
+                    fill( batch );
+                    publish( batch );
+                    batch.clear();
+                }
+
+                if ( queue.isEmpty() && spillPending.get() > 0 )
+                {
+                    replay();
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                logger.debug( "File event publisher interrupted" );
+                return;
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( "File event publisher error: " + e.getMessage(), e );
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Add queued events to the batch until it is full or the linger time after its first event is over.
+     */
+    private void fill( final List<Pending> batch )
+            throws InterruptedException
+    {
+        final long deadline = batch.get( 0 ).enqueued + lingerMillis;
+        while ( batch.size() < batchSize )
+        {
+            queue.drainTo( batch, batchSize - batch.size() );
+            final long wait = deadline - System.currentTimeMillis();
+            if ( batch.size() >= batchSize || wait <= 0 || !running )
+            {
+                return;
+            }
+
+            final Pending next = queue.poll( wait, TimeUnit.MILLISECONDS );
+            if ( next == null )
+            {
+                return;
+            }
+            batch.add( next );
+        }
+    }
+
+    private void publish( final List<Pending> batch )
+            throws InterruptedException
+    {
+        resolveDigests( batch );
+
+        int sent = 0;
+        for ( Pending pending : batch )
+        {
+            try
+            {
+                sink.send( pending.event );
+                sent++;
+            }
+            catch ( Exception e )
+            {
+                failed.incrementAndGet();
+                logger.error( "Send file event error, {}", e.getMessage(), e );
+            }
+        }
+
+        try
+        {
+            sink.flush();
+        }
+        catch ( Exception e )
+        {
+            logger.error( "Flush file events error, {}", e.getMessage(), e );
+        }
+
+        final long now = System.currentTimeMillis();
+        for ( Pending pending : batch )
+        {
+            final long latency = now - pending.enqueued;
+            totalLatencyMillis.addAndGet( latency );
+            lastLatencyMillis.set( latency );
+            maxLatencyMillis.accumulateAndGet( latency, Math::max );
+        }
+
+        published.addAndGet( sent );
+        batches.incrementAndGet();
+        lastBatchSize.set( batch.size() );
+        maxBatchSize.accumulateAndGet( batch.size(), Math::max );
+        logger.trace( "Published batch of {} file events", batch.size() );
+    }
+
+    /**
+     * Resolve the digests of the events in the batch that need them on the digest pool, and wait for all of them.
+     */
+    private void resolveDigests( final List<Pending> batch )
+            throws InterruptedException
+    {
+        final List<Future<?>> futures = new ArrayList<>( batch.size() );
+        for ( Pending pending : batch )
+        {
+            if ( pending.metadata != null )
+            {
+                futures.add( digestPool.submit( () -> {
+                    resolver.resolve( pending.event, pending.metadata );
+                    return null;
+                } ) );
+            }
+        }
+
+        for ( int i = 0, j = 0; i < batch.size(); i++ )
+        {
+            final Pending pending = batch.get( i );
+            if ( pending.metadata == null )
+            {
+                continue;
+            }
+
+            try
+            {
+                futures.get( j++ ).get();
+            }
+            catch ( ExecutionException e )
+            {
+                logger.error( String.format( "Failed to resolve digests of file event: %s. Reason: %s",
+                                             pending.event.getTargetPath(), e.getCause().getMessage() ),
+                              e.getCause() );
+            }
+        }
+    }
+
+    private boolean spill( final FileEvent event )
+    {
+        synchronized ( spillLock )
+        {
+            try
+            {
+                if ( spillWriter == null )
+                {
+                    spillDir.mkdirs();
+                    spillWriter = new BufferedWriter(
+                            new OutputStreamWriter( new FileOutputStream( new File( spillDir, SPILL_FILE ), true ),
+                                                    StandardCharsets.UTF_8 ) );
+                }
+
+                spillWriter.write( objectMapper.writeValueAsString( event ) );
+                spillWriter.write( '\n' );
+                spillWriter.flush();
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Failed to spill file event: {} to {}. Reason: {}", event.getTargetPath(), spillDir,
+                             e.getMessage() );
+                closeSpillWriter();
+                return false;
+            }
+
+            spillPending.incrementAndGet();
+        }
+
+        spilled.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Publish the spilled events. The spill file is moved aside first, so events spilled meanwhile go to a new one.
+     */
+    private void replay()
+            throws InterruptedException
+    {
+        final File replayFile = new File( spillDir, REPLAY_FILE );
+        synchronized ( spillLock )
+        {
+            closeSpillWriter();
+            spillPending.set( 0 );
+
+            final File spillFile = new File( spillDir, SPILL_FILE );
+            if ( !replayFile.exists() && spillFile.exists() && !spillFile.renameTo( replayFile ) )
+            {
+                logger.warn( "Failed to move {} to {}, spilled file events are not published", spillFile,
+                             replayFile );
+                return;
+            }
+        }
+
+        if ( !replayFile.exists() )
+        {
+            return;
+        }
+
+        logger.info( "Publishing file events spilled to {}", replayFile );
+        final List<Pending> batch = new ArrayList<>( batchSize );
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader( new FileInputStream( replayFile ), StandardCharsets.UTF_8 ) ))
+        {
+            String line;
+            while ( ( line = reader.readLine() ) != null )
+            {
+                if ( line.trim().isEmpty() )
+                {
+                    continue;
+                }
+
+                final FileEvent event;
+                try
+                {
+                    event = objectMapper.readValue( line, FileEvent.class );
+                }
+                catch ( IOException e )
+                {
+                    logger.warn( "Skipping unreadable spilled file event: {}. Reason: {}", line, e.getMessage() );
+                    continue;
+                }
+
+                // spilled before its digests were resolved; a deleted file can't be digested any more
+                final boolean resolve = event.getChecksum() == null && event.getStoreKey() != null
+                        && event.getTargetPath() != null && event.getEventType() != FileEventType.DELETE;
+                batch.add( new Pending( event, resolve ? new EventMetadata() : null, System.currentTimeMillis() ) );
+                if ( batch.size() >= batchSize )
+                {
+                    replayed.addAndGet( batch.size() );
+                    publish( batch );
+                    batch.clear();
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to read spilled file events from {}. Reason: {}", replayFile, e.getMessage() );
+        }
+
+        if ( !batch.isEmpty() )
+        {
+            replayed.addAndGet( batch.size() );
+            publish( batch );
+        }
+
+        if ( !replayFile.delete() )
+        {
+            logger.warn( "Failed to delete {}, its file events may be published again", replayFile );
+        }
+
+        if ( new File( spillDir, SPILL_FILE ).exists() )
+        {
+            spillPending.incrementAndGet();
+        }
+    }
+
+    private void closeSpillWriter()
+    {
+        if ( spillWriter != null )
+        {
+            try
+            {
+                spillWriter.close();
+            }
+            catch ( IOException e )
+            {
+                logger.debug( "Failed to close spill file: {}", e.getMessage() );
+            }
+            spillWriter = null;
+        }
+    }
+
+    private void drop( final FileEvent event, final String reason )
+    {
+        if ( dropped.incrementAndGet() % 1000 == 1 )
+        {
+            logger.warn( "Dropping file event: {}, {}. Dropped so far: {}", event.getTargetPath(), reason,
+                         dropped.get() );
+        }
+    }
+
+    private static final class Pending
+    {
+        private final FileEvent event;
+
+        private final EventMetadata metadata;
+
+        private final long enqueued;
+
+        private Pending( final FileEvent event, final EventMetadata metadata, final long enqueued )
+        {
+            this.event = event;
+            this.metadata = metadata;
+            this.enqueued = enqueued;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.spi.IndyMetricsSource;
 import org.commonjava.indy.subsys.kafka.IndyKafkaProducer;
 import org.commonjava.indy.subsys.kafka.conf.KafkaConfig;
 import org.commonjava.maven.galley.event.FileAccessEvent;
@@ -44,20 +45,28 @@ import org.commonjava.maven.galley.model.TransferOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static org.commonjava.indy.core.content.ContentMetadataGenerator.FORCE_CHECKSUM_AND_WRITE;
 import static org.commonjava.maven.galley.util.LocationUtils.ATTR_PATH_ENCODE;
 import static org.commonjava.maven.galley.util.LocationUtils.PATH_ENCODE_BASE64;
 
+/**
+ * Publishes galley file events to Kafka. Events are converted on the thread that fired them and queued in a
+ * {@link FileEventPipeline}, which resolves their digests and sends them in batches off the request path.
+ */
 @ApplicationScoped
 public class KafkaEventPublisher
-        implements FileEventPublisher
+        implements FileEventPublisher, IndyMetricsSource
 {
+    public static final String METRICS_NAME = "file-event-publisher";
 
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
@@ -82,6 +91,43 @@ public class KafkaEventPublisher
     @Inject
     IndyObjectMapper objectMapper;
 
+    private FileEventPipeline pipeline;
+
+    @PostConstruct
+    public void start()
+    {
+        if ( !IndyEventHandlerConfig.HANDLER_KAFKA.equals( handlerConfig.getFileEventHandler() ) )
+        {
+            return;
+        }
+
+        pipeline = new FileEventPipeline( handlerConfig, objectMapper, this::resolveDigests,
+                                          new FileEventPipeline.Sink()
+                                          {
+                                              @Override
+                                              public void send( final FileEvent event )
+                                              {
+                                                  kafkaProducer.send( kafkaConfig.getFileEventTopic(), event );
+                                              }
+
+                                              @Override
+                                              public void flush()
+                                              {
+                                                  kafkaProducer.flush();
+                                              }
+                                          } );
+        pipeline.start();
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        if ( pipeline != null )
+        {
+            pipeline.stop();
+        }
+    }
+
     @SuppressWarnings( "unused" )
     public void onFileDelete( @Observes final FileDeletionEvent event )
     {
@@ -96,12 +142,46 @@ public class KafkaEventPublisher
 
     private void handleEvent( final org.commonjava.maven.galley.event.FileEvent galleyFileEvent, final FileEvent fileEvent )
     {
-        if ( !IndyEventHandlerConfig.HANDLER_KAFKA.equals( handlerConfig.getFileEventHandler() ) )
+        if ( pipeline == null )
         {
             return;
         }
-        transformFileEvent( galleyFileEvent, fileEvent );
-        publishFileEvent( fileEvent );
+        if ( transformFileEvent( galleyFileEvent, fileEvent ) && !useKnownDigests( galleyFileEvent, fileEvent ) )
+        {
+            // copied, since the firing thread goes on using its metadata while the digests are resolved
+            final org.commonjava.maven.galley.event.EventMetadata galleyMetadata = galleyFileEvent.getEventMetadata();
+            pipeline.offer( fileEvent, galleyMetadata == null ?
+                    new org.commonjava.maven.galley.event.EventMetadata() :
+                    new org.commonjava.maven.galley.event.EventMetadata( galleyMetadata ) );
+        }
+        else
+        {
+            pipeline.offer( fileEvent, null );
+        }
+    }
+
+    /**
+     * Deletions and accesses are published with the digests already known for the file, looked up while it is still
+     * there. A deleted file can't be digested later, so a deletion is published without digests if none are known.
+     *
+     * @return true if the event needs no further digest resolution
+     */
+    private boolean useKnownDigests( final org.commonjava.maven.galley.event.FileEvent galleyEvent,
+                                     final FileEvent fileEvent )
+    {
+        if ( galleyEvent instanceof FileStorageEvent )
+        {
+            return false;
+        }
+
+        final TransferMetadata known = contentDigester.getContentMetadata( galleyEvent.getTransfer() );
+        if ( known != null )
+        {
+            setDigests( fileEvent, known );
+            return true;
+        }
+
+        return galleyEvent instanceof FileDeletionEvent;
     }
 
     public void onFileAccess( @Observes final FileAccessEvent event )
@@ -109,22 +189,30 @@ public class KafkaEventPublisher
         handleEvent( event, new FileEvent( FileEventType.ACCESS ) );
     }
 
-    private void transformFileEvent( org.commonjava.maven.galley.event.FileEvent galleyEvent, FileEvent fileEvent )
+    /**
+     * Fill in the event from the galley event, except for its digests, which are left to
+     * {@link #resolveDigests(FileEvent, org.commonjava.maven.galley.event.EventMetadata)} on the publishing thread.
+     *
+     * @return true if the digests of the event need resolving
+     */
+    private boolean transformFileEvent( org.commonjava.maven.galley.event.FileEvent galleyEvent, FileEvent fileEvent )
     {
         Transfer transfer = galleyEvent.getTransfer();
         if ( transfer == null )
         {
             logger.trace( "No transfer." );
-            return;
+            return false;
         }
 
         final Location location = transfer.getLocation();
         if ( !( location instanceof KeyedLocation ) )
         {
             logger.trace( "Not in a keyed location: {}", transfer );
-            return;
+            return false;
         }
 
+        boolean resolveDigests = false;
+
         try
         {
             final KeyedLocation keyedLocation = (KeyedLocation) location;
@@ -157,14 +245,9 @@ public class KafkaEventPublisher
 
             fileEvent.setTimestamp( new Date() );
 
-            galleyMetadata.set( FORCE_CHECKSUM_AND_WRITE, Boolean.FALSE );
-            TransferMetadata artifactData = contentDigester.digest( affectedStore, path, galleyMetadata );
-            fileEvent.setMd5( artifactData.getDigests().get( ContentDigest.MD5 ) );
-            fileEvent.setSha1( artifactData.getDigests().get( ContentDigest.SHA_1 ) );
-            fileEvent.setChecksum( artifactData.getDigests().get( ContentDigest.SHA_256 ) );
-            fileEvent.setSize( artifactData.getSize() );
+            resolveDigests = true;
             fileEvent.setStoreKey( affectedStore.toString() );
-            
+
             if ( galleyEvent instanceof FileStorageEvent )
             {
                 TransferOperation op = ((FileStorageEvent) galleyEvent).getType();
@@ -183,7 +266,7 @@ public class KafkaEventPublisher
                     default:
                     {
                         logger.trace( "Ignoring transfer operation: {} for: {}", op, transfer );
-                        return;
+                        return resolveDigests;
                     }
                 }
             }
@@ -205,22 +288,55 @@ public class KafkaEventPublisher
                 }
             }
         }
-        catch ( final IndyWorkflowException | IndyDataException e )
+        catch ( final IndyDataException e )
         {
             logger.error( String.format( "Failed to transform file event. Reason: %s", e.getMessage() ), e );
         }
+
+        return resolveDigests;
     }
 
+    private void resolveDigests( final FileEvent fileEvent,
+                                 final org.commonjava.maven.galley.event.EventMetadata galleyMetadata )
+            throws IndyWorkflowException
+    {
+        galleyMetadata.set( FORCE_CHECKSUM_AND_WRITE, Boolean.FALSE );
+        TransferMetadata artifactData = contentDigester.digest( StoreKey.fromString( fileEvent.getStoreKey() ),
+                                                                fileEvent.getTargetPath(), galleyMetadata );
+        setDigests( fileEvent, artifactData );
+    }
+
+    private void setDigests( final FileEvent fileEvent, final TransferMetadata artifactData )
+    {
+        fileEvent.setMd5( artifactData.getDigests().get( ContentDigest.MD5 ) );
+        fileEvent.setSha1( artifactData.getDigests().get( ContentDigest.SHA_1 ) );
+        fileEvent.setChecksum( artifactData.getDigests().get( ContentDigest.SHA_256 ) );
+        fileEvent.setSize( artifactData.getSize() );
+    }
+
+    /**
+     * Queue an event for publishing, as is.
+     */
     @Override
     public void publishFileEvent( FileEvent fileEvent )
     {
-        try
-        {
-            kafkaProducer.send( kafkaConfig.getFileEventTopic(), fileEvent, 60000 );
-        }
-        catch ( Throwable e )
+        if ( pipeline == null )
         {
-            logger.error( "Send file event to Kafka error, {}", e.getMessage(), e );
+            logger.debug( "File events are not published to Kafka, ignoring: {}", fileEvent.getTargetPath() );
+            return;
         }
+        pipeline.offer( fileEvent, null );
+    }
+
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        return pipeline == null ? new LinkedHashMap<>() : pipeline.getMetrics();
     }
 }
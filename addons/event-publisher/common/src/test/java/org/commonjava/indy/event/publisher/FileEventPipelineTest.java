@@ -0,0 +1,253 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.event.publisher;
+
+import org.commonjava.event.file.FileEvent;
+import org.commonjava.event.file.FileEventType;
+import org.commonjava.indy.core.conf.IndyEventHandlerConfig;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.indy.core.conf.IndyEventHandlerConfig.OVERFLOW_DROP;
+import static org.commonjava.indy.core.conf.IndyEventHandlerConfig.OVERFLOW_SPILL;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FileEventPipelineTest
+{
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private IndyEventHandlerConfig config;
+
+    private StandInSink sink;
+
+    private FileEventPipeline pipeline;
+
+    @Before
+    public void setup()
+    {
+        config = new IndyEventHandlerConfig();
+        config.setFileEventBatchSize( 10 );
+        config.setFileEventLingerMillis( 50 );
+        sink = new StandInSink();
+    }
+
+    @After
+    public void teardown()
+    {
+        sink.release.countDown();
+        if ( pipeline != null )
+        {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void eventsArePublishedInBatchesWithDigestsResolved()
+            throws Exception
+    {
+        sink.release.countDown();
+        pipeline = newPipeline();
+        pipeline.start();
+
+        for ( int i = 0; i < 25; i++ )
+        {
+            assertThat( pipeline.offer( event( i ), new EventMetadata() ), equalTo( true ) );
+        }
+        FileEvent complete = event( 25 );
+        assertThat( pipeline.offer( complete, null ), equalTo( true ) );
+
+        waitForPublished( 26 );
+
+        assertThat( sink.sent.size(), equalTo( 26 ) );
+        sink.sent.stream().filter( e -> e != complete ).forEach( e -> assertThat( e.getChecksum(), notNullValue() ) );
+        assertThat( complete.getChecksum(), nullValue() );
+        assertThat( pipeline.getMetrics().get( "maxBatchSize" ) <= 10, equalTo( true ) );
+        assertThat( (long) sink.flushes.get(), equalTo( pipeline.getMetrics().get( "batches" ) ) );
+        assertThat( pipeline.getMetrics().get( "queueDepth" ), equalTo( 0L ) );
+    }
+
+    @Test
+    public void eventsAreDroppedWhenTheQueueIsFull()
+            throws Exception
+    {
+        config.setFileEventQueueSize( 2 );
+        config.setFileEventLingerMillis( 0 );
+        config.setFileEventOverflow( OVERFLOW_DROP );
+        pipeline = newPipeline();
+        pipeline.start();
+
+        int accepted = 0;
+        for ( int i = 0; i < 20; i++ )
+        {
+            accepted += pipeline.offer( event( i ), null ) ? 1 : 0;
+        }
+
+        assertThat( pipeline.getMetrics().get( "dropped" ), equalTo( 20L - accepted ) );
+        assertThat( accepted < 20, equalTo( true ) );
+
+        sink.release.countDown();
+        waitForPublished( accepted );
+        assertThat( sink.sent.size(), equalTo( accepted ) );
+    }
+
+    @Test
+    public void spilledEventsArePublishedOnceTheQueueDrains()
+            throws Exception
+    {
+        File spillDir = temp.newFolder( "spill" );
+        config.setFileEventQueueSize( 2 );
+        config.setFileEventLingerMillis( 0 );
+        config.setFileEventOverflow( OVERFLOW_SPILL );
+        config.setFileEventSpillDir( spillDir.getAbsolutePath() );
+        pipeline = newPipeline();
+        pipeline.start();
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            assertThat( pipeline.offer( event( i ), new EventMetadata() ), equalTo( true ) );
+        }
+
+        assertThat( pipeline.getMetrics().get( "spilled" ) > 0, equalTo( true ) );
+        assertThat( new File( spillDir, FileEventPipeline.SPILL_FILE ).exists(), equalTo( true ) );
+
+        sink.release.countDown();
+        waitForPublished( 20 );
+
+        assertThat( pipeline.getMetrics().get( "dropped" ), equalTo( 0L ) );
+        assertThat( pipeline.getMetrics().get( "replayed" ), equalTo( pipeline.getMetrics().get( "spilled" ) ) );
+        sink.sent.forEach( e -> assertThat( e.getChecksum(), notNullValue() ) );
+        assertThat( new File( spillDir, FileEventPipeline.REPLAY_FILE ).exists(), equalTo( false ) );
+    }
+
+    @Test
+    public void blockTimeoutsAreCounted()
+            throws Exception
+    {
+        config.setFileEventQueueSize( 1 );
+        config.setFileEventLingerMillis( 0 );
+        config.setFileEventOverflowBlockMillis( 10 );
+        pipeline = newPipeline();
+        pipeline.start();
+
+        int accepted = 0;
+        for ( int i = 0; i < 5; i++ )
+        {
+            accepted += pipeline.offer( event( i ), null ) ? 1 : 0;
+        }
+
+        assertThat( pipeline.getMetrics().get( "blockTimeouts" ), equalTo( 5L - accepted ) );
+        assertThat( pipeline.getMetrics().get( "dropped" ), equalTo( 5L - accepted ) );
+        assertThat( accepted < 5, equalTo( true ) );
+    }
+
+    @Test
+    public void spilledDeletionsAreNotDigested()
+            throws Exception
+    {
+        File spillDir = temp.newFolder( "spill" );
+        config.setFileEventQueueSize( 1 );
+        config.setFileEventLingerMillis( 0 );
+        config.setFileEventOverflow( OVERFLOW_SPILL );
+        config.setFileEventSpillDir( spillDir.getAbsolutePath() );
+        pipeline = newPipeline();
+        pipeline.start();
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            assertThat( pipeline.offer( event( i, FileEventType.DELETE ), null ), equalTo( true ) );
+        }
+
+        sink.release.countDown();
+        waitForPublished( 10 );
+
+        assertThat( pipeline.getMetrics().get( "replayed" ) > 0, equalTo( true ) );
+        sink.sent.forEach( e -> assertThat( e.getChecksum(), nullValue() ) );
+    }
+
+    private FileEventPipeline newPipeline()
+    {
+        return new FileEventPipeline( config, new IndyObjectMapper( true ),
+                                      ( event, metadata ) -> event.setChecksum( "sha256-of-" + event.getTargetPath() ),
+                                      sink );
+    }
+
+    private FileEvent event( final int i )
+    {
+        return event( i, FileEventType.STORAGE );
+    }
+
+    private FileEvent event( final int i, final FileEventType type )
+    {
+        FileEvent event = new FileEvent( type );
+        event.setStoreKey( "maven:hosted:test" );
+        event.setTargetPath( "/org/foo/" + i + "/foo-" + i + ".jar" );
+        return event;
+    }
+
+    private void waitForPublished( final long count )
+            throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 10 );
+        while ( pipeline.getMetrics().get( "published" ) < count && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertThat( pipeline.getMetrics().get( "published" ), equalTo( count ) );
+    }
+
+    /**
+     * Records what would have gone to Kafka; holds the first send until released, to fill up the queue.
+     */
+    private static final class StandInSink
+            implements FileEventPipeline.Sink
+    {
+        private final List<FileEvent> sent = new CopyOnWriteArrayList<>();
+
+        private final AtomicInteger flushes = new AtomicInteger();
+
+        private final CountDownLatch release = new CountDownLatch( 1 );
+
+        @Override
+        public void send( final FileEvent event )
+                throws Exception
+        {
+            release.await();
+            sent.add( event );
+        }
+
+        @Override
+        public void flush()
+        {
+            flushes.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pathmapped.cache;
+
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.maven.galley.event.FileDeletionEvent;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Remembers for a short time whether a hosted store contains a directory, as answered by the file-system-containing
+ * queries of {@link org.commonjava.indy.pathmapped.inject.PathMappedGroupRepositoryFilter}, so requests for the same
+ * directory through groups with the same hosted members don't query those members again. Both answers are kept: the
+ * stores that don't contain the directory are usually most of the candidates.
+ * <p>
+ * Results expire after {@link IndyConfiguration#getFileSystemContainingCacheSeconds()}, which also bounds how long
+ * content stored by another node can stay hidden here. Storing or deleting a file in a hosted store drops the results
+ * of that store for every directory above the file, and updating or deleting a store drops all of its results.
+ * Callers take a {@link #getStamp(String)} before querying and pass it to {@link #put(String, Collection, Set, long)};
+ * the results are not kept if content of the directory changed in between.
+ */
+@ApplicationScoped
+public class FileSystemContainingCache
+{
+    private static final int MAX_ENTRIES = 200000;
+
+    private static final int STAMP_STRIPES = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private IndyConfiguration config;
+
+    private final LongSupplier clock;
+
+    /**
+     * directory -&gt; store key -&gt; answer
+     */
+    private final Map<String, Map<String, Answer>> results = new ConcurrentHashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLongArray stamps = new AtomicLongArray( STAMP_STRIPES );
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    protected FileSystemContainingCache()
+    {
+        this.clock = System::currentTimeMillis;
+    }
+
+    public FileSystemContainingCache( final IndyConfiguration config, final LongSupplier clock )
+    {
+        this.config = config;
+        this.clock = clock;
+    }
+
+    public boolean isEnabled()
+    {
+        return config != null && config.getFileSystemContainingCacheSeconds() > 0;
+    }
+
+    public long getStamp( final String path )
+    {
+        return stamps.get( stripe( normalize( path ) ) );
+    }
+
+    /**
+     * The known answers, by store, of whether it contains the directory; the stores missing from it have to be queried.
+     */
+    public Map<String, Boolean> get( final String path, final Collection<String> stores )
+    {
+        final Map<String, Boolean> known = new HashMap<>();
+        final Map<String, Answer> stored = results.get( normalize( path ) );
+        final long now = clock.getAsLong();
+        for ( final String store : stores )
+        {
+            final Answer answer = stored == null ? null : stored.get( store );
+            if ( answer != null && answer.expires > now )
+            {
+                known.put( store, answer.contains );
+            }
+        }
+
+        hits.addAndGet( known.size() );
+        misses.addAndGet( stores.size() - known.size() );
+        return known;
+    }
+
+    /**
+     * Record the answer of a query for each queried store. The stamp is the one taken before querying.
+     */
+    public void put( final String path, final Collection<String> queried, final Set<String> containing,
+                     final long stamp )
+    {
+        final String p = normalize( path );
+        if ( size.get() + queried.size() > MAX_ENTRIES )
+        {
+            sweep();
+            if ( size.get() + queried.size() > MAX_ENTRIES )
+            {
+                logger.debug( "File system containing cache is full, not recording {}", p );
+                return;
+            }
+        }
+
+        final long expires = clock.getAsLong() + TimeUnit.SECONDS.toMillis( config.getFileSystemContainingCacheSeconds() );
+        synchronized ( this )
+        {
+            if ( stamps.get( stripe( p ) ) != stamp )
+            {
+                logger.debug( "{} changed while querying, not recording the result", p );
+                return;
+            }
+
+            final Map<String, Answer> stored = results.computeIfAbsent( p, k -> new ConcurrentHashMap<>() );
+            for ( final String store : queried )
+            {
+                if ( stored.put( store, new Answer( expires, containing.contains( store ) ) ) == null )
+                {
+                    size.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public void onFileStorage( @Observes final FileStorageEvent event )
+    {
+        invalidate( event.getTransfer() );
+    }
+
+    public void onFileDeletion( @Observes final FileDeletionEvent event )
+    {
+        invalidate( event.getTransfer() );
+    }
+
+    public void onStoreUpdate( @Observes final ArtifactStorePostUpdateEvent event )
+    {
+        invalidate( event.getChanges() );
+    }
+
+    public void onStoreDeletion( @Observes final ArtifactStoreDeletePostEvent event )
+    {
+        invalidate( event.getStores() );
+    }
+
+    /**
+     * Drop the results of the store for every directory above the path, and for the path itself.
+     */
+    public void invalidate( final StoreKey key, final String path )
+    {
+        final String store = key.toString();
+        String p = normalize( path );
+        synchronized ( this )
+        {
+            while ( true )
+            {
+                stamps.incrementAndGet( stripe( p ) );
+                final Map<String, Answer> stored = results.get( p );
+                if ( stored != null && stored.remove( store ) != null )
+                {
+                    size.decrementAndGet();
+                    invalidations.incrementAndGet();
+                    if ( stored.isEmpty() )
+                    {
+                        results.remove( p, stored );
+                    }
+                }
+
+                if ( p.isEmpty() )
+                {
+                    break;
+                }
+                final int idx = p.lastIndexOf( '/' );
+                p = idx < 0 ? "" : p.substring( 0, idx );
+            }
+        }
+    }
+
+    public Map<String, Long> getMetrics()
+    {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "size", (long) size.get() );
+        metrics.put( "hits", hits.get() );
+        metrics.put( "misses", misses.get() );
+        metrics.put( "invalidations", invalidations.get() );
+        return metrics;
+    }
+
+    /**
+     * Drop the results of the stores for every directory.
+     */
+    private void invalidate( final Collection<? extends ArtifactStore> stores )
+    {
+        if ( stores == null || stores.isEmpty() )
+        {
+            return;
+        }
+
+        final Set<String> keys = stores.stream().map( store -> store.getKey().toString() ).collect( Collectors.toSet() );
+        synchronized ( this )
+        {
+            for ( int i = 0; i < STAMP_STRIPES; i++ )
+            {
+                stamps.incrementAndGet( i );
+            }
+
+            results.entrySet().removeIf( pathEntry -> {
+                pathEntry.getValue().keySet().removeIf( store -> {
+                    if ( keys.contains( store ) )
+                    {
+                        size.decrementAndGet();
+                        invalidations.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                } );
+                return pathEntry.getValue().isEmpty();
+            } );
+        }
+    }
+
+    private void invalidate( final Transfer transfer )
+    {
+        if ( transfer == null || !( transfer.getLocation() instanceof KeyedLocation ) )
+        {
+            return;
+        }
+
+        final StoreKey key = ( (KeyedLocation) transfer.getLocation() ).getKey();
+        if ( key.getType() == StoreType.hosted && transfer.getPath() != null )
+        {
+            invalidate( key, transfer.getPath() );
+        }
+    }
+
+    private void sweep()
+    {
+        final long now = clock.getAsLong();
+        synchronized ( this )
+        {
+            results.entrySet().removeIf( pathEntry -> {
+                pathEntry.getValue().values().removeIf( answer -> {
+                    if ( answer.expires <= now )
+                    {
+                        size.decrementAndGet();
+                        return true;
+                    }
+                    return false;
+                } );
+                return pathEntry.getValue().isEmpty();
+            } );
+        }
+    }
+
+    private static String normalize( final String path )
+    {
+        String p = path == null ? "" : path;
+        while ( p.startsWith( "/" ) )
+        {
+            p = p.substring( 1 );
+        }
+        while ( p.endsWith( "/" ) )
+        {
+            p = p.substring( 0, p.length() - 1 );
+        }
+        return p;
+    }
+
+    private static int stripe( final String path )
+    {
+        return ( path.hashCode() & 0x7fffffff ) % STAMP_STRIPES;
+    }
+
+    private static final class Answer
+    {
+        private final long expires;
+
+        private final boolean contains;
+
+        private Answer( final long expires, final boolean contains )
+        {
+            this.expires = expires;
+            this.contains = contains;
+        }
+    }
+}
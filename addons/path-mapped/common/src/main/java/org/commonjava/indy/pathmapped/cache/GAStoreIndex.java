@@ -0,0 +1,239 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pathmapped.cache;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory copy of the GA -&gt; stores rows of {@link PathMappedMavenGACache}. Store names are numbered once, and
+ * each GA maps to a bitset of store numbers, so a GA known in thousands of build repositories costs a few bytes per
+ * store instead of a set of strings.
+ * <p>
+ * Bitsets are never changed once published; an update replaces the bitset of the GA, so readers need no locking. An
+ * entry is only trusted for the given max age after it was loaded from the database, so changes written by other
+ * nodes are seen after that. Updates for a GA that is not loaded are ignored, since the database has them.
+ * <p>
+ * At most the given number of GAs are kept; while the index is full, GAs read from the database are not added until
+ * {@link #sweep(long)} drops the expired ones. Sweeping also renumbers the stores when most numbers are not used by
+ * any entry any more, e.g. after build repositories were deleted. Each entry keeps the store names of the numbering it
+ * was created with, so a renumbering never changes what a reader sees.
+ */
+final class GAStoreIndex
+{
+    private static final int MIN_RENUMBER_STORES = 1024;
+
+    private final ReadWriteLock numbering = new ReentrantReadWriteLock();
+
+    private Map<String, Integer> storeNumbers = new HashMap<>();
+
+    private volatile String[] storeNames = new String[0];
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final long maxAgeMillis;
+
+    private final int maxEntries;
+
+    GAStoreIndex( final long maxAgeMillis, final int maxEntries )
+    {
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Stores of the GA, or null if it is not loaded or was loaded too long ago.
+     */
+    Set<String> get( final String ga, final long now )
+    {
+        final Entry entry = current( ga, now );
+        return entry == null ? null : toNames( entry );
+    }
+
+    /**
+     * Replace the stores of the GA with the ones read from the database.
+     */
+    void put( final String ga, final Collection<String> stores, final long now )
+    {
+        if ( entries.size() >= maxEntries && !entries.containsKey( ga ) )
+        {
+            return;
+        }
+
+        numbering.readLock().lock();
+        try
+        {
+            final BitSet bits = new BitSet();
+            stores.forEach( store -> bits.set( number( store ) ) );
+            entries.put( ga, new Entry( bits, storeNames, now ) );
+        }
+        finally
+        {
+            numbering.readLock().unlock();
+        }
+    }
+
+    void add( final String ga, final Collection<String> stores )
+    {
+        update( ga, stores, true );
+    }
+
+    void remove( final String ga, final Collection<String> stores )
+    {
+        update( ga, stores, false );
+    }
+
+    int size()
+    {
+        return entries.size();
+    }
+
+    int storeCount()
+    {
+        return storeNames.length;
+    }
+
+    /**
+     * Drop the entries loaded too long ago, and renumber the stores if most of them are not used any more.
+     */
+    void sweep( final long now )
+    {
+        entries.values().removeIf( entry -> now - entry.loaded >= maxAgeMillis );
+
+        numbering.writeLock().lock();
+        try
+        {
+            final BitSet used = new BitSet();
+            entries.values().forEach( entry -> used.or( entry.stores ) );
+            if ( storeNames.length < MIN_RENUMBER_STORES || used.cardinality() * 2 > storeNames.length )
+            {
+                return;
+            }
+
+            final Map<String, Integer> numbers = new HashMap<>();
+            final String[] names = new String[used.cardinality()];
+            final int[] renumbered = new int[storeNames.length];
+            for ( int i = used.nextSetBit( 0 ); i >= 0; i = used.nextSetBit( i + 1 ) )
+            {
+                renumbered[i] = numbers.size();
+                names[numbers.size()] = storeNames[i];
+                numbers.put( storeNames[i], numbers.size() );
+            }
+
+            entries.replaceAll( ( ga, entry ) -> {
+                final BitSet bits = new BitSet();
+                for ( int i = entry.stores.nextSetBit( 0 ); i >= 0; i = entry.stores.nextSetBit( i + 1 ) )
+                {
+                    bits.set( renumbered[i] );
+                }
+                return new Entry( bits, names, entry.loaded );
+            } );
+
+            storeNumbers = numbers;
+            storeNames = names;
+        }
+        finally
+        {
+            numbering.writeLock().unlock();
+        }
+    }
+
+    private Entry current( final String ga, final long now )
+    {
+        final Entry entry = entries.get( ga );
+        if ( entry != null && now - entry.loaded >= maxAgeMillis )
+        {
+            entries.remove( ga, entry );
+            return null;
+        }
+        return entry;
+    }
+
+    private void update( final String ga, final Collection<String> stores, final boolean add )
+    {
+        numbering.readLock().lock();
+        try
+        {
+            entries.computeIfPresent( ga, ( k, entry ) -> {
+                final BitSet bits = (BitSet) entry.stores.clone();
+                stores.forEach( store -> bits.set( number( store ), add ) );
+                return new Entry( bits, storeNames, entry.loaded );
+            } );
+        }
+        finally
+        {
+            numbering.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of the store in the current numbering; called with the numbering read lock held.
+     */
+    private int number( final String store )
+    {
+        synchronized ( numbering )
+        {
+            return storeNumbers.computeIfAbsent( store, s -> {
+                final String[] names = new String[storeNames.length + 1];
+                System.arraycopy( storeNames, 0, names, 0, storeNames.length );
+                names[storeNames.length] = s;
+                storeNames = names;
+                return storeNames.length - 1;
+            } );
+        }
+    }
+
+    private Set<String> toNames( final Entry entry )
+    {
+        final BitSet bits = entry.stores;
+        if ( bits.isEmpty() )
+        {
+            return Collections.emptySet();
+        }
+
+        final Set<String> ret = new HashSet<>( bits.cardinality() * 2 );
+        for ( int i = bits.nextSetBit( 0 ); i >= 0; i = bits.nextSetBit( i + 1 ) )
+        {
+            ret.add( entry.names[i] );
+        }
+        return Collections.unmodifiableSet( ret );
+    }
+
+    private static final class Entry
+    {
+        private final BitSet stores;
+
+        // the store names of the numbering the bitset uses
+        private final String[] names;
+
+        private final long loaded;
+
+        private Entry( final BitSet stores, final String[] names, final long loaded )
+        {
+            this.stores = stores;
+            this.names = names;
+            this.loaded = loaded;
+        }
+    }
+}
@@ -23,17 +23,21 @@ import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
 import com.google.common.collect.Lists;
+import org.commonjava.cdi.util.weft.Locker;
 import org.commonjava.indy.action.IndyLifecycleException;
 import org.commonjava.indy.action.StartupAction;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.subsys.cassandra.CassandraClient;
-import org.commonjava.indy.subsys.infinispan.CacheHandle;
-import org.commonjava.indy.subsys.infinispan.CacheProducer;
 import org.commonjava.maven.galley.cache.pathmapped.PathMappedCacheProvider;
+import org.commonjava.maven.galley.event.FileDeletionEvent;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.spi.cache.CacheProvider;
 import org.commonjava.storage.pathmapped.core.PathMappedFileManager;
 import org.commonjava.storage.pathmapped.model.PathMap;
@@ -43,11 +47,13 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -55,6 +61,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static java.util.Collections.emptySet;
@@ -77,6 +87,14 @@ public class PathMappedMavenGACache
 
     private static final int TIMER_PERIOD_MINUTES = 60;
 
+    private static final int SCAN_THREADS = 4;
+
+    private static final int INDEX_ENTRY_MINUTES = 10;
+
+    private static final int INDEX_MAX_ENTRIES = 200000;
+
+    private static final int LOCK_TIMEOUT_SECONDS = 30;
+
     // @formatter:off
     private static String getSchemaCreateTable( String keyspace )
     {
@@ -104,10 +122,13 @@ public class PathMappedMavenGACache
     @Inject
     private CassandraClient cassandraClient;
 
-    @Inject
-    private CacheProducer cacheProducer;
+    private final GAStoreIndex index =
+                    new GAStoreIndex( MINUTES.toMillis( INDEX_ENTRY_MINUTES ), INDEX_MAX_ENTRIES );
 
-    private CacheHandle<String, Set<String>> inMemoryCache;
+    // orders the updates of a GA from storage and deletion events
+    private final Locker<String> gaLocks = new Locker<>();
+
+    private ExecutorService scanExecutor;
 
     private String gaStorePattern;
 
@@ -121,12 +142,10 @@ public class PathMappedMavenGACache
     {
     }
 
-    public PathMappedMavenGACache( final IndyConfiguration config, final CacheProducer cacheProducer,
-                                   final CassandraClient cassandraClient, final StoreDataManager storeDataManager,
-                                   final PathMappedCacheProvider cacheProvider )
+    public PathMappedMavenGACache( final IndyConfiguration config, final CassandraClient cassandraClient,
+                                   final StoreDataManager storeDataManager, final PathMappedCacheProvider cacheProvider )
     {
         this.config = config;
-        this.cacheProducer = cacheProducer;
         this.cassandraClient = cassandraClient;
         this.storeDataManager = storeDataManager;
         this.gaStorePattern = config.getGACacheStorePattern();
@@ -157,7 +176,11 @@ public class PathMappedMavenGACache
             return;
         }
 
-        inMemoryCache = cacheProducer.getCache( "ga-in-memory-cache" );
+        if ( scanExecutor == null )
+        {
+            // stores differ a lot in size, so idle threads take the remaining stores of busy ones
+            scanExecutor = Executors.newWorkStealingPool( SCAN_THREADS );
+        }
 
         session.execute( getSchemaCreateKeyspace( keyspace, config.getKeyspaceReplicas() ) );
         session.execute( getSchemaCreateTable( keyspace ) );
@@ -203,6 +226,13 @@ public class PathMappedMavenGACache
         return "MavenGACache";
     }
 
+    @Override
+    public Collection<String> getStartupDependencies()
+    {
+        // the matched stores are queried from the store data, which must hold the default stores by then
+        return Collections.singleton( "Default artifact store initialization" );
+    }
+
     private void startTimer()
     {
         Timer timer = new Timer( true );
@@ -214,6 +244,14 @@ public class PathMappedMavenGACache
                 fill();
             }
         }, MINUTES.toMillis( TIMER_PERIOD_MINUTES ), MINUTES.toMillis( TIMER_PERIOD_MINUTES ) );
+        timer.scheduleAtFixedRate( new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                index.sweep( System.currentTimeMillis() );
+            }
+        }, MINUTES.toMillis( INDEX_ENTRY_MINUTES ), MINUTES.toMillis( INDEX_ENTRY_MINUTES ) );
     }
 
     public void fill()
@@ -305,7 +343,7 @@ public class PathMappedMavenGACache
         bound.setSet( 0, set );
         bound.setString( 1, ga );
         executeSession( bound );
-        inMemoryCache.remove( ga ); // clear to force reloading
+        index.add( ga, set );
     }
 
     public void reduce( String ga, Set<String> set, boolean isAsync )
@@ -321,46 +359,165 @@ public class PathMappedMavenGACache
         {
             executeSession( bound );
         }
-        inMemoryCache.remove( ga ); // clear to force reloading
+        index.remove( ga, set );
     }
 
     /**
-     * Scan the stores to find all GAs.
+     * Scan the stores to find all GAs. The stores are traversed in parallel; a store that fails is not completed, so
+     * it is scanned again by the next fill.
      * @param notScanned
      * @param gaMap
      * @param completed
      */
     private void scan( final Collection<String> notScanned, final Map<String, Set<String>> gaMap, final Set<String> completed )
+            throws InterruptedException
     {
-        PathDB pathDB = pathMappedFileManager.getPathDB();
-        notScanned.forEach( storeName -> {
-            Set<String> gaSet = new HashSet<>();
-            pathDB.traverse( "maven:hosted:" + storeName, ROOT_DIR, pathMap -> {
-                String gaPath = getGAPath( pathMap );
-                if ( isNotBlank( gaPath ) )
-                {
-                    gaSet.add( gaPath );
-                }
-            }, 0, PathDB.FileType.file );
+        Map<String, Future<Set<String>>> scans = new HashMap<>();
+        notScanned.forEach( storeName -> scans.put( storeName, scanExecutor.submit( () -> scanStore( storeName ) ) ) );
+
+        for ( Map.Entry<String, Future<Set<String>>> scan : scans.entrySet() )
+        {
+            String storeName = scan.getKey();
+            Set<String> gaSet;
+            try
+            {
+                gaSet = scan.getValue().get();
+            }
+            catch ( ExecutionException e )
+            {
+                logger.error( "Failed to scan store: " + storeName, e.getCause() );
+                continue;
+            }
 
             gaSet.forEach( ga -> {
                 gaMap.computeIfAbsent( ga, k -> new HashSet<>() ).add( storeName );
             } );
             logger.info( "Scan result, store: {}, gaSet: {}", storeName, gaSet );
             completed.add( storeName );
-        } );
+        }
+    }
+
+    private Set<String> scanStore( final String storeName )
+    {
+        return scanGAs( storeName, ROOT_DIR );
+    }
+
+    /**
+     * Get the GAs of the poms found under the dir of the hosted store.
+     */
+    private Set<String> scanGAs( final String storeName, final String dir )
+    {
+        Set<String> gaSet = new HashSet<>();
+        pathMappedFileManager.getPathDB().traverse( "maven:hosted:" + storeName, dir, pathMap -> {
+            String gaPath = getGAPath( pathMap );
+            if ( isNotBlank( gaPath ) )
+            {
+                gaSet.add( gaPath );
+            }
+        }, 0, PathDB.FileType.file );
+        return gaSet;
+    }
+
+    /**
+     * Add the GA of a pom stored in a matched hosted store, and drop it when the last pom of the GA in the store is
+     * deleted, so GAs added to stores that were already scanned are known without rescanning them.
+     * <br/>
+     * Both run under the lock of the GA: the store is dropped only if no pom of the GA is found in it while holding the
+     * lock, so a pom stored again after the deletion either is found, or adds the store back after it was dropped.
+     */
+    public void onFileStorage( @Observes final FileStorageEvent event )
+    {
+        String storeName = getMatchedStoreName( event.getTransfer() );
+        String ga = storeName == null ? null : getGAPath( event.getTransfer().getPath() );
+        if ( isNotBlank( ga ) )
+        {
+            // always add: the local index may miss a removal made by another node, and adding is idempotent
+            gaLocks.lockAnd( ga, LOCK_TIMEOUT_SECONDS, k -> {
+                logger.debug( "Add to GA cache, ga: {}, store: {}", ga, storeName );
+                increase( ga, Collections.singleton( storeName ) );
+                return null;
+            }, ( k, lock ) -> {
+                logger.warn( "Failed to lock GA: {}, add store: {} anyway", ga, storeName );
+                increase( ga, Collections.singleton( storeName ) );
+                return null;
+            } );
+        }
+    }
+
+    public void onFileDeletion( @Observes final FileDeletionEvent event )
+    {
+        String storeName = getMatchedStoreName( event.getTransfer() );
+        String ga = storeName == null ? null : getGAPath( event.getTransfer().getPath() );
+        if ( isNotBlank( ga ) )
+        {
+            scanExecutor.execute( () -> gaLocks.lockAnd( ga, LOCK_TIMEOUT_SECONDS, k -> {
+                // other versions of the GA may still be in the store, or the pom was stored again
+                if ( !scanGAs( storeName, ROOT_DIR + ga ).contains( ga ) )
+                {
+                    logger.debug( "Remove from GA cache, ga: {}, store: {}", ga, storeName );
+                    reduce( ga, Collections.singleton( storeName ), false );
+                }
+                return null;
+            }, ( k, lock ) -> {
+                // keeping the store only costs a lookup in it
+                logger.warn( "Failed to lock GA: {}, keep store: {}", ga, storeName );
+                return null;
+            } ) );
+        }
+    }
+
+    private String getMatchedStoreName( Transfer transfer )
+    {
+        if ( !started || transfer == null || !( transfer.getLocation() instanceof KeyedLocation ) )
+        {
+            return null;
+        }
+
+        StoreKey key = ( (KeyedLocation) transfer.getLocation() ).getKey();
+        if ( key.getType() == StoreType.hosted && PKG_TYPE_MAVEN.equals( key.getPackageType() ) && key.getName()
+                                                                                                  .matches( gaStorePattern ) )
+        {
+            return key.getName();
+        }
+        return null;
+    }
+
+    private void increase( String ga, Set<String> set )
+    {
+        BoundStatement bound = preparedStoresIncrement.bind();
+        bound.setSet( 0, set );
+        bound.setString( 1, ga );
+        executeSession( bound, true, ResultSetFuture.class );
+        index.add( ga, set );
     }
 
     /**
      * Get GA path from pathMap obj. If it is pom file, get parent's parent.
      */
     private static String getGAPath( PathMap pathMap )
+    {
+        return getGAPath( pathMap.getParentPath(), pathMap.getFilename() );
+    }
+
+    /**
+     * Get GA path of a file path. If it is pom file, get parent's parent.
+     */
+    private static String getGAPath( String path )
+    {
+        if ( isBlank( path ) )
+        {
+            return null;
+        }
+        Path p = Paths.get( path );
+        return p.getFileName() == null ? null : getGAPath( p.getParent() == null ? null : p.getParent().toString(),
+                                                           p.getFileName().toString() );
+    }
+
+    private static String getGAPath( String parent, String fileName )
     {
         String ret = null;
-        String fileName = pathMap.getFilename();
         if ( fileName.endsWith( ".pom" ) )
         {
-            String parent = pathMap.getParentPath();
             if ( isNotBlank( parent ) )
             {
                 Path ga = Paths.get( parent ).getParent();
@@ -383,12 +540,12 @@ public class PathMappedMavenGACache
     }
 
     /**
-     * Get stores contain the target gaPath. It checks the inMemoryCache first. If not found, query db
-     * and update inMemoryCache.
+     * Get stores contain the target gaPath. It checks the in-memory index first. If not found or the entry is too old
+     * to reflect the updates from other nodes, query db and update the index.
      */
     public Set<String> getStoresContaining( String gaPath )
     {
-        Set<String> ret = inMemoryCache.get( gaPath );
+        Set<String> ret = index.get( gaPath, System.currentTimeMillis() );
         if ( ret != null )
         {
             return ret;
@@ -405,7 +562,7 @@ public class PathMappedMavenGACache
         {
             ret = emptySet();
         }
-        inMemoryCache.put( gaPath, ret );
+        index.put( gaPath, ret, System.currentTimeMillis() );
         return ret;
     }
 
@@ -16,13 +16,18 @@
 package org.commonjava.indy.pathmapped.inject;
 
 import com.google.common.collect.Lists;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.core.content.group.AbstractGroupRepositoryFilter;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.pathmapped.cache.FileSystemContainingCache;
 import org.commonjava.indy.pathmapped.cache.PathMappedMavenGACache;
+import org.commonjava.indy.spi.IndyMetricsSource;
 import org.commonjava.maven.galley.cache.pathmapped.PathMappedCacheProvider;
 import org.commonjava.maven.galley.model.SpecialPathInfo;
 import org.commonjava.maven.galley.spi.cache.CacheProvider;
@@ -36,9 +41,19 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -50,7 +65,10 @@ import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_PKG
 @ApplicationScoped
 public class PathMappedGroupRepositoryFilter
                 extends AbstractGroupRepositoryFilter
+                implements IndyMetricsSource
 {
+    public static final String METRICS_NAME = "filesystem-containing";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
@@ -65,8 +83,34 @@ public class PathMappedGroupRepositoryFilter
     @Inject
     private SpecialPathManager specialPathManager;
 
+    @Inject
+    private FileSystemContainingCache containingCache;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "filesystem-containing", threads = 20, priority = 8, maxLoadFactor = 100, loadSensitive = ExecutorConfig.BooleanLiteral.TRUE )
+    private WeftExecutorService queryExecutor;
+
     private PathMappedFileManager pathMappedFileManager;
 
+    private final AtomicLong queries = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    protected PathMappedGroupRepositoryFilter()
+    {
+    }
+
+    public PathMappedGroupRepositoryFilter( final IndyConfiguration indyConfig, final PathMappedMavenGACache gaCache,
+                                            final FileSystemContainingCache containingCache )
+    {
+        this.indyConfig = indyConfig;
+        this.gaCache = gaCache;
+        this.containingCache = containingCache;
+    }
+
     @PostConstruct
     void setup()
     {
@@ -119,29 +163,140 @@ public class PathMappedGroupRepositoryFilter
             return concreteStores;
         }
 
-        // batch it to avoid huge 'IN' query
+        Set<String> ret = getContaining( strategyPath, candidates );
+
+        return concreteStores.stream()
+                             .filter( store -> store.getType() == StoreType.remote || ret.contains(
+                                             store.getKey().toString() ) )
+                             .collect( Collectors.toList() );
+    }
+
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "queries", queries.get() );
+        metrics.put( "failures", failures.get() );
+        metrics.put( "timeouts", timeouts.get() );
+        containingCache.getMetrics().forEach( ( name, value ) -> metrics.put( "cache." + name, value ) );
+        return metrics;
+    }
+
+    /**
+     * Get the candidates that contain the strategy path, or whose query failed. Cached results are used first; the
+     * rest are queried in batches, in parallel, and batches that have not answered by the deadline keep all their
+     * candidates.
+     */
+    private Set<String> getContaining( String strategyPath, List<String> candidates )
+    {
         Set<String> ret = new HashSet<>();
+        List<String> unknown = candidates;
+        long stamp = 0;
+        boolean caching = containingCache.isEnabled();
+        if ( caching )
+        {
+            stamp = containingCache.getStamp( strategyPath );
+            Map<String, Boolean> known = containingCache.get( strategyPath, candidates );
+            known.forEach( ( store, contains ) -> {
+                if ( contains )
+                {
+                    ret.add( store );
+                }
+            } );
+            unknown = candidates.stream().filter( store -> !known.containsKey( store ) ).collect( Collectors.toList() );
+            if ( unknown.isEmpty() )
+            {
+                logger.debug( "Get file system containing from cache, strategyPath: {}", strategyPath );
+                return ret;
+            }
+        }
+
+        // batch it to avoid huge 'IN' query
         int batchSize = indyConfig.getFileSystemContainingBatchSize();
-        List<List<String>> subSets = Lists.partition( candidates, batchSize );
-        subSets.forEach( subSet -> {
-            logger.debug( "Get file system containing, strategyPath: {}, subSet: {}", strategyPath, subSet );
-            Set<String> st = pathMappedFileManager.getFileSystemContainingDirectory( subSet, strategyPath );
+        List<List<String>> subSets = Lists.partition( unknown, batchSize );
+        List<Future<Set<String>>> futures = new ArrayList<>( subSets.size() );
+        subSets.forEach( subSet -> futures.add( submit( strategyPath, subSet ) ) );
+
+        long deadline = System.currentTimeMillis() + indyConfig.getFileSystemContainingTimeoutMillis();
+        for ( int i = 0; i < subSets.size(); i++ )
+        {
+            List<String> subSet = subSets.get( i );
+            Set<String> st = null;
+            try
+            {
+                st = futures.get( i ).get( Math.max( 0, deadline - System.currentTimeMillis() ), TimeUnit.MILLISECONDS );
+            }
+            catch ( TimeoutException e )
+            {
+                timeouts.incrementAndGet();
+                futures.get( i ).cancel( true );
+                logger.warn( "Get fileSystems query timed out, strategyPath: {}, subSet size: {}", strategyPath,
+                             subSet.size() );
+            }
+            catch ( ExecutionException e )
+            {
+                logger.warn( "Get fileSystems query error, strategyPath: {}, reason: {}", strategyPath,
+                             e.getCause() == null ? e.getMessage() : e.getCause().getMessage() );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                logger.warn( "Interrupted while waiting for fileSystems query, strategyPath: {}", strategyPath );
+            }
+
             if ( st == null || st.isEmpty() )
             {
                 // query failed but those candidates may contain the target path so we add all subSet candidates
+                failures.incrementAndGet();
                 logger.warn( "Get fileSystems query failed, add subSet candidates" );
                 ret.addAll( subSet );
             }
             else
             {
                 ret.addAll( st );
+                if ( caching )
+                {
+                    // a non-empty answer tells the rest of the subSet don't contain the path either
+                    containingCache.put( strategyPath, subSet, st, stamp );
+                }
             }
-        } );
+        }
 
-        return concreteStores.stream()
-                             .filter( store -> store.getType() == StoreType.remote || ret.contains(
-                                             store.getKey().toString() ) )
-                             .collect( Collectors.toList() );
+        return ret;
+    }
+
+    private Future<Set<String>> submit( String strategyPath, List<String> subSet )
+    {
+        queries.incrementAndGet();
+        Callable<Set<String>> query = () -> queryContaining( strategyPath, subSet );
+
+        if ( queryExecutor != null )
+        {
+            try
+            {
+                return queryExecutor.submit( query );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.debug( "Cannot submit fileSystems query, run it in place. Reason: {}", e.getMessage() );
+            }
+        }
+
+        FutureTask<Set<String>> task = new FutureTask<>( query );
+        task.run();
+        return task;
+    }
+
+    protected Set<String> queryContaining( String strategyPath, List<String> subSet )
+    {
+        logger.debug( "Get file system containing, strategyPath: {}, subSet: {}", strategyPath, subSet );
+        return pathMappedFileManager.getFileSystemContainingDirectory( subSet, strategyPath );
     }
 
     private boolean isMavenMetadataNonSnapshotPath( Group group, String path )
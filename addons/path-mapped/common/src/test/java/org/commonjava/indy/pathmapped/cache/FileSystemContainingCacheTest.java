@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pathmapped.cache;
+
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.change.event.ArtifactStoreUpdateType;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FileSystemContainingCacheTest
+{
+    private static final String DIR = "/org/foo/bar/1.0";
+
+    private static final String HOSTED_A = "maven:hosted:a";
+
+    private static final String HOSTED_B = "maven:hosted:b";
+
+    private final AtomicLong now = new AtomicLong( 1000000L );
+
+    private final List<String> stores = Arrays.asList( HOSTED_A, HOSTED_B );
+
+    @Test
+    public void reuseResultsUntilExpired()
+    {
+        FileSystemContainingCache cache = new FileSystemContainingCache( config( 30 ), now::get );
+
+        cache.put( DIR, stores, Collections.singleton( HOSTED_A ), cache.getStamp( DIR ) );
+        // b doesn't contain it, which is remembered too
+        assertThat( cache.get( DIR, stores ), equalTo( answers( true, false ) ) );
+        // the same directory without the leading slash
+        assertThat( cache.get( "org/foo/bar/1.0/", stores ), equalTo( answers( true, false ) ) );
+
+        now.addAndGet( 30000 );
+        assertThat( cache.get( DIR, stores ).isEmpty(), equalTo( true ) );
+
+        assertThat( cache.getMetrics().get( "hits" ), equalTo( 4L ) );
+        assertThat( cache.getMetrics().get( "misses" ), equalTo( 2L ) );
+    }
+
+    @Test
+    public void dropResultsOfStoreWhenContentChanges()
+    {
+        FileSystemContainingCache cache = new FileSystemContainingCache( config( 30 ), now::get );
+        cache.put( DIR, stores, new HashSet<>( stores ), cache.getStamp( DIR ) );
+        cache.put( "org/foo", stores, Collections.singleton( HOSTED_A ), cache.getStamp( "org/foo" ) );
+
+        // deleting a file below the directory changes what b contains, for the directory and the ones above
+        cache.invalidate( StoreKey.fromString( HOSTED_B ), "org/foo/bar/1.0/bar-1.0.jar" );
+
+        assertThat( cache.get( DIR, stores ), equalTo( Collections.singletonMap( HOSTED_A, true ) ) );
+        assertThat( cache.get( "org/foo", stores ), equalTo( Collections.singletonMap( HOSTED_A, true ) ) );
+        assertThat( cache.getMetrics().get( "invalidations" ), equalTo( 2L ) );
+    }
+
+    @Test
+    public void dropResultsOfStoreWhenStoreChanges()
+    {
+        FileSystemContainingCache cache = new FileSystemContainingCache( config( 30 ), now::get );
+        cache.put( DIR, stores, Collections.singleton( HOSTED_A ), cache.getStamp( DIR ) );
+        cache.put( "org/foo", stores, Collections.singleton( HOSTED_A ), cache.getStamp( "org/foo" ) );
+        long stamp = cache.getStamp( "org/bar" );
+
+        HostedRepository b = new HostedRepository( MAVEN_PKG_KEY, "b" );
+        Map<ArtifactStore, ArtifactStore> changes = Collections.singletonMap( b, b );
+        cache.onStoreUpdate(
+                        new ArtifactStorePostUpdateEvent( ArtifactStoreUpdateType.UPDATE, new EventMetadata(), changes ) );
+
+        assertThat( cache.get( DIR, stores ), equalTo( Collections.singletonMap( HOSTED_A, true ) ) );
+        assertThat( cache.get( "org/foo", stores ), equalTo( Collections.singletonMap( HOSTED_A, true ) ) );
+
+        // a query started before the change is not kept
+        cache.put( "org/bar", stores, Collections.singleton( HOSTED_B ), stamp );
+        assertThat( cache.get( "org/bar", stores ).isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void skipResultOfQueryRacingWithChange()
+    {
+        FileSystemContainingCache cache = new FileSystemContainingCache( config( 30 ), now::get );
+
+        long stamp = cache.getStamp( DIR );
+        cache.invalidate( new StoreKey( MAVEN_PKG_KEY, StoreType.hosted, "b" ), DIR + "/bar-1.0.pom" );
+        cache.put( DIR, stores, Collections.singleton( HOSTED_A ), stamp );
+
+        assertThat( cache.get( DIR, stores ).isEmpty(), equalTo( true ) );
+    }
+
+    private Map<String, Boolean> answers( final boolean a, final boolean b )
+    {
+        Map<String, Boolean> answers = new HashMap<>();
+        answers.put( HOSTED_A, a );
+        answers.put( HOSTED_B, b );
+        return answers;
+    }
+
+    private DefaultIndyConfiguration config( final int cacheSeconds )
+    {
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setFileSystemContainingCacheSeconds( cacheSeconds );
+        return config;
+    }
+}
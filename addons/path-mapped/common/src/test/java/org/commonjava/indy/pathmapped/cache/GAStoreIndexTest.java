@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pathmapped.cache;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GAStoreIndexTest
+{
+    private static final String GA = "org/foo/bar";
+
+    @Test
+    public void updateLoadedEntriesOnly()
+    {
+        GAStoreIndex index = new GAStoreIndex( 1000, 100 );
+        index.add( GA, Collections.singleton( "build-1" ) );
+        assertThat( index.get( GA, 0 ), nullValue() );
+
+        index.put( GA, Arrays.asList( "build-1", "build-2" ), 0 );
+        index.add( GA, Collections.singleton( "build-3" ) );
+        index.remove( GA, Collections.singleton( "build-1" ) );
+
+        assertThat( index.get( GA, 10 ), equalTo( new HashSet<>( Arrays.asList( "build-2", "build-3" ) ) ) );
+        assertThat( index.size(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void reloadAfterMaxAge()
+    {
+        GAStoreIndex index = new GAStoreIndex( 1000, 100 );
+        index.put( GA, Collections.singleton( "build-1" ), 0 );
+        index.add( GA, Collections.singleton( "build-2" ) );
+
+        // updates do not extend the age, the entry is read again from the database
+        assertThat( index.get( GA, 1000 ), nullValue() );
+        assertThat( index.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void emptyEntryIsKnown()
+    {
+        GAStoreIndex index = new GAStoreIndex( 1000, 100 );
+        index.put( GA, Collections.emptySet(), 0 );
+        assertThat( index.get( GA, 1 ), equalTo( Collections.emptySet() ) );
+    }
+
+    @Test
+    public void fullIndexTakesEntriesAfterSweep()
+    {
+        GAStoreIndex index = new GAStoreIndex( 1000, 1 );
+        index.put( GA, Collections.singleton( "build-1" ), 0 );
+        index.put( "org/foo/baz", Collections.singleton( "build-1" ), 500 );
+        assertThat( index.get( "org/foo/baz", 500 ), nullValue() );
+
+        index.sweep( 1000 );
+        assertThat( index.size(), equalTo( 0 ) );
+        index.put( "org/foo/baz", Collections.singleton( "build-1" ), 1000 );
+        assertThat( index.get( "org/foo/baz", 1001 ), equalTo( Collections.singleton( "build-1" ) ) );
+    }
+
+    @Test
+    public void sweepRenumbersUnusedStores()
+    {
+        GAStoreIndex index = new GAStoreIndex( 1000, 10000 );
+        for ( int i = 0; i < 2000; i++ )
+        {
+            index.put( "org/old/" + i, Collections.singleton( "build-" + i ), 0 );
+        }
+        index.put( GA, Arrays.asList( "build-1999", "build-2000" ), 500 );
+        Set<String> before = index.get( GA, 500 );
+
+        index.sweep( 1000 );
+        assertThat( index.size(), equalTo( 1 ) );
+        assertThat( index.storeCount(), equalTo( 2 ) );
+        assertThat( index.get( GA, 1000 ), equalTo( before ) );
+
+        index.add( GA, Collections.singleton( "build-3000" ) );
+        assertThat( index.get( GA, 1000 ),
+                    equalTo( new HashSet<>( Arrays.asList( "build-1999", "build-2000", "build-3000" ) ) ) );
+    }
+}
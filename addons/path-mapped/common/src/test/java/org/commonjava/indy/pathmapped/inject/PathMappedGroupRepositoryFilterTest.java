@@ -0,0 +1,101 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pathmapped.inject;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.pathmapped.cache.FileSystemContainingCache;
+import org.commonjava.indy.pathmapped.cache.PathMappedMavenGACache;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PathMappedGroupRepositoryFilterTest
+{
+    private static final String PATH = "org/foo/bar/1.0/bar-1.0.pom";
+
+    private static final String DIR = "org/foo/bar/1.0";
+
+    private final HostedRepository a = new HostedRepository( MAVEN_PKG_KEY, "a" );
+
+    private final HostedRepository b = new HostedRepository( MAVEN_PKG_KEY, "b" );
+
+    private final HostedRepository c = new HostedRepository( MAVEN_PKG_KEY, "c" );
+
+    private final RemoteRepository central =
+                    new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo.maven.apache.org/maven2" );
+
+    private final Group group = new Group( MAVEN_PKG_KEY, "g", a.getKey(), b.getKey(), c.getKey(), central.getKey() );
+
+    private final List<ArtifactStore> concreteStores = Arrays.asList( a, b, c, central );
+
+    private final List<List<String>> queries = new ArrayList<>();
+
+    @Test
+    public void repeatedRequestsReuseBothAnswers()
+    {
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setFileSystemContainingBatchSize( 10 );
+        config.setFileSystemContainingCacheSeconds( 30 );
+        FileSystemContainingCache cache = new FileSystemContainingCache( config, System::currentTimeMillis );
+        PathMappedGroupRepositoryFilter filter = new CountingFilter( config, cache );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            assertThat( filter.filter( PATH, group, concreteStores ), equalTo( Arrays.asList( a, central ) ) );
+        }
+
+        // b and c don't contain the directory, and are not asked again
+        assertThat( queries.size(), equalTo( 1 ) );
+        assertThat( filter.getMetrics().get( "queries" ), equalTo( 1L ) );
+        assertThat( filter.getMetrics().get( "cache.hits" ), equalTo( 6L ) );
+
+        // content stored in c is seen by the next request, which only asks c
+        cache.invalidate( c.getKey(), PATH );
+        filter.filter( PATH, group, concreteStores );
+        assertThat( queries.size(), equalTo( 2 ) );
+        assertThat( queries.get( 1 ), equalTo( Collections.singletonList( c.getKey().toString() ) ) );
+    }
+
+    private final class CountingFilter
+                    extends PathMappedGroupRepositoryFilter
+    {
+        private CountingFilter( final DefaultIndyConfiguration config, final FileSystemContainingCache cache )
+        {
+            super( config, new PathMappedMavenGACache(), cache );
+        }
+
+        @Override
+        protected Set<String> queryContaining( final String strategyPath, final List<String> subSet )
+        {
+            assertThat( strategyPath, equalTo( DIR ) );
+            queries.add( subSet );
+            return new HashSet<>( Collections.singleton( a.getKey().toString() ) );
+        }
+    }
+}
@@ -15,6 +15,10 @@
  */
 package org.commonjava.indy.pkg.maven.change;
 
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.commonjava.atlas.maven.ident.util.ArtifactPathInfo;
+import org.commonjava.atlas.maven.ident.util.VersionUtils;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.content.DownloadManager;
 import org.commonjava.indy.core.change.event.IndyFileEventManager;
@@ -25,6 +29,7 @@ import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.pkg.maven.content.MavenMetadataGenerator;
 import org.commonjava.indy.pkg.maven.content.MetadataCacheManager;
 import org.commonjava.indy.pkg.maven.content.group.MavenMetadataMerger;
 import org.commonjava.maven.galley.event.EventMetadata;
@@ -38,6 +43,7 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
 import javax.inject.Inject;
+import java.io.File;
 import java.util.Arrays;
 import java.util.Set;
 
@@ -68,10 +74,17 @@ public class MetadataMergePomChangeListener
     @Inject
     private IndyEventHandlerConfig handlerConfig;
 
+    @Inject
+    private MavenMetadataGenerator metadataGenerator;
+
+    @Inject
+    private MavenMetadataMerger merger;
+
     /**
      * this listener observes {@link org.commonjava.maven.galley.event.FileStorageEvent}
      * for a pom file, which means maven-metadata.xml will be cleared
-     * when a version (pom) is uploaded.
+     * when a version (pom) is uploaded. The merged metadata of affected groups is updated with the new version
+     * where it is cached, see {@link MavenMetadataGenerator#updateAllMerged(ArtifactStore, String, Set, java.util.function.Function, boolean)}.
      */
     public void onPomStorageEvent( @Observes final FileStorageEvent event )
     {
@@ -126,13 +139,27 @@ public class MetadataMergePomChangeListener
                     hosted = dataManager.getArtifactStore( key );
                 }
 
-                if ( doClear( hosted, clearPath ) )
+                final Set<Group> groups = dataManager.affectedBy( Arrays.asList( key ), event.getEventMetadata() );
+
+                final boolean cleared = doClear( hosted, clearPath );
+                if ( cleared )
                 {
-                    cacheManager.remove( key, clearPath );
                     logger.info( "Metadata file {} in store {} cleared.", clearPath, key );
                 }
 
-                final Set<Group> groups = dataManager.affectedBy( Arrays.asList( key ), event.getEventMetadata() );
+                // the hosted metadata is only cleared (and generated again when requested), while the version is
+                // added in place to the merged metadata of the groups where that is cached
+                if ( event instanceof FileStorageEvent && groups != null
+                                && metadataGenerator.updateAllMerged( hosted, clearPath, groups,
+                                                                      old -> addVersion( old, path ), false ) )
+                {
+                    return;
+                }
+
+                if ( cleared )
+                {
+                    cacheManager.remove( key, clearPath );
+                }
 
                 if ( groups != null )
                 {
@@ -156,6 +183,40 @@ public class MetadataMergePomChangeListener
         }
     }
 
+    /**
+     * The hosted metadata as it will be generated after the pom is stored: the cached one plus the pom's version.
+     * Null if there is nothing cached to start from.
+     */
+    private Metadata addVersion( final Metadata metadata, final String pomPath )
+    {
+        if ( metadata == null || metadata.getVersioning() == null || ArtifactPathInfo.parse( pomPath ) == null )
+        {
+            return null;
+        }
+
+        final String version;
+        try
+        {
+            version = VersionUtils.createSingleVersion( new File( pomPath ).getParentFile().getName() )
+                                  .renderStandard();
+        }
+        catch ( RuntimeException e )
+        {
+            logger.debug( "Can't parse version of {}, reason: {}", pomPath, e.getMessage() );
+            return null;
+        }
+
+        final Metadata updated = metadata.clone();
+        final Versioning versioning = updated.getVersioning();
+        if ( !versioning.getVersions().contains( version ) )
+        {
+            versioning.addVersion( version );
+        }
+        versioning.updateTimestamp();
+        merger.updateLatestAndRelease( updated );
+        return updated;
+    }
+
     private boolean doClear( final ArtifactStore store, final String path )
     {
         logger.trace( "Updating merged metadata file: {} in store: {}", path, store.getKey() );
@@ -40,7 +40,10 @@ import org.commonjava.indy.content.DirectContentAccess;
 import org.commonjava.indy.content.MergedContentAction;
 import org.commonjava.indy.content.StoreResource;
 import org.commonjava.indy.core.content.AbstractMergedContentGenerator;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
 import org.commonjava.indy.core.content.group.GroupMergeHelper;
+import org.commonjava.indy.core.content.group.GroupMergeSingleFlight;
+import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
@@ -72,6 +75,7 @@ import java.io.OutputStream;
 import java.io.StringReader;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -83,6 +87,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -168,7 +173,11 @@ public class MavenMetadataGenerator
     @ExecutorConfig( named="maven-metadata-generator", threads=50, loadSensitive = ExecutorConfig.BooleanLiteral.TRUE, maxLoadFactor = 10000 )
     private WeftExecutorService mavenMDGeneratorService;
 
-    // don't need to inject since it's only used internally
+    @Inject
+    private GroupMergeSingleFlight singleFlight;
+
+    // don't need to inject since it's only used internally; merges are coalesced by singleFlight, this only keeps
+    // them apart from incremental updates of the same file
     private final Locker<String> mergerLocks = new Locker<>();
 
     private static final int THREAD_WAITING_TIME_SECONDS = 240;
@@ -188,6 +197,7 @@ public class MavenMetadataGenerator
         this.typeMapper = typeMapper;
         this.merger = merger;
         this.mavenMDGeneratorService = mavenMDGeneratorService;
+        this.singleFlight = new GroupMergeSingleFlight( new DefaultIndyConfiguration(), null );
         start();
     }
 
@@ -408,7 +418,11 @@ public class MavenMetadataGenerator
         
         AtomicReference<IndyWorkflowException> wfEx = new AtomicReference<>();
         final String mergePath = toMergePath;
-        boolean mergingDone = mergerLocks.ifUnlocked( computeKey(group, toMergePath), p->{
+        final String mergeKey = computeKey( group, toMergePath );
+        boolean mergingDone = singleFlight.execute( mergeKey,
+                                                    () -> exists( target ) || restoreFromCache( group, target, mergePath,
+                                                                                                eventMetadata ),
+                                                    () -> mergerLocks.ifUnlocked( mergeKey, p->{
             try
             {
                 logger.debug( "Start metadata generation for metadata file {} in group {}", path, group );
@@ -421,29 +435,11 @@ public class MavenMetadataGenerator
                             "Regenerated Metadata for group {} of path {}: latest version: {}, versions: {}",
                             group.getKey(), mergePath, versioning != null ? versioning.getLatest() : null,
                             versioning != null ? versioning.getVersions() : null );
-                    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
                     try
                     {
                         logger.trace( "Regenerate lost metadata, group: {}, path: {}", group.getKey(), path );
-                        new MetadataXpp3Writer().write( baos, md );
-
-                        final byte[] merged = baos.toByteArray();
-                        try (final OutputStream fos = target.openOutputStream( TransferOperation.GENERATE, true,
-                                                                               eventMetadata ))
-                        {
-                            fos.write( merged );
-                        }
-                        catch ( final IOException e )
-                        {
-                            throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}", e,
-                                                             target, e.getMessage() );
-                        }
-
-                        String mergeInfo = writeGroupMergeInfo( md, group, contributing, mergePath );
+                        writeGroupMetadata( md, group, contributing, target, mergePath, eventMetadata );
                         eventMetadata.set( GROUP_METADATA_GENERATED, true );
-                        MetadataInfo info = new MetadataInfo( md );
-                        info.setMetadataMergeInfo( mergeInfo );
-                        putToMetadataCache( group.getKey(), mergePath, info );
                     }
                     catch ( final IOException e )
                     {
@@ -461,11 +457,11 @@ public class MavenMetadataGenerator
             return true;
         }, (p,mergerLock)->{
             logger.info(
-                    "The metadata generation is still in process by another thread for the metadata file for this path {} in group {}, so block current thread to wait for result",
+                    "The merged metadata file for this path {} in group {} is being updated by another thread, so block current thread to wait for result",
                     path, group );
 
-            return mergerLocks.waitForLock( THREAD_WAITING_TIME_SECONDS, mergerLock );
-        } );
+            return mergerLocks.waitForLock( THREAD_WAITING_TIME_SECONDS, mergerLock ) && exists( target );
+        } ) );
 
         IndyWorkflowException ex = wfEx.get();
         if ( ex != null )
@@ -503,9 +499,295 @@ public class MavenMetadataGenerator
         return null;
     }
 
-    private String computeKey( final Group group, final String path )
+    private void writeGroupMetadata( final Metadata md, final Group group, final List<StoreKey> contributing,
+                                     final Transfer target, final String mergePath, final EventMetadata eventMetadata )
+            throws IndyWorkflowException, IOException
+    {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        new MetadataXpp3Writer().write( baos, md );
+
+        final byte[] merged = baos.toByteArray();
+        try (final OutputStream fos = target.openOutputStream( TransferOperation.GENERATE, true, eventMetadata ))
+        {
+            fos.write( merged );
+        }
+        catch ( final IOException e )
+        {
+            throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}", e, target,
+                                             e.getMessage() );
+        }
+
+        String mergeInfo = writeGroupMergeInfo( md, group, contributing, mergePath );
+        MetadataInfo info = new MetadataInfo( md );
+        info.setMetadataMergeInfo( mergeInfo );
+        putToMetadataCache( group.getKey(), mergePath, info );
+    }
+
+    @Override
+    public void handleContentStorage( final ArtifactStore store, final String path, final Transfer result,
+                                      final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        if ( path.endsWith( MavenMetadataMerger.METADATA_NAME ) && StoreType.group != store.getKey().getType() )
+        {
+            final Metadata metadata = readMetadata( result );
+            if ( metadata != null )
+            {
+                if ( updateAllMerged( store, path, null, old -> metadata, true ) )
+                {
+                    return;
+                }
+            }
+        }
+
+        super.handleContentStorage( store, path, result, eventMetadata );
+    }
+
+    /**
+     * Apply a change of one member's metadata to the merged metadata of every group containing the member, starting
+     * from what is cached for the group, instead of deleting it and merging all members again on the next request
+     * (see {@link MavenMetadataMerger#applyDelta(Metadata, Metadata, Metadata, Collection, Group, String)}). Groups
+     * that can't be updated that way have their merged file cleared, as in
+     * {@link #clearAllMerged(ArtifactStore, String...)}. Changes of group membership are not handled here.
+     * <br/>
+     * Updates of the same member path are serialized, and the member's previous metadata is read from the cache
+     * only once that is done, so concurrent changes can't be applied on top of the same previous state.
+     *
+     * @param groups the groups to update; resolved from the store data if null
+     * @param change computes the member's metadata now from its metadata before the change (null if not cached); if
+     * it returns null, nothing is updated
+     * @param cacheMember whether to cache the member's metadata now, or drop it from the cache
+     * @return false if nothing was updated, so the caller has to clear the merged metadata itself
+     */
+    public boolean updateAllMerged( final ArtifactStore member, final String path, final Set<Group> groups,
+                                    final Function<Metadata, Metadata> change, final boolean cacheMember )
+    {
+        final Boolean result = mergerLocks.lockAnd( computeKey( member, path ), THREAD_WAITING_TIME_SECONDS, k -> {
+            final Metadata oldMetadata = getMetaFromCache( member.getKey(), path );
+            final Metadata newMetadata = change.apply( oldMetadata );
+            if ( newMetadata == null )
+            {
+                return false;
+            }
+
+            updateAllMerged( member, path, groups, oldMetadata, newMetadata );
+
+            if ( cacheMember )
+            {
+                putToMetadataCache( member.getKey(), path, new MetadataInfo( newMetadata ) );
+            }
+            else
+            {
+                cacheManager.remove( member.getKey(), path );
+            }
+            return true;
+        }, ( k, lock ) -> {
+            logger.warn( "Failed to lock merged metadata updates of {} in {}", path, member.getKey() );
+            return false;
+        } );
+
+        return Boolean.TRUE.equals( result );
+    }
+
+    private void updateAllMerged( final ArtifactStore member, final String path, final Set<Group> affected,
+                                  final Metadata oldMetadata, final Metadata newMetadata )
     {
-        return group.getKey().toString() + "-" + path;
+        Set<Group> groups = affected;
+        if ( groups == null )
+        {
+            try
+            {
+                groups = storeManager.query().getGroupsAffectedBy( member.getKey() );
+            }
+            catch ( IndyDataException e )
+            {
+                logger.error( String.format( "Failed to retrieve groups affected by: %s. Reason: %s", member.getKey(),
+                                             e.getMessage() ), e );
+                clearAllMerged( member, path );
+                return;
+            }
+        }
+
+        final long begin = System.currentTimeMillis();
+        final Set<Group> failed = new HashSet<>();
+        for ( final Group group : groups )
+        {
+            if ( !updateMerged( group, member, path, oldMetadata, newMetadata ) )
+            {
+                failed.add( group );
+            }
+        }
+
+        if ( !failed.isEmpty() )
+        {
+            clearMerged( member, failed, path );
+        }
+
+        logger.debug( "Updated merged metadata {} in {} groups affected by {} ({} cleared), timeMillis: {}", path,
+                      groups.size() - failed.size(), member.getKey(), failed.size(),
+                      System.currentTimeMillis() - begin );
+    }
+
+    /**
+     * Apply the member's change to the merged metadata of the group. Everything it is based on is read from the cache
+     * while holding the group's merge lock, so a concurrent update or merge of the group can't be lost.
+     */
+    private boolean updateMerged( final Group group, final ArtifactStore member, final String path,
+                                  final Metadata oldMetadata, final Metadata newMetadata )
+    {
+        final Boolean result = mergerLocks.lockAnd( computeKey( group, path ), THREAD_WAITING_TIME_SECONDS, p -> {
+            final MetadataInfo info = getMetaInfoFromCache( group.getKey(), path );
+            if ( info == null || info.getMetadata() == null || info.getMetadataMergeInfo() == null )
+            {
+                logger.trace( "No merged metadata {} cached for {}", path, group.getKey() );
+                return false;
+            }
+
+            final List<StoreKey> contributing = getContributing( info );
+            if ( contributing == null )
+            {
+                return false;
+            }
+
+            final boolean contributed = contributing.contains( member.getKey() );
+            if ( contributed && oldMetadata == null )
+            {
+                logger.trace( "Previous metadata {} of {} not known, can't update {}", path, member.getKey(),
+                              group.getKey() );
+                return false;
+            }
+
+            // what non-store providers contributed is not known, so nothing can be removed if there are any
+            List<Metadata> others = null;
+            if ( metadataProviders.isEmpty() )
+            {
+                others = new ArrayList<>();
+                for ( final StoreKey key : contributing )
+                {
+                    if ( !key.equals( member.getKey() ) )
+                    {
+                        final Metadata md = getMetaFromCache( key, path );
+                        if ( md == null )
+                        {
+                            others = null;
+                            break;
+                        }
+                        others.add( md );
+                    }
+                }
+            }
+
+            final Metadata updated = merger.applyDelta( info.getMetadata(), contributed ? oldMetadata : null,
+                                                        newMetadata, others, group, path );
+            if ( updated == null )
+            {
+                return false;
+            }
+
+            if ( !contributed )
+            {
+                contributing.add( member.getKey() );
+            }
+
+            try
+            {
+                helper.deleteChecksumsAndMergeInfo( group, path );
+                writeGroupMetadata( updated, group, contributing, fileManager.getTransfer( group, path ), path,
+                                    new EventMetadata() );
+            }
+            catch ( final IndyWorkflowException | IOException e )
+            {
+                logger.warn( "Failed to update merged metadata {} in {}. Reason: {}", path, group.getKey(),
+                             e.getMessage() );
+                return false;
+            }
+
+            logger.trace( "Updated merged metadata {} in {} for change in {}", path, group.getKey(),
+                          member.getKey() );
+            return true;
+        }, ( p, lock ) -> false );
+
+        return Boolean.TRUE.equals( result );
+    }
+
+    /**
+     * Members named in the merge info of cached group metadata; null if there is no merge info or it can't be parsed.
+     */
+    private List<StoreKey> getContributing( final MetadataInfo info )
+    {
+        if ( info.getMetadataMergeInfo() == null )
+        {
+            return null;
+        }
+
+        final List<StoreKey> contributing = new ArrayList<>();
+        for ( final String line : info.getMetadataMergeInfo().split( "\n" ) )
+        {
+            if ( StringUtils.isNotBlank( line ) )
+            {
+                final StoreKey key = StoreKey.fromString( line.trim() );
+                if ( key == null )
+                {
+                    return null;
+                }
+                contributing.add( key );
+            }
+        }
+        return contributing;
+    }
+
+    /**
+     * Write the group metadata file from the metadata cache, where it is when another node merged it or the file was
+     * removed while the cache entry was not.
+     */
+    private boolean restoreFromCache( final Group group, final Transfer target, final String mergePath,
+                                      final EventMetadata eventMetadata )
+    {
+        final MetadataInfo info = getMetaInfoFromCache( group.getKey(), mergePath );
+        if ( info == null || info.getMetadata() == null )
+        {
+            return false;
+        }
+
+        final List<StoreKey> contributing = getContributing( info );
+        try
+        {
+            writeGroupMetadata( info.getMetadata(), group, contributing == null ? new ArrayList<>() : contributing,
+                                target, mergePath, eventMetadata );
+        }
+        catch ( final IndyWorkflowException | IOException e )
+        {
+            logger.warn( "Failed to write cached metadata {} of {}, will merge it. Reason: {}", mergePath,
+                         group.getKey(), e.getMessage() );
+            return false;
+        }
+
+        logger.debug( "Wrote merged metadata {} of {} from cache", mergePath, group.getKey() );
+        eventMetadata.set( GROUP_METADATA_GENERATED, true );
+        return true;
+    }
+
+    private Metadata readMetadata( final Transfer transfer )
+    {
+        if ( !exists( transfer ) )
+        {
+            return null;
+        }
+
+        try (InputStream in = transfer.openInputStream())
+        {
+            return new MetadataXpp3Reader().read( in, false );
+        }
+        catch ( final Exception e )
+        {
+            logger.warn( "Failed to read metadata: {}. Reason: {}", transfer, e.getMessage() );
+            return null;
+        }
+    }
+
+    private String computeKey( final ArtifactStore store, final String path )
+    {
+        return store.getKey().toString() + "-" + path;
     }
 
     private String writeGroupMergeInfo( final Metadata md, final Group group, final List<StoreKey> contributingMembers, final String path )
@@ -557,11 +839,17 @@ public class MavenMetadataGenerator
             toMergePath = normalize( normalize( parentPath( toMergePath ) ), MavenMetadataMerger.METADATA_NAME );
         }
 
-        Metadata meta = getMetaFromCache( group.getKey(), toMergePath );
+        final MetadataInfo cached = getMetaInfoFromCache( group.getKey(), toMergePath );
 
-        if ( meta != null )
+        if ( cached != null && cached.getMetadata() != null )
         {
-            return meta;
+            // keep the merge info of the cached metadata, it is written again along with it
+            final List<StoreKey> contributing = getContributing( cached );
+            if ( contributing != null )
+            {
+                contributingMembers.addAll( contributing );
+            }
+            return cached.getMetadata();
         }
 
         Metadata master = new Metadata();
@@ -0,0 +1,336 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.commonjava.atlas.maven.ident.util.SnapshotUtils;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Filters the versions a remote repository is not allowed to provide out of a maven-metadata.xml, in one pass over
+ * the StAX events of the document:
+ * <ul>
+ *     <li>prohibited versions are dropped from versioning/versions, together with the whitespace before them</li>
+ *     <li>a prohibited versioning/latest is replaced with the last version left, or emptied if none is</li>
+ *     <li>versioning/release is emptied if releases are not allowed</li>
+ *     <li>versioning/snapshot and versioning/snapshotVersions are emptied if snapshots are not allowed</li>
+ * </ul>
+ * Everything else is written as it is read. As latest comes before the versions, the events after a prohibited
+ * latest are held back until the versions are known.
+ */
+final class MetadataContentFilter
+{
+    private static final String METADATA = "metadata";
+
+    private static final String VERSIONING = "versioning";
+
+    private static final String VERSIONS = "versions";
+
+    private static final String VERSION = "version";
+
+    private static final String LATEST = "latest";
+
+    private static final String RELEASE = "release";
+
+    private static final String SNAPSHOT = "snapshot";
+
+    private static final String SNAPSHOT_VERSIONS = "snapshotVersions";
+
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+    private final boolean allowsSnapshots;
+
+    private final boolean allowsReleases;
+
+    private final Deque<String> path = new ArrayDeque<>();
+
+    private XMLEventWriter writer;
+
+    // events after a prohibited latest, until the versions are known
+    private List<XMLEvent> held;
+
+    private StartElement prohibitedLatest;
+
+    private String lastVersion;
+
+    // whitespace before a version, written only if the version is
+    private XMLEvent pendingSpace;
+
+    // > 0 while dropping the contents of an element that is emptied
+    private int skipDepth;
+
+    MetadataContentFilter( final boolean allowsSnapshots, final boolean allowsReleases )
+    {
+        this.allowsSnapshots = allowsSnapshots;
+        this.allowsReleases = allowsReleases;
+    }
+
+    /**
+     * Writes the filtered metadata read from in to out. A filter is used for one document only.
+     */
+    void filter( final InputStream in, final OutputStream out )
+            throws XMLStreamException
+    {
+        final XMLEventReader reader = INPUT_FACTORY.createXMLEventReader( in );
+        try
+        {
+            while ( reader.hasNext() )
+            {
+                final XMLEvent event = reader.nextEvent();
+                if ( writer == null )
+                {
+                    writer = OUTPUT_FACTORY.createXMLEventWriter( out, encodingOf( event ) );
+                }
+
+                if ( skipDepth > 0 )
+                {
+                    skip( event );
+                }
+                else if ( event.isStartElement() )
+                {
+                    start( event.asStartElement(), reader );
+                }
+                else if ( event.isEndElement() )
+                {
+                    end( event );
+                }
+                else if ( event.isCharacters() && event.asCharacters().isWhiteSpace() && inVersions() )
+                {
+                    emitPendingSpace();
+                    pendingSpace = event;
+                }
+                else
+                {
+                    emitPendingSpace();
+                    if ( event.isEndDocument() )
+                    {
+                        // not a regular metadata document, so the versions never ended
+                        releaseLatest();
+                    }
+                    emit( event );
+                }
+            }
+
+            if ( writer != null )
+            {
+                writer.flush();
+            }
+        }
+        finally
+        {
+            reader.close();
+            if ( writer != null )
+            {
+                writer.close();
+            }
+        }
+    }
+
+    private void start( final StartElement start, final XMLEventReader reader )
+            throws XMLStreamException
+    {
+        final String name = start.getName().getLocalPart();
+        if ( inVersioning() )
+        {
+            if ( LATEST.equals( name ) )
+            {
+                final String latest = reader.getElementText();
+                if ( isAllowed( latest ) )
+                {
+                    emitElement( start, latest );
+                }
+                else
+                {
+                    prohibitedLatest = start;
+                    held = new ArrayList<>();
+                }
+                return;
+            }
+
+            if ( RELEASE.equals( name ) && !allowsReleases || ( SNAPSHOT.equals( name ) || SNAPSHOT_VERSIONS.equals(
+                    name ) ) && !allowsSnapshots )
+            {
+                emit( start );
+                skipDepth = 1;
+                return;
+            }
+        }
+        else if ( inVersions() && VERSION.equals( name ) )
+        {
+            final String version = reader.getElementText();
+            if ( isAllowed( version ) )
+            {
+                emitPendingSpace();
+                emitElement( start, version );
+                lastVersion = version;
+            }
+            pendingSpace = null;
+            return;
+        }
+
+        emitPendingSpace();
+        path.push( name );
+        emit( start );
+    }
+
+    private void end( final XMLEvent end )
+            throws XMLStreamException
+    {
+        final boolean versionsEnd = inVersions();
+        if ( versionsEnd )
+        {
+            emitPendingSpace();
+        }
+
+        final String name = path.poll();
+        emit( end );
+
+        if ( versionsEnd || VERSIONING.equals( name ) && path.size() == 1 )
+        {
+            releaseLatest();
+        }
+    }
+
+    private void skip( final XMLEvent event )
+            throws XMLStreamException
+    {
+        if ( event.isStartElement() )
+        {
+            skipDepth++;
+        }
+        else if ( event.isEndElement() && --skipDepth == 0 )
+        {
+            emit( event );
+        }
+    }
+
+    /**
+     * Writes the replacement of a prohibited latest, followed by the events held back since it.
+     */
+    private void releaseLatest()
+            throws XMLStreamException
+    {
+        if ( held == null )
+        {
+            return;
+        }
+
+        final List<XMLEvent> events = held;
+        held = null;
+        emitElement( prohibitedLatest, lastVersion == null ? "" : lastVersion );
+        prohibitedLatest = null;
+        for ( XMLEvent event : events )
+        {
+            writer.add( event );
+        }
+    }
+
+    private void emitElement( final StartElement start, final String text )
+            throws XMLStreamException
+    {
+        emit( start );
+        if ( !text.isEmpty() )
+        {
+            emit( EVENT_FACTORY.createCharacters( text ) );
+        }
+        emit( EVENT_FACTORY.createEndElement( start.getName(), null ) );
+    }
+
+    private void emitPendingSpace()
+            throws XMLStreamException
+    {
+        if ( pendingSpace != null )
+        {
+            emit( pendingSpace );
+            pendingSpace = null;
+        }
+    }
+
+    private void emit( final XMLEvent event )
+            throws XMLStreamException
+    {
+        if ( held != null )
+        {
+            held.add( event );
+        }
+        else
+        {
+            writer.add( event );
+        }
+    }
+
+    private boolean inVersioning()
+    {
+        return path.size() == 2 && VERSIONING.equals( path.peek() ) && METADATA.equals( path.peekLast() );
+    }
+
+    private boolean inVersions()
+    {
+        return path.size() == 3 && VERSIONS.equals( path.peek() ) && METADATA.equals( path.peekLast() );
+    }
+
+    private boolean isAllowed( final String version )
+    {
+        final String v = version.trim();
+        if ( v.isEmpty() )
+        {
+            return true;
+        }
+        return SnapshotUtils.isSnapshotVersion( v ) ? allowsSnapshots : allowsReleases;
+    }
+
+    private static String encodingOf( final XMLEvent first )
+    {
+        if ( first.isStartDocument() )
+        {
+            final StartDocument start = (StartDocument) first;
+            if ( start.encodingSet() )
+            {
+                return start.getCharacterEncodingScheme();
+            }
+        }
+        return DEFAULT_ENCODING;
+    }
+
+    private static XMLInputFactory createInputFactory()
+    {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty( XMLInputFactory.SUPPORT_DTD, false );
+        factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false );
+        factory.setProperty( XMLInputFactory.IS_COALESCING, true );
+        return factory;
+    }
+}
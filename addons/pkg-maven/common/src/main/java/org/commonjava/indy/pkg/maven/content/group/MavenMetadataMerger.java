@@ -16,6 +16,7 @@
 package org.commonjava.indy.pkg.maven.content.group;
 
 import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Plugin;
 import org.apache.maven.artifact.repository.metadata.SnapshotVersion;
 import org.apache.maven.artifact.repository.metadata.Versioning;
 import org.commonjava.atlas.maven.ident.util.VersionUtils;
@@ -26,10 +27,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static org.commonjava.atlas.maven.ident.util.SnapshotUtils.LOCAL_SNAPSHOT_VERSION_PART;
@@ -130,6 +135,138 @@ public class MavenMetadataMerger
         return master;
     }
 
+    /**
+     * Update merged group metadata for the change of one member's metadata, without merging the other members again.
+     * Whatever the new member metadata has is merged in; versions, snapshot versions and plugins that only the old
+     * one had are removed unless one of the other contributions has them.
+     *
+     * @param merged current merged metadata of the group, left untouched
+     * @param oldMember what the member contributed to merged, null if it did not contribute
+     * @param newMember what the member has now, null if it has nothing
+     * @param others what the other contributors contributed to merged, null if not known
+     * @return the updated merged metadata, or null if it can't be derived incrementally (something has to be removed
+     * and others is null, the member's snapshot info is gone, or nothing would be left) and needs a full merge
+     */
+    public Metadata applyDelta( final Metadata merged, final Metadata oldMember, final Metadata newMember,
+                                final Collection<Metadata> others, final Group group, final String path )
+    {
+        final Metadata result = merged.clone();
+        if ( result.getVersioning() == null )
+        {
+            result.setVersioning( new Versioning() );
+        }
+
+        if ( newMember != null )
+        {
+            merge( result, newMember, group, path );
+        }
+
+        final Versioning oldVersioning = oldMember == null ? null : oldMember.getVersioning();
+        final Versioning newVersioning = newMember == null ? null : newMember.getVersioning();
+
+        if ( oldVersioning != null && oldVersioning.getSnapshot() != null && (
+                newVersioning == null || newVersioning.getSnapshot() == null ) )
+        {
+            return null;
+        }
+
+        final Set<String> removedVersions = removed( oldVersioning == null ? null : oldVersioning.getVersions(),
+                                                     newVersioning == null ? null : newVersioning.getVersions(),
+                                                     Function.identity() );
+        final Set<String> removedSnapshots =
+                removed( oldVersioning == null ? null : oldVersioning.getSnapshotVersions(),
+                         newVersioning == null ? null : newVersioning.getSnapshotVersions(),
+                         MavenMetadataMerger::snapshotKey );
+        final Set<String> removedPlugins = removed( oldMember == null ? null : oldMember.getPlugins(),
+                                                    newMember == null ? null : newMember.getPlugins(),
+                                                    Plugin::getPrefix );
+
+        if ( !removedVersions.isEmpty() || !removedSnapshots.isEmpty() || !removedPlugins.isEmpty() )
+        {
+            if ( others == null )
+            {
+                return null;
+            }
+
+            for ( final Metadata other : others )
+            {
+                final Versioning versioning = other.getVersioning();
+                if ( versioning != null )
+                {
+                    versioning.getVersions().forEach( removedVersions::remove );
+                    versioning.getSnapshotVersions().forEach( sv -> removedSnapshots.remove( snapshotKey( sv ) ) );
+                }
+                other.getPlugins().forEach( plugin -> removedPlugins.remove( plugin.getPrefix() ) );
+            }
+
+            final Versioning versioning = result.getVersioning();
+            versioning.getVersions().removeIf( removedVersions::contains );
+            versioning.getSnapshotVersions().removeIf( sv -> removedSnapshots.contains( snapshotKey( sv ) ) );
+            result.getPlugins().removeIf( plugin -> removedPlugins.contains( plugin.getPrefix() ) );
+        }
+
+        final Versioning versioning = result.getVersioning();
+        if ( !versioning.getVersions().isEmpty() )
+        {
+            updateLatestAndRelease( result );
+            return result;
+        }
+
+        if ( !versioning.getSnapshotVersions().isEmpty() || !result.getPlugins().isEmpty() )
+        {
+            return result;
+        }
+
+        return null;
+    }
+
+    /**
+     * Sort the versions and set latest to the highest one and release to the highest non-snapshot one, as the
+     * metadata generated for a hosted repository has them.
+     */
+    public void updateLatestAndRelease( final Metadata metadata )
+    {
+        sortVersions( metadata );
+
+        final Versioning versioning = metadata.getVersioning();
+        if ( versioning == null || versioning.getVersions().isEmpty() )
+        {
+            return;
+        }
+
+        // sortVersions() leaves the release alone when the latest version is a snapshot
+        final List<String> versions = versioning.getVersions();
+        versioning.setRelease( null );
+        for ( int i = versions.size() - 1; i >= 0; i-- )
+        {
+            if ( !versions.get( i ).endsWith( LOCAL_SNAPSHOT_VERSION_PART ) )
+            {
+                versioning.setRelease( versions.get( i ) );
+                break;
+            }
+        }
+    }
+
+    private static <T> Set<String> removed( final List<T> before, final List<T> after, final Function<T, String> key )
+    {
+        final Set<String> removed = new HashSet<>();
+        if ( before != null )
+        {
+            before.forEach( item -> removed.add( key.apply( item ) ) );
+        }
+        if ( after != null )
+        {
+            after.forEach( item -> removed.remove( key.apply( item ) ) );
+        }
+        return removed;
+    }
+
+    private static String snapshotKey( final SnapshotVersion snapshotVersion )
+    {
+        return snapshotVersion.getClassifier() + ":" + snapshotVersion.getExtension() + ":"
+                + snapshotVersion.getVersion();
+    }
+
     public void sortVersions( Metadata metadata )
     {
         Versioning versioning = metadata.getVersioning();
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.apache.commons.lang3.StringUtils;
+import org.commonjava.atlas.maven.ident.util.SnapshotUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The regex based metadata filtering that {@link MetadataContentFilter} replaced, kept as the reference for the parity
+ * tests and the benchmark.
+ */
+final class LegacyMetadataFilter
+{
+    private static final String LATEST = "<latest>([^<]+)</latest>";
+
+    private static final String RELEASE = "<release>([^<]+)</release>";
+
+    private static final String VERSION = "<version>([^<]+)</version>";
+
+    private static final String VERSIONS = "<versions>[\\s]*(?:(" + VERSION + ")[\\s]*)+</versions>";
+
+    private LegacyMetadataFilter()
+    {
+    }
+
+    static String filter( final String metadata, final boolean allowsSnapshots, final boolean allowsReleases )
+            throws Exception
+    {
+        final List<String> versions = fetchVersions( metadata );
+
+        boolean changed = false;
+        for ( final String version : new ArrayList<>( versions ) )
+        {
+            final boolean isSnapshot = SnapshotUtils.isSnapshotVersion( version );
+            if ( !allowsSnapshots && isSnapshot || !allowsReleases && !isSnapshot )
+            {
+                versions.remove( version );
+                changed = true;
+            }
+        }
+
+        String filtered = metadata;
+        if ( changed )
+        {
+            final String replacement = versions.isEmpty() ?
+                    "<versions></versions>" :
+                    "<versions>\n<version>" + StringUtils.join( versions, "</version>\n<version>" )
+                            + "</version>\n</versions>";
+            filtered = filtered.replaceFirst( VERSIONS, replacement );
+        }
+
+        final Matcher latestMatcher = Pattern.compile( LATEST ).matcher( filtered );
+        if ( latestMatcher.find() )
+        {
+            final boolean isSnapshot = latestMatcher.group( 1 ).endsWith( "-SNAPSHOT" );
+            if ( !allowsSnapshots && isSnapshot || !allowsReleases && !isSnapshot )
+            {
+                final String newLatest = versions.isEmpty() ?
+                        "<latest></latest>" :
+                        "<latest>" + versions.get( versions.size() - 1 ) + "</latest>";
+                filtered = filtered.replaceFirst( LATEST, newLatest );
+            }
+        }
+
+        if ( !allowsReleases && Pattern.compile( RELEASE ).matcher( filtered ).find() )
+        {
+            filtered = filtered.replaceFirst( RELEASE, "<release></release>" );
+        }
+
+        if ( !allowsSnapshots )
+        {
+            final String snapshots = StringUtils.substringBetween( filtered, "<snapshotVersions>", "</snapshotVersions>" );
+            if ( snapshots != null )
+            {
+                filtered = filtered.replace( snapshots, "" );
+            }
+            final String snapshot = StringUtils.substringBetween( filtered, "<snapshot>", "</snapshot>" );
+            if ( snapshot != null )
+            {
+                filtered = filtered.replace( snapshot, "" );
+            }
+        }
+
+        return filtered;
+    }
+
+    private static List<String> fetchVersions( final String metadata )
+            throws Exception
+    {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setAttribute( XMLConstants.ACCESS_EXTERNAL_DTD, "" );
+        factory.setAttribute( XMLConstants.ACCESS_EXTERNAL_SCHEMA, "" );
+        factory.setNamespaceAware( true );
+        final Document doc = factory.newDocumentBuilder().parse( new ByteArrayInputStream( metadata.getBytes() ) );
+
+        final NodeList nodes = (NodeList) XPathFactory.newInstance()
+                                                      .newXPath()
+                                                      .compile( "//version/text()" )
+                                                      .evaluate( doc, XPathConstants.NODESET );
+        final List<String> versions = new ArrayList<>();
+        for ( int i = 0; i < nodes.getLength(); i++ )
+        {
+            versions.add( nodes.item( i ).getNodeValue() );
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MetadataContentFilterTest
+{
+    // @formatter:off
+    private static final String GA_METADATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<metadata modelVersion=\"1.1.0\">\n"
+        + "  <groupId>commons-codec</groupId>\n"
+        + "  <artifactId>commons-codec</artifactId>\n"
+        + "  <versioning>\n"
+        + "    <latest>1.3-SNAPSHOT</latest>\n"
+        + "    <release>1.2</release>\n"
+        + "    <versions>\n"
+        + "      <version>1.1</version>\n"
+        + "      <version>1.1-SNAPSHOT</version>\n"
+        + "      <version>1.2</version>\n"
+        + "      <version>1.3-SNAPSHOT</version>\n"
+        + "    </versions>\n"
+        + "    <lastUpdated>20171020231327</lastUpdated>\n"
+        + "  </versioning>\n"
+        + "</metadata>\n";
+
+    private static final String GAV_METADATA = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<metadata>\n"
+        + "  <groupId>commons-codec</groupId>\n"
+        + "  <artifactId>commons-codec</artifactId>\n"
+        + "  <version>1.3-SNAPSHOT</version>\n"
+        + "  <versioning>\n"
+        + "    <snapshot>\n"
+        + "      <timestamp>20200101.101010</timestamp>\n"
+        + "      <buildNumber>3</buildNumber>\n"
+        + "    </snapshot>\n"
+        + "    <lastUpdated>20200101101010</lastUpdated>\n"
+        + "    <snapshotVersions>\n"
+        + "      <snapshotVersion>\n"
+        + "        <extension>jar</extension>\n"
+        + "        <value>1.3-20200101.101010-3</value>\n"
+        + "        <updated>20200101101010</updated>\n"
+        + "      </snapshotVersion>\n"
+        + "    </snapshotVersions>\n"
+        + "  </versioning>\n"
+        + "</metadata>\n";
+
+    private static final String ONLY_SNAPSHOTS_METADATA = "<metadata><groupId>g</groupId><artifactId>a</artifactId>"
+        + "<versioning><latest>3.0-SNAPSHOT</latest><versions><version>1.0-SNAPSHOT</version>"
+        + "<version>3.0-SNAPSHOT</version></versions></versioning></metadata>";
+    // @formatter:on
+
+    private static final List<boolean[]> POLICIES =
+            Arrays.asList( new boolean[] { false, true }, new boolean[] { true, false }, new boolean[] { false, false } );
+
+    @Test
+    public void sameResultAsRegexFiltering()
+            throws Exception
+    {
+        for ( String metadata : Arrays.asList( GA_METADATA, GAV_METADATA, ONLY_SNAPSHOTS_METADATA,
+                                               versionListMetadata( 200 ) ) )
+        {
+            for ( boolean[] policy : POLICIES )
+            {
+                final String legacy = LegacyMetadataFilter.filter( metadata, policy[0], policy[1] );
+                final String filtered = filter( metadata, policy[0], policy[1] );
+                assertThat( "snapshots: " + policy[0] + ", releases: " + policy[1] + "\n" + metadata,
+                            contents( filtered ), equalTo( contents( legacy ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void keepLayoutOfFilteredMetadata()
+            throws Exception
+    {
+        // @formatter:off
+        final String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<metadata modelVersion=\"1.1.0\">\n"
+            + "  <groupId>commons-codec</groupId>\n"
+            + "  <artifactId>commons-codec</artifactId>\n"
+            + "  <versioning>\n"
+            + "    <latest>1.2</latest>\n"
+            + "    <release>1.2</release>\n"
+            + "    <versions>\n"
+            + "      <version>1.1</version>\n"
+            + "      <!-- the next one -->\n"
+            + "      <version>1.2</version>\n"
+            + "    </versions>\n"
+            + "    <lastUpdated>20171020231327</lastUpdated>\n"
+            + "  </versioning>\n"
+            + "</metadata>";
+        // @formatter:on
+
+        final String metadata = GA_METADATA.replace( "      <version>1.2</version>",
+                                                     "      <!-- the next one -->\n      <version>1.2</version>" );
+        assertThat( filter( metadata, false, true ), equalTo( expected ) );
+    }
+
+    @Test
+    public void filterNamespacedMetadata()
+            throws Exception
+    {
+        // the regex filtering found no versions in here, as its XPath did not match namespaced elements
+        final String metadata = GA_METADATA.replace( "<metadata modelVersion=\"1.1.0\">",
+                                                     "<metadata xmlns=\"http://maven.apache.org/METADATA/1.1.0\">" );
+
+        final String expected = contents( filter( GA_METADATA, false, true ) );
+        assertThat( contents( filter( metadata, false, true ) ), equalTo( expected ) );
+    }
+
+    @Test
+    public void filterHugeVersionList()
+            throws Exception
+    {
+        // the regex filtering overflows the stack on version lists of this size
+        final String filtered = filter( versionListMetadata( 50000 ), false, true );
+        final Document doc = parse( filtered );
+
+        assertThat( doc.getElementsByTagName( "version" ).getLength(), equalTo( 33333 ) );
+        assertThat( doc.getElementsByTagName( "latest" ).item( 0 ).getTextContent(), equalTo( "49999" ) );
+    }
+
+    static String versionListMetadata( final int count )
+    {
+        final StringBuilder sb = new StringBuilder( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<metadata>\n" );
+        sb.append( "  <groupId>org.foo</groupId>\n  <artifactId>bar</artifactId>\n  <versioning>\n" )
+          .append( "    <latest>" ).append( count ).append( "-SNAPSHOT</latest>\n" )
+          .append( "    <release>" ).append( count - 1 ).append( "</release>\n    <versions>\n" );
+        for ( int i = 0; i < count; i++ )
+        {
+            sb.append( "      <version>" ).append( i ).append( i % 3 == 0 ? "-SNAPSHOT" : "" ).append( "</version>\n" );
+        }
+        sb.append( "    </versions>\n    <lastUpdated>20171020231327</lastUpdated>\n  </versioning>\n</metadata>\n" );
+        return sb.toString();
+    }
+
+    private String filter( final String metadata, final boolean allowsSnapshots, final boolean allowsReleases )
+            throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MetadataContentFilter( allowsSnapshots, allowsReleases ).filter(
+                new ByteArrayInputStream( metadata.getBytes( UTF_8 ) ), out );
+        return new String( out.toByteArray(), UTF_8 );
+    }
+
+    /**
+     * The leaf elements of the document with their paths and trimmed text, which is what matters to maven.
+     */
+    private String contents( final String metadata )
+            throws Exception
+    {
+        final StringBuilder sb = new StringBuilder();
+        appendLeaves( parse( metadata ).getDocumentElement(), "", sb );
+        return sb.toString();
+    }
+
+    private void appendLeaves( final Element element, final String parent, final StringBuilder sb )
+    {
+        final String path = parent + "/" + element.getLocalName();
+        final NodeList children = element.getChildNodes();
+        boolean leaf = true;
+        for ( int i = 0; i < children.getLength(); i++ )
+        {
+            final Node child = children.item( i );
+            if ( child instanceof Element )
+            {
+                leaf = false;
+                appendLeaves( (Element) child, path, sb );
+            }
+        }
+        if ( leaf )
+        {
+            sb.append( path ).append( '=' ).append( element.getTextContent().trim() ).append( '\n' );
+        }
+    }
+
+    private Document parse( final String metadata )
+            throws Exception
+    {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware( true );
+        return factory.newDocumentBuilder().parse( new ByteArrayInputStream( metadata.getBytes( UTF_8 ) ) );
+    }
+}
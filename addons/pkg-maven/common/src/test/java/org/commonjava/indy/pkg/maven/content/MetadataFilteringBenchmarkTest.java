@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares filtering a large maven-metadata.xml with the old regex based filtering and with
+ * {@link MetadataContentFilter}, for a remote repository that does not allow snapshots. Run it manually; pass
+ * -Dmaven.metadata.benchmark.file=/path/to/maven-metadata.xml to use a real one, otherwise one with
+ * -Dmaven.metadata.benchmark.versions (default: 2000) versions is generated.
+ */
+@Ignore( "Benchmark, run manually" )
+public class MetadataFilteringBenchmarkTest
+{
+    private static final int ROUNDS = 20;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Test
+    public void run()
+            throws Exception
+    {
+        final byte[] raw = load();
+        logger.info( "Metadata: {} bytes", raw.length );
+
+        boolean legacy = true;
+        try
+        {
+            for ( int i = 0; i < 3; i++ )
+            {
+                regex( raw );
+            }
+        }
+        catch ( StackOverflowError e )
+        {
+            logger.info( "regex: overflows the stack on this metadata" );
+            legacy = false;
+        }
+        for ( int i = 0; i < 3; i++ )
+        {
+            stax( raw );
+        }
+
+        if ( legacy )
+        {
+            measure( "regex", raw.length, () -> regex( raw ) );
+        }
+        measure( "stax", raw.length, () -> stax( raw ) );
+    }
+
+    private void measure( final String name, final long size, final Filtering filtering )
+            throws Exception
+    {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+
+        final long allocatedBefore = threads.getThreadAllocatedBytes( thread );
+        final long start = System.nanoTime();
+        for ( int i = 0; i < ROUNDS; i++ )
+        {
+            filtering.filter();
+        }
+        final long nanos = System.nanoTime() - start;
+        final long allocated = threads.getThreadAllocatedBytes( thread ) - allocatedBefore;
+
+        logger.info( "{}: {} us per document, {} MB/s, {} bytes allocated per document", name,
+                     nanos / ROUNDS / 1000, size * ROUNDS * 1000 / nanos, allocated / ROUNDS );
+    }
+
+    private void regex( final byte[] raw )
+            throws Exception
+    {
+        final byte[] filtered = LegacyMetadataFilter.filter( new String( raw, UTF_8 ), false, true ).getBytes( UTF_8 );
+        discard().write( filtered );
+    }
+
+    private void stax( final byte[] raw )
+            throws Exception
+    {
+        new MetadataContentFilter( false, true ).filter( new ByteArrayInputStream( raw ), discard() );
+    }
+
+    private OutputStream discard()
+    {
+        return new OutputStream()
+        {
+            @Override
+            public void write( final int b )
+            {
+            }
+
+            @Override
+            public void write( final byte[] b, final int off, final int len )
+            {
+            }
+        };
+    }
+
+    private byte[] load()
+            throws IOException
+    {
+        final String file = System.getProperty( "maven.metadata.benchmark.file" );
+        if ( file != null )
+        {
+            return Files.readAllBytes( new File( file ).toPath() );
+        }
+        return MetadataContentFilterTest.versionListMetadata( Integer.getInteger( "maven.metadata.benchmark.versions",
+                                                                                  2000 ) ).getBytes( UTF_8 );
+    }
+
+    @FunctionalInterface
+    private interface Filtering
+    {
+        void filter()
+                throws Exception;
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.maven.content.group;
+
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MavenMetadataIncrementalMergeTest
+{
+    private static final String PATH = "org/foo/bar/maven-metadata.xml";
+
+    private final MavenMetadataMerger merger = new MavenMetadataMerger();
+
+    private final HostedRepository h1 = new HostedRepository( MAVEN_PKG_KEY, "h1" );
+
+    private final HostedRepository h2 = new HostedRepository( MAVEN_PKG_KEY, "h2" );
+
+    private final Group group = new Group( MAVEN_PKG_KEY, "g", h1.getKey(), h2.getKey() );
+
+    @Test
+    public void addedVersionUpdatesLatestAndRelease()
+    {
+        Metadata merged = metadata( "1.0", "1.1", "2.0-SNAPSHOT" );
+
+        Metadata updated =
+                merger.applyDelta( merged, metadata( "1.0" ), metadata( "1.0", "1.2" ), null, group, PATH );
+
+        assertThat( updated.getVersioning().getVersions(),
+                    equalTo( Arrays.asList( "1.0", "1.1", "1.2", "2.0-SNAPSHOT" ) ) );
+        assertThat( updated.getVersioning().getLatest(), equalTo( "2.0-SNAPSHOT" ) );
+        assertThat( updated.getVersioning().getRelease(), equalTo( "1.2" ) );
+
+        // the cached group metadata is not touched
+        assertThat( merged.getVersioning().getVersions().size(), equalTo( 3 ) );
+    }
+
+    @Test
+    public void removedVersionIsKeptIfAnotherMemberHasIt()
+    {
+        Metadata merged = metadata( "1.0", "1.1", "1.2" );
+
+        Metadata updated = merger.applyDelta( merged, metadata( "1.0", "1.1", "1.2" ), metadata( "1.0" ),
+                                              Collections.singletonList( metadata( "1.1" ) ), group, PATH );
+
+        assertThat( updated.getVersioning().getVersions(), equalTo( Arrays.asList( "1.0", "1.1" ) ) );
+        assertThat( updated.getVersioning().getLatest(), equalTo( "1.1" ) );
+        assertThat( updated.getVersioning().getRelease(), equalTo( "1.1" ) );
+    }
+
+    @Test
+    public void removalWithoutOtherContributionsNeedsFullMerge()
+    {
+        Metadata updated = merger.applyDelta( metadata( "1.0", "1.1" ), metadata( "1.0", "1.1" ), metadata( "1.0" ),
+                                              null, group, PATH );
+
+        assertThat( updated, nullValue() );
+    }
+
+    private Metadata metadata( final String... versions )
+    {
+        Metadata metadata = new Metadata();
+        metadata.setGroupId( "org.foo" );
+        metadata.setArtifactId( "bar" );
+
+        Versioning versioning = new Versioning();
+        versioning.setVersions( new ArrayList<>( Arrays.asList( versions ) ) );
+        versioning.setLatest( versions[versions.length - 1] );
+        metadata.setVersioning( versioning );
+        return metadata;
+    }
+}
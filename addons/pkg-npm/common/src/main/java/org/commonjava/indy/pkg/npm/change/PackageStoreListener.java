@@ -27,7 +27,7 @@ import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.HostedRepository;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.pkg.PackageTypeConstants;
-import org.commonjava.indy.pkg.npm.content.group.PackageMetadataMerger;
+import org.commonjava.indy.pkg.npm.content.PackageMetadataGenerator;
 import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.maven.galley.event.FileDeletionEvent;
 import org.commonjava.maven.galley.event.FileStorageEvent;
@@ -69,12 +69,32 @@ public class PackageStoreListener
     @Inject
     private IndyEventHandlerConfig handlerConfig;
 
+    @Inject
+    private PackageMetadataGenerator generator;
+
     /**
      * this listener observes {@link org.commonjava.maven.galley.event.FileStorageEvent}
-     * for a tarball file, which means package.json will be cleared when a npm package
-     * is uploaded.
+     * for a tarball file, which means the version is added to the generated package.json of the
+     * hosted repo (or package.json is cleared if it can not be updated), and package.json of the
+     * affected groups is cleared when a npm package is uploaded.
      */
     public void onPackageStorageEvent( @Observes FileStorageEvent event )
+    {
+        onPackageChange( event.getTransfer(), getKey( event ), true, event.getEventMetadata() );
+    }
+
+    /**
+     * this listener observes {@link org.commonjava.maven.galley.event.FileDeletionEvent}
+     * for a tarball file, which means the version is removed from the generated package.json of
+     * the hosted repo, and package.json of the affected groups is cleared.
+     */
+    public void onPackageDeletionEvent( @Observes FileDeletionEvent event )
+    {
+        onPackageChange( event.getTransfer(), getKey( event ), false, event.getEventMetadata() );
+    }
+
+    private void onPackageChange( final Transfer transfer, final StoreKey storeKey, final boolean stored,
+                                  final EventMetadata eventMetadata )
     {
 
         // Skip this if the kafka handler is enabled
@@ -84,16 +104,14 @@ public class PackageStoreListener
             return;
         }
 
-        if ( !event.getTransfer().getPath().endsWith( PACKAGE_TARBALL_EXTENSION ) )
+        if ( !transfer.getPath().endsWith( PACKAGE_TARBALL_EXTENSION ) )
         {
             return;
         }
 
-        logger.info( "Package storage: {}", event.getTransfer() );
-
-        final StoreKey storeKey = getKey( event );
+        logger.info( "Package {}: {}", stored ? "storage" : "deletion", transfer );
 
-        final String pkgPath = normalize( parentPath( event.getTransfer().getParent().getPath() ) );
+        final String pkgPath = normalize( parentPath( transfer.getParent().getPath() ) );
         final String pkgMetadataPath = normalize( pkgPath, NPM_METADATA_NAME ) ;
 
         logger.info( "Package metadata: store:{} and path: {}", storeKey.getName(), pkgMetadataPath );
@@ -103,15 +121,21 @@ public class PackageStoreListener
             if ( hosted == storeKey.getType() )
             {
                 HostedRepository hosted = dataManager.query().getHostedRepository( PKG_TYPE_NPM, storeKey.getName() );
-                try
+                final boolean updated = stored ?
+                        generator.addVersion( hosted, transfer.getPath(), eventMetadata ) :
+                        generator.removeVersion( hosted, transfer.getPath() );
+                if ( !updated )
                 {
-                    doClear( hosted, pkgMetadataPath );
-                }
-                catch ( final IOException e )
-                {
-                    logger.error( String.format(
-                                    "Failed to delete: %s from hosted: %s when npm package changed. Error: %s", pkgMetadataPath,
-                                    hosted, e.getMessage() ), e );
+                    try
+                    {
+                        doClear( hosted, pkgMetadataPath );
+                    }
+                    catch ( final IOException e )
+                    {
+                        logger.error( String.format(
+                                        "Failed to delete: %s from hosted: %s when npm package changed. Error: %s", pkgMetadataPath,
+                                        hosted, e.getMessage() ), e );
+                    }
                 }
 
                 final Set<Group> groups = dataManager.query().getGroupsAffectedBy( storeKey );
@@ -147,7 +171,8 @@ public class PackageStoreListener
             logger.info( "Updating merged package metadata file: {} in store: {}", path, store );
 
             final Transfer[] toDelete = { fileManager.getStorageReference( store, path ),
-                            fileManager.getStorageReference( store, path + GroupMergeHelper.MERGEINFO_SUFFIX ) };
+                            fileManager.getStorageReference( store, path + GroupMergeHelper.MERGEINFO_SUFFIX ),
+                            fileManager.getStorageReference( store, path + PackageMetadataGenerator.VERSION_INDEX_SUFFIX ) };
 
             for ( final Transfer item : toDelete )
             {
@@ -71,12 +71,7 @@ public class DecoratorUtils
 
             int nextQuote = raw.indexOf( "\"", quote + 1 );
 
-            String url = raw.substring( quote + 1, nextQuote );
-            String path = getPath( url );
-            if ( path != null )
-            {
-                url = UrlUtils.buildUrl( contextURL, path );
-            }
+            String url = maskTarballUrl( raw.substring( quote + 1, nextQuote ), contextURL );
             final String value = "\"" + url + "\"";
             sb.append( value );
             raw = raw.substring( nextQuote + 1 );
@@ -85,6 +80,17 @@ public class DecoratorUtils
         return sb.toString();
     }
 
+    /**
+     * Replace one tarball url with its context url, see {@link #updatePackageJson(String, String)}. The url is returned
+     * as is if it can't be parsed.
+     */
+    static String maskTarballUrl( String url, String contextURL )
+            throws MalformedURLException
+    {
+        String path = getPath( url );
+        return path == null ? url : UrlUtils.buildUrl( contextURL, path );
+    }
+
     private static String getPath( String url )
     {
         URL url1;
@@ -28,14 +28,14 @@ import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.commonjava.indy.content.ContentManager.ENTRY_POINT_BASE_URI;
 import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
-import static org.commonjava.indy.pkg.npm.content.DecoratorUtils.updatePackageJson;
+import static org.commonjava.indy.pkg.npm.content.DecoratorUtils.maskTarballUrl;
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
@@ -85,89 +85,328 @@ public class NPMPackageMaskingTransferDecorator
         return new PackageMaskingInputStream( stream, contextURL );
     }
 
-    private static class PackageMaskingInputStream
+    /**
+     * Rewrites the value of every "tarball" member while the package metadata is read, copying everything else byte for
+     * byte. It only keeps a read buffer and the tarball url being rewritten, however large the package metadata is.
+     * <p>
+     * The input is tracked by a minimal JSON lexer: a string is a "tarball" key if it is followed by a colon, and the
+     * string after that colon is the url. Urls longer than {@link #MAX_URL_LENGTH} are passed through unchanged.
+     */
+    static final class PackageMaskingInputStream
             extends IdempotentCloseInputStream
     {
-        final Logger logger = LoggerFactory.getLogger( this.getClass() );
+        private final Logger logger = LoggerFactory.getLogger( getClass() );
 
-        int position;
+        private static final byte[] TARBALL = "tarball".getBytes( UTF_8 );
 
-        private String contextURL;
+        private static final int BUFFER_SIZE = 8192;
 
-        private byte[] bytes;
+        static final int MAX_URL_LENGTH = 8192;
 
-        boolean masked;
+        // outside of any string
+        private static final int OUTSIDE = 0;
 
-        private static final int SIZE = 1024;
+        // in a string, which may be the "tarball" key
+        private static final int STRING = 1;
 
-        private PackageMaskingInputStream( final InputStream stream, final String contextURL )
+        // after the "tarball" string, waiting for a colon
+        private static final int KEY_END = 2;
+
+        // after "tarball": , waiting for the value
+        private static final int VALUE_START = 3;
+
+        // in the tarball url
+        private static final int VALUE = 4;
+
+        private final String contextURL;
+
+        private final byte[] in = new byte[BUFFER_SIZE];
+
+        private byte[] out = new byte[BUFFER_SIZE * 2];
+
+        private int outPos;
+
+        private int outLimit;
+
+        private final byte[] url = new byte[MAX_URL_LENGTH];
+
+        private int urlLength;
+
+        private int state = OUTSIDE;
+
+        // how many bytes of the current string match "tarball", -1 if it can't match anymore
+        private int keyMatch;
+
+        private boolean escaped;
+
+        private boolean eof;
+
+        PackageMaskingInputStream( final InputStream stream, final String contextURL )
         {
             super( stream );
             this.contextURL = contextURL;
         }
 
         @Override
-        public synchronized int read() throws IOException
+        public int read()
+                throws IOException
+        {
+            while ( outPos == outLimit )
+            {
+                if ( !fill() )
+                {
+                    return -1;
+                }
+            }
+            return out[outPos++] & 0xff;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len )
+                throws IOException
         {
-            if ( !masked )
+            if ( len == 0 )
             {
-                mask( contextURL );
+                return 0;
             }
-            if ( position < bytes.length )
+
+            while ( outPos == outLimit )
             {
-                return bytes[position++];
+                if ( !fill() )
+                {
+                    return -1;
+                }
             }
-            return -1;
+
+            final int n = Math.min( len, outLimit - outPos );
+            System.arraycopy( out, outPos, b, off, n );
+            outPos += n;
+            return n;
         }
 
         @Override
-        public synchronized int read( byte[] b, int off, int len ) throws IOException
+        public long skip( final long n )
+                throws IOException
         {
-            if ( !masked )
+            long skipped = 0;
+            while ( skipped < n )
             {
-                mask( contextURL );
+                if ( outPos == outLimit && !fill() )
+                {
+                    break;
+                }
+
+                final int step = (int) Math.min( n - skipped, outLimit - outPos );
+                outPos += step;
+                skipped += step;
             }
-            if ( position >= bytes.length )
+            return skipped;
+        }
+
+        @Override
+        public int available()
+        {
+            return outLimit - outPos;
+        }
+
+        @Override
+        public boolean markSupported()
+        {
+            return false;
+        }
+
+        @Override
+        public synchronized void mark( final int readlimit )
+        {
+        }
+
+        @Override
+        public synchronized void reset()
+                throws IOException
+        {
+            throw new IOException( "mark/reset not supported" );
+        }
+
+        /**
+         * Read and rewrite the next chunk of input. The output may be empty if the chunk only continued a tarball url.
+         *
+         * @return false at the end of the input, once all output is consumed
+         */
+        private boolean fill()
+                throws IOException
+        {
+            outPos = 0;
+            outLimit = 0;
+            if ( eof )
             {
-                return -1;
+                return false;
             }
-            int read = 0;
-            for ( int i = 0; i < len; i++ )
+
+            final int read = super.read( in, 0, in.length );
+            if ( read < 0 )
             {
-                if ( position < bytes.length )
+                eof = true;
+                if ( state == VALUE )
                 {
-                    b[off + i] = bytes[position++];
-                    read++;
+                    // truncated input, pass on what we have
+                    write( url, 0, urlLength );
                 }
-                else
+                return outLimit > 0;
+            }
+
+            for ( int i = 0; i < read; i++ )
+            {
+                process( in[i] );
+            }
+            return true;
+        }
+
+        private void process( final byte b )
+                throws IOException
+        {
+            switch ( state )
+            {
+                case STRING:
                 {
+                    write( b );
+                    if ( escaped )
+                    {
+                        escaped = false;
+                        keyMatch = -1;
+                    }
+                    else if ( b == '\\' )
+                    {
+                        escaped = true;
+                        keyMatch = -1;
+                    }
+                    else if ( b == '"' )
+                    {
+                        state = keyMatch == TARBALL.length ? KEY_END : OUTSIDE;
+                    }
+                    else if ( keyMatch >= 0 && keyMatch < TARBALL.length && b == TARBALL[keyMatch] )
+                    {
+                        keyMatch++;
+                    }
+                    else
+                    {
+                        keyMatch = -1;
+                    }
                     break;
                 }
+                case KEY_END:
+                {
+                    if ( b == ':' )
+                    {
+                        write( b );
+                        state = VALUE_START;
+                    }
+                    else if ( isWhitespace( b ) )
+                    {
+                        write( b );
+                    }
+                    else
+                    {
+                        // "tarball" was not a key
+                        state = OUTSIDE;
+                        process( b );
+                    }
+                    break;
+                }
+                case VALUE_START:
+                {
+                    if ( b == '"' )
+                    {
+                        write( b );
+                        urlLength = 0;
+                        escaped = false;
+                        state = VALUE;
+                    }
+                    else if ( isWhitespace( b ) )
+                    {
+                        write( b );
+                    }
+                    else
+                    {
+                        state = OUTSIDE;
+                        process( b );
+                    }
+                    break;
+                }
+                case VALUE:
+                {
+                    if ( b == '"' && !escaped )
+                    {
+                        writeMasked();
+                        write( b );
+                        state = OUTSIDE;
+                    }
+                    else if ( urlLength == url.length )
+                    {
+                        // not a url we can rewrite, pass the rest of the string on as is
+                        write( url, 0, urlLength );
+                        keyMatch = -1;
+                        state = STRING;
+                        process( b );
+                    }
+                    else
+                    {
+                        escaped = !escaped && b == '\\';
+                        url[urlLength++] = b;
+                    }
+                    break;
+                }
+                default:
+                {
+                    write( b );
+                    if ( b == '"' )
+                    {
+                        keyMatch = 0;
+                        escaped = false;
+                        state = STRING;
+                    }
+                }
             }
-            return read;
         }
 
-        private void mask( String contextURL ) throws IOException
+        private void writeMasked()
+                throws IOException
         {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            int read;
+            final String raw = new String( url, 0, urlLength, UTF_8 );
+            final String masked = maskTarballUrl( raw, contextURL );
+            if ( raw.equals( masked ) )
             {
-                byte[] buffer = new byte[SIZE];
-                while ( ( read = super.read(buffer, 0, buffer.length) ) >= 0 )
-                {
-                    bos.write( buffer, 0, read );
-                }
+                write( url, 0, urlLength );
+            }
+            else
+            {
+                logger.trace( "Masked tarball url {} as {}", raw, masked );
+                final byte[] bytes = masked.getBytes( UTF_8 );
+                write( bytes, 0, bytes.length );
             }
-            byte[] rawBytes = bos.toByteArray();
-            String raw = new String( rawBytes, UTF_8 );
+        }
 
-            logger.trace( "Mask for raw:\n{}", raw );
+        private void write( final byte b )
+        {
+            if ( outLimit == out.length )
+            {
+                out = Arrays.copyOf( out, out.length * 2 );
+            }
+            out[outLimit++] = b;
+        }
 
-            String s = updatePackageJson( raw, contextURL );
+        private void write( final byte[] b, final int off, final int len )
+        {
+            if ( outLimit + len > out.length )
+            {
+                out = Arrays.copyOf( out, Math.max( out.length * 2, outLimit + len ) );
+            }
+            System.arraycopy( b, off, out, outLimit, len );
+            outLimit += len;
+        }
 
-            logger.trace( "Masked:\n{}", s );
-            bytes = s.getBytes();
-            masked = true;
+        private static boolean isWhitespace( final byte b )
+        {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t';
         }
     }
 
@@ -18,13 +18,21 @@ package org.commonjava.indy.pkg.npm.content;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+import org.commonjava.cdi.util.weft.DrainingExecutorCompletionService;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.Locker;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.content.DirectContentAccess;
 import org.commonjava.indy.content.DownloadManager;
 import org.commonjava.indy.content.MergedContentAction;
 import org.commonjava.indy.content.StoreResource;
 import org.commonjava.indy.core.content.AbstractMergedContentGenerator;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
 import org.commonjava.indy.core.content.group.GroupMergeHelper;
+import org.commonjava.indy.core.content.group.GroupMergeSingleFlight;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
@@ -51,13 +59,19 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
+import static org.commonjava.indy.core.ctl.PoolUtils.detectOverloadVoid;
 import static org.commonjava.indy.data.StoreDataManager.IGNORE_READONLY;
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_METADATA_NAME;
 import static org.commonjava.maven.galley.util.PathUtils.normalize;
@@ -66,6 +80,13 @@ import static org.commonjava.maven.galley.util.PathUtils.parentPath;
 public class PackageMetadataGenerator
                 extends AbstractMergedContentGenerator
 {
+    /**
+     * Suffix of the version index written next to a generated package.json. It lists the versions the package.json
+     * was generated from, so later tarball changes can update it in place.
+     */
+    public static final String VERSION_INDEX_SUFFIX = ".versions";
+
+    private static final int LOCK_TIMEOUT_SECONDS = 240;
 
 //    @Inject
 //    private TypeMapper typeMapper;
@@ -82,6 +103,19 @@ public class PackageMetadataGenerator
     @Inject
     private DownloadManager downloadManager;
 
+    @Inject
+    private GroupMergeSingleFlight singleFlight;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "npm-metadata-generator", threads = 8, priority = 8, maxLoadFactor = 100, loadSensitive = ExecutorConfig.BooleanLiteral.TRUE )
+    private WeftExecutorService versionMetadataService;
+
+    private final IndyObjectMapper mapper = new IndyObjectMapper( true );
+
+    // generation and incremental updates of the same package.json are kept apart
+    private final Locker<String> generationLocks = new Locker<>();
+
     protected PackageMetadataGenerator()
     {
     }
@@ -100,6 +134,20 @@ public class PackageMetadataGenerator
         this.pathGenerator = pathGenerator;
         this.merger = merger;
         this.storagePathCalculator = storagePathCalculator;
+        this.singleFlight = new GroupMergeSingleFlight( new DefaultIndyConfiguration(), null );
+    }
+
+    public PackageMetadataGenerator( final DirectContentAccess fileManager, final StoreDataManager storeManager,
+                                     final DownloadManager downloadManager, final TypeMapper typeMapper,
+                                     final PackageMetadataMerger merger, final GroupMergeHelper mergeHelper,
+                                     final NotFoundCache nfc, final PathGenerator pathGenerator,
+                                     final NPMStoragePathCalculator storagePathCalculator,
+                                     final WeftExecutorService versionMetadataService,
+                                     final MergedContentAction... mergedContentActions )
+    {
+        this( fileManager, storeManager, downloadManager, typeMapper, merger, mergeHelper, nfc, pathGenerator,
+              storagePathCalculator, mergedContentActions );
+        this.versionMetadataService = versionMetadataService;
     }
 
     @Override
@@ -134,57 +182,68 @@ public class PackageMetadataGenerator
                 toMergePath = normalize( normalize( parentPath( toMergePath ) ), NPM_METADATA_NAME );
             }
 
-            final List<Transfer> sources = new ArrayList<>(  );
+            final String mergePath = toMergePath;
+            singleFlight.execute( group.getKey() + "-" + mergePath, () -> exists( target ),
+                                  () -> mergeMembers( group, members, mergePath, target, eventMetadata ) );
+        }
 
-            for ( ArtifactStore member : members )
-            {
+        if ( target.exists() )
+        {
+            return target;
+        }
 
-                logger.debug( "Retrieve raw file from the member store: {}", member );
-                final Transfer source = fileManager.retrieveRaw( member, toMergePath, eventMetadata );
-                if ( source == null )
-                {
-                    // Skip to generate for remote, it does not support to get the tgz list from remote registry
-                    // and will report the MethodNotAllowedError and then get the remote repo disabled.
-                    if ( StoreType.remote == member.getKey().getType() )
-                    {
-                        continue;
-                    }
-                    logger.debug( "Package metadata missing in store: {}, try to generate.", member );
-                    final Transfer generated = generateFileContent( member, toMergePath, eventMetadata );
-                    if ( generated != null )
-                    {
-                        sources.add( generated );
-                    }
-                }
-                else
-                {
-                    sources.add( source );
-                }
-            }
+        return null;
+    }
 
-            final byte[] merged = merger.merge( sources, group, toMergePath );
-            if ( merged != null )
+    private boolean mergeMembers( final Group group, final List<ArtifactStore> members, final String toMergePath,
+                                  final Transfer target, final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        final List<Transfer> sources = new ArrayList<>(  );
+
+        for ( ArtifactStore member : members )
+        {
+
+            logger.debug( "Retrieve raw file from the member store: {}", member );
+            final Transfer source = fileManager.retrieveRaw( member, toMergePath, eventMetadata );
+            if ( source == null )
             {
-                try (OutputStream fos = target.openOutputStream( TransferOperation.GENERATE, true, eventMetadata ))
+                // Skip to generate for remote, it does not support to get the tgz list from remote registry
+                // and will report the MethodNotAllowedError and then get the remote repo disabled.
+                if ( StoreType.remote == member.getKey().getType() )
                 {
-                    fos.write( merged );
+                    continue;
                 }
-                catch ( final IOException e )
+                logger.debug( "Package metadata missing in store: {}, try to generate.", member );
+                final Transfer generated = generateFileContent( member, toMergePath, eventMetadata );
+                if ( generated != null )
                 {
-                    throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}", e, target,
-                                                     e.getMessage() );
+                    sources.add( generated );
                 }
-
-                helper.writeMergeInfo( helper.generateMergeInfo( sources ), group, toMergePath );
+            }
+            else
+            {
+                sources.add( source );
             }
         }
 
-        if ( target.exists() )
+        final byte[] merged = merger.merge( sources, group, toMergePath );
+        if ( merged != null )
         {
-            return target;
+            try (OutputStream fos = target.openOutputStream( TransferOperation.GENERATE, true, eventMetadata ))
+            {
+                fos.write( merged );
+            }
+            catch ( final IOException e )
+            {
+                throw new IndyWorkflowException( "Failed to write merged metadata to: {}.\nError: {}", e, target,
+                                                 e.getMessage() );
+            }
+
+            helper.writeMergeInfo( helper.generateMergeInfo( sources ), group, toMergePath );
         }
 
-        return null;
+        return exists( target );
     }
 
     @Override
@@ -224,12 +283,140 @@ public class PackageMetadataGenerator
         }
 
         logger.info( "Generating package metadata package.json in store: {}", store.getKey() );
-        generated = writePackageMetadata( firstLevel, store, storagePath, eventMetadata );
+        final List<StoreResource> listing = firstLevel;
+        AtomicReference<IndyWorkflowException> wfEx = new AtomicReference<>();
+        generated = generationLocks.lockAnd( computeKey( store, storagePath ), LOCK_TIMEOUT_SECONDS, k -> {
+            try
+            {
+                return writePackageMetadata( listing, store, storagePath, eventMetadata );
+            }
+            catch ( IndyWorkflowException e )
+            {
+                wfEx.set( e );
+                return false;
+            }
+        }, ( k, lock ) -> {
+            logger.warn( "Failed to lock package metadata generation of {} in {} in {} seconds", storagePath,
+                         store.getKey(), LOCK_TIMEOUT_SECONDS );
+            return false;
+        } );
+
+        if ( wfEx.get() != null )
+        {
+            throw wfEx.get();
+        }
 
         logger.debug( "[Result] Generating package.json for store: {}, result: {}", store.getKey(), generated );
         return generated ? fileManager.getTransfer( store, path ) : null;
     }
 
+    /**
+     * Add the version of a stored tarball to the package.json generated earlier in the store, instead of generating
+     * the whole package.json again on the next request.
+     *
+     * @return false if there is no package.json generated from the version index to update, or the update failed; the
+     * caller should clear the package.json then, so it is generated again
+     */
+    public boolean addVersion( final ArtifactStore store, final String tarPath, final EventMetadata eventMetadata )
+    {
+        return updateVersions( store, tarPath, eventMetadata, true );
+    }
+
+    /**
+     * Remove the version of a deleted tarball from the package.json generated earlier in the store.
+     *
+     * @return false if there is no package.json generated from the version index to update, the update failed, or no
+     * version is left; the caller should clear the package.json then
+     */
+    public boolean removeVersion( final ArtifactStore store, final String tarPath )
+    {
+        return updateVersions( store, tarPath, new EventMetadata(), false );
+    }
+
+    private boolean updateVersions( final ArtifactStore store, final String tarPath, final EventMetadata eventMetadata,
+                                    final boolean add )
+    {
+        final Optional<PackagePath> parsed = PackagePath.parse( tarPath );
+        if ( !parsed.isPresent() || parsed.get().getVersion() == null )
+        {
+            return false;
+        }
+
+        final PackagePath packagePath = parsed.get();
+        final String path = packagePath.isScoped() ?
+                normalize( packagePath.getScopedName(), packagePath.getPackageName(), NPM_METADATA_NAME ) :
+                normalize( packagePath.getPackageName(), NPM_METADATA_NAME );
+
+        return generationLocks.lockAnd( computeKey( store, path ), LOCK_TIMEOUT_SECONDS, k -> {
+            final Transfer metadataFile = fileManager.getTransfer( store, path );
+            final Set<String> indexed = readVersionIndex( store, path );
+            if ( !exists( metadataFile ) || indexed == null )
+            {
+                logger.debug( "No generated package metadata {} in {} to update", path, store.getKey() );
+                return false;
+            }
+
+            final Map<String, VersionMetadata> versions;
+            try ( InputStream input = metadataFile.openInputStream() )
+            {
+                final PackageMetadata existing = mapper.readValue( input, PackageMetadata.class );
+                versions = existing == null || existing.getVersions() == null ?
+                        null :
+                        new HashMap<>( existing.getVersions() );
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Failed to read package metadata {} in {} for update. Reason: {}", path, store.getKey(),
+                             e.getMessage() );
+                return false;
+            }
+
+            // package.json may have been replaced since it was generated, e.g. by a publish
+            if ( versions == null || !indexed.equals( versions.keySet() ) )
+            {
+                logger.debug( "Package metadata {} in {} does not match its version index", path, store.getKey() );
+                return false;
+            }
+
+            try
+            {
+                if ( add )
+                {
+                    final VersionMetadata versionMetadata = readVersionMetadata( store, packagePath, eventMetadata );
+                    if ( versionMetadata == null || versionMetadata.getVersion() == null )
+                    {
+                        return false;
+                    }
+                    versions.put( versionMetadata.getVersion(), versionMetadata );
+                }
+                else if ( versions.remove( packagePath.getVersion() ) == null )
+                {
+                    return true;
+                }
+                else if ( versions.isEmpty() )
+                {
+                    return false;
+                }
+
+                writePackageMetadata( store, path, versions, eventMetadata );
+            }
+            catch ( IndyWorkflowException e )
+            {
+                logger.warn( "Failed to update package metadata {} in {} for {}. Reason: {}", path, store.getKey(),
+                             tarPath, e.getMessage() );
+                return false;
+            }
+
+            logger.debug( "{} version {} in package metadata {} in {}", add ? "Added" : "Removed",
+                          packagePath.getVersion(), path, store.getKey() );
+            return true;
+        }, ( k, lock ) -> {
+            logger.warn( "Failed to lock package metadata {} in {} for update in {} seconds", path, store.getKey(),
+                         LOCK_TIMEOUT_SECONDS );
+            return false;
+        } );
+    }
+
     private boolean writePackageMetadata( List<StoreResource> firstLevelFiles, ArtifactStore store, String path, EventMetadata eventMetadata ) throws IndyWorkflowException
     {
         logger.debug( "writePackageMetadata, firstLevelFiles:{}, store:{}", firstLevelFiles, store.getKey() );
@@ -238,7 +425,6 @@ public class PackageMetadataGenerator
         // to get the version, then try to get the version metadata by the path (@scoped/)package/version
         List<PackagePath> packagePaths = firstLevelFiles.stream()
                        .map( (res) -> new PackagePath( res.getPath() ) )
-                       .sorted( Comparator.comparing( PackagePath::getVersion ) )
                        .collect( Collectors.toList());
 
         if ( packagePaths.size() == 0 )
@@ -246,111 +432,139 @@ public class PackageMetadataGenerator
             return false;
         }
 
-        final Transfer metadataFile = fileManager.getTransfer( store, path );
+        writePackageMetadata( store, path, retrieveVersions( store, packagePaths, eventMetadata ), eventMetadata );
 
-        final PackageMetadata packageMetadata = new PackageMetadata();
-        final IndyObjectMapper mapper = new IndyObjectMapper( true );
-        List<String> keywords = new ArrayList<>(  );
+        logger.debug( "writePackageMetadata, DONE, store: {}", store.getKey() );
+        return true;
+    }
+
+    /**
+     * Retrieve the version metadata of all tarballs, in parallel on the generator pool (bounded by its size and load
+     * factor) if there is more than one.
+     */
+    private Map<String, VersionMetadata> retrieveVersions( final ArtifactStore store,
+                                                           final List<PackagePath> packagePaths,
+                                                           final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        final Map<String, VersionMetadata> versions = new HashMap<>();
+        if ( versionMetadataService == null || packagePaths.size() == 1 )
+        {
+            for ( PackagePath packagePath : packagePaths )
+            {
+                addVersion( versions, readVersionMetadata( store, packagePath, eventMetadata ) );
+            }
+            return versions;
+        }
 
-        DistTag distTags = new DistTag();
-        Map<String, VersionMetadata> versions = new LinkedHashMap<>(  );
+        DrainingExecutorCompletionService<VersionMetadata> svc =
+                new DrainingExecutorCompletionService<>( versionMetadataService );
 
-        PackagePath latest = packagePaths.get( packagePaths.size() - 1 );
+        detectOverloadVoid( () -> packagePaths.forEach(
+                packagePath -> svc.submit( () -> readVersionMetadata( store, packagePath, eventMetadata ) ) ) );
 
-        for ( PackagePath packagePath : packagePaths )
+        try
         {
-            String versionPath = packagePath.getVersionPath();
-            logger.debug( "Retrieving the version file {} from store {}", versionPath, store );
-            Transfer metaFile = fileManager.retrieveRaw( store, versionPath, eventMetadata );
-            if ( metaFile == null )
+            svc.drain( versionMetadata -> addVersion( versions, versionMetadata ) );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IndyWorkflowException( "Interrupted while retrieving version metadata in store {}",
+                                             store.getKey() );
+        }
+        catch ( ExecutionException e )
+        {
+            if ( e.getCause() instanceof IndyWorkflowException )
             {
-                // The metadata file (@scoped/)package/version for the specific version is missing, still need to extract it from tarball
-                String tarPath = packagePath.getTarPath();
-                Transfer tar = fileManager.retrieveRaw( store, tarPath, eventMetadata );
-                if ( tar == null )
-                {
-                    logger.warn( "Tarball file {} is missing in the store {}.", tarPath, store.getKey() );
-                    continue;
-                }
-                logger.info( "Extracting package metadata package.json from tarball {} and store it in {}/{}", tarPath, store.getKey(), versionPath );
-                metaFile = extractMetaFileFromTarballAndStore( store, versionPath, tar );
+                throw (IndyWorkflowException) e.getCause();
+            }
+            throw new IndyWorkflowException( "Failed to retrieve version metadata in store {}", e, store.getKey() );
+        }
 
-                if ( metaFile == null )
-                {
-                    logger.warn( "Package metadata is missing in tarball {}/{}.", store.getKey(), tarPath );
-                    continue;
-                }
+        return versions;
+    }
 
-            }
+    private void addVersion( final Map<String, VersionMetadata> versions, final VersionMetadata versionMetadata )
+    {
+        if ( versionMetadata != null && versionMetadata.getVersion() != null )
+        {
+            versions.put( versionMetadata.getVersion(), versionMetadata );
+        }
+    }
 
-            try ( InputStream input = metaFile.openInputStream() )
+    private VersionMetadata readVersionMetadata( final ArtifactStore store, final PackagePath packagePath,
+                                                 final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        String versionPath = packagePath.getVersionPath();
+        logger.debug( "Retrieving the version file {} from store {}", versionPath, store );
+        Transfer metaFile = fileManager.retrieveRaw( store, versionPath, eventMetadata );
+        if ( metaFile == null )
+        {
+            // The metadata file (@scoped/)package/version for the specific version is missing, still need to extract it from tarball
+            String tarPath = packagePath.getTarPath();
+            Transfer tar = fileManager.retrieveRaw( store, tarPath, eventMetadata );
+            if ( tar == null )
             {
-                VersionMetadata versionMetadata = mapper.readValue( input, VersionMetadata.class );
+                logger.warn( "Tarball file {} is missing in the store {}.", tarPath, store.getKey() );
+                return null;
+            }
+            logger.info( "Extracting package metadata package.json from tarball {} and store it in {}/{}", tarPath, store.getKey(), versionPath );
+            metaFile = extractMetaFileFromTarballAndStore( store, versionPath, tar );
 
-                if ( versionMetadata == null )
-                {
-                    continue;
-                }
+            if ( metaFile == null )
+            {
+                logger.warn( "Package metadata is missing in tarball {}/{}.", store.getKey(), tarPath );
+                return null;
+            }
 
-                versions.put( versionMetadata.getVersion(), versionMetadata );
+        }
 
-                if ( versionMetadata.getKeywords() != null )
-                {
-                    for ( String keyword : versionMetadata.getKeywords() )
-                    {
-                        if ( !keywords.contains( keyword ) )
-                        {
-                            keywords.add( keyword );
-                        }
-                    }
-                }
+        try ( InputStream input = metaFile.openInputStream() )
+        {
+            VersionMetadata versionMetadata = mapper.readValue( input, VersionMetadata.class );
 
-                // Set couple of attributes based on the latest version metadata
-                if ( packagePath.getVersion().equals( latest.getVersion() ) )
-                {
-                    packageMetadata.setName( versionMetadata.getName() );
-                    packageMetadata.setDescription( versionMetadata.getDescription() );
-                    packageMetadata.setAuthor( versionMetadata.getAuthor() );
-                    if ( versionMetadata.getLicense() != null )
-                    {
-                        packageMetadata.setLicense( versionMetadata.getLicense() );
-                    }
-                    packageMetadata.setRepository( versionMetadata.getRepository() );
-                    packageMetadata.setBugs( versionMetadata.getBugs() );
-                    distTags.setLatest( versionMetadata.getVersion() );
-                }
+            if ( versionMetadata == null )
+            {
+                return null;
+            }
 
-                // Generate tarball url if missing
-                String tarball = "http://indy/" + packagePath.getTarPath(); // here we use mock host. indy will amend it with the right hostname
-                if ( versionMetadata.getDist() == null )
+            // Generate tarball url if missing
+            String tarball = "http://indy/" + packagePath.getTarPath(); // here we use mock host. indy will amend it with the right hostname
+            if ( versionMetadata.getDist() == null )
+            {
+                //logger.debug( "Generate dist tarball: {}", tarball );
+                versionMetadata.setDist( new Dist( tarball ) );
+            } else {
+                // Detect bad tarball and replace with correct one
+                if ( versionMetadata.getDist().getTarball() == null || !versionMetadata.getDist().getTarball().endsWith(packagePath.getTarPath()) )
                 {
-                    //logger.debug( "Generate dist tarball: {}", tarball );
-                    versionMetadata.setDist( new Dist( tarball ) );
-                } else {
-                    // Detect bad tarball and replace with correct one
-                    if ( versionMetadata.getDist().getTarball() == null || !versionMetadata.getDist().getTarball().endsWith(packagePath.getTarPath()) )
-                    {
-                        Dist dist = versionMetadata.getDist();
-                        dist.setTarball( tarball );
-                        versionMetadata.setDist( dist );
-                    }
+                    Dist dist = versionMetadata.getDist();
+                    dist.setTarball( tarball );
+                    versionMetadata.setDist( dist );
                 }
             }
-            catch ( IOException e )
-            {
-                logger.error( String.format("Get the version metadata error from path %s.", versionPath), e );
-                throw new IndyWorkflowException( "Get the version metadata error from path {}", versionPath );
-            }
-        }
 
-        if ( !keywords.isEmpty() )
+            return versionMetadata;
+        }
+        catch ( IOException e )
         {
-            packageMetadata.setKeywords( keywords );
+            logger.error( String.format("Get the version metadata error from path %s.", versionPath), e );
+            throw new IndyWorkflowException( "Get the version metadata error from path {}", versionPath );
         }
+    }
 
-        versions = sortVersions( versions );
-        packageMetadata.setVersions( versions );
-        packageMetadata.setDistTags( distTags );
+    /**
+     * Write the package.json built from the given versions, and the version index next to it which marks it as
+     * generated from exactly these versions.
+     */
+    private void writePackageMetadata( final ArtifactStore store, final String path,
+                                       final Map<String, VersionMetadata> versions, final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
+        final PackageMetadata packageMetadata = buildPackageMetadata( versions );
+        final Transfer metadataFile = fileManager.getTransfer( store, path );
 
         OutputStream stream = null;
         try
@@ -368,8 +582,87 @@ public class PackageMetadataGenerator
             closeQuietly( stream );
         }
 
-        logger.debug( "writePackageMetadata, DONE, store: {}", store.getKey() );
-        return true;
+        final Transfer indexFile = fileManager.getTransfer( store, path + VERSION_INDEX_SUFFIX );
+        try ( OutputStream out = indexFile.openOutputStream( TransferOperation.GENERATE, true, eventMetadata ) )
+        {
+            out.write( String.join( "\n", packageMetadata.getVersions().keySet() ).getBytes( StandardCharsets.UTF_8 ) );
+        }
+        catch ( IOException e )
+        {
+            // without the index, the next change of the package generates package.json again
+            logger.warn( "Failed to write package version index {} in {}. Reason: {}", indexFile, store.getKey(),
+                         e.getMessage() );
+        }
+    }
+
+    private Set<String> readVersionIndex( final ArtifactStore store, final String path )
+    {
+        final Transfer indexFile = fileManager.getTransfer( store, path + VERSION_INDEX_SUFFIX );
+        if ( !exists( indexFile ) )
+        {
+            return null;
+        }
+
+        try ( InputStream input = indexFile.openInputStream() )
+        {
+            return IOUtils.readLines( input, StandardCharsets.UTF_8 )
+                          .stream()
+                          .filter( v -> !v.isEmpty() )
+                          .collect( Collectors.toSet() );
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to read package version index {} in {}. Reason: {}", indexFile, store.getKey(),
+                         e.getMessage() );
+            return null;
+        }
+    }
+
+    private PackageMetadata buildPackageMetadata( final Map<String, VersionMetadata> unsorted )
+    {
+        final PackageMetadata packageMetadata = new PackageMetadata();
+        final Map<String, VersionMetadata> versions = sortVersions( unsorted );
+        final Set<String> keywords = new LinkedHashSet<>();
+        final DistTag distTags = new DistTag();
+
+        VersionMetadata latest = null;
+        for ( VersionMetadata versionMetadata : versions.values() )
+        {
+            if ( versionMetadata.getKeywords() != null )
+            {
+                keywords.addAll( versionMetadata.getKeywords() );
+            }
+            latest = versionMetadata;
+        }
+
+        // Set couple of attributes based on the latest version metadata
+        if ( latest != null )
+        {
+            packageMetadata.setName( latest.getName() );
+            packageMetadata.setDescription( latest.getDescription() );
+            packageMetadata.setAuthor( latest.getAuthor() );
+            if ( latest.getLicense() != null )
+            {
+                packageMetadata.setLicense( latest.getLicense() );
+            }
+            packageMetadata.setRepository( latest.getRepository() );
+            packageMetadata.setBugs( latest.getBugs() );
+            distTags.setLatest( latest.getVersion() );
+        }
+
+        if ( !keywords.isEmpty() )
+        {
+            packageMetadata.setKeywords( new ArrayList<>( keywords ) );
+        }
+
+        packageMetadata.setVersions( versions );
+        packageMetadata.setDistTags( distTags );
+        return packageMetadata;
+    }
+
+    private static String computeKey( final ArtifactStore store, final String path )
+    {
+        return store.getKey().toString() + "-" + ( path.startsWith( "/" ) ? path.substring( 1 ) : path );
     }
 
     private Map<String, VersionMetadata> sortVersions( Map<String, VersionMetadata> versions )
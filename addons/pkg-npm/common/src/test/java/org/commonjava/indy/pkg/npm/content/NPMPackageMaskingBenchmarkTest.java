@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.pkg.npm.content;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares masking a large package.json with the old whole-document rewrite and with
+ * {@link NPMPackageMaskingTransferDecorator.PackageMaskingInputStream}. Run it manually; pass
+ * -Dnpm.masking.benchmark.file=/path/to/package.json to use a real packument (e.g. a saved copy of
+ * https://registry.npmjs.org/typescript), otherwise one with 5000 versions is generated.
+ */
+@Ignore( "Benchmark, run manually" )
+public class NPMPackageMaskingBenchmarkTest
+{
+    private static final String CONTEXT_URL = "http://localhost/api/content/npm/group/public";
+
+    private static final int ROUNDS = 5;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Test
+    public void run()
+            throws Exception
+    {
+        final byte[] raw = load();
+        logger.info( "Package metadata: {} bytes", raw.length );
+
+        for ( int i = 0; i < 3; i++ )
+        {
+            wholeDocument( raw );
+            streaming( raw );
+        }
+
+        measure( "whole document", raw.length, () -> wholeDocument( raw ) );
+        measure( "streaming", raw.length, () -> streaming( raw ) );
+    }
+
+    private void measure( final String name, final long size, final Masking masking )
+            throws IOException
+    {
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+
+        final long allocatedBefore = threads.getThreadAllocatedBytes( thread );
+        final long start = System.nanoTime();
+        for ( int i = 0; i < ROUNDS; i++ )
+        {
+            masking.mask();
+        }
+        final long nanos = System.nanoTime() - start;
+        final long allocated = threads.getThreadAllocatedBytes( thread ) - allocatedBefore;
+
+        logger.info( "{}: {} ms per document, {} MB/s, {} bytes allocated per document", name,
+                     nanos / ROUNDS / 1000000, size * ROUNDS * 1000 / nanos, allocated / ROUNDS );
+    }
+
+    private void wholeDocument( final byte[] raw )
+            throws IOException
+    {
+        final byte[] masked = DecoratorUtils.updatePackageJson( new String( raw, UTF_8 ), CONTEXT_URL ).getBytes( UTF_8 );
+        drain( new ByteArrayInputStream( masked ) );
+    }
+
+    private void streaming( final byte[] raw )
+            throws IOException
+    {
+        drain( new NPMPackageMaskingTransferDecorator.PackageMaskingInputStream( new ByteArrayInputStream( raw ),
+                                                                                  CONTEXT_URL ) );
+    }
+
+    private void drain( final InputStream in )
+            throws IOException
+    {
+        final byte[] buf = new byte[16384];
+        while ( in.read( buf, 0, buf.length ) >= 0 )
+        {
+            // discard, as a response stream would
+        }
+    }
+
+    private byte[] load()
+            throws IOException
+    {
+        final String file = System.getProperty( "npm.masking.benchmark.file" );
+        if ( file != null )
+        {
+            return Files.readAllBytes( new File( file ).toPath() );
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final StringBuilder sb = new StringBuilder( "{\n  \"_id\": \"bench\",\n  \"name\": \"bench\",\n  \"versions\": {\n" );
+        for ( int i = 0; i < 5000; i++ )
+        {
+            final String version = "1." + i / 100 + "." + i % 100;
+            sb.append( i == 0 ? "" : ",\n" )
+              .append( "    \"" ).append( version ).append( "\": {\n" )
+              .append( "      \"name\": \"bench\",\n      \"version\": \"" ).append( version ).append( "\",\n" )
+              .append( "      \"description\": \"A package with a long history of releases, which makes its package metadata large\",\n" )
+              .append( "      \"dependencies\": {\"tslib\": \"^2.0.0\", \"source-map\": \"~0.6.1\"},\n" )
+              .append( "      \"dist\": {\n        \"shasum\": \"2ae2d661e906c1a01e044a71bb5b2743942183e5\",\n" )
+              .append( "        \"integrity\": \"sha512-Zm9vYmFyYmF6cXV4Zm9vYmFyYmF6cXV4Zm9vYmFyYmF6cXV4Zm9vYmFyYmF6cXV4\",\n" )
+              .append( "        \"tarball\": \"https://registry.npmjs.org/bench/-/bench-" ).append( version ).append( ".tgz\"\n" )
+              .append( "      }\n    }" );
+            if ( sb.length() > 65536 )
+            {
+                out.write( sb.toString().getBytes( UTF_8 ) );
+                sb.setLength( 0 );
+            }
+        }
+        sb.append( "\n  }\n}\n" );
+        out.write( sb.toString().getBytes( UTF_8 ) );
+        return out.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface Masking
+    {
+        void mask()
+                throws IOException;
+    }
+}
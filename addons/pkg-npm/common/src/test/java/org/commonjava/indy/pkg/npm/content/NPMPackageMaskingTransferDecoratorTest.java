@@ -28,10 +28,13 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.commonjava.indy.content.ContentManager.ENTRY_POINT_BASE_URI;
 import static org.commonjava.indy.pkg.PackageTypeConstants.PKG_TYPE_NPM;
 import static org.junit.Assert.assertEquals;
@@ -88,6 +91,41 @@ public class NPMPackageMaskingTransferDecoratorTest
         assertEquals( expected, ret );
     }
 
+    @Test
+    public void maskWhileStreamingInSmallReads() throws Exception
+    {
+        String contextURL = "http://localhost/api/content/npm/group/test";
+        String raw = IOUtils.toString( getResourceAsStream( "metadata/package-tar-fs.json" ), UTF_8 );
+        String expected = DecoratorUtils.updatePackageJson( raw, contextURL );
+
+        for ( int size : new int[] { 1, 7, 4096 } )
+        {
+            InputStream stream = new NPMPackageMaskingTransferDecorator.PackageMaskingInputStream(
+                            new ByteArrayInputStream( raw.getBytes( UTF_8 ) ), contextURL );
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[size];
+            int read;
+            while ( ( read = stream.read( buf, 0, size ) ) >= 0 )
+            {
+                out.write( buf, 0, read );
+            }
+            assertEquals( expected, new String( out.toByteArray(), UTF_8 ) );
+        }
+    }
+
+    @Test
+    public void onlyTarballKeysAreMasked() throws Exception
+    {
+        String raw = "{\"description\": \"tarball\", \"note\": \"say \\\"tarball\\\": \\\"http://a/b/-/c.tgz\\\"\",\n"
+                        + "\"dist\": {\"tarball\" :\t\"https://registry.npmjs.org/jquery/-/jquery-1.5.1.tgz\"}}";
+        String expected = "{\"description\": \"tarball\", \"note\": \"say \\\"tarball\\\": \\\"http://a/b/-/c.tgz\\\"\",\n"
+                        + "\"dist\": {\"tarball\" :\t\"http://localhost/npm/jquery/-/jquery-1.5.1.tgz\"}}";
+
+        InputStream stream = new NPMPackageMaskingTransferDecorator.PackageMaskingInputStream(
+                        new ByteArrayInputStream( raw.getBytes( UTF_8 ) ), "http://localhost/npm" );
+        assertEquals( expected, IOUtils.toString( stream, UTF_8 ) );
+    }
+
     private InputStream getResourceAsStream( String path )
     {
         return getClass().getClassLoader().getResourceAsStream( path );
@@ -59,8 +59,10 @@ import java.util.concurrent.ThreadPoolExecutor;
 
 import static org.commonjava.indy.pkg.npm.model.NPMPackageTypeDescriptor.NPM_PKG_KEY;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class PackageMetadataGeneratorTest
@@ -112,7 +114,10 @@ public class PackageMetadataGeneratorTest
         generator = new PackageMetadataGenerator( contentAccess, stores, downloads, types, merger, helper,
                                                   new MemoryNotFoundCache(), new IndyPathGenerator(
                         Collections.singleton( new NPMStoragePathCalculator( specialPathManager ) ) ),
-                                                  new NPMStoragePathCalculator( specialPathManager ) );
+                                                  new NPMStoragePathCalculator( specialPathManager ),
+                                                  new PoolWeftExecutorService( "test-npm-metadata-executor",
+                                                                               (ThreadPoolExecutor) Executors.newFixedThreadPool( 4 ),
+                                                                               4, 10f, false ) );
 
     }
 
@@ -253,6 +258,42 @@ public class PackageMetadataGeneratorTest
         assertNotNull( metafile );
     }
 
+    @Test
+    public void updateGeneratedMetadataForVersionChanges() throws Exception
+    {
+        ChangeSummary summary = new ChangeSummary( "test","Init NPM hosted repo." );
+        final HostedRepository hostedRepository = new HostedRepository( NPM_PKG_KEY, "npm-builds" );
+        initStore(hostedRepository, summary);
+
+        final KeyedLocation location = LocationUtils.toLocation( hostedRepository );
+
+        storeFile( location, "jquery/-/jquery-9.0.5.tgz", "tarball/version-1.tgz");
+        storeFile( location, "jquery/9.0.5", "metadata/version-1.json" );
+
+        final String jqueryMetadataPath = "jquery/package.json";
+        assertNotNull( generator.generateFileContent( hostedRepository, jqueryMetadataPath, new EventMetadata(  ) ) );
+
+        storeFile( location, "jquery/-/jquery-9.0.6.tgz", "tarball/version-2.tgz");
+        storeFile( location, "jquery/9.0.6", "metadata/version-2.json" );
+        assertTrue( generator.addVersion( hostedRepository, "jquery/-/jquery-9.0.6.tgz", new EventMetadata() ) );
+
+        verifyMetadata( fileManager.retrieve( hostedRepository, jqueryMetadataPath ) );
+
+        assertTrue( generator.removeVersion( hostedRepository, "jquery/-/jquery-9.0.6.tgz" ) );
+
+        final IndyObjectMapper mapper = new IndyObjectMapper( true );
+        try ( InputStream input = fileManager.retrieve( hostedRepository, jqueryMetadataPath ).openInputStream() )
+        {
+            PackageMetadata packageMetadata = mapper.readValue( input, PackageMetadata.class );
+            assertEquals( Collections.singleton( "9.0.5" ), packageMetadata.getVersions().keySet() );
+            assertEquals( "9.0.5", packageMetadata.getDistTags().getLatest() );
+        }
+
+        // a package.json not generated from the version index is not updated
+        storeFile( location, jqueryMetadataPath, "metadata/version-2.json" );
+        assertFalse( generator.addVersion( hostedRepository, "jquery/-/jquery-9.0.6.tgz", new EventMetadata() ) );
+    }
+
     private void verifyMetadata( Transfer metadataFile ) throws Exception
     {
 
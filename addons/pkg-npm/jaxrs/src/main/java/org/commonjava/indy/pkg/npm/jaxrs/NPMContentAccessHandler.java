@@ -554,13 +554,23 @@ public class NPMContentAccessHandler
             return null;
         }
 
+        // the version file is complete before the tarball is, so the package.json update on tarball storage can read it
         try (OutputStream versionOutputStream = versionTarget.openOutputStream( TransferOperation.UPLOAD, true,
-                                                                                eventMetadata );
-             OutputStream tarballOutputStream = tarballTarget.openOutputStream( TransferOperation.UPLOAD, true,
                                                                                 eventMetadata ))
         {
             logger.info( "STORE {}", versionTarget.getResource() );
             versionOutputStream.write( versionContent.getBytes() );
+        }
+        catch ( final IOException e )
+        {
+            logger.error( String.format( "[NPM] Failed to store the generated targets: %s and %s. Reason: %s",
+                                         versionTarget.getResource(), tarballTarget.getResource(), e.getMessage() ), e );
+            return null;
+        }
+
+        try (OutputStream tarballOutputStream = tarballTarget.openOutputStream( TransferOperation.UPLOAD, true,
+                                                                                eventMetadata ))
+        {
             logger.info( "STORE {}", tarballTarget.getResource() );
             tarballOutputStream.write( Base64.decodeBase64( tarballContent ) );
             return generateTransfers( versionTarget, tarballTarget );
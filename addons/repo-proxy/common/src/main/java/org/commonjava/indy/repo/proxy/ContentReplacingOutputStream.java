@@ -22,64 +22,81 @@ import org.slf4j.LoggerFactory;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
- * This output stream will cache the original stream and do replacing based on the passed
- * in candidates in content of original stream during flushing
+ * This output stream does replacing based on the passed in candidates in content of original stream while it is
+ * written, holding back only the bytes which may still be the start of a candidate. See {@link StreamingContentReplacer}.
  */
 class ContentReplacingOutputStream
         extends ServletOutputStream
 {
     private static final Logger logger = LoggerFactory.getLogger( ContentReplacingOutputStream.class );
 
-    private StringBuffer buffer = new StringBuffer();
-
     private final ServletOutputStream originalStream;
 
-    private final Map<String, String> reposReplacing;
+    private final StreamingContentReplacer replacer;
+
+    private boolean closed;
 
+    /**
+     * @param reposReplacing replace to -&gt; origin, i.e. every origin in the content is replaced with its key
+     */
     ContentReplacingOutputStream( final ServletOutputStream originalStream, final Map<String, String> reposReplacing )
     {
         this.originalStream = originalStream;
-        this.reposReplacing = reposReplacing;
+
+        final Map<String, String> replacing = new LinkedHashMap<>();
+        for ( Map.Entry<String, String> repoReplacing : reposReplacing.entrySet() )
+        {
+            final String replaceTo = repoReplacing.getKey();
+            final String origin = repoReplacing.getValue();
+            logger.trace( "Repository Proxy: Content rewriting: Replacing {} to {}", origin, replaceTo );
+            replacing.put( origin, replaceTo );
+        }
+        this.replacer = new StreamingContentReplacer( originalStream, replacing );
     }
 
     @Override
     public void write( int b )
+            throws IOException
     {
-        buffer.append( (char) b );
+        replacer.write( b );
+    }
+
+    @Override
+    public void write( byte[] b, int off, int len )
+            throws IOException
+    {
+        replacer.write( b, off, len );
     }
 
     @Override
     public void flush()
             throws IOException
     {
-        try
-        {
-            String content = buffer.toString();
-            for ( Map.Entry<String, String> repoReplacing : reposReplacing.entrySet() )
-            {
-                final String replaceTo = repoReplacing.getKey();
-                final String origin = repoReplacing.getValue();
-                logger.trace( "Repository Proxy: Content rewriting: Replacing {} to {}", origin, replaceTo );
-                content = RepoProxyUtils.replaceAllWithNoRegex( content, origin, replaceTo );
-            }
-            originalStream.write( content.getBytes() );
-            originalStream.flush();
-        }
-        finally
-        {
-            buffer = new StringBuffer();
-        }
+        replacer.flush();
     }
 
     @Override
     public void close()
             throws IOException
     {
-        flush();
-        IOUtils.closeQuietly( originalStream, null );
+        if ( closed )
+        {
+            return;
+        }
+        closed = true;
+
+        try
+        {
+            replacer.finish();
+        }
+        finally
+        {
+            IOUtils.closeQuietly( originalStream, null );
+        }
     }
 
     @Override
@@ -56,4 +56,14 @@ public class ContentReplacingResponseWrapper extends HttpServletResponseWrapper
     {
         return this.out;
     }
+
+    /**
+     * Write out the content still held back for replacing and close the stream. The forwarded request does not
+     * always close the output stream itself, so this is called once it is done.
+     */
+    public void finishContent()
+            throws IOException
+    {
+        this.out.close();
+    }
 }
@@ -210,6 +210,10 @@ public class RepoProxyController
         // Here we do not use redirect but forward.
         // doRedirect( (HttpServletResponse)response, proxyTo );
         doForward( httpRequest, decoratedResponse, proxyToPath.get() );
+        if ( decoratedResponse instanceof ContentReplacingResponseWrapper )
+        {
+            ( (ContentReplacingResponseWrapper) decoratedResponse ).finishContent();
+        }
 
         return true;
     }
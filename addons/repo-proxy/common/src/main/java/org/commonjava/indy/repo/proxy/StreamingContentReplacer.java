@@ -0,0 +1,274 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.repo.proxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Replaces several byte patterns in a stream in one pass, using an Aho-Corasick automaton over bytes. Only the bytes
+ * that may still turn out to be the start of a pattern are held back, so at most the length of the longest pattern
+ * minus one bytes are kept between writes, whatever the size of the content.
+ * <p>
+ * A pattern is replaced as soon as its last byte is seen. If patterns overlap, the one that ends first wins, and of
+ * those ending on the same byte the longest. Replacements are written as they are and not scanned again.
+ */
+final class StreamingContentReplacer
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+
+    private final int[][] next;
+
+    private final int[] depth;
+
+    private final int[] match;
+
+    private final byte[][] patterns;
+
+    private final byte[][] replacements;
+
+    private final byte[] window;
+
+    private final byte[] buf = new byte[BUFFER_SIZE];
+
+    private int count;
+
+    private int state;
+
+    /**
+     * @param out where the replaced content goes
+     * @param replacing pattern -&gt; replacement
+     */
+    StreamingContentReplacer( final OutputStream out, final Map<String, String> replacing )
+    {
+        this.out = out;
+
+        final List<byte[]> from = new ArrayList<>();
+        final List<byte[]> to = new ArrayList<>();
+        replacing.forEach( ( pattern, replacement ) -> {
+            if ( pattern != null && !pattern.isEmpty() )
+            {
+                from.add( pattern.getBytes( UTF_8 ) );
+                to.add( replacement == null ? new byte[0] : replacement.getBytes( UTF_8 ) );
+            }
+        } );
+        patterns = from.toArray( new byte[0][] );
+        replacements = to.toArray( new byte[0][] );
+
+        int states = 1;
+        int maxLength = 1;
+        for ( byte[] pattern : patterns )
+        {
+            states += pattern.length;
+            maxLength = Math.max( maxLength, pattern.length );
+        }
+
+        next = new int[states][];
+        depth = new int[states];
+        match = new int[states];
+        window = new byte[maxLength];
+        build( states );
+    }
+
+    void write( final int b )
+            throws IOException
+    {
+        accept( (byte) b );
+    }
+
+    void write( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        final int[] root = next[0];
+        final int end = off + len;
+        int i = off;
+        while ( i < end )
+        {
+            if ( state == 0 )
+            {
+                // copy the run of bytes that cannot start a pattern in one go
+                int run = i;
+                while ( run < end && root[b[run] & 0xff] == 0 )
+                {
+                    run++;
+                }
+                if ( run > i )
+                {
+                    emit( b, i, run - i );
+                    i = run;
+                    continue;
+                }
+            }
+
+            accept( b[i++] );
+        }
+    }
+
+    /**
+     * Writes out everything but the bytes that may still be the start of a pattern.
+     */
+    void flush()
+            throws IOException
+    {
+        drain();
+        out.flush();
+    }
+
+    /**
+     * Writes out everything, including the held back bytes; no more content is expected after this.
+     */
+    void finish()
+            throws IOException
+    {
+        emit( window, 0, depth[state] );
+        state = 0;
+        flush();
+    }
+
+    private void accept( final byte b )
+            throws IOException
+    {
+        final int held = depth[state];
+        window[held] = b;
+
+        final int target = next[state][b & 0xff];
+        final int matched = match[target];
+        if ( matched >= 0 )
+        {
+            emit( window, 0, held + 1 - patterns[matched].length );
+            emit( replacements[matched], 0, replacements[matched].length );
+            state = 0;
+            return;
+        }
+
+        final int keep = depth[target];
+        final int drop = held + 1 - keep;
+        if ( drop > 0 )
+        {
+            emit( window, 0, drop );
+            System.arraycopy( window, drop, window, 0, keep );
+        }
+        state = target;
+    }
+
+    private void emit( final byte[] b, final int off, final int len )
+            throws IOException
+    {
+        if ( len <= 0 )
+        {
+            return;
+        }
+
+        if ( len > buf.length - count )
+        {
+            drain();
+            if ( len >= buf.length )
+            {
+                out.write( b, off, len );
+                return;
+            }
+        }
+
+        System.arraycopy( b, off, buf, count, len );
+        count += len;
+    }
+
+    private void drain()
+            throws IOException
+    {
+        if ( count > 0 )
+        {
+            out.write( buf, 0, count );
+            count = 0;
+        }
+    }
+
+    private void build( final int states )
+    {
+        // trie of the patterns, state 0 is the root
+        final int[][] children = new int[states][];
+        final int[] terminal = new int[states];
+        Arrays.fill( terminal, -1 );
+        int created = 1;
+        for ( int p = 0; p < patterns.length; p++ )
+        {
+            int s = 0;
+            for ( byte c : patterns[p] )
+            {
+                if ( children[s] == null )
+                {
+                    children[s] = new int[256];
+                }
+                final int u = c & 0xff;
+                if ( children[s][u] == 0 )
+                {
+                    depth[created] = depth[s] + 1;
+                    children[s][u] = created++;
+                }
+                s = children[s][u];
+            }
+            if ( terminal[s] < 0 || patterns[terminal[s]].length < patterns[p].length )
+            {
+                terminal[s] = p;
+            }
+        }
+
+        // breadth first, so the failure state of a state is complete before the state itself
+        final int[] fail = new int[created];
+        final Deque<Integer> queue = new ArrayDeque<>();
+        next[0] = children[0] == null ? new int[256] : children[0].clone();
+        match[0] = -1;
+        for ( int u = 0; u < 256; u++ )
+        {
+            if ( next[0][u] != 0 )
+            {
+                queue.add( next[0][u] );
+            }
+        }
+
+        while ( !queue.isEmpty() )
+        {
+            final int s = queue.poll();
+            final int f = fail[s];
+            match[s] = terminal[s] >= 0 ? terminal[s] : match[f];
+
+            next[s] = next[f].clone();
+            if ( children[s] != null )
+            {
+                for ( int u = 0; u < 256; u++ )
+                {
+                    final int child = children[s][u];
+                    if ( child != 0 )
+                    {
+                        fail[child] = next[f][u];
+                        next[s][u] = child;
+                        queue.add( child );
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.repo.proxy;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StreamingContentReplacerTest
+{
+    @Test
+    public void replaceAllPatternsInOnePass()
+            throws IOException
+    {
+        Map<String, String> replacing = new LinkedHashMap<>();
+        replacing.put( "npm/remote/r-npm", "npm/group/g-npm" );
+        replacing.put( "npm:remote:r-npm", "npm:group:g-npm" );
+
+        String content = "npm/remote/r-npm {\"key\": \"npm:remote:r-npm\", \"url\": \"/api/content/npm/remote/r-npm/a.tgz\"}"
+                + " npm/remote/r-np npm/remote/r-npm";
+        String expected = "npm/group/g-npm {\"key\": \"npm:group:g-npm\", \"url\": \"/api/content/npm/group/g-npm/a.tgz\"}"
+                + " npm/remote/r-np npm/group/g-npm";
+
+        assertThat( replace( content, replacing, Integer.MAX_VALUE ), equalTo( expected ) );
+        assertThat( replace( content, replacing, 1 ), equalTo( expected ) );
+        assertThat( replace( content, replacing, 5 ), equalTo( expected ) );
+    }
+
+    @Test
+    public void keepMultiByteContent()
+            throws IOException
+    {
+        Map<String, String> replacing = Collections.singletonMap( "maven/remote/r", "maven/hosted/\u4e2d\u6587" );
+
+        String content = "\u00fcn\u00efc\u00f6d\u00e9 \u2192 maven/remote/r/\u221a maven/remote/\u00fc";
+
+        assertThat( replace( content, replacing, 3 ), equalTo( "\u00fcn\u00efc\u00f6d\u00e9 \u2192 maven/hosted/\u4e2d\u6587/\u221a maven/remote/\u00fc" ) );
+    }
+
+    @Test
+    public void overlappingCandidates()
+            throws IOException
+    {
+        Map<String, String> replacing = new LinkedHashMap<>();
+        replacing.put( "aab", "X" );
+        replacing.put( "abc", "Y" );
+
+        // "aab" ends first, so its "b" is not available for "abc" anymore
+        assertThat( replace( "aaabcabc", replacing, 2 ), equalTo( "aXcY" ) );
+    }
+
+    private String replace( final String content, final Map<String, String> replacing, final int chunk )
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingContentReplacer replacer = new StreamingContentReplacer( out, replacing );
+
+        byte[] bytes = content.getBytes( UTF_8 );
+        for ( int i = 0; i < bytes.length; i += chunk )
+        {
+            int len = Math.min( chunk, bytes.length - i );
+            if ( len == 1 )
+            {
+                replacer.write( bytes[i] );
+            }
+            else
+            {
+                replacer.write( bytes, i, len );
+            }
+            replacer.flush();
+        }
+        replacer.finish();
+
+        return new String( out.toByteArray(), UTF_8 );
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.schedule;
+
+import org.commonjava.indy.schedule.datastax.model.DtxExpiration;
+import org.commonjava.indy.schedule.datastax.model.DtxSchedule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Expires the schedules of an expiration partition a page at a time, instead of reading and updating them one by one:
+ * <ol>
+ *     <li>the due expirations of the page are grouped by store, and the schedules of each store are read with one
+ *     asynchronous query per batch, all of them in flight together</li>
+ *     <li>the schedules that are still current (not expired, and with the uid of the expiration) are marked expired
+ *     with one asynchronous batch per store</li>
+ *     <li>the trigger events of the schedules marked expired are handed to the workers</li>
+ * </ol>
+ * A schedule is triggered only once it is marked expired, so a failed update leaves it for the next scan. The
+ * backend is expected to read the next page while one is processed.
+ */
+final class ExpirationProcessor
+{
+    /**
+     * Storage of the schedules and expirations.
+     */
+    interface Backend
+    {
+        /**
+         * Pass the expirations of the partition to pages, at most pageSize at a time.
+         */
+        void scan( long expirationPid, int pageSize, Consumer<List<DtxExpiration>> pages );
+
+        /**
+         * Read the schedules of the store with the given job names. Missing schedules are left out.
+         */
+        CompletableFuture<List<DtxSchedule>> fetchSchedules( String storeKey, List<String> jobNames );
+
+        /**
+         * Mark the schedules of the store with the given job names expired.
+         */
+        CompletableFuture<Void> markExpired( String storeKey, List<String> jobNames );
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Backend backend;
+
+    private final Consumer<DtxSchedule> trigger;
+
+    private final Executor workers;
+
+    private final int pageSize;
+
+    private final int batchSize;
+
+    private final LongSupplier clock;
+
+    // expiration time -> number of schedules due then that are not triggered yet
+    private final ConcurrentNavigableMap<Long, Integer> unprocessed = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong scans = new AtomicLong();
+
+    private final AtomicLong pages = new AtomicLong();
+
+    private final AtomicLong scanned = new AtomicLong();
+
+    private final AtomicLong queries = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong expired = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong lastScanMillis = new AtomicLong();
+
+    private final AtomicLong lastScanLagMillis = new AtomicLong();
+
+    ExpirationProcessor( final Backend backend, final Consumer<DtxSchedule> trigger, final Executor workers,
+                         final int pageSize, final int batchSize )
+    {
+        this( backend, trigger, workers, pageSize, batchSize, System::currentTimeMillis );
+    }
+
+    ExpirationProcessor( final Backend backend, final Consumer<DtxSchedule> trigger, final Executor workers,
+                         final int pageSize, final int batchSize, final LongSupplier clock )
+    {
+        this.backend = backend;
+        this.trigger = trigger;
+        this.workers = workers;
+        this.pageSize = Math.max( 1, pageSize );
+        this.batchSize = Math.max( 1, batchSize );
+        this.clock = clock;
+    }
+
+    /**
+     * Expire the schedules of the partition whose expiration time has passed.
+     */
+    void process( final long expirationPid )
+    {
+        final long start = clock.getAsLong();
+        final AtomicLong oldestDue = new AtomicLong( Long.MAX_VALUE );
+
+        backend.scan( expirationPid, pageSize, page -> processPage( page, oldestDue ) );
+
+        scans.incrementAndGet();
+        lastScanMillis.set( clock.getAsLong() - start );
+        lastScanLagMillis.set( oldestDue.get() == Long.MAX_VALUE ? 0 : Math.max( 0, start - oldestDue.get() ) );
+    }
+
+    Map<String, Long> getMetrics()
+    {
+        final Map.Entry<Long, Integer> oldest = unprocessed.firstEntry();
+
+        final Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "scans", scans.get() );
+        metrics.put( "pages", pages.get() );
+        metrics.put( "scanned", scanned.get() );
+        metrics.put( "queries", queries.get() );
+        metrics.put( "skipped", skipped.get() );
+        metrics.put( "expired", expired.get() );
+        metrics.put( "failures", failures.get() );
+        metrics.put( "unprocessed", (long) unprocessed.values().stream().mapToInt( Integer::intValue ).sum() );
+        metrics.put( "oldest.unprocessed.lag.millis",
+                     oldest == null ? 0 : Math.max( 0, clock.getAsLong() - oldest.getKey() ) );
+        metrics.put( "last.scan.millis", lastScanMillis.get() );
+        metrics.put( "last.scan.lag.millis", lastScanLagMillis.get() );
+        return metrics;
+    }
+
+    private void processPage( final List<DtxExpiration> page, final AtomicLong oldestDue )
+    {
+        pages.incrementAndGet();
+        scanned.addAndGet( page.size() );
+
+        final long now = clock.getAsLong();
+        final Map<String, Map<String, DtxExpiration>> due = new LinkedHashMap<>();
+        for ( final DtxExpiration expiration : page )
+        {
+            if ( expiration.getExpirationTime().getTime() < now )
+            {
+                due.computeIfAbsent( expiration.getStorekey(), k -> new LinkedHashMap<>() )
+                   .put( expiration.getJobName(), expiration );
+            }
+        }
+
+        if ( due.isEmpty() )
+        {
+            return;
+        }
+
+        // all the reads of the page are in flight together
+        final List<Batch> batches = new ArrayList<>();
+        due.forEach( ( storeKey, expirations ) -> {
+            final List<String> jobNames = new ArrayList<>( expirations.keySet() );
+            for ( int i = 0; i < jobNames.size(); i += batchSize )
+            {
+                final Batch batch = new Batch( storeKey, expirations,
+                                               jobNames.subList( i, Math.min( jobNames.size(), i + batchSize ) ) );
+                batch.read = backend.fetchSchedules( storeKey, batch.jobNames );
+                queries.incrementAndGet();
+                batches.add( batch );
+            }
+        } );
+
+        for ( final Batch batch : batches )
+        {
+            if ( !await( batch.read, batch, "read" ) )
+            {
+                continue;
+            }
+
+            for ( final DtxSchedule schedule : batch.read.join() )
+            {
+                final DtxExpiration expiration = batch.expirations.get( schedule.getJobName() );
+                if ( expiration != null && isCurrent( schedule, expiration.getScheduleUID() ) )
+                {
+                    batch.current.add( schedule );
+                    track( expiration );
+                    oldestDue.accumulateAndGet( expiration.getExpirationTime().getTime(), Math::min );
+                }
+            }
+            skipped.addAndGet( batch.jobNames.size() - batch.current.size() );
+
+            if ( !batch.current.isEmpty() )
+            {
+                final List<String> jobNames = new ArrayList<>( batch.current.size() );
+                batch.current.forEach( schedule -> jobNames.add( schedule.getJobName() ) );
+                batch.update = backend.markExpired( batch.storeKey, jobNames );
+            }
+        }
+
+        for ( final Batch batch : batches )
+        {
+            if ( batch.update == null )
+            {
+                continue;
+            }
+
+            final boolean updated = await( batch.update, batch, "update" );
+            for ( final DtxSchedule schedule : batch.current )
+            {
+                final DtxExpiration expiration = batch.expirations.get( schedule.getJobName() );
+                if ( updated )
+                {
+                    workers.execute( () -> fire( schedule, expiration ) );
+                }
+                else
+                {
+                    untrack( expiration );
+                }
+            }
+        }
+    }
+
+    private void fire( final DtxSchedule schedule, final DtxExpiration expiration )
+    {
+        try
+        {
+            logger.debug( "Expired entry: {}", schedule );
+            trigger.accept( schedule );
+            expired.incrementAndGet();
+        }
+        catch ( RuntimeException e )
+        {
+            failures.incrementAndGet();
+            logger.warn( "Failed to trigger expired schedule: {}. Reason: {}", schedule, e.getMessage() );
+        }
+        finally
+        {
+            untrack( expiration );
+        }
+    }
+
+    private boolean await( final CompletableFuture<?> future, final Batch batch, final String operation )
+    {
+        try
+        {
+            future.join();
+            return true;
+        }
+        catch ( CompletionException | CancellationException e )
+        {
+            failures.incrementAndGet();
+            logger.warn( "Failed to {} {} expired schedules of {}. Reason: {}", operation, batch.jobNames.size(),
+                         batch.storeKey, e.getMessage() );
+            return false;
+        }
+    }
+
+    private static boolean isCurrent( final DtxSchedule schedule, final UUID scheduleUID )
+    {
+        return !Boolean.TRUE.equals( schedule.getExpired() ) && schedule.getScheduleUID() != null
+                && schedule.getScheduleUID().equals( scheduleUID );
+    }
+
+    private void track( final DtxExpiration expiration )
+    {
+        unprocessed.merge( expiration.getExpirationTime().getTime(), 1, Integer::sum );
+    }
+
+    private void untrack( final DtxExpiration expiration )
+    {
+        unprocessed.computeIfPresent( expiration.getExpirationTime().getTime(),
+                                      ( time, count ) -> count > 1 ? count - 1 : null );
+    }
+
+    private static final class Batch
+    {
+        private final String storeKey;
+
+        private final Map<String, DtxExpiration> expirations;
+
+        private final List<String> jobNames;
+
+        private final List<DtxSchedule> current = new ArrayList<>();
+
+        private CompletableFuture<List<DtxSchedule>> read;
+
+        private CompletableFuture<Void> update;
+
+        private Batch( final String storeKey, final Map<String, DtxExpiration> expirations,
+                       final List<String> jobNames )
+        {
+            this.storeKey = storeKey;
+            this.expirations = expirations;
+            this.jobNames = jobNames;
+        }
+    }
+}
@@ -15,14 +15,19 @@
  */
 package org.commonjava.indy.schedule;
 
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
 import com.datastax.driver.mapping.Mapper;
 import com.datastax.driver.mapping.MappingManager;
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.schedule.conf.ScheduleDBConfig;
 import org.commonjava.indy.schedule.datastax.model.DtxExpiration;
@@ -39,17 +44,28 @@ import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @ApplicationScoped
 public class ScheduleDB
@@ -82,6 +98,8 @@ public class ScheduleDB
 
     private PreparedStatement preparedSingleScheduleQuery;
 
+    private PreparedStatement preparedSchedulesOfStoreQuery;
+
     private PreparedStatement preparedExpiredUpdate;
 
     private PreparedStatement preparedScheduleByTypeQuery;
@@ -90,8 +108,14 @@ public class ScheduleDB
 
     private PreparedStatement preparedScheduleByStoreKeyAndTypeQuery;
 
+    private PreparedStatement preparedScheduleInsert;
+
+    private PreparedStatement preparedExpirationInsert;
+
     ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
 
+    private ExpirationProcessor expirationProcessor;
+
     public ScheduleDB() {}
 
     public ScheduleDB( IndyConfiguration indyConfig, ScheduleDBConfig config, CassandraClient client, CacheProducer cacheProducer )
@@ -130,6 +154,11 @@ public class ScheduleDB
                                         + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
                                         + " WHERE storekey = ? and  jobname = ?" );
 
+        preparedSchedulesOfStoreQuery = session.prepare(
+                        "SELECT storekey, jobtype, jobname, scheduletime, scheduleuid, payload, lifespan, expired FROM "
+                                        + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
+                                        + " WHERE storekey = ? and jobname IN ?" );
+
         preparedExpiredUpdate = session.prepare( "UPDATE " + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
                                                                  + " SET expired = true WHERE  storekey = ? and  jobname = ?" );
 
@@ -148,6 +177,34 @@ public class ScheduleDB
                                         + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
                                         + " WHERE storekey = ? " );
 
+        preparedScheduleInsert = session.prepare( "INSERT INTO " + keyspace + "." + ScheduleDBUtil.TABLE_SCHEDULE
+                                                                  + " (storekey, jobname, jobtype, scheduletime, scheduleuid, payload, lifespan, expired)"
+                                                                  + " VALUES (?, ?, ?, ?, ?, ?, ?, false) USING TIMESTAMP ?" );
+
+        preparedExpirationInsert = session.prepare( "INSERT INTO " + keyspace + "." + ScheduleDBUtil.TABLE_EXPIRATION
+                                                                    + " (expirationpid, storekey, jobname, scheduleuid, expirationtime)"
+                                                                    + " VALUES (?, ?, ?, ?, ?) USING TIMESTAMP ?" );
+
+        if ( expirationProcessor != null )
+        {
+            // reconnected, the expiration checking is already running
+            return;
+        }
+
+        int workers = Math.max( 1, config.getExpirationWorkers() );
+        ThreadPoolExecutor triggerExecutor = new ThreadPoolExecutor( workers, workers, 0L, TimeUnit.MILLISECONDS,
+                                                                     new ArrayBlockingQueue<>( Math.max( 1, config.getExpirationPageSize() ) ),
+                                                                     new NamedThreadFactory( "schedule-expiration-trigger",
+                                                                                             new ThreadGroup( "schedule-expiration-trigger" ),
+                                                                                             true, 4 ),
+                                                                     new ThreadPoolExecutor.CallerRunsPolicy() );
+        expirationProcessor = new ExpirationProcessor( new CassandraExpirationBackend(),
+                                                       schedule -> eventDispatcher.fire(
+                                                                       new ScheduleTriggerEvent( schedule.getJobType(),
+                                                                                                 schedule.getPayload() ) ),
+                                                       triggerExecutor, config.getExpirationPageSize(),
+                                                       config.getExpirationBatchSize() );
+
         StrongCounter remoteCounter = cacheProducer.getStrongCounter( "scheduleCounter" );
         AtomicLong localCounter = new AtomicLong( 0 );
         if ( remoteCounter != null )
@@ -212,6 +269,107 @@ public class ScheduleDB
 
     }
 
+    /**
+     * Write schedules whose expiration was computed by the caller, as asynchronous unlogged batches of at most
+     * batchSize rows per partition. The expiration time of each schedule is its schedule time plus its lifespan.
+     * <p>
+     * Writes are idempotent: the schedule uid is derived from (storeKey, jobName, expiration time) and every row is
+     * written with the timestamp of its schedule time, so writing the same schedule twice, from one node or several,
+     * yields the same rows, and a schedule started earlier never overwrites one started later, in whatever order the
+     * writes arrive. The expiration rows are written first, so a schedule row never refers to a missing expiration.
+     *
+     * @return the schedules that failed to be written
+     */
+    public Collection<DtxSchedule> createSchedules( Collection<DtxSchedule> schedules, int batchSize )
+    {
+        Map<Long, List<DtxSchedule>> byExpirationPid = new LinkedHashMap<>();
+        for ( DtxSchedule schedule : schedules )
+        {
+            schedule.setScheduleUID( scheduleUID( schedule.getStoreKey(), schedule.getJobName(),
+                                                  getExpirationTime( schedule ) ) );
+            byExpirationPid.computeIfAbsent( calculateExpirationPID( getExpirationTime( schedule ) ),
+                                             k -> new ArrayList<>() ).add( schedule );
+        }
+
+        Set<DtxSchedule> failed = new HashSet<>();
+        executeBatches( byExpirationPid, batchSize, failed, schedule -> {
+            Date expirationTime = getExpirationTime( schedule );
+            return preparedExpirationInsert.bind( calculateExpirationPID( expirationTime ), schedule.getStoreKey(),
+                                                  schedule.getJobName(), schedule.getScheduleUID(), expirationTime,
+                                                  toWriteTimestamp( schedule ) );
+        } );
+
+        Map<String, List<DtxSchedule>> byStoreKey = new LinkedHashMap<>();
+        for ( DtxSchedule schedule : schedules )
+        {
+            if ( !failed.contains( schedule ) )
+            {
+                byStoreKey.computeIfAbsent( schedule.getStoreKey(), k -> new ArrayList<>() ).add( schedule );
+            }
+        }
+
+        executeBatches( byStoreKey, batchSize, failed,
+                        schedule -> preparedScheduleInsert.bind( schedule.getStoreKey(), schedule.getJobName(),
+                                                                 schedule.getJobType(), schedule.getScheduleTime(),
+                                                                 schedule.getScheduleUID(), schedule.getPayload(),
+                                                                 schedule.getLifespan(),
+                                                                 toWriteTimestamp( schedule ) ) );
+
+        return failed;
+    }
+
+    public static UUID scheduleUID( String storeKey, String jobName, Date expirationTime )
+    {
+        return UUID.nameUUIDFromBytes(
+                        ( storeKey + "#" + jobName + "#" + expirationTime.getTime() ).getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    private <K> void executeBatches( Map<K, List<DtxSchedule>> partitions, int batchSize, Set<DtxSchedule> failed,
+                                     Function<DtxSchedule, BoundStatement> binder )
+    {
+        if ( session == null || session.isClosed() )
+        {
+            client.close();
+            client.init();
+            this.init();
+        }
+
+        int size = Math.max( 1, batchSize );
+        Map<ResultSetFuture, List<DtxSchedule>> pending = new LinkedHashMap<>();
+        partitions.values().forEach( partition -> {
+            for ( int i = 0; i < partition.size(); i += size )
+            {
+                List<DtxSchedule> chunk = partition.subList( i, Math.min( partition.size(), i + size ) );
+                BatchStatement batch = new BatchStatement( BatchStatement.Type.UNLOGGED );
+                batch.setConsistencyLevel( ConsistencyLevel.QUORUM );
+                chunk.forEach( schedule -> batch.add( binder.apply( schedule ) ) );
+                pending.put( session.executeAsync( batch ), chunk );
+            }
+        } );
+
+        pending.forEach( ( future, chunk ) -> {
+            try
+            {
+                future.getUninterruptibly();
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to write {} schedules. Reason: {}", chunk.size(), e.getMessage() );
+                failed.addAll( chunk );
+            }
+        } );
+    }
+
+    private Date getExpirationTime( DtxSchedule schedule )
+    {
+        return calculateExpirationTime( schedule.getScheduleTime(), schedule.getLifespan() );
+    }
+
+    private static long toWriteTimestamp( DtxSchedule schedule )
+    {
+        return schedule.getScheduleTime().getTime() * 1000;
+    }
+
     private Long calculateExpirationPID( Date date )
     {
         return date.getTime() / config.getPartitionKeyRange();
@@ -249,25 +407,22 @@ public class ScheduleDB
         return expirations;
     }
 
+    /**
+     * Mark the schedules of the expiration partition of the date that are due expired, and fire their trigger events.
+     * See {@link ExpirationProcessor}.
+     */
     public void queryAndSetExpiredSchedule( Date date )
     {
-        Collection<DtxExpiration> expirations = queryExpirations( date );
-        expirations.forEach( expiration -> {
-            if ( expiration.getExpirationTime().before( new Date() ) )
-            {
-                DtxSchedule schedule = querySchedule( expiration.getStorekey(), expiration.getJobName() );
-
-                if ( schedule != null && !schedule.getExpired() && schedule.getScheduleUID()
-                                                                           .equals( expiration.getScheduleUID() ) )
-                {
-                    BoundStatement boundU = preparedExpiredUpdate.bind( schedule.getStoreKey(), schedule.getJobName() );
-                    executeSession( boundU );
+        expirationProcessor.process( calculateExpirationPID( date ) );
+    }
 
-                    logger.debug( "Expired entry: {}", schedule );
-                    eventDispatcher.fire( new ScheduleTriggerEvent( schedule.getJobType(), schedule.getPayload() ) );
-                }
-            }
-        } );
+    /**
+     * Counters of the expiration processing, including how far it is behind: the age of the oldest due schedule
+     * not triggered yet, and of the oldest due schedule found by the last scan.
+     */
+    public Map<String, Long> getExpirationMetrics()
+    {
+        return expirationProcessor == null ? new LinkedHashMap<>() : expirationProcessor.getMetrics();
     }
 
     public Collection<DtxSchedule> querySchedulesByJobType( String jobType )
@@ -343,6 +498,30 @@ public class ScheduleDB
         return null;
     }
 
+    private <T> CompletableFuture<T> executeAsync( Statement statement, Function<ResultSet, T> mapper )
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try
+        {
+            ResultSetFuture future = session.executeAsync( statement );
+            future.addListener( () -> {
+                try
+                {
+                    result.complete( mapper.apply( future.getUninterruptibly() ) );
+                }
+                catch ( RuntimeException e )
+                {
+                    result.completeExceptionally( e );
+                }
+            }, Runnable::run );
+        }
+        catch ( RuntimeException e )
+        {
+            result.completeExceptionally( e );
+        }
+        return result;
+    }
+
     private ResultSet executeSession ( BoundStatement bind )
     {
         boolean exception = false;
@@ -374,4 +553,51 @@ public class ScheduleDB
         }
         return trackingRecord;
     }
+
+    private final class CassandraExpirationBackend
+            implements ExpirationProcessor.Backend
+    {
+        @Override
+        public void scan( long expirationPid, int pageSize, Consumer<List<DtxExpiration>> pages )
+        {
+            BoundStatement bound = preparedExpiredQuery.bind( expirationPid );
+            bound.setFetchSize( pageSize );
+            ResultSet resultSet = executeSession( bound );
+            while ( !resultSet.isExhausted() )
+            {
+                int available = resultSet.getAvailableWithoutFetching();
+                if ( !resultSet.isFullyFetched() )
+                {
+                    // read the next page while this one is processed
+                    resultSet.fetchMoreResults();
+                }
+
+                List<DtxExpiration> page = new ArrayList<>( available );
+                for ( int i = 0; i < available; i++ )
+                {
+                    page.add( toDtxExpiration( resultSet.one() ) );
+                }
+                pages.accept( page );
+            }
+        }
+
+        @Override
+        public CompletableFuture<List<DtxSchedule>> fetchSchedules( String storeKey, List<String> jobNames )
+        {
+            return executeAsync( preparedSchedulesOfStoreQuery.bind( storeKey, jobNames ), resultSet -> {
+                List<DtxSchedule> schedules = new ArrayList<>( jobNames.size() );
+                resultSet.forEach( row -> schedules.add( toDtxSchedule( row ) ) );
+                return schedules;
+            } );
+        }
+
+        @Override
+        public CompletableFuture<Void> markExpired( String storeKey, List<String> jobNames )
+        {
+            // all the rows are in the partition of the store
+            BatchStatement batch = new BatchStatement( BatchStatement.Type.UNLOGGED );
+            jobNames.forEach( jobName -> batch.add( preparedExpiredUpdate.bind( storeKey, jobName ) ) );
+            return executeAsync( batch, resultSet -> null );
+        }
+    }
 }
@@ -29,6 +29,18 @@ import java.util.Properties;
 public class ScheduleDBConfig implements IndyConfigInfo
 {
 
+    public static final int DEFAULT_RESCHEDULE_SLACK_SECONDS = 300;
+
+    public static final int DEFAULT_RESCHEDULE_FLUSH_PERIOD_SECONDS = 10;
+
+    public static final int DEFAULT_RESCHEDULE_BATCH_SIZE = 20;
+
+    public static final int DEFAULT_EXPIRATION_PAGE_SIZE = 500;
+
+    public static final int DEFAULT_EXPIRATION_BATCH_SIZE = 50;
+
+    public static final int DEFAULT_EXPIRATION_WORKERS = 4;
+
     private String scheduleKeyspace;
 
     private int replicationFactor;
@@ -41,6 +53,18 @@ public class ScheduleDBConfig implements IndyConfigInfo
 
     private Boolean enabled;
 
+    private Integer rescheduleSlackSeconds;
+
+    private Integer rescheduleFlushPeriodSeconds;
+
+    private Integer rescheduleBatchSize;
+
+    private Integer expirationPageSize;
+
+    private Integer expirationBatchSize;
+
+    private Integer expirationWorkers;
+
     public ScheduleDBConfig () {}
 
     public ScheduleDBConfig( String keyspace, int replicationFactor, long partitionKeyRange, long period )
@@ -94,6 +118,87 @@ public class ScheduleDBConfig implements IndyConfigInfo
         this.offsetHours = offsetHours;
     }
 
+    /**
+     * Access-driven expiration updates that would move an expiration by less than this are dropped, and written
+     * expirations are rounded up to a multiple of it. Zero writes every access through directly.
+     */
+    public int getRescheduleSlackSeconds()
+    {
+        return rescheduleSlackSeconds == null ? DEFAULT_RESCHEDULE_SLACK_SECONDS : rescheduleSlackSeconds;
+    }
+
+    @ConfigName( "schedule.reschedule.slack.seconds" )
+    public void setRescheduleSlackSeconds( Integer rescheduleSlackSeconds )
+    {
+        this.rescheduleSlackSeconds = rescheduleSlackSeconds;
+    }
+
+    public int getRescheduleFlushPeriodSeconds()
+    {
+        return rescheduleFlushPeriodSeconds == null ?
+                        DEFAULT_RESCHEDULE_FLUSH_PERIOD_SECONDS :
+                        rescheduleFlushPeriodSeconds;
+    }
+
+    @ConfigName( "schedule.reschedule.flush.period.seconds" )
+    public void setRescheduleFlushPeriodSeconds( Integer rescheduleFlushPeriodSeconds )
+    {
+        this.rescheduleFlushPeriodSeconds = rescheduleFlushPeriodSeconds;
+    }
+
+    public int getRescheduleBatchSize()
+    {
+        return rescheduleBatchSize == null ? DEFAULT_RESCHEDULE_BATCH_SIZE : rescheduleBatchSize;
+    }
+
+    @ConfigName( "schedule.reschedule.batch.size" )
+    public void setRescheduleBatchSize( Integer rescheduleBatchSize )
+    {
+        this.rescheduleBatchSize = rescheduleBatchSize;
+    }
+
+    /**
+     * Number of expiration rows read per page while scanning an expiration partition.
+     */
+    public int getExpirationPageSize()
+    {
+        return expirationPageSize == null ? DEFAULT_EXPIRATION_PAGE_SIZE : expirationPageSize;
+    }
+
+    @ConfigName( "schedule.expiration.page.size" )
+    public void setExpirationPageSize( Integer expirationPageSize )
+    {
+        this.expirationPageSize = expirationPageSize;
+    }
+
+    /**
+     * Maximum number of schedules of one store read or marked expired by one statement.
+     */
+    public int getExpirationBatchSize()
+    {
+        return expirationBatchSize == null ? DEFAULT_EXPIRATION_BATCH_SIZE : expirationBatchSize;
+    }
+
+    @ConfigName( "schedule.expiration.batch.size" )
+    public void setExpirationBatchSize( Integer expirationBatchSize )
+    {
+        this.expirationBatchSize = expirationBatchSize;
+    }
+
+    /**
+     * Number of threads firing the trigger events of expired schedules.
+     */
+    public int getExpirationWorkers()
+    {
+        return expirationWorkers == null ? DEFAULT_EXPIRATION_WORKERS : expirationWorkers;
+    }
+
+    @ConfigName( "schedule.expiration.workers" )
+    public void setExpirationWorkers( Integer expirationWorkers )
+    {
+        this.expirationWorkers = expirationWorkers;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
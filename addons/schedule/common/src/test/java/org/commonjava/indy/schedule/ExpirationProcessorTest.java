@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.schedule;
+
+import org.commonjava.indy.schedule.datastax.model.DtxExpiration;
+import org.commonjava.indy.schedule.datastax.model.DtxSchedule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Runs {@link ExpirationProcessor} against schedules kept in memory, in place of cassandra.
+ */
+public class ExpirationProcessorTest
+{
+    private static final long PID = 1L;
+
+    private final AtomicLong now = new AtomicLong( 10000000L );
+
+    private final LocalBackend backend = new LocalBackend();
+
+    private final Set<String> triggered = new HashSet<>();
+
+    @Test
+    public void expireDueSchedulesInBatches()
+    {
+        for ( int i = 0; i < 120; i++ )
+        {
+            backend.add( "maven:remote:central", "org/foo/" + i, now.get() - 1000 - i );
+        }
+        backend.add( "maven:hosted:local", "due", now.get() - 1000 );
+        backend.add( "maven:hosted:local", "later", now.get() + 60000 );
+        backend.add( "maven:hosted:local", "expired", now.get() - 1000 ).setExpired( true );
+        backend.add( "maven:hosted:local", "rescheduled", now.get() - 1000 ).setScheduleUID( UUID.randomUUID() );
+
+        ExpirationProcessor processor = processor( Runnable::run );
+        processor.process( PID );
+
+        assertThat( triggered.size(), equalTo( 121 ) );
+        assertThat( triggered.contains( "maven:hosted:local#due" ), equalTo( true ) );
+        assertThat( backend.schedules.get( "maven:hosted:local#later" ).getExpired(), equalTo( false ) );
+        assertThat( backend.schedules.get( "maven:hosted:local#rescheduled" ).getExpired(), equalTo( false ) );
+
+        // pages of 100: 2 reads of central for the first, 1 of central and 1 of local for the second
+        assertThat( backend.reads, equalTo( 4 ) );
+        assertThat( processor.getMetrics().get( "pages" ), equalTo( 2L ) );
+        assertThat( processor.getMetrics().get( "expired" ), equalTo( 121L ) );
+        assertThat( processor.getMetrics().get( "skipped" ), equalTo( 2L ) );
+        assertThat( processor.getMetrics().get( "last.scan.lag.millis" ), equalTo( 1119L ) );
+
+        // nothing left to do
+        triggered.clear();
+        processor.process( PID );
+        assertThat( triggered.size(), equalTo( 0 ) );
+    }
+
+    @Test
+    public void retryFailedUpdateOnNextScan()
+    {
+        backend.add( "maven:remote:central", "org/foo", now.get() - 1000 );
+        backend.add( "maven:hosted:local", "org/bar", now.get() - 1000 );
+        backend.failUpdatesOf = "maven:remote:central";
+
+        ExpirationProcessor processor = processor( Runnable::run );
+        processor.process( PID );
+
+        assertThat( triggered, equalTo( setOf( "maven:hosted:local#org/bar" ) ) );
+        assertThat( processor.getMetrics().get( "failures" ), equalTo( 1L ) );
+        assertThat( processor.getMetrics().get( "unprocessed" ), equalTo( 0L ) );
+
+        backend.failUpdatesOf = null;
+        processor.process( PID );
+
+        assertThat( triggered, equalTo( setOf( "maven:hosted:local#org/bar", "maven:remote:central#org/foo" ) ) );
+    }
+
+    @Test
+    public void reportOldestUnprocessedExpiration()
+    {
+        backend.add( "maven:remote:central", "org/foo", now.get() - 5000 );
+        backend.add( "maven:remote:central", "org/bar", now.get() - 2000 );
+
+        List<Runnable> queued = new ArrayList<>();
+        ExpirationProcessor processor = processor( queued::add );
+        processor.process( PID );
+
+        now.addAndGet( 1000 );
+        assertThat( processor.getMetrics().get( "unprocessed" ), equalTo( 2L ) );
+        assertThat( processor.getMetrics().get( "oldest.unprocessed.lag.millis" ), equalTo( 6000L ) );
+
+        queued.forEach( Runnable::run );
+        assertThat( triggered.size(), equalTo( 2 ) );
+        assertThat( processor.getMetrics().get( "unprocessed" ), equalTo( 0L ) );
+        assertThat( processor.getMetrics().get( "oldest.unprocessed.lag.millis" ), equalTo( 0L ) );
+    }
+
+    private ExpirationProcessor processor( final Executor workers )
+    {
+        return new ExpirationProcessor( backend,
+                                        schedule -> triggered.add( schedule.getStoreKey() + "#" + schedule.getJobName() ),
+                                        workers, 100, 50, now::get );
+    }
+
+    private static Set<String> setOf( final String... values )
+    {
+        Set<String> set = new HashSet<>();
+        for ( String value : values )
+        {
+            set.add( value );
+        }
+        return set;
+    }
+
+    private static final class LocalBackend
+            implements ExpirationProcessor.Backend
+    {
+        private final Map<String, DtxSchedule> schedules = new LinkedHashMap<>();
+
+        private final List<DtxExpiration> expirations = new ArrayList<>();
+
+        private String failUpdatesOf;
+
+        private int reads;
+
+        private DtxSchedule add( final String storeKey, final String jobName, final long expiration )
+        {
+            UUID uid = UUID.randomUUID();
+            DtxSchedule schedule = new DtxSchedule( storeKey, "CONTENT", jobName, uid, new Date( expiration - 60000 ),
+                                                    "payload", 60L );
+            schedule.setExpired( false );
+            schedules.put( storeKey + "#" + jobName, schedule );
+            expirations.add( new DtxExpiration( PID, uid, new Date( expiration ), storeKey, jobName ) );
+            return schedule;
+        }
+
+        @Override
+        public void scan( final long expirationPid, final int pageSize, final Consumer<List<DtxExpiration>> pages )
+        {
+            for ( int i = 0; i < expirations.size(); i += pageSize )
+            {
+                pages.accept( new ArrayList<>( expirations.subList( i, Math.min( expirations.size(), i + pageSize ) ) ) );
+            }
+        }
+
+        @Override
+        public CompletableFuture<List<DtxSchedule>> fetchSchedules( final String storeKey, final List<String> jobNames )
+        {
+            reads++;
+            List<DtxSchedule> found = new ArrayList<>();
+            jobNames.forEach( jobName -> {
+                DtxSchedule schedule = schedules.get( storeKey + "#" + jobName );
+                if ( schedule != null )
+                {
+                    found.add( schedule );
+                }
+            } );
+            return CompletableFuture.completedFuture( found );
+        }
+
+        @Override
+        public CompletableFuture<Void> markExpired( final String storeKey, final List<String> jobNames )
+        {
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            if ( storeKey.equals( failUpdatesOf ) )
+            {
+                result.completeExceptionally( new IllegalStateException( "Write timeout" ) );
+                return result;
+            }
+
+            jobNames.forEach( jobName -> schedules.get( storeKey + "#" + jobName ).setExpired( true ) );
+            result.complete( null );
+            return result;
+        }
+    }
+}
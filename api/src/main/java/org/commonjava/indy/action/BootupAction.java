@@ -15,6 +15,8 @@
  */
 package org.commonjava.indy.action;
 
+import java.util.Collection;
+
 /**
  * Performs some sort of service/subsystem bootup just before Indy is preparing to run.
  */
@@ -34,4 +36,13 @@ public interface BootupAction
      */
     int getBootPriority();
 
+    /**
+     * Ids of the actions that must be done before this one. When given, the action runs on its own as soon as they
+     * are, see {@link IndyLifecycleManager#start()}; by default it runs in priority order.
+     */
+    default Collection<String> getBootDependencies()
+    {
+        return null;
+    }
+
 }
@@ -19,13 +19,19 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import org.commonjava.indy.spi.IndyMetricsSource;
 import org.commonjava.indy.stats.IndyVersioning;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,10 +44,15 @@ import org.slf4j.LoggerFactory;
  */
 @ApplicationScoped
 public class IndyLifecycleManager
+    implements IndyMetricsSource
 {
 
+    public static final String METRICS_NAME = "startup";
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
+    private static final int LIFECYCLE_THREADS = 4;
+
     @Inject
     private IndyVersioning versioning;
 
@@ -79,6 +90,8 @@ public class IndyLifecycleManager
 
     private Iterable<ShutdownAction> shutdownActionInstances;
 
+    private volatile LifecycleActionScheduler scheduler;
+
     protected IndyLifecycleManager()
     {
     }
@@ -131,6 +144,10 @@ public class IndyLifecycleManager
      *   <li>Run all {@link MigrationAction} instances, with highest priority executing first.</li>
      *   <li>Run all {@link StartupAction} instances, with highest priority executing first.</li>
      * </ul>
+     * Actions that declare their dependencies (eg. {@link StartupAction#getStartupDependencies()}) run on a small
+     * pool as soon as those are done, instead of in priority order. Lower priority actions of the same phase that
+     * declare none still wait for them, but the later phases do not. Indy is ready when all the actions are done.
+     * The timing of each action is kept in {@link #getStartupReport()}, and published as the "startup" metrics.
      * @throws IndyLifecycleException
      */
     public void start()
@@ -140,11 +157,28 @@ public class IndyLifecycleManager
                      versioning.getVersion(), versioning.getBuilder(), versioning.getCommitId(),
                      versioning.getTimestamp() );
 
-        runBootupActions();
-        runMigrationActions();
-        runStartupActions();
+        final AtomicInteger threads = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool( LIFECYCLE_THREADS, r -> {
+            Thread t = new Thread( r, "indy-lifecycle-" + threads.incrementAndGet() );
+            t.setDaemon( true );
+            return t;
+        } );
+        scheduler = new LifecycleActionScheduler( executor );
+        try
+        {
+            runBootupActions();
+            runMigrationActions();
+            runStartupActions();
+            scheduler.await();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
 
-        logger.info( "...done. Indy is ready to run." );
+        final StartupReport report = scheduler.report();
+        logger.info( "...done. Indy is ready to run. Startup took {}ms, critical path ({}ms): {}",
+                     report.getTotalMillis(), report.getCriticalPathMillis(), report.getCriticalPath() );
 
         if ( lifecycleEvents == null )
         {
@@ -157,6 +191,46 @@ public class IndyLifecycleManager
         }
     }
 
+    /**
+     * Timing of the actions run by {@link #start()}, or null if it was not called.
+     */
+    public StartupReport getStartupReport()
+    {
+        return scheduler == null ? null : scheduler.report();
+    }
+
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    /**
+     * The {@link StartupReport}, flattened: the total and critical path times, then the start, duration and critical
+     * flag (1 or 0) of each action, named after its phase and id. Empty if {@link #start()} was not called.
+     */
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        final Map<String, Long> metrics = new LinkedHashMap<>();
+        final StartupReport report = getStartupReport();
+        if ( report == null )
+        {
+            return metrics;
+        }
+
+        metrics.put( "total-millis", report.getTotalMillis() );
+        metrics.put( "critical-path-millis", report.getCriticalPathMillis() );
+        for ( final StartupReport.Step step : report.getSteps() )
+        {
+            final String name = step.getPhase() + "." + step.getId();
+            metrics.put( name + ".start-millis", step.getStartMillis() );
+            metrics.put( name + ".duration-millis", step.getDurationMillis() );
+            metrics.put( name + ".critical", step.isCritical() ? 1L : 0L );
+        }
+        return metrics;
+    }
+
     /**
      * Run all {@link ShutdownAction} instances, with highest priority executing first.
      * @throws IndyLifecycleException
@@ -192,11 +266,8 @@ public class IndyLifecycleManager
             logger.info( "Running bootup actions in the following order:\n\n{}",
                          bootupActions.stream().map( a -> a.getId() ).collect( Collectors.toList() ) );
 
-            for ( final BootupAction action : bootupActions )
-            {
-                logger.info( "Running bootup action: '{}'", action.getId() );
-                action.init();
-            }
+            scheduler.run( "bootup", bootupActions, BootupAction::getBootPriority,
+                           BootupAction::getBootDependencies, BootupAction::init );
         }
     }
 
@@ -212,17 +283,13 @@ public class IndyLifecycleManager
                                                                              MigrationAction.class));
         Collections.sort( migrationActions, MIGRATION_PRIORITY_COMPARATOR );
 
-        boolean changed = false;
         if ( migrationActions != null )
         {
             logger.info( "Running migration actions in the following order:\n\n{}",
                          migrationActions.stream().map( a -> a.getId() ).collect( Collectors.toList() ) );
 
-            for ( final MigrationAction action : migrationActions )
-            {
-                logger.info( "Running migration action: '{}'", action.getId() );
-                changed = action.migrate() || changed;
-            }
+            scheduler.run( "migration", migrationActions, MigrationAction::getMigrationPriority,
+                           MigrationAction::getMigrationDependencies, MigrationAction::migrate );
         }
     }
 
@@ -243,11 +310,8 @@ public class IndyLifecycleManager
             logger.info( "Running startup actions in the following order:\n\n{}",
                          startupActions.stream().map( a -> a.getId() ).collect( Collectors.toList() ) );
 
-            for ( final StartupAction action : startupActions )
-            {
-                logger.info( "Running startup action: '{}'", action.getId() );
-                action.start();
-            }
+            scheduler.run( "startup", startupActions, StartupAction::getStartupPriority,
+                           StartupAction::getStartupDependencies, StartupAction::start );
         }
     }
 
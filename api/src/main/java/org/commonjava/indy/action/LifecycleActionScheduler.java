@@ -0,0 +1,373 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.action;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the lifecycle actions of the startup phases, given in priority order.
+ * <p>
+ * An action that declares no dependencies runs on the calling thread after the previous such action, including the
+ * ones of the earlier phases, and after the actions of its phase with a higher priority, as they always did. An action
+ * that declares its dependencies runs on the executor as soon as they are done. Only the actions after it in its own
+ * phase wait for it, unless that would make a cycle, so it may still be running during the later phases;
+ * {@link #await()} waits for all of them.
+ */
+final class LifecycleActionScheduler
+{
+    interface ActionRunner<T>
+    {
+        void run( T action )
+                throws IndyLifecycleException;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final Executor executor;
+
+    private final long started = System.nanoTime();
+
+    private final Map<String, Step> byId = new HashMap<>();
+
+    private final List<Step> steps = new CopyOnWriteArrayList<>();
+
+    private Step lastSerial;
+
+    LifecycleActionScheduler( final Executor executor )
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Run the actions of a phase. Returns when the actions without declared dependencies are done.
+     *
+     * @param actions sorted with highest priority first
+     * @param dependencies ids of the actions the given one depends on, null if it runs in priority order
+     */
+    <T extends IndyLifecycleAction> void run( final String phase, final List<T> actions,
+                                              final ToIntFunction<T> priority,
+                                              final Function<T, Collection<String>> dependencies,
+                                              final ActionRunner<T> runner )
+            throws IndyLifecycleException
+    {
+        final List<Step> phaseSteps = new ArrayList<>();
+        for ( final T action : actions )
+        {
+            final Step step = new Step( phase, action.getId(), priority.applyAsInt( action ),
+                                        dependencies.apply( action ), () -> runner.run( action ) );
+            phaseSteps.add( step );
+            byId.put( step.id, step );
+        }
+
+        for ( final Step step : phaseSteps )
+        {
+            if ( step.declared != null )
+            {
+                for ( final String id : step.declared )
+                {
+                    final Step dependency = byId.get( id );
+                    if ( dependency == step )
+                    {
+                        throw new IndyLifecycleException( "Lifecycle action: '{}' depends on itself.", step.id );
+                    }
+                    else if ( dependency == null )
+                    {
+                        logger.warn( "Lifecycle action: '{}' depends on unknown action: '{}', ignoring it.", step.id,
+                                     id );
+                    }
+                    else
+                    {
+                        step.dependencies.add( dependency );
+                    }
+                }
+            }
+            else
+            {
+                if ( lastSerial != null )
+                {
+                    step.dependencies.add( lastSerial );
+                }
+                lastSerial = step;
+            }
+        }
+
+        for ( final Step step : phaseSteps )
+        {
+            if ( step.declared == null )
+            {
+                for ( final Step other : phaseSteps )
+                {
+                    if ( other.declared != null && other.priority > step.priority && !reaches( other, step ) )
+                    {
+                        step.dependencies.add( other );
+                    }
+                }
+            }
+        }
+
+        for ( final Step step : phaseSteps )
+        {
+            if ( step.dependencies.stream().anyMatch( dependency -> reaches( dependency, step ) ) )
+            {
+                throw new IndyLifecycleException( "Lifecycle action: '{}' depends on itself through: {}", step.id,
+                                                  ids( step.dependencies ) );
+            }
+        }
+
+        logger.debug( "Dependencies of {} actions:\n\n{}", phase,
+                      phaseSteps.stream()
+                                .map( s -> s.id + " <- " + ids( s.dependencies ) )
+                                .collect( Collectors.joining( "\n" ) ) );
+        steps.addAll( phaseSteps );
+
+        for ( final Step step : phaseSteps )
+        {
+            if ( step.declared != null )
+            {
+                schedule( step );
+            }
+        }
+
+        for ( final Step step : phaseSteps )
+        {
+            if ( step.declared == null )
+            {
+                await( step.dependencies );
+                execute( step );
+                await( step );
+            }
+        }
+    }
+
+    /**
+     * Wait for all the actions run so far, including the ones running on the executor.
+     */
+    void await()
+            throws IndyLifecycleException
+    {
+        for ( final Step step : steps )
+        {
+            await( step );
+        }
+    }
+
+    StartupReport report()
+    {
+        final List<Step> all = new ArrayList<>( steps );
+
+        Step last = null;
+        boolean running = false;
+        for ( final Step step : all )
+        {
+            running = running || step.endMillis < 0;
+            if ( step.endMillis >= 0 && ( last == null || step.endMillis > last.endMillis ) )
+            {
+                last = step;
+            }
+        }
+
+        // walk back from the action that ended last through the dependency each one waited for the longest
+        final LinkedList<Step> path = new LinkedList<>();
+        for ( Step step = last; step != null; )
+        {
+            path.addFirst( step );
+            Step waited = null;
+            for ( final Step dependency : step.dependencies )
+            {
+                if ( dependency.endMillis >= 0 && ( waited == null || dependency.endMillis > waited.endMillis ) )
+                {
+                    waited = dependency;
+                }
+            }
+            step = waited;
+        }
+
+        final Set<Step> critical = new HashSet<>( path );
+        final List<StartupReport.Step> reported = all.stream()
+                                                     .map( s -> new StartupReport.Step( s.phase, s.id,
+                                                                                        s.declared != null,
+                                                                                        ids( s.dependencies ),
+                                                                                        s.startMillis,
+                                                                                        s.endMillis < 0 ? -1 : s.endMillis - s.startMillis,
+                                                                                        critical.contains( s ) ) )
+                                                     .collect( Collectors.toList() );
+
+        final long total = running || last == null ? millisSinceStart() : last.endMillis;
+        return new StartupReport( total, path.stream().mapToLong( s -> s.endMillis - s.startMillis ).sum(),
+                                  ids( path ), reported );
+    }
+
+    private void schedule( final Step step )
+    {
+        CompletableFuture.allOf( step.dependencies.stream().map( s -> s.done ).toArray( CompletableFuture[]::new ) )
+                         .whenComplete( ( v, error ) -> {
+                             if ( error != null )
+                             {
+                                 step.done.completeExceptionally( error );
+                                 return;
+                             }
+
+                             try
+                             {
+                                 executor.execute( () -> execute( step ) );
+                             }
+                             catch ( RejectedExecutionException e )
+                             {
+                                 step.done.completeExceptionally( e );
+                             }
+                         } );
+    }
+
+    private void execute( final Step step )
+    {
+        logger.info( "Running {} action: '{}'", step.phase, step.id );
+        step.startMillis = millisSinceStart();
+        try
+        {
+            step.action.run();
+            step.endMillis = millisSinceStart();
+            step.done.complete( null );
+            logger.info( "{} action: '{}' took {}ms", step.phase, step.id, step.endMillis - step.startMillis );
+        }
+        catch ( final IndyLifecycleException | RuntimeException e )
+        {
+            step.done.completeExceptionally( e );
+        }
+    }
+
+    private void await( final Collection<Step> dependencies )
+            throws IndyLifecycleException
+    {
+        for ( final Step dependency : dependencies )
+        {
+            await( dependency );
+        }
+    }
+
+    private void await( final Step step )
+            throws IndyLifecycleException
+    {
+        try
+        {
+            step.done.join();
+        }
+        catch ( final CompletionException | CancellationException e )
+        {
+            Throwable cause = e;
+            while ( cause instanceof CompletionException && cause.getCause() != null )
+            {
+                cause = cause.getCause();
+            }
+
+            if ( cause instanceof IndyLifecycleException )
+            {
+                throw (IndyLifecycleException) cause;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new IndyLifecycleException( "Lifecycle action: '{}' failed.", cause, step.id );
+        }
+    }
+
+    private static boolean reaches( final Step from, final Step target )
+    {
+        final Set<Step> visited = new HashSet<>();
+        final LinkedList<Step> pending = new LinkedList<>();
+        pending.add( from );
+        while ( !pending.isEmpty() )
+        {
+            final Step step = pending.removeFirst();
+            if ( step == target )
+            {
+                return true;
+            }
+            if ( visited.add( step ) )
+            {
+                pending.addAll( step.dependencies );
+            }
+        }
+        return false;
+    }
+
+    private static List<String> ids( final Collection<Step> steps )
+    {
+        return steps.stream().map( s -> s.id ).collect( Collectors.toList() );
+    }
+
+    private long millisSinceStart()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - started );
+    }
+
+    private interface Action
+    {
+        void run()
+                throws IndyLifecycleException;
+    }
+
+    private static final class Step
+    {
+        private final String phase;
+
+        private final String id;
+
+        private final int priority;
+
+        private final Collection<String> declared;
+
+        private final Action action;
+
+        private final List<Step> dependencies = new ArrayList<>();
+
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private volatile long startMillis = -1;
+
+        private volatile long endMillis = -1;
+
+        private Step( final String phase, final String id, final int priority, final Collection<String> declared,
+                      final Action action )
+        {
+            this.phase = phase;
+            this.id = id;
+            this.priority = priority;
+            this.declared = declared;
+            this.action = action;
+        }
+    }
+}
@@ -15,6 +15,8 @@
  */
 package org.commonjava.indy.action;
 
+import java.util.Collection;
+
 /**
  * Converts storage/data formats from older versions of Indy into up-to-date forms.
  * These are run right after the system boots, but before Indy enters its startup sequence (see {@link StartupAction}).
@@ -35,4 +37,13 @@ public interface MigrationAction
      */
     int getMigrationPriority();
 
+    /**
+     * Ids of the actions to wait for before migrating, or null (the default) to migrate in priority order. See
+     * {@link IndyLifecycleManager#start()}.
+     */
+    default Collection<String> getMigrationDependencies()
+    {
+        return null;
+    }
+
 }
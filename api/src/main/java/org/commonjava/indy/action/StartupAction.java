@@ -15,6 +15,8 @@
  */
 package org.commonjava.indy.action;
 
+import java.util.Collection;
+
 /**
  * Performs some sort of service/subsystem startup as Indy is preparing to run.
  */
@@ -34,4 +36,13 @@ public interface StartupAction
      */
     int getStartupPriority();
 
+    /**
+     * Ids of the actions whose services this one needs started, or null (the default) to start in priority order. See
+     * {@link IndyLifecycleManager#start()}.
+     */
+    default Collection<String> getStartupDependencies()
+    {
+        return null;
+    }
+
 }
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.action;
+
+import java.util.List;
+
+/**
+ * Timing of the lifecycle actions run by {@link IndyLifecycleManager#start()}, and the chain of actions that
+ * determined how long the startup took.
+ */
+public final class StartupReport
+{
+    private final long totalMillis;
+
+    private final long criticalPathMillis;
+
+    private final List<String> criticalPath;
+
+    private final List<Step> steps;
+
+    public StartupReport( final long totalMillis, final long criticalPathMillis, final List<String> criticalPath,
+                          final List<Step> steps )
+    {
+        this.totalMillis = totalMillis;
+        this.criticalPathMillis = criticalPathMillis;
+        this.criticalPath = criticalPath;
+        this.steps = steps;
+    }
+
+    /**
+     * Time from the start to the end of the last action, or so far if the startup is still running.
+     */
+    public long getTotalMillis()
+    {
+        return totalMillis;
+    }
+
+    /**
+     * Sum of the durations of the actions in {@link #getCriticalPath()}.
+     */
+    public long getCriticalPathMillis()
+    {
+        return criticalPathMillis;
+    }
+
+    /**
+     * Ids of the actions that ended last, each waiting for the one before it, in the order they ran.
+     */
+    public List<String> getCriticalPath()
+    {
+        return criticalPath;
+    }
+
+    public List<Step> getSteps()
+    {
+        return steps;
+    }
+
+    public static final class Step
+    {
+        private final String phase;
+
+        private final String id;
+
+        private final boolean parallel;
+
+        private final List<String> dependencies;
+
+        private final long startMillis;
+
+        private final long durationMillis;
+
+        private final boolean critical;
+
+        public Step( final String phase, final String id, final boolean parallel, final List<String> dependencies,
+                     final long startMillis, final long durationMillis, final boolean critical )
+        {
+            this.phase = phase;
+            this.id = id;
+            this.parallel = parallel;
+            this.dependencies = dependencies;
+            this.startMillis = startMillis;
+            this.durationMillis = durationMillis;
+            this.critical = critical;
+        }
+
+        public String getPhase()
+        {
+            return phase;
+        }
+
+        public String getId()
+        {
+            return id;
+        }
+
+        /**
+         * Whether the action declared its dependencies and ran on the lifecycle pool.
+         */
+        public boolean isParallel()
+        {
+            return parallel;
+        }
+
+        /**
+         * Ids of the actions this one waited for.
+         */
+        public List<String> getDependencies()
+        {
+            return dependencies;
+        }
+
+        /**
+         * Start time relative to the start of the startup, -1 if the action did not start.
+         */
+        public long getStartMillis()
+        {
+            return startMillis;
+        }
+
+        /**
+         * -1 if the action did not complete.
+         */
+        public long getDurationMillis()
+        {
+            return durationMillis;
+        }
+
+        public boolean isCritical()
+        {
+            return critical;
+        }
+    }
+}
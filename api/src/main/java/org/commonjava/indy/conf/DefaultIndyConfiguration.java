@@ -46,6 +46,8 @@ public class DefaultIndyConfiguration
 
     public static final int DEFAULT_NFC_MAX_RESULT_SET_SIZE = 5000;
 
+    public static final int DEFAULT_NFC_INMEMORY_MAX_SIZE = 200000;
+
     public static final Boolean DEFAULT_ALLOW_REMOTE_LIST_DOWNLOAD = false;
 
     public static final int DEFAULT_REMOTE_METADATA_TIMEOUT_SECONDS = 86400;
@@ -68,6 +70,26 @@ public class DefaultIndyConfiguration
 
     public static final int DEFAULT_CASSANDRA_KEYSPACE_REPLICAS = 1;
 
+    public static final int DEFAULT_GROUP_RETRIEVAL_CONCURRENCY = 4;
+
+    public static final int DEFAULT_GROUP_RETRIEVAL_HEDGE_DELAY_MILLIS = 200;
+
+    public static final int DEFAULT_NFC_FILTER_EXPECTED_ENTRIES = 10000;
+
+    public static final int DEFAULT_NFC_FILTER_HOT_SIZE = 10000;
+
+    public static final int DEFAULT_NFC_FILTER_HOT_TTL_SECONDS = 0;
+
+    public static final int DEFAULT_GROUP_NFC_TIMEOUT_SECONDS = 300;
+
+    public static final int DEFAULT_GROUP_MERGE_WAIT_SECONDS = 240;
+
+    public static final int DEFAULT_GROUP_MERGE_LEASE_SECONDS = 300;
+
+    public static final int DEFAULT_FILESYSTEM_CONTAINING_TIMEOUT_MILLIS = 5000;
+
+    public static final int DEFAULT_FILESYSTEM_CONTAINING_CACHE_SECONDS = 30;
+
     private Integer passthroughTimeoutSeconds;
 
     private Integer notFoundCacheTimeoutSeconds;
@@ -82,6 +104,8 @@ public class DefaultIndyConfiguration
 
     private Integer nfcMaxResultSetSize;
 
+    private Integer nfcInMemoryMaxSize;
+
     private Integer remoteMetadataTimeoutSeconds;
 
     private String mdcHeaders;
@@ -116,6 +140,34 @@ public class DefaultIndyConfiguration
 
     private Boolean storeManagementRestEnabled = true;
 
+    private boolean groupParallelRetrievalEnabled;
+
+    private Integer groupRetrievalConcurrency;
+
+    private Integer groupRetrievalHedgeDelayMillis;
+
+    private boolean nfcFilterEnabled;
+
+    private Integer nfcFilterExpectedEntries;
+
+    private Integer nfcFilterHotSize;
+
+    private Integer nfcFilterHotTtlSeconds;
+
+    private boolean groupNfcEnabled;
+
+    private Integer groupNfcTimeoutSeconds;
+
+    private boolean contentChecksumIndexEnabled;
+
+    private Integer groupMergeWaitSeconds;
+
+    private Integer groupMergeLeaseSeconds;
+
+    private Integer fileSystemContainingTimeoutMillis;
+
+    private Integer fileSystemContainingCacheSeconds;
+
     public DefaultIndyConfiguration()
     {
     }
@@ -252,6 +304,18 @@ public class DefaultIndyConfiguration
         return nfcMaxResultSetSize == null ? DEFAULT_NFC_MAX_RESULT_SET_SIZE : nfcMaxResultSetSize;
     }
 
+    @Override
+    public int getNfcInMemoryMaxSize()
+    {
+        return nfcInMemoryMaxSize == null ? DEFAULT_NFC_INMEMORY_MAX_SIZE : nfcInMemoryMaxSize;
+    }
+
+    @ConfigName( "nfc.inmemory.maxsize" )
+    public void setNfcInMemoryMaxSize( final Integer nfcInMemoryMaxSize )
+    {
+        this.nfcInMemoryMaxSize = nfcInMemoryMaxSize;
+    }
+
     @Override
     public File getIndyHomeDir()
     {
@@ -460,6 +524,181 @@ public class DefaultIndyConfiguration
     {
         return storeManagementRestEnabled;
     }
+
+    @Override
+    public boolean isGroupParallelRetrievalEnabled()
+    {
+        return groupParallelRetrievalEnabled;
+    }
+
+    @ConfigName( "group.retrieval.parallel.enabled" )
+    public void setGroupParallelRetrievalEnabled( boolean groupParallelRetrievalEnabled )
+    {
+        this.groupParallelRetrievalEnabled = groupParallelRetrievalEnabled;
+    }
+
+    @Override
+    public int getGroupRetrievalConcurrency()
+    {
+        return groupRetrievalConcurrency == null ? DEFAULT_GROUP_RETRIEVAL_CONCURRENCY : groupRetrievalConcurrency;
+    }
+
+    @ConfigName( "group.retrieval.concurrency" )
+    public void setGroupRetrievalConcurrency( Integer groupRetrievalConcurrency )
+    {
+        this.groupRetrievalConcurrency = groupRetrievalConcurrency;
+    }
+
+    @Override
+    public int getGroupRetrievalHedgeDelayMillis()
+    {
+        return groupRetrievalHedgeDelayMillis == null ?
+                DEFAULT_GROUP_RETRIEVAL_HEDGE_DELAY_MILLIS :
+                groupRetrievalHedgeDelayMillis;
+    }
+
+    @ConfigName( "group.retrieval.hedge.delay.millis" )
+    public void setGroupRetrievalHedgeDelayMillis( Integer groupRetrievalHedgeDelayMillis )
+    {
+        this.groupRetrievalHedgeDelayMillis = groupRetrievalHedgeDelayMillis;
+    }
+
+    @Override
+    public boolean isNfcFilterEnabled()
+    {
+        return nfcFilterEnabled;
+    }
+
+    @ConfigName( "nfc.filter.enabled" )
+    public void setNfcFilterEnabled( boolean nfcFilterEnabled )
+    {
+        this.nfcFilterEnabled = nfcFilterEnabled;
+    }
+
+    @Override
+    public int getNfcFilterExpectedEntries()
+    {
+        return nfcFilterExpectedEntries == null ? DEFAULT_NFC_FILTER_EXPECTED_ENTRIES : nfcFilterExpectedEntries;
+    }
+
+    @ConfigName( "nfc.filter.expected.entries" )
+    public void setNfcFilterExpectedEntries( Integer nfcFilterExpectedEntries )
+    {
+        this.nfcFilterExpectedEntries = nfcFilterExpectedEntries;
+    }
+
+    @Override
+    public int getNfcFilterHotSize()
+    {
+        return nfcFilterHotSize == null ? DEFAULT_NFC_FILTER_HOT_SIZE : nfcFilterHotSize;
+    }
+
+    @ConfigName( "nfc.filter.hot.size" )
+    public void setNfcFilterHotSize( Integer nfcFilterHotSize )
+    {
+        this.nfcFilterHotSize = nfcFilterHotSize;
+    }
+
+    @Override
+    public int getNfcFilterHotTtlSeconds()
+    {
+        return nfcFilterHotTtlSeconds == null ? DEFAULT_NFC_FILTER_HOT_TTL_SECONDS : nfcFilterHotTtlSeconds;
+    }
+
+    @ConfigName( "nfc.filter.hot.ttl.seconds" )
+    public void setNfcFilterHotTtlSeconds( Integer nfcFilterHotTtlSeconds )
+    {
+        this.nfcFilterHotTtlSeconds = nfcFilterHotTtlSeconds;
+    }
+
+    @Override
+    public boolean isGroupNfcEnabled()
+    {
+        return groupNfcEnabled;
+    }
+
+    @ConfigName( "group.nfc.enabled" )
+    public void setGroupNfcEnabled( boolean groupNfcEnabled )
+    {
+        this.groupNfcEnabled = groupNfcEnabled;
+    }
+
+    @Override
+    public int getGroupNfcTimeoutSeconds()
+    {
+        return groupNfcTimeoutSeconds == null ? DEFAULT_GROUP_NFC_TIMEOUT_SECONDS : groupNfcTimeoutSeconds;
+    }
+
+    @ConfigName( "group.nfc.timeout" )
+    public void setGroupNfcTimeoutSeconds( Integer groupNfcTimeoutSeconds )
+    {
+        this.groupNfcTimeoutSeconds = groupNfcTimeoutSeconds;
+    }
+
+    @Override
+    public boolean isContentChecksumIndexEnabled()
+    {
+        return contentChecksumIndexEnabled;
+    }
+
+    @ConfigName( "content.checksum.index.enabled" )
+    public void setContentChecksumIndexEnabled( boolean contentChecksumIndexEnabled )
+    {
+        this.contentChecksumIndexEnabled = contentChecksumIndexEnabled;
+    }
+
+    @Override
+    public int getGroupMergeWaitSeconds()
+    {
+        return groupMergeWaitSeconds == null ? DEFAULT_GROUP_MERGE_WAIT_SECONDS : groupMergeWaitSeconds;
+    }
+
+    @ConfigName( "group.merge.wait.seconds" )
+    public void setGroupMergeWaitSeconds( Integer groupMergeWaitSeconds )
+    {
+        this.groupMergeWaitSeconds = groupMergeWaitSeconds;
+    }
+
+    @Override
+    public int getGroupMergeLeaseSeconds()
+    {
+        return groupMergeLeaseSeconds == null ? DEFAULT_GROUP_MERGE_LEASE_SECONDS : groupMergeLeaseSeconds;
+    }
+
+    @ConfigName( "group.merge.lease.seconds" )
+    public void setGroupMergeLeaseSeconds( Integer groupMergeLeaseSeconds )
+    {
+        this.groupMergeLeaseSeconds = groupMergeLeaseSeconds;
+    }
+
+    @Override
+    public int getFileSystemContainingTimeoutMillis()
+    {
+        return fileSystemContainingTimeoutMillis == null ?
+                DEFAULT_FILESYSTEM_CONTAINING_TIMEOUT_MILLIS :
+                fileSystemContainingTimeoutMillis;
+    }
+
+    @ConfigName( "filesystem.containing.timeout.millis" )
+    public void setFileSystemContainingTimeoutMillis( Integer fileSystemContainingTimeoutMillis )
+    {
+        this.fileSystemContainingTimeoutMillis = fileSystemContainingTimeoutMillis;
+    }
+
+    @Override
+    public int getFileSystemContainingCacheSeconds()
+    {
+        return fileSystemContainingCacheSeconds == null ?
+                DEFAULT_FILESYSTEM_CONTAINING_CACHE_SECONDS :
+                fileSystemContainingCacheSeconds;
+    }
+
+    @ConfigName( "filesystem.containing.cache.seconds" )
+    public void setFileSystemContainingCacheSeconds( Integer fileSystemContainingCacheSeconds )
+    {
+        this.fileSystemContainingCacheSeconds = fileSystemContainingCacheSeconds;
+    }
+
     @Override
     public InputStream getDefaultConfig()
     {
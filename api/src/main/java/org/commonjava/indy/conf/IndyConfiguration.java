@@ -69,6 +69,13 @@ public interface IndyConfiguration
      */
     int getNfcMaxResultSetSize();
 
+    /**
+     * Max number of missing paths kept in process by the not-found cache; new paths are not kept in process while it
+     * is full.
+     * @since 3.5.2
+     */
+    int getNfcInMemoryMaxSize();
+
     File getIndyHomeDir();
 
     File getIndyConfDir();
@@ -141,4 +148,114 @@ public interface IndyConfiguration
      * @since 3.3.0
      */
     boolean isStoreManagementRestEnabled();
+
+    /**
+     * Probe group members in bounded parallel waves instead of strictly one at a time. The first member in group
+     * order that has the path still wins.
+     * @return
+     * @since 3.5.2
+     */
+    boolean isGroupParallelRetrievalEnabled();
+
+    /**
+     * Max number of member probes in flight for a single group retrieval. A group can override it via the
+     * 'group_retrieval_concurrency' metadata.
+     * @return
+     * @since 3.5.2
+     */
+    int getGroupRetrievalConcurrency();
+
+    /**
+     * How long to wait on the current member before hedging by probing the following members as well.
+     * @return
+     * @since 3.5.2
+     */
+    int getGroupRetrievalHedgeDelayMillis();
+
+    /**
+     * Put an in-process filter tier in front of the not-found cache, so probes for paths this node never saw as missing
+     * skip the remote cache lookup.
+     * @return
+     * @since 3.5.2
+     */
+    boolean isNfcFilterEnabled();
+
+    /**
+     * Initial capacity of the per-store filter; it grows when more missing paths are added.
+     * @return
+     * @since 3.5.2
+     */
+    int getNfcFilterExpectedEntries();
+
+    /**
+     * Max number of recently confirmed missing paths kept in process.
+     * @return
+     * @since 3.5.2
+     */
+    int getNfcFilterHotSize();
+
+    /**
+     * How long a confirmed missing path is answered in process before asking the not-found cache again. Zero (the
+     * default) disables this; otherwise a path cleared on another node may still be answered as missing here for
+     * that long.
+     * @return
+     * @since 3.5.2
+     */
+    int getNfcFilterHotTtlSeconds();
+
+    /**
+     * Remember paths that no member of a group (and no group content generator) has, so repeated requests for them
+     * through the group don't probe every member again.
+     * @return
+     * @since 3.5.2
+     */
+    boolean isGroupNfcEnabled();
+
+    /**
+     * Max time a group-level miss is remembered. It is also bounded by the not-found cache timeout of the members.
+     * @return
+     * @since 3.5.2
+     */
+    int getGroupNfcTimeoutSeconds();
+
+    /**
+     * Persist the checksums and size of stored content in the data directory, so they survive content metadata cache
+     * eviction and restarts instead of being recalculated by reading the whole file again.
+     * @return
+     * @since 3.5.2
+     */
+    boolean isContentChecksumIndexEnabled();
+
+    /**
+     * Max time a request waits for the merge of the same group metadata file that is in progress on this node or on
+     * another node of the cluster, before merging it itself.
+     * @return
+     * @since 3.5.2
+     */
+    int getGroupMergeWaitSeconds();
+
+    /**
+     * How long a node may hold the cluster-wide claim on merging one group metadata file, so a node that dies while
+     * merging does not block the others for longer than that.
+     * @return
+     * @since 3.5.2
+     */
+    int getGroupMergeLeaseSeconds();
+
+    /**
+     * Max time to wait for the batched file-system-containing queries of one group request. Batches that have not
+     * answered by then are treated as failed, so all their candidates are kept.
+     * @return
+     * @since 3.5.2
+     */
+    int getFileSystemContainingTimeoutMillis();
+
+    /**
+     * How long a hosted store found to contain a path is remembered by the file-system-containing queries (stores
+     * without the path are not). Storing or deleting content in the store drops it earlier on this node. Zero disables
+     * the cache.
+     * @return
+     * @since 3.5.2
+     */
+    int getFileSystemContainingCacheSeconds();
 }
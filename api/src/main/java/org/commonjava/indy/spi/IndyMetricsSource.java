@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.spi;
+
+import java.util.Map;
+
+/**
+ * Component that publishes a set of named counters, so add-ons can report metrics through the stats REST endpoint
+ * (/api/stats/metrics/{name}) without core having to know about them.
+ */
+public interface IndyMetricsSource
+{
+
+    /**
+     * Name under which the metrics are published.
+     */
+    String getMetricsName();
+
+    /**
+     * Snapshot of the current counter values.
+     */
+    Map<String, Long> getMetrics();
+
+}
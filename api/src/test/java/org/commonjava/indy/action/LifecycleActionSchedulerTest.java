@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.action;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LifecycleActionSchedulerTest
+{
+    private final ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+    private final List<String> done = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void declaredActionsRunConcurrently()
+            throws Exception
+    {
+        CountDownLatch both = new CountDownLatch( 2 );
+        Body meet = () -> {
+            both.countDown();
+            assertThat( both.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+        };
+
+        LifecycleActionScheduler scheduler = new LifecycleActionScheduler( executor );
+        run( scheduler, "startup", new Action( "reverse-map", 11, Collections.emptySet(), meet ),
+             new Action( "by-pkg", 10, Collections.emptySet(), meet ),
+             new Action( "setup", 0, null, () -> assertThat( done.size(), equalTo( 2 ) ) ) );
+        scheduler.await();
+
+        assertThat( done.get( 2 ), equalTo( "setup" ) );
+        executor.shutdown();
+    }
+
+    @Test
+    public void laterPhasesDoNotWait()
+            throws Exception
+    {
+        CountDownLatch migrated = new CountDownLatch( 1 );
+
+        LifecycleActionScheduler scheduler = new LifecycleActionScheduler( executor );
+        run( scheduler, "bootup", new Action( "pool", 99, null, () -> {} ),
+             new Action( "kafka", 100, Collections.singleton( "pool" ), () -> {
+                 // only ends if the migration runs meanwhile
+                 assertThat( migrated.await( 5, TimeUnit.SECONDS ), equalTo( true ) );
+                 Thread.sleep( 100 );
+             } ) );
+        run( scheduler, "migration", new Action( "migrate", 50, null, migrated::countDown ) );
+        scheduler.await();
+
+        assertThat( new HashSet<>( done ), equalTo( new HashSet<>( Arrays.asList( "pool", "migrate", "kafka" ) ) ) );
+
+        StartupReport report = scheduler.report();
+        assertThat( report.getCriticalPath(), equalTo( Arrays.asList( "pool", "kafka" ) ) );
+        assertThat( report.getSteps().get( 1 ).getDependencies(), equalTo( Collections.singletonList( "pool" ) ) );
+        executor.shutdown();
+    }
+
+    @Test( expected = IndyLifecycleException.class )
+    public void failureOfDeclaredActionFailsStartup()
+            throws Exception
+    {
+        LifecycleActionScheduler scheduler = new LifecycleActionScheduler( executor );
+        try
+        {
+            run( scheduler, "startup", new Action( "broken", 10, Collections.emptySet(), () -> {
+                throw new IndyLifecycleException( "broken" );
+            } ) );
+            scheduler.await();
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test( expected = IndyLifecycleException.class )
+    public void rejectCycles()
+            throws Exception
+    {
+        LifecycleActionScheduler scheduler = new LifecycleActionScheduler( executor );
+        try
+        {
+            run( scheduler, "startup", new Action( "a", 10, Collections.singleton( "b" ), () -> {} ),
+                 new Action( "b", 10, Collections.singleton( "a" ), () -> {} ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    @Test( expected = IndyLifecycleException.class )
+    public void rejectSelfDependency()
+            throws Exception
+    {
+        LifecycleActionScheduler scheduler = new LifecycleActionScheduler( executor );
+        try
+        {
+            run( scheduler, "startup", new Action( "a", 10, Collections.singleton( "a" ), () -> {} ) );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    private void run( LifecycleActionScheduler scheduler, String phase, Action... actions )
+            throws IndyLifecycleException
+    {
+        scheduler.run( phase, Arrays.asList( actions ), Action::getStartupPriority, Action::getStartupDependencies,
+                       Action::start );
+    }
+
+    private final class Action
+            implements StartupAction
+    {
+        private final String id;
+
+        private final int priority;
+
+        private final Collection<String> dependencies;
+
+        private final Body body;
+
+        private Action( String id, int priority, Collection<String> dependencies, Body body )
+        {
+            this.id = id;
+            this.priority = priority;
+            this.dependencies = dependencies;
+            this.body = body;
+        }
+
+        @Override
+        public void start()
+                throws IndyLifecycleException
+        {
+            try
+            {
+                body.run();
+            }
+            catch ( InterruptedException e )
+            {
+                throw new IndyLifecycleException( "Interrupted", e );
+            }
+            done.add( id );
+        }
+
+        @Override
+        public int getStartupPriority()
+        {
+            return priority;
+        }
+
+        @Override
+        public Collection<String> getStartupDependencies()
+        {
+            return dependencies;
+        }
+
+        @Override
+        public String getId()
+        {
+            return id;
+        }
+    }
+
+    private interface Body
+    {
+        void run()
+                throws IndyLifecycleException, InterruptedException;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.commonjava.indy.core.bind.jaxrs;
 
+import org.apache.commons.lang3.StringUtils;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.bind.jaxrs.IndyResources;
 import org.commonjava.indy.bind.jaxrs.util.JaxRsRequestHelper;
@@ -22,14 +23,18 @@ import org.commonjava.indy.bind.jaxrs.util.REST;
 import org.commonjava.indy.bind.jaxrs.util.ResponseHelper;
 import org.commonjava.indy.content.ContentDigester;
 import org.commonjava.indy.content.ContentManager;
+import org.commonjava.indy.core.bind.jaxrs.util.HttpByteRange;
+import org.commonjava.indy.core.change.event.IndyFileEventManager;
 import org.commonjava.indy.core.bind.jaxrs.util.RequestUtils;
 import org.commonjava.indy.core.bind.jaxrs.util.TransferCountingInputStream;
+import org.commonjava.indy.core.bind.jaxrs.util.TransferRangeStreamingOutput;
 import org.commonjava.indy.core.bind.jaxrs.util.TransferStreamingOutput;
 import org.commonjava.indy.core.ctl.ContentController;
 import org.commonjava.indy.model.core.BatchDeleteRequest;
 import org.commonjava.indy.model.core.PackageTypes;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.model.util.HttpUtils;
 import org.commonjava.indy.util.AcceptInfo;
 import org.commonjava.indy.util.ApplicationContent;
 import org.commonjava.indy.util.ApplicationHeader;
@@ -37,7 +42,9 @@ import org.commonjava.indy.util.ApplicationStatus;
 import org.commonjava.indy.util.LocationUtils;
 import org.commonjava.indy.util.UriFormatter;
 import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.FileAccessEvent;
 import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
 import org.commonjava.maven.galley.model.SpecialPathInfo;
 import org.commonjava.maven.galley.model.Transfer;
 import org.commonjava.maven.galley.model.TransferOperation;
@@ -57,14 +64,18 @@ import javax.ws.rs.core.Response.Status;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.text.ParseException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import static org.commonjava.indy.core.bind.jaxrs.util.RequestUtils.isDirectoryPath;
 import static org.commonjava.indy.util.RequestContextHelper.CONTENT_ENTRY_POINT;
+import static org.commonjava.indy.util.RequestContextHelper.CONTENT_TRACKING_ID;
 import static org.commonjava.indy.util.RequestContextHelper.HTTP_STATUS;
 import static org.commonjava.indy.util.RequestContextHelper.METADATA_CONTENT;
 import static org.commonjava.indy.util.RequestContextHelper.PACKAGE_TYPE;
@@ -98,6 +109,9 @@ public class ContentAccessHandler
     @Inject
     ContentDigester contentDigester;
 
+    @Inject
+    IndyFileEventManager fileEventManager;
+
 
     protected ContentAccessHandler()
     {
@@ -372,6 +386,11 @@ public class ContentAccessHandler
 
                     responseHelper.setInfoHeaders( builder, item, sk, path, true, contentType,
                                     httpMetadata );
+                    if ( getUpstreamHeader( httpMetadata, ApplicationHeader.etag ) == null && item != null
+                            && item.exists() && !item.isDirectory() && !isMetadata( item, packageType ) )
+                    {
+                        builder.header( ApplicationHeader.etag.key(), getETag( item ) );
+                    }
 
                     // Remove this to avoid reading file for checksum digest during HEAD request
 //                    if(!path.endsWith("/")) {
@@ -507,19 +526,8 @@ public class ContentAccessHandler
                     }
                     else
                     {
-                        logger.debug( "RETURNING: retrieval of content: {}:{}", sk, path );
-                        // open the stream here to prevent deletion while waiting for the transfer back to the user to start...
-                        InputStream in = item.openInputStream( true, eventMetadata );
-                        final ResponseBuilder builder = Response.ok(
-                                new TransferStreamingOutput( in ) );
-
-                        responseHelper.setInfoHeaders( builder, item, sk, path, true, contentController.getContentType( path ),
-                                        contentController.getHttpMetadata( item ) );
-                        if ( builderModifier != null )
-                        {
-                            builderModifier.accept( builder );
-                        }
-                        response = builder.build();
+                        response = buildContentResponse( item, sk, path, request, eventMetadata,
+                                                         spi != null && spi.isMetadata(), builderModifier );
                     }
                 }
                 finally
@@ -542,6 +550,273 @@ public class ContentAccessHandler
         return response;
     }
 
+    /**
+     * Answer a GET of existing content: 304 if the client's copy is still valid (unless the request is tracked, so
+     * tracking sees the download), 206 or 416 for a byte range request, otherwise 200 with the whole content. A 304
+     * fires the access event reading the content would have fired, so its listeners (e.g. timeouts) see the hit.
+     * <p>
+     * Validators are the upstream ETag / Last-Modified if there are any, otherwise an ETag made of the stored checksum
+     * (or a weak one made of size and modification time if no checksum is known yet) and the file's modification time.
+     * None of this applies to metadata, which is sent whole as before: it may be generated, or rewritten on the way
+     * out (npm tarball url masking, repository proxy content replacement), so neither the stored checksum nor offsets
+     * in the stored file describe the response body.
+     */
+    private Response buildContentResponse( final Transfer item, final StoreKey sk, final String path,
+                                           final HttpServletRequest request, final EventMetadata eventMetadata,
+                                           final boolean metadata, final Consumer<ResponseBuilder> builderModifier )
+            throws IOException, IndyWorkflowException
+    {
+        final HttpExchangeMetadata httpMetadata = contentController.getHttpMetadata( item );
+        final String contentType = contentController.getContentType( path );
+        if ( metadata )
+        {
+            logger.debug( "RETURNING: retrieval of content: {}:{}", sk, path );
+            // open the stream here to prevent deletion while waiting for the transfer back to the user to start...
+            InputStream in = item.openInputStream( true, eventMetadata );
+            final ResponseBuilder builder = Response.ok( new TransferStreamingOutput( in ) );
+
+            responseHelper.setInfoHeaders( builder, item, sk, path, true, contentType, httpMetadata );
+            if ( builderModifier != null )
+            {
+                builderModifier.accept( builder );
+            }
+            return builder.build();
+        }
+
+        final String upstreamETag = getUpstreamHeader( httpMetadata, ApplicationHeader.etag );
+        final String eTag = upstreamETag != null ? upstreamETag : getETag( item );
+        final long lastModified = getLastModified( item, httpMetadata );
+
+        final ResponseBuilder builder;
+        if ( eventMetadata.get( CONTENT_TRACKING_ID ) == null && isNotModified( request, eTag, lastModified ) )
+        {
+            logger.debug( "NOT MODIFIED: retrieval of content: {}:{}", sk, path );
+            if ( fileEventManager != null )
+            {
+                fileEventManager.fire( new FileAccessEvent( item, eventMetadata ) );
+            }
+            builder = Response.notModified()
+                              .header( ApplicationHeader.last_modified.key(),
+                                       HttpUtils.formatDateHeader( lastModified ) );
+        }
+        else
+        {
+            final long length = item.length();
+            final List<HttpByteRange> ranges = isRangeApplicable( request, eTag, lastModified ) ?
+                    HttpByteRange.parse( request.getHeader( ApplicationHeader.range.key() ), length ) :
+                    null;
+
+            if ( ranges != null && ranges.isEmpty() )
+            {
+                logger.debug( "UNSATISFIABLE RANGE: {} of content: {}:{}",
+                              request.getHeader( ApplicationHeader.range.key() ), sk, path );
+                builder = Response.status( Status.REQUESTED_RANGE_NOT_SATISFIABLE )
+                                  .header( ApplicationHeader.content_range.key(), "bytes */" + length );
+            }
+            else if ( ranges != null )
+            {
+                logger.debug( "RETURNING: ranges {} of content: {}:{}", ranges, sk, path );
+                final String boundary = ranges.size() > 1 ? UUID.randomUUID().toString() : null;
+                // open the stream here to prevent deletion while waiting for the transfer back to the user to start...
+                InputStream in = item.openInputStream( true, eventMetadata );
+                builder = Response.status( Status.PARTIAL_CONTENT )
+                                  .entity( new TransferRangeStreamingOutput( in, ranges, length, contentType,
+                                                                             boundary ) );
+
+                responseHelper.setInfoHeaders( builder, item, sk, path, false, contentType, httpMetadata );
+                if ( boundary == null )
+                {
+                    builder.header( ApplicationHeader.content_range.key(), ranges.get( 0 ).toContentRange( length ) );
+                    builder.header( ApplicationHeader.content_length.key(), ranges.get( 0 ).getLength() );
+                    builder.header( ApplicationHeader.transfer_encoding.key(), null );
+                }
+                else
+                {
+                    builder.header( ApplicationHeader.content_type.key(), null );
+                    builder.header( ApplicationHeader.content_type.key(), "multipart/byteranges; boundary=" + boundary );
+                }
+            }
+            else
+            {
+                logger.debug( "RETURNING: retrieval of content: {}:{}", sk, path );
+                // open the stream here to prevent deletion while waiting for the transfer back to the user to start...
+                InputStream in = item.openInputStream( true, eventMetadata );
+                builder = Response.ok( new TransferStreamingOutput( in ) );
+
+                responseHelper.setInfoHeaders( builder, item, sk, path, true, contentType, httpMetadata );
+            }
+
+            builder.header( ApplicationHeader.accept_ranges.key(), "bytes" );
+        }
+
+        if ( upstreamETag == null )
+        {
+            builder.header( ApplicationHeader.etag.key(), eTag );
+        }
+        else
+        {
+            builder.header( ApplicationHeader.etag.key(), null );
+            builder.header( ApplicationHeader.etag.key(), upstreamETag );
+        }
+
+        if ( builderModifier != null )
+        {
+            builderModifier.accept( builder );
+        }
+        return builder.build();
+    }
+
+    private boolean isMetadata( final Transfer item, final String packageType )
+    {
+        final SpecialPathInfo spi = specialPathManager.getSpecialPathInfo( item, packageType );
+        return spi != null && spi.isMetadata();
+    }
+
+    /**
+     * ETag from the stored checksums of the content; these are only looked up, never calculated here.
+     */
+    private String getETag( final Transfer item )
+    {
+        final TransferMetadata metadata = contentDigester == null ? null : contentDigester.getContentMetadata( item );
+        if ( metadata != null && metadata.getDigests() != null )
+        {
+            for ( ContentDigest digest : new ContentDigest[] { ContentDigest.SHA_256, ContentDigest.SHA_1,
+                    ContentDigest.MD5 } )
+            {
+                final String value = metadata.getDigests().get( digest );
+                if ( value != null )
+                {
+                    return "\"" + value + "\"";
+                }
+            }
+        }
+
+        return "W/\"" + Long.toHexString( item.length() ) + "-" + Long.toHexString( item.lastModified() ) + "\"";
+    }
+
+    private long getLastModified( final Transfer item, final HttpExchangeMetadata httpMetadata )
+    {
+        final String upstream = getUpstreamHeader( httpMetadata, ApplicationHeader.last_modified );
+        if ( upstream != null )
+        {
+            try
+            {
+                return HttpUtils.parseDateHeader( upstream ).getTime();
+            }
+            catch ( ParseException e )
+            {
+                logger.debug( "Ignoring unparseable upstream Last-Modified: {}", upstream );
+            }
+        }
+        return item.lastModified();
+    }
+
+    private String getUpstreamHeader( final HttpExchangeMetadata httpMetadata, final ApplicationHeader header )
+    {
+        if ( httpMetadata == null || httpMetadata.getResponseHeaders() == null )
+        {
+            return null;
+        }
+
+        final List<String> values = httpMetadata.getResponseHeaders().get( header.upperKey() );
+        if ( values != null )
+        {
+            for ( String value : values )
+            {
+                if ( StringUtils.isNotBlank( value ) )
+                {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isNotModified( final HttpServletRequest request, final String eTag, final long lastModified )
+    {
+        final String ifNoneMatch = request.getHeader( ApplicationHeader.if_none_match.key() );
+        if ( ifNoneMatch != null )
+        {
+            return matchesETag( ifNoneMatch, eTag, false );
+        }
+
+        final String ifModifiedSince = request.getHeader( ApplicationHeader.if_modified_since.key() );
+        if ( ifModifiedSince != null && lastModified > 0 )
+        {
+            try
+            {
+                return lastModified / 1000 <= HttpUtils.parseDateHeader( ifModifiedSince ).getTime() / 1000;
+            }
+            catch ( ParseException e )
+            {
+                logger.debug( "Ignoring unparseable If-Modified-Since: {}", ifModifiedSince );
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A Range header is honored unless an If-Range header names another version of the content.
+     */
+    private boolean isRangeApplicable( final HttpServletRequest request, final String eTag, final long lastModified )
+    {
+        final String ifRange = request.getHeader( ApplicationHeader.if_range.key() );
+        if ( ifRange == null )
+        {
+            return true;
+        }
+
+        final String value = ifRange.trim();
+        if ( value.startsWith( "\"" ) || value.startsWith( "W/" ) )
+        {
+            return matchesETag( value, eTag, true );
+        }
+
+        try
+        {
+            return lastModified > 0 && lastModified / 1000 == HttpUtils.parseDateHeader( value ).getTime() / 1000;
+        }
+        catch ( ParseException e )
+        {
+            return false;
+        }
+    }
+
+    private static boolean matchesETag( final String header, final String eTag, final boolean strong )
+    {
+        if ( eTag == null )
+        {
+            return false;
+        }
+
+        for ( String tag : header.split( "," ) )
+        {
+            tag = tag.trim();
+            if ( "*".equals( tag ) )
+            {
+                return true;
+            }
+
+            if ( strong )
+            {
+                if ( !tag.startsWith( "W/" ) && !eTag.startsWith( "W/" ) && tag.equals( eTag ) )
+                {
+                    return true;
+                }
+            }
+            else if ( opaqueTag( tag ).equals( opaqueTag( eTag ) ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String opaqueTag( final String tag )
+    {
+        return tag.startsWith( "W/" ) ? tag.substring( 2 ) : tag;
+    }
+
     protected Response handleMissingContentQuery( final StoreKey sk, final String path,
                                                   final Consumer<ResponseBuilder> builderModifier )
     {
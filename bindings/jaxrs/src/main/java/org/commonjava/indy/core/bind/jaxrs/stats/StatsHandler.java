@@ -22,6 +22,7 @@ import java.util.TreeSet;
 import javax.inject.Inject;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
@@ -30,6 +31,7 @@ import javax.ws.rs.core.UriInfo;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.bind.jaxrs.IndyDeployment;
 import org.commonjava.indy.bind.jaxrs.IndyResources;
@@ -110,6 +112,22 @@ public class StatsHandler
         return responseHelper.formatOkResponseWithJsonEntity( statsController.getVersionInfo() );
     }
 
+    @ApiOperation( "Retrieve counters published under the given name (eg. group-retrieval, checksum-index, startup)" )
+    @ApiResponses( { @ApiResponse( code = 200, response = Map.class, message = "The metrics" ),
+                           @ApiResponse( code = 404, message = "No metrics are published under this name" ) } )
+    @Path( "/metrics/{name}" )
+    @GET
+    @Produces( ApplicationContent.application_json )
+    public Response getNamedMetrics( @PathParam( "name" ) final String name )
+    {
+        final Map<String, Long> metrics = statsController.getNamedMetrics( name );
+        if ( metrics == null )
+        {
+            return Response.status( Response.Status.NOT_FOUND ).build();
+        }
+        return responseHelper.formatOkResponseWithJsonEntity( metrics );
+    }
+
     @ApiOperation( "Retrieve a mapping of the package type names to descriptors (eg. maven, npm, generic-http, etc) available on the system." )
     @ApiResponse( code = 200, response = Map.class, message = "The package type listing of packageType => details" )
     @Path( "/package-type/map" )
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One satisfiable byte range of a <code>Range: bytes=...</code> request header, with inclusive bounds.
+ */
+public final class HttpByteRange
+{
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * Requests asking for more ranges than this are answered with the whole content, as RFC 7233 allows.
+     */
+    static final int MAX_RANGES = 32;
+
+    private final long start;
+
+    private final long end;
+
+    public HttpByteRange( final long start, final long end )
+    {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart()
+    {
+        return start;
+    }
+
+    public long getEnd()
+    {
+        return end;
+    }
+
+    public long getLength()
+    {
+        return end - start + 1;
+    }
+
+    /**
+     * Value of the Content-Range header for this range of content with the given total length.
+     */
+    public String toContentRange( final long total )
+    {
+        return "bytes " + start + "-" + end + "/" + total;
+    }
+
+    /**
+     * Parse a Range header against content of the given length. Overlapping and adjacent ranges are merged, and the
+     * result is sorted, so it can be served from a single forward pass over the content.
+     *
+     * @return null if the header should be ignored (absent, malformed, not in bytes or asking for too many ranges), an
+     * empty list if none of the ranges can be satisfied, otherwise the ranges to send.
+     */
+    public static List<HttpByteRange> parse( final String header, final long length )
+    {
+        if ( header == null || !header.trim().startsWith( BYTES_UNIT ) )
+        {
+            return null;
+        }
+
+        final String[] specs = header.trim().substring( BYTES_UNIT.length() ).split( "," );
+        if ( specs.length > MAX_RANGES )
+        {
+            return null;
+        }
+
+        final List<HttpByteRange> ranges = new ArrayList<>( specs.length );
+        for ( String spec : specs )
+        {
+            spec = spec.trim();
+            final int dash = spec.indexOf( '-' );
+            if ( dash < 0 )
+            {
+                return null;
+            }
+
+            final String first = spec.substring( 0, dash ).trim();
+            final String last = spec.substring( dash + 1 ).trim();
+            try
+            {
+                if ( first.isEmpty() )
+                {
+                    // suffix range: the last N bytes
+                    final long suffix = Long.parseLong( last );
+                    if ( suffix < 0 )
+                    {
+                        return null;
+                    }
+                    if ( suffix > 0 && length > 0 )
+                    {
+                        ranges.add( new HttpByteRange( Math.max( 0, length - suffix ), length - 1 ) );
+                    }
+                }
+                else
+                {
+                    final long start = Long.parseLong( first );
+                    long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong( last );
+                    if ( start < 0 || end < start )
+                    {
+                        return null;
+                    }
+                    if ( start < length )
+                    {
+                        ranges.add( new HttpByteRange( start, Math.min( end, length - 1 ) ) );
+                    }
+                }
+            }
+            catch ( NumberFormatException e )
+            {
+                return null;
+            }
+        }
+
+        ranges.sort( Comparator.comparingLong( HttpByteRange::getStart ) );
+        final List<HttpByteRange> merged = new ArrayList<>( ranges.size() );
+        for ( HttpByteRange range : ranges )
+        {
+            final HttpByteRange prev = merged.isEmpty() ? null : merged.get( merged.size() - 1 );
+            if ( prev != null && range.start <= prev.end + 1 )
+            {
+                merged.set( merged.size() - 1, new HttpByteRange( prev.start, Math.max( prev.end, range.end ) ) );
+            }
+            else
+            {
+                merged.add( range );
+            }
+        }
+
+        return merged;
+    }
+
+    @Override
+    public boolean equals( final Object o )
+    {
+        if ( this == o )
+        {
+            return true;
+        }
+        if ( !( o instanceof HttpByteRange ) )
+        {
+            return false;
+        }
+        final HttpByteRange other = (HttpByteRange) o;
+        return start == other.start && end == other.end;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Long.hashCode( start ) * 31 + Long.hashCode( end );
+    }
+
+    @Override
+    public String toString()
+    {
+        return start + "-" + end;
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.util;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes the given byte ranges of a transfer stream, in one forward pass. A single range is written as is; several are
+ * written as a <code>multipart/byteranges</code> body with the given boundary. The ranges must be sorted and must not
+ * overlap, as returned by {@link HttpByteRange#parse(String, long)}.
+ */
+public class TransferRangeStreamingOutput
+    implements StreamingOutput
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream stream;
+
+    private final List<HttpByteRange> ranges;
+
+    private final long total;
+
+    private final String contentType;
+
+    private final String boundary;
+
+    public TransferRangeStreamingOutput( final InputStream stream, final List<HttpByteRange> ranges, final long total,
+                                         final String contentType, final String boundary )
+    {
+        this.stream = stream;
+        this.ranges = ranges;
+        this.total = total;
+        this.contentType = contentType;
+        this.boundary = boundary;
+    }
+
+    @Override
+    public void write( final OutputStream out )
+        throws IOException, WebApplicationException
+    {
+        try
+        {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long position = 0;
+            long written = 0;
+            for ( HttpByteRange range : ranges )
+            {
+                if ( ranges.size() > 1 )
+                {
+                    out.write( partHeader( range ) );
+                }
+
+                IOUtils.skipFully( stream, range.getStart() - position );
+                written += IOUtils.copyLarge( stream, out, 0, range.getLength(), buffer );
+                position = range.getEnd() + 1;
+            }
+
+            if ( ranges.size() > 1 )
+            {
+                out.write( ( "\r\n--" + boundary + "--\r\n" ).getBytes( StandardCharsets.US_ASCII ) );
+            }
+
+            Logger logger = LoggerFactory.getLogger( getClass() );
+            logger.trace( "Wrote: {} bytes in {} ranges", written, ranges.size() );
+        }
+        finally
+        {
+            IOUtils.closeQuietly( stream );
+        }
+    }
+
+    private byte[] partHeader( final HttpByteRange range )
+    {
+        StringBuilder sb = new StringBuilder( "\r\n--" ).append( boundary ).append( "\r\n" );
+        if ( contentType != null )
+        {
+            sb.append( "Content-Type: " ).append( contentType ).append( "\r\n" );
+        }
+        sb.append( "Content-Range: " ).append( range.toContentRange( total ) ).append( "\r\n\r\n" );
+        return sb.toString().getBytes( StandardCharsets.US_ASCII );
+    }
+}
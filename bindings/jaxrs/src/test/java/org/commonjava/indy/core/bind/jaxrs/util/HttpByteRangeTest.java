@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.bind.jaxrs.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class HttpByteRangeTest
+{
+    private static final String CONTENT = "0123456789abcdefghij";
+
+    @Test
+    public void parseSingleAndSuffixRanges()
+    {
+        assertThat( HttpByteRange.parse( "bytes=0-4", 20 ),
+                    equalTo( Collections.singletonList( new HttpByteRange( 0, 4 ) ) ) );
+        assertThat( HttpByteRange.parse( "bytes=15-", 20 ),
+                    equalTo( Collections.singletonList( new HttpByteRange( 15, 19 ) ) ) );
+        assertThat( HttpByteRange.parse( "bytes=-5", 20 ),
+                    equalTo( Collections.singletonList( new HttpByteRange( 15, 19 ) ) ) );
+        assertThat( HttpByteRange.parse( "bytes=10-100", 20 ),
+                    equalTo( Collections.singletonList( new HttpByteRange( 10, 19 ) ) ) );
+    }
+
+    @Test
+    public void overlappingRangesAreMergedAndSorted()
+    {
+        assertThat( HttpByteRange.parse( "bytes=10-12, 0-2, 2-4, 5-5", 20 ),
+                    equalTo( Arrays.asList( new HttpByteRange( 0, 5 ), new HttpByteRange( 10, 12 ) ) ) );
+    }
+
+    @Test
+    public void invalidOrUnsatisfiableRanges()
+    {
+        assertThat( HttpByteRange.parse( null, 20 ), nullValue() );
+        assertThat( HttpByteRange.parse( "items=0-1", 20 ), nullValue() );
+        assertThat( HttpByteRange.parse( "bytes=5-1", 20 ), nullValue() );
+        assertThat( HttpByteRange.parse( "bytes=a-b", 20 ), nullValue() );
+        assertThat( HttpByteRange.parse( "bytes=20-30", 20 ).isEmpty(), equalTo( true ) );
+        assertThat( HttpByteRange.parse( "bytes=-0", 20 ).isEmpty(), equalTo( true ) );
+    }
+
+    @Test
+    public void writeSingleRange()
+            throws IOException
+    {
+        List<HttpByteRange> ranges = HttpByteRange.parse( "bytes=3-6", CONTENT.length() );
+        assertThat( write( ranges, null ), equalTo( "3456" ) );
+    }
+
+    @Test
+    public void writeMultipleRanges()
+            throws IOException
+    {
+        List<HttpByteRange> ranges = HttpByteRange.parse( "bytes=0-1,-2", CONTENT.length() );
+        String body = write( ranges, "BOUNDARY" );
+
+        assertThat( body, containsString( "--BOUNDARY\r\nContent-Type: text/plain\r\nContent-Range: bytes 0-1/20\r\n\r\n01" ) );
+        assertThat( body, containsString( "--BOUNDARY\r\nContent-Type: text/plain\r\nContent-Range: bytes 18-19/20\r\n\r\nij" ) );
+        assertThat( body.endsWith( "\r\n--BOUNDARY--\r\n" ), equalTo( true ) );
+    }
+
+    private String write( final List<HttpByteRange> ranges, final String boundary )
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TransferRangeStreamingOutput( new ByteArrayInputStream( CONTENT.getBytes() ), ranges, CONTENT.length(),
+                                          "text/plain", boundary ).write( out );
+        return out.toString();
+    }
+}
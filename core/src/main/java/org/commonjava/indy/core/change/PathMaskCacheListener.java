@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.change;
+
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.core.content.PathMaskChecker;
+import org.commonjava.indy.model.core.ArtifactStore;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+
+/**
+ * Drops the compiled path masks of updated and deleted stores. Updated stores normally carry a new pattern set and are
+ * recompiled on next check anyway; this also covers pattern sets changed in place and frees entries of deleted stores.
+ */
+@ApplicationScoped
+public class PathMaskCacheListener
+{
+    public void storeUpdated( @Observes final ArtifactStorePostUpdateEvent event )
+    {
+        event.getChanges().forEach( store -> PathMaskChecker.invalidate( store.getKey() ) );
+    }
+
+    public void storeDeleted( @Observes final ArtifactStoreDeletePostEvent event )
+    {
+        for ( final ArtifactStore store : event )
+        {
+            PathMaskChecker.invalidate( store.getKey() );
+        }
+    }
+}
@@ -39,8 +39,38 @@ public class IndyEventHandlerConfig
 
     public static final String HANDLER_KAFKA = "kafka";
 
+    public static final String OVERFLOW_BLOCK = "block";
+
+    public static final String OVERFLOW_DROP = "drop";
+
+    public static final String OVERFLOW_SPILL = "spill";
+
+    public static final int DEFAULT_FILE_EVENT_QUEUE_SIZE = 10000;
+
+    public static final int DEFAULT_FILE_EVENT_BATCH_SIZE = 200;
+
+    public static final long DEFAULT_FILE_EVENT_LINGER_MILLIS = 20;
+
+    public static final long DEFAULT_FILE_EVENT_OVERFLOW_BLOCK_MILLIS = 1000;
+
+    public static final int DEFAULT_FILE_EVENT_DIGEST_THREADS = 4;
+
     private String fileEventHandler = HANDLER_DEFAULT;
 
+    private int fileEventQueueSize = DEFAULT_FILE_EVENT_QUEUE_SIZE;
+
+    private int fileEventBatchSize = DEFAULT_FILE_EVENT_BATCH_SIZE;
+
+    private long fileEventLingerMillis = DEFAULT_FILE_EVENT_LINGER_MILLIS;
+
+    private String fileEventOverflow = OVERFLOW_BLOCK;
+
+    private long fileEventOverflowBlockMillis = DEFAULT_FILE_EVENT_OVERFLOW_BLOCK_MILLIS;
+
+    private String fileEventSpillDir;
+
+    private int fileEventDigestThreads = DEFAULT_FILE_EVENT_DIGEST_THREADS;
+
     public String getFileEventHandler()
     {
         return fileEventHandler;
@@ -51,6 +81,84 @@ public class IndyEventHandlerConfig
         this.fileEventHandler = fileEventHandler;
     }
 
+    public int getFileEventQueueSize()
+    {
+        return fileEventQueueSize;
+    }
+
+    public void setFileEventQueueSize( int fileEventQueueSize )
+    {
+        this.fileEventQueueSize = fileEventQueueSize;
+    }
+
+    public int getFileEventBatchSize()
+    {
+        return fileEventBatchSize;
+    }
+
+    public void setFileEventBatchSize( int fileEventBatchSize )
+    {
+        this.fileEventBatchSize = fileEventBatchSize;
+    }
+
+    public long getFileEventLingerMillis()
+    {
+        return fileEventLingerMillis;
+    }
+
+    public void setFileEventLingerMillis( long fileEventLingerMillis )
+    {
+        this.fileEventLingerMillis = fileEventLingerMillis;
+    }
+
+    /**
+     * What to do with a file event when the publishing queue is full: {@link #OVERFLOW_BLOCK} the caller for at most
+     * {@link #getFileEventOverflowBlockMillis()} and then drop it, {@link #OVERFLOW_DROP} it right away, or
+     * {@link #OVERFLOW_SPILL} it to a file under {@link #getFileEventSpillDir()} to be published later.
+     */
+    public String getFileEventOverflow()
+    {
+        return fileEventOverflow;
+    }
+
+    public void setFileEventOverflow( String fileEventOverflow )
+    {
+        this.fileEventOverflow = fileEventOverflow;
+    }
+
+    public long getFileEventOverflowBlockMillis()
+    {
+        return fileEventOverflowBlockMillis;
+    }
+
+    public void setFileEventOverflowBlockMillis( long fileEventOverflowBlockMillis )
+    {
+        this.fileEventOverflowBlockMillis = fileEventOverflowBlockMillis;
+    }
+
+    public String getFileEventSpillDir()
+    {
+        return fileEventSpillDir;
+    }
+
+    public void setFileEventSpillDir( String fileEventSpillDir )
+    {
+        this.fileEventSpillDir = fileEventSpillDir;
+    }
+
+    /**
+     * How many threads resolve the digests of a batch of file events in parallel before it is sent.
+     */
+    public int getFileEventDigestThreads()
+    {
+        return fileEventDigestThreads;
+    }
+
+    public void setFileEventDigestThreads( int fileEventDigestThreads )
+    {
+        this.fileEventDigestThreads = fileEventDigestThreads;
+    }
+
     @Override
     public void parameter(String name, String value)
     {
@@ -63,6 +171,41 @@ public class IndyEventHandlerConfig
                 this.fileEventHandler = value;
                 break;
             }
+            case "file.event.queue.size":
+            {
+                this.fileEventQueueSize = Integer.parseInt( value.trim() );
+                break;
+            }
+            case "file.event.batch.size":
+            {
+                this.fileEventBatchSize = Integer.parseInt( value.trim() );
+                break;
+            }
+            case "file.event.linger.millis":
+            {
+                this.fileEventLingerMillis = Long.parseLong( value.trim() );
+                break;
+            }
+            case "file.event.overflow":
+            {
+                this.fileEventOverflow = value.trim();
+                break;
+            }
+            case "file.event.overflow.block.millis":
+            {
+                this.fileEventOverflowBlockMillis = Long.parseLong( value.trim() );
+                break;
+            }
+            case "file.event.spill.dir":
+            {
+                this.fileEventSpillDir = value.trim();
+                break;
+            }
+            case "file.event.digest.threads":
+            {
+                this.fileEventDigestThreads = Integer.parseInt( value.trim() );
+                break;
+            }
             default: break;
         }
 
@@ -132,6 +132,14 @@ public abstract class AbstractMergedContentGenerator
 
         }
 
+        clearMerged( store, groups, paths );
+    }
+
+    /**
+     * Delete the merged files of the paths in the given groups, so they're merged again on the next request.
+     */
+    protected void clearMerged( final ArtifactStore store, final Set<Group> groups, final String... paths )
+    {
         groups.forEach( group -> Stream.of(paths).forEach( path->{
             logger.trace( "Clearing: '{}' in: {}", path, group );
             clearMergedFile( group, path );
@@ -0,0 +1,332 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.spi.IndyMetricsSource;
+import org.commonjava.indy.subsys.datafile.DataFileManager;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
+
+/**
+ * Persists the {@link TransferMetadata} (size and checksums) of stored content under
+ * <code>&lt;data&gt;/content-checksums/&lt;package type&gt;/&lt;store type&gt;/&lt;store name&gt;/</code>, so it can
+ * be read back with a single small read after the content metadata cache lost it, instead of reading the whole file
+ * again.
+ * <p>
+ * Each file has a one-line record of its own, named by the hash of its path (so the content tree is not mirrored, and
+ * reading or writing a record does not depend on how many files its directory holds). A record is written to a
+ * temporary file and renamed into place, so readers on any node sharing the data directory see either the old or the
+ * new record, and concurrent writers need no lock: the last rename wins. A record holds the size and modification time
+ * the file had when it was written, and is only used while the file still has exactly that size and modification
+ * time. Anything else is treated as no record, so a stale record costs a recalculation but never returns wrong
+ * checksums.
+ */
+@ApplicationScoped
+public class ContentChecksumIndex
+    implements IndyMetricsSource
+{
+    public static final String METRICS_NAME = "checksum-index";
+
+    static final String CHECKSUM_DIR = "content-checksums";
+
+    static final String RECORD_SUFFIX = ".sum";
+
+    private static final String RECORD_VERSION = "1";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private IndyConfiguration config;
+
+    @Inject
+    private DataFileManager dataFileManager;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong stale = new AtomicLong();
+
+    private final AtomicLong writes = new AtomicLong();
+
+    protected ContentChecksumIndex()
+    {
+    }
+
+    public ContentChecksumIndex( final IndyConfiguration config, final DataFileManager dataFileManager )
+    {
+        this.config = config;
+        this.dataFileManager = dataFileManager;
+    }
+
+    public boolean isEnabled()
+    {
+        return config != null && config.isContentChecksumIndexEnabled();
+    }
+
+    /**
+     * @return the recorded metadata of the transfer, or null if there is no record or it does not match the file
+     */
+    public TransferMetadata load( final Transfer transfer )
+    {
+        final File file = getRecordFile( transfer );
+        final String record = file == null ? null : readRecord( file, transfer.getPath() );
+        if ( record == null )
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        final String[] fields = record.split( " " );
+        if ( fields.length < 3 || !RECORD_VERSION.equals( fields[0] ) )
+        {
+            logger.debug( "Ignoring checksum record in unknown format: {}", file );
+            misses.incrementAndGet();
+            return null;
+        }
+
+        final long size;
+        final long modified;
+        try
+        {
+            size = Long.parseLong( fields[1] );
+            modified = Long.parseLong( fields[2] );
+        }
+        catch ( NumberFormatException e )
+        {
+            logger.debug( "Ignoring corrupt checksum record: {}", file );
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if ( !transfer.exists() || transfer.length() != size || transfer.lastModified() != modified )
+        {
+            logger.debug( "Checksum record of: {} is stale", transfer );
+            stale.incrementAndGet();
+            return null;
+        }
+
+        final Map<ContentDigest, String> digests = new EnumMap<>( ContentDigest.class );
+        for ( int i = 3; i < fields.length; i++ )
+        {
+            final int idx = fields[i].indexOf( '=' );
+            if ( idx < 1 )
+            {
+                continue;
+            }
+
+            try
+            {
+                digests.put( ContentDigest.valueOf( fields[i].substring( 0, idx ) ), fields[i].substring( idx + 1 ) );
+            }
+            catch ( IllegalArgumentException e )
+            {
+                logger.debug( "Ignoring unknown digest in checksum record: {}", fields[i] );
+            }
+        }
+
+        hits.incrementAndGet();
+        return new TransferMetadata( digests, size );
+    }
+
+    /**
+     * Record the metadata against the current size and modification time of the file. If the file is still being
+     * written, the record will not match it afterwards; it should be saved again once the file is stored.
+     */
+    public void save( final Transfer transfer, final TransferMetadata metadata )
+    {
+        final File file = getRecordFile( transfer );
+        if ( file == null || metadata == null || metadata.getSize() == null )
+        {
+            return;
+        }
+
+        final StringBuilder sb = new StringBuilder( transfer.getPath() );
+        sb.append( '\t' ).append( RECORD_VERSION );
+        sb.append( ' ' ).append( metadata.getSize() ).append( ' ' ).append( transfer.lastModified() );
+        metadata.getDigests().forEach( ( digest, value ) -> {
+            if ( value != null )
+            {
+                sb.append( ' ' ).append( digest.name() ).append( '=' ).append( value );
+            }
+        } );
+        sb.append( '\n' );
+
+        File tmp = null;
+        try
+        {
+            Files.createDirectories( file.getParentFile().toPath() );
+            // unique, so writers on other nodes sharing the data directory never write the same temporary file
+            tmp = Files.createTempFile( file.getParentFile().toPath(), file.getName(), ".tmp" ).toFile();
+            FileUtils.writeStringToFile( tmp, sb.toString(), StandardCharsets.UTF_8 );
+            try
+            {
+                Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch ( AtomicMoveNotSupportedException e )
+            {
+                Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+            writes.incrementAndGet();
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to write checksum record: {}. Reason: {}", file, e.getMessage() );
+            FileUtils.deleteQuietly( tmp );
+        }
+    }
+
+    public void remove( final Transfer transfer )
+    {
+        final File file = getRecordFile( transfer );
+        if ( file != null )
+        {
+            FileUtils.deleteQuietly( file );
+        }
+    }
+
+    public void onStoreDeletion( @Observes final ArtifactStoreDeletePostEvent event )
+    {
+        if ( !isEnabled() )
+        {
+            return;
+        }
+
+        for ( ArtifactStore store : event.getStores() )
+        {
+            final File dir = getStoreDir( store.getKey() );
+            logger.debug( "Deleting checksum records of deleted store: {}", store.getKey() );
+            FileUtils.deleteQuietly( dir );
+        }
+    }
+
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "hits", hits.get() );
+        metrics.put( "misses", misses.get() );
+        metrics.put( "stale", stale.get() );
+        metrics.put( "writes", writes.get() );
+        return metrics;
+    }
+
+    /**
+     * @return the record of the path, or null if there is none, it can't be read or it belongs to another path with
+     * the same hash
+     */
+    private String readRecord( final File file, final String path )
+    {
+        final String line;
+        try
+        {
+            line = new String( Files.readAllBytes( file.toPath() ), StandardCharsets.UTF_8 ).trim();
+        }
+        catch ( NoSuchFileException e )
+        {
+            return null;
+        }
+        catch ( IOException e )
+        {
+            logger.warn( "Failed to read checksum record: {}. Reason: {}", file, e.getMessage() );
+            return null;
+        }
+
+        final int idx = line.indexOf( '\t' );
+        if ( idx < 0 || !path.equals( line.substring( 0, idx ) ) )
+        {
+            return null;
+        }
+        return line.substring( idx + 1 );
+    }
+
+    private File getRecordFile( final Transfer transfer )
+    {
+        if ( !isEnabled() || transfer == null || !( transfer.getLocation() instanceof KeyedLocation ) )
+        {
+            return null;
+        }
+
+        final String path = transfer.getPath();
+        if ( !isIndexable( path ) )
+        {
+            return null;
+        }
+
+        final String hash = sha256Hex( path );
+        final StoreKey key = ( (KeyedLocation) transfer.getLocation() ).getKey();
+        return new File( new File( getStoreDir( key ), hash.substring( 0, 2 ) ), hash + RECORD_SUFFIX );
+    }
+
+    /**
+     * Paths with a parent segment are not trusted, and ones with line breaks or tabs can't be stored in a record.
+     */
+    static boolean isIndexable( final String path )
+    {
+        if ( path == null || path.indexOf( '\t' ) >= 0 || path.indexOf( '\n' ) >= 0 || path.indexOf( '\r' ) >= 0 )
+        {
+            return false;
+        }
+
+        for ( String segment : path.split( "[/\\\\]" ) )
+        {
+            if ( "..".equals( segment ) )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private File getStoreDir( final StoreKey key )
+    {
+        return dataFileManager.getDataFile( CHECKSUM_DIR, key.getPackageType(), key.getType().name(), key.getName() )
+                              .getDetachedFile();
+    }
+}
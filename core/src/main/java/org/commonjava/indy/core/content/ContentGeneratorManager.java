@@ -108,6 +108,19 @@ public class ContentGeneratorManager
         return item;
     }
 
+    /**
+     * Whether a generator handles the path for the group, that is, whether its content is generated or merged from
+     * the members' files rather than stored at the path itself.
+     */
+    public boolean isGeneratedGroupPath( Group group, String path )
+    {
+        String storagePath =
+                        pathGenerator.getPath( new ConcreteResource( LocationUtils.toLocation( group ), path ) );
+        return contentGenerators.stream()
+                                .anyMatch( generator -> generator.canProcess( path )
+                                                || generator.canProcess( storagePath ) );
+    }
+
     public void generateGroupFileContentAnd( Group group, List<ArtifactStore> members, String path,
                                              EventMetadata eventMetadata, Consumer<Transfer> consumer )
                     throws IndyWorkflowException
@@ -16,27 +16,39 @@
 package org.commonjava.indy.core.content;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.change.event.ArtifactStorePostRescanEvent;
 import org.commonjava.indy.content.ContentDigester;
 import org.commonjava.indy.content.DirectContentAccess;
 import org.commonjava.indy.core.inject.ContentMetadataCache;
+import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
 import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.FileStorageEvent;
 import org.commonjava.maven.galley.io.checksum.TransferMetadata;
 import org.commonjava.maven.galley.model.Transfer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 import static org.commonjava.indy.core.content.ContentMetadataGenerator.FORCE_CHECKSUM_AND_WRITE;
 import static org.commonjava.maven.galley.io.ChecksummingTransferDecorator.FORCE_CHECKSUM;
+import static org.commonjava.maven.galley.util.PathUtils.ROOT;
 
 /**
  * Created by jdcasey on 1/4/17.
@@ -49,6 +61,16 @@ public class DefaultContentDigester
 
 {
 
+    private static final int DRAIN_BUFFER_SIZE = 64 * 1024;
+
+    private static final int DRAIN_BUFFER_POOL_SIZE = 16;
+
+    /**
+     * Buffers to drain content through while it is digested; at most {@link #DRAIN_BUFFER_POOL_SIZE} are kept, more
+     * concurrent calculations allocate their own.
+     */
+    private final BlockingQueue<byte[]> drainBuffers = new ArrayBlockingQueue<>( DRAIN_BUFFER_POOL_SIZE );
+
     @Inject
     private DirectContentAccess directContentAccess;
 
@@ -56,6 +78,15 @@ public class DefaultContentDigester
     @ContentMetadataCache
     private BasicCacheHandle<String, TransferMetadata> metadataCache;
 
+    @Inject
+    private ContentChecksumIndex checksumIndex;
+
+    /**
+     * Calculations running now, by cache key, so concurrent requests for the same (store, path) wait for one of them
+     * instead of each reading the whole file.
+     */
+    private final Map<String, CompletableFuture<TransferMetadata>> inProgress = new ConcurrentHashMap<>();
+
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     protected DefaultContentDigester()
@@ -69,6 +100,14 @@ public class DefaultContentDigester
         this.metadataCache = metadataCache;
     }
 
+    public DefaultContentDigester( DirectContentAccess directContentAccess,
+                                   BasicCacheHandle<String, TransferMetadata> metadataCache,
+                                   ContentChecksumIndex checksumIndex )
+    {
+        this( directContentAccess, metadataCache );
+        this.checksumIndex = checksumIndex;
+    }
+
     @Override
     public void addMetadata( final Transfer transfer, final TransferMetadata transferData )
     {
@@ -77,6 +116,10 @@ public class DefaultContentDigester
             String cacheKey = generateCacheKey( transfer );
             logger.trace( "Adding TransferMetadata for: {}\n{}", cacheKey, transferData );
             metadataCache.put( cacheKey, transferData );
+            if ( isIndexEnabled() )
+            {
+                checksumIndex.save( transfer, transferData );
+            }
         }
     }
 
@@ -97,6 +140,10 @@ public class DefaultContentDigester
         String cacheKey = generateCacheKey( transfer );
         TransferMetadata meta = metadataCache.remove( cacheKey );
         logger.trace( "Removing TransferMetadata for: {}\n{}", cacheKey, meta );
+        if ( isIndexEnabled() )
+        {
+            checksumIndex.remove( transfer );
+        }
     }
 
     @Override
@@ -111,6 +158,11 @@ public class DefaultContentDigester
         {
             logger.trace( "[CACHE HIT] Returning content metadata for: {}\n\n{}\n\n", cacheKey, metadata );
         }
+        else if ( isIndexEnabled() && ( metadata = checksumIndex.load( transfer ) ) != null )
+        {
+            logger.trace( "[INDEX HIT] Returning persisted content metadata for: {}\n\n{}\n\n", cacheKey, metadata );
+            metadataCache.put( cacheKey, metadata );
+        }
         else
         {
             logger.trace( "[CACHE MISS] Cannot find content metadata for: {}!", cacheKey );
@@ -118,6 +170,106 @@ public class DefaultContentDigester
         return metadata;
     }
 
+    /**
+     * Checksums of a file that is being written are reported before the storage sets its final modification time, so
+     * the record saved then won't match the stored file. Save it again now that the file is stored.
+     */
+    public void onFileStorage( @Observes final FileStorageEvent event )
+    {
+        final Transfer transfer = event.getTransfer();
+        if ( !isIndexEnabled() || transfer == null )
+        {
+            return;
+        }
+
+        final TransferMetadata cached = metadataCache.get( generateCacheKey( transfer ) );
+        if ( cached != null && checksumIndex.load( transfer ) == null )
+        {
+            checksumIndex.save( transfer, cached );
+        }
+    }
+
+    /**
+     * Rebuild the persisted checksum records of a store after it is rescanned, so records that are missing or stale
+     * (eg. written before the index was enabled, or by another node) are recalculated in the background rather than
+     * on the next request.
+     */
+    public void onPostRescan( @Observes final ArtifactStorePostRescanEvent event )
+    {
+        if ( !isIndexEnabled() )
+        {
+            return;
+        }
+
+        for ( ArtifactStore store : event.getStores() )
+        {
+            try
+            {
+                final Transfer root = directContentAccess.getTransfer( store, ROOT );
+                if ( root != null )
+                {
+                    logger.info( "Rebuilding checksum records of: {}", store.getKey() );
+                    rebuildIndex( store, root );
+                }
+            }
+            catch ( IndyWorkflowException e )
+            {
+                logger.warn( "Failed to rebuild checksum records of: {}. Reason: {}", store.getKey(),
+                             e.getMessage() );
+            }
+        }
+    }
+
+    private void rebuildIndex( final ArtifactStore store, final Transfer item )
+    {
+        if ( !item.exists() )
+        {
+            return;
+        }
+
+        if ( item.isDirectory() )
+        {
+            try
+            {
+                for ( final String sub : item.list() )
+                {
+                    rebuildIndex( store, item.getChild( sub ) );
+                }
+            }
+            catch ( IOException e )
+            {
+                logger.warn( "Failed to list: {}. Reason: {}", item, e.getMessage() );
+            }
+            return;
+        }
+
+        if ( checksumIndex.load( item ) != null )
+        {
+            return;
+        }
+
+        final TransferMetadata cached = metadataCache.get( generateCacheKey( item ) );
+        if ( cached != null )
+        {
+            checksumIndex.save( item, cached );
+            return;
+        }
+
+        try
+        {
+            digest( store.getKey(), item.getPath(), new EventMetadata( store.getPackageType() ) );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            logger.warn( "Failed to calculate checksums of: {}. Reason: {}", item, e.getMessage() );
+        }
+    }
+
+    private boolean isIndexEnabled()
+    {
+        return checksumIndex != null && checksumIndex.isEnabled();
+    }
+
     public TransferMetadata digest( final StoreKey key, final String path, final EventMetadata eventMetadata )
             throws IndyWorkflowException
     {
@@ -143,6 +295,35 @@ public class DefaultContentDigester
         }
 
         String cacheKey = generateCacheKey( transfer );
+        CompletableFuture<TransferMetadata> mine = new CompletableFuture<>();
+        CompletableFuture<TransferMetadata> running = inProgress.putIfAbsent( cacheKey, mine );
+        if ( running != null )
+        {
+            logger.debug( "TransferMetadata for: {} is being calculated already, waiting for it", cacheKey );
+            return await( running, transfer );
+        }
+
+        try
+        {
+            TransferMetadata result = calculate( transfer, cacheKey, eventMetadata );
+            mine.complete( result );
+            return result;
+        }
+        catch ( IndyWorkflowException | RuntimeException e )
+        {
+            mine.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            inProgress.remove( cacheKey, mine );
+        }
+    }
+
+    private TransferMetadata calculate( final Transfer transfer, final String cacheKey,
+                                        final EventMetadata eventMetadata )
+            throws IndyWorkflowException
+    {
         logger.debug( "TransferMetadata missing for: {}. Re-reading with FORCE_CHECKSUM now to calculate it.",
                       cacheKey );
 
@@ -150,8 +331,21 @@ public class DefaultContentDigester
         try(InputStream stream = transfer.openInputStream( false, forcedEventMetadata ) )
         {
             // depend on ChecksummingTransferDecorator to calculate / store metadata as this gets read, using
-            // the FORCE_CHECKSUM metadata key to control its generation.
-            IOUtils.toByteArray( stream );
+            // the FORCE_CHECKSUM metadata key to control its generation. The content itself is discarded, so it is
+            // drained through a pooled buffer instead of being held in memory.
+            byte[] buffer = drainBuffers.poll();
+            if ( buffer == null )
+            {
+                buffer = new byte[DRAIN_BUFFER_SIZE];
+            }
+            try
+            {
+                IOUtils.copyLarge( stream, NullOutputStream.INSTANCE, buffer );
+            }
+            finally
+            {
+                drainBuffers.offer( buffer );
+            }
         }
         catch ( IOException e )
         {
@@ -163,4 +357,24 @@ public class DefaultContentDigester
 
         return getContentMetadata( transfer );
     }
+
+    private TransferMetadata await( final CompletableFuture<TransferMetadata> running, final Transfer transfer )
+            throws IndyWorkflowException
+    {
+        try
+        {
+            return running.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IndyWorkflowException( "Interrupted while waiting for checksums of: %s", e, transfer );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            throw new IndyWorkflowException( "Failed to calculate checksums (MD5, SHA-256, etc.) for: %s. Reason: %s",
+                                             cause, transfer, cause.getMessage() );
+        }
+    }
 }
@@ -23,7 +23,10 @@ import org.commonjava.indy.content.ContentDigester;
 import org.commonjava.indy.content.ContentManager;
 import org.commonjava.indy.content.DownloadManager;
 import org.commonjava.indy.content.StoreResource;
+import org.commonjava.indy.core.content.group.GroupMembershipCache;
+import org.commonjava.indy.core.content.group.GroupNotFoundCache;
 import org.commonjava.indy.core.content.group.GroupRepositoryFilterManager;
+import org.commonjava.indy.core.content.group.ParallelGroupRetriever;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.StoreType;
@@ -53,10 +56,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import static org.commonjava.indy.IndyContentConstants.CASCADE;
 import static org.commonjava.indy.IndyContentConstants.CHECK_CACHE_ONLY;
+import static org.commonjava.indy.core.content.group.GroupMembershipCache.getOrderedConcreteStores;
 import static org.commonjava.indy.data.StoreDataManager.IGNORE_READONLY;
 import static org.commonjava.indy.model.core.StoreType.group;
 import static org.commonjava.indy.model.core.StoreType.hosted;
@@ -96,6 +101,15 @@ public class DefaultContentManager
     @Inject
     private GroupRepositoryFilterManager repositoryFilterManager;
 
+    @Inject
+    private ParallelGroupRetriever parallelGroupRetriever;
+
+    @Inject
+    private GroupMembershipCache groupMembershipCache;
+
+    @Inject
+    private GroupNotFoundCache groupNotFoundCache;
+
     protected DefaultContentManager()
     {
     }
@@ -207,6 +221,15 @@ public class DefaultContentManager
         Transfer item;
         if ( group == store.getKey().getType() )
         {
+            final boolean groupNfc = groupNotFoundCache != null && groupNotFoundCache.isEnabled();
+            if ( groupNfc && groupNotFoundCache.isMissing( (Group) store, path ) )
+            {
+                logger.trace( "Path {} is known to be missing from all members of {}", path, store.getKey() );
+                return null;
+            }
+
+            final long stamp = groupNfc ? groupNotFoundCache.getStamp( path ) : 0;
+
             List<ArtifactStore> members = getOrderedConcreteStoresAndFilter( (Group) store, path );
             if ( logger.isDebugEnabled() )
             {
@@ -217,29 +240,39 @@ public class DefaultContentManager
             item = contentGeneratorManager.generateGroupFileContent( (Group) store, members, path, eventMetadata );
             boolean generated = ( item != null );
 
+            // a member that failed (rather than missed) means the miss is not conclusive
+            final AtomicBoolean memberFailed = new AtomicBoolean( false );
             if ( !generated )
             {
                 if ( PathMaskChecker.checkMask( store, path ) )
                 {
-                    for ( final ArtifactStore member : members )
+                    if ( isParallelRetrieval( members ) )
                     {
-                        try
-                        {
-                            item = doRetrieve( member, path, eventMetadata );
-                        }
-                        catch ( IndyWorkflowException e )
-                        {
-                            logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}",
-                                          path, member, store, e.getMessage() );
-                        }
-                        if ( item != null )
-                        {
-                            // get the item from the first member store
-                            break;
-                        }
+                        item = parallelGroupRetriever.retrieveFirst( (Group) store, members, path, member -> {
+                            try
+                            {
+                                return doRetrieve( member, path, eventMetadata );
+                            }
+                            catch ( IndyWorkflowException e )
+                            {
+                                memberFailed.set( true );
+                                throw e;
+                            }
+                        } );
+                    }
+                    else
+                    {
+                        item = retrieveFirstInOrder( (Group) store, members, path, eventMetadata, memberFailed );
                     }
                 }
             }
+
+            // generated paths depend on other files of the members, which do not invalidate the miss when stored
+            if ( item == null && groupNfc && !memberFailed.get()
+                            && !contentGeneratorManager.isGeneratedGroupPath( (Group) store, path ) )
+            {
+                groupNotFoundCache.addMissing( (Group) store, path, members, stamp );
+            }
         }
         else
         {
@@ -258,14 +291,43 @@ public class DefaultContentManager
         return item;
     }
 
+    private boolean isParallelRetrieval( final List<ArtifactStore> members )
+    {
+        return parallelGroupRetriever != null && parallelGroupRetriever.isEnabled() && members.size() > 1;
+    }
+
+    private Transfer retrieveFirstInOrder( final Group group, final List<ArtifactStore> members, final String path,
+                                           final EventMetadata eventMetadata, final AtomicBoolean memberFailed )
+    {
+        Transfer item = null;
+        for ( final ArtifactStore member : members )
+        {
+            try
+            {
+                item = doRetrieve( member, path, eventMetadata );
+            }
+            catch ( IndyWorkflowException e )
+            {
+                logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}", path,
+                              member, group, e.getMessage() );
+                memberFailed.set( true );
+            }
+            if ( item != null )
+            {
+                // get the item from the first member store
+                break;
+            }
+        }
+
+        return item;
+    }
+
     private List<ArtifactStore> getOrderedConcreteStoresAndFilter( Group group, String path ) throws IndyWorkflowException
     {
         List<ArtifactStore> members;
         try
         {
-            members = storeManager.query()
-                                  .enabledState( true )
-                                  .getOrderedConcreteStoresInGroup( group.getPackageType(), group.getName() );
+            members = getOrderedConcreteStores( groupMembershipCache, storeManager, group );
         }
         catch ( final IndyDataException e )
         {
@@ -342,9 +404,8 @@ public class DefaultContentManager
         {
             try
             {
-                final List<ArtifactStore> allMembers = storeManager.query()
-                                      .enabledState( true )
-                                      .getOrderedConcreteStoresInGroup( store.getPackageType(), store.getName() );
+                final List<ArtifactStore> allMembers =
+                        getOrderedConcreteStores( groupMembershipCache, storeManager, (Group) store );
 
                 final Transfer txfr = store( allMembers, store.getKey(), path, stream, op, eventMetadata );
                 logger.debug( "Stored: {} for group: {} in: {}", path, store.getKey(), txfr );
@@ -26,9 +26,11 @@ import org.commonjava.indy.change.event.IndyStoreErrorEvent;
 import org.commonjava.indy.content.DownloadManager;
 import org.commonjava.indy.content.StoreResource;
 import org.commonjava.indy.core.change.event.IndyFileEventManager;
+import org.commonjava.indy.core.content.group.GroupMembershipCache;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.StoreDataManager;
 import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.HostedRepository;
 import org.commonjava.indy.model.core.RemoteRepository;
 import org.commonjava.indy.model.core.StoreKey;
@@ -81,6 +83,7 @@ import java.util.stream.StreamSupport;
 import static org.commonjava.cdi.util.weft.ExecutorConfig.BooleanLiteral.TRUE;
 import static org.commonjava.indy.IndyContentConstants.CHECK_CACHE_ONLY;
 import static org.commonjava.indy.change.EventUtils.fireEvent;
+import static org.commonjava.indy.core.content.group.GroupMembershipCache.getOrderedConcreteStores;
 import static org.commonjava.indy.core.ctl.PoolUtils.detectOverloadVoid;
 import static org.commonjava.indy.data.StoreDataManager.IGNORE_READONLY;
 import static org.commonjava.indy.model.core.StoreType.hosted;
@@ -124,6 +127,9 @@ public class DefaultDownloadManager
     @Inject
     private SpecialPathManager specialPathManager;
 
+    @Inject
+    private GroupMembershipCache groupMembershipCache;
+
     @Inject
     @Any
     private Instance<ContentAdvisor> contentAdvisors;
@@ -158,6 +164,7 @@ public class DefaultDownloadManager
         this(storeManager, transfers, locationExpander, contentAdvisors, rescanService);
         this.nfc = nfc;
     }
+
     @Override
     public List<StoreResource> list( final ArtifactStore store, final String path )
             throws IndyWorkflowException
@@ -180,9 +187,7 @@ public class DefaultDownloadManager
                 List<ArtifactStore> members;
                 try
                 {
-                    members = storeManager.query()
-                            .enabledState( true )
-                            .getOrderedConcreteStoresInGroup( store.getPackageType(), store.getName() );
+                    members = getOrderedConcreteStores( groupMembershipCache, storeManager, (Group) store );
                 }
                 catch ( final IndyDataException e )
                 {
@@ -16,19 +16,25 @@
 package org.commonjava.indy.core.content;
 
 import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.StoreKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Path mask checks for stores. The mask patterns of each store are compiled into a {@link PathMaskIndex} on first use
+ * and the index is reused, by copies of the store as well, until the store's patterns change.
+ */
 public class PathMaskChecker
 {
     private static final Logger logger = LoggerFactory.getLogger( PathMaskChecker.class );
 
+    private static final Map<StoreKey, PathMaskIndex> indexes = new ConcurrentHashMap<>();
+
     public static boolean checkMask(final ArtifactStore repo, final String path){
         Set<String> maskPatterns = repo.getPathMaskPatterns();
         logger.trace( "Checking mask in: {}, patterns: {}", repo.getKey(), maskPatterns );
@@ -39,23 +45,10 @@ public class PathMaskChecker
             return true;
         }
 
-        for ( String pattern : maskPatterns )
+        if ( getIndex( repo, maskPatterns ).matches( path ) )
         {
-            // adding allPlaintext to the condition to reduce the number of isRegexPattern() calls
-            if ( isRegexPattern( pattern ) )
-            {
-                final String realRegex = pattern.substring( 2, pattern.length() - 1 );
-                if ( path.matches( realRegex ) )
-                {
-                    logger.trace( "Checking mask in: {}, pattern with regex: {} - MATCH", repo.getName(), realRegex );
-                    return true;
-                }
-            }
-            else if ( path.startsWith( pattern ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", repo.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", repo.getName(), path );
+            return true;
         }
 
         logger.debug( "Path {} not available in path mask {} of repo {}", path, maskPatterns, repo );
@@ -75,45 +68,29 @@ public class PathMaskChecker
             return true;
         }
 
-        // if the pattern contains the metadata path, let's try to extract the groupId to filter the repos.
-        List<String> metadataPatterns = maskPatterns.stream()
-                .filter(pattern -> pattern.endsWith("maven-metadata.xml"))
-                .collect( Collectors.toList() );
+        PathMaskIndex index = getIndex( store, maskPatterns );
 
-        if ( metadataPatterns.isEmpty() )
+        // if the pattern contains the metadata path, let's try to extract the groupId to filter the repos.
+        if ( !index.hasMetadataPatterns() )
         {
-            for ( String pattern : maskPatterns )
+            if ( index.hasRegexPatterns() )
             {
-                if ( isRegexPattern( pattern ) )
-                {
-                    // if there is a regexp pattern we cannot check presence of directory listing, because we would have to
-                    // check only the beginning of the regexp and that's impossible, so we have to assume that the path is
-                    // present
-                    return true;
-                }
+                // if there is a regexp pattern we cannot check presence of directory listing, because we would have to
+                // check only the beginning of the regexp and that's impossible, so we have to assume that the path is
+                // present
+                return true;
             }
         }
-        else
+        else if ( index.matchesMetadataGroupIdPath( path ) )
         {
-            boolean matches = metadataPatterns.stream()
-                    .map(pattern -> extractGroupIdPath(pattern))
-                    .filter( Objects::nonNull )
-                    .anyMatch(groupIdPath -> path.startsWith( groupIdPath ) || groupIdPath.startsWith( path ) );
-
-            if ( matches )
-            {
-                logger.trace( "Checking mask in: {}, pattern with groupId path. - MATCH.", store.getName() );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, pattern with groupId path. - MATCH.", store.getName() );
+            return true;
         }
 
-        for ( String pattern : maskPatterns )
+        if ( index.overlaps( path, false ) )
         {
-            if ( path.startsWith( pattern ) || pattern.startsWith( path ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", store.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", store.getName(), path );
+            return true;
         }
 
         logger.debug( "Listing for path {} not enabled by path mask {} of repo {}", path, maskPatterns, store.getKey() );
@@ -121,6 +98,27 @@ public class PathMaskChecker
         return false;
     }
 
+    /**
+     * Drop the compiled path masks of a store, e.g. when it is deleted.
+     */
+    public static void invalidate( final StoreKey key )
+    {
+        indexes.remove( key );
+    }
+
+    static PathMaskIndex getIndex( final ArtifactStore store, final Set<String> maskPatterns )
+    {
+        PathMaskIndex index = indexes.get( store.getKey() );
+        if ( index == null || !index.isBuiltFrom( maskPatterns ) )
+        {
+            logger.trace( "Compiling {} path mask patterns of: {}", maskPatterns.size(), store.getKey() );
+            index = new PathMaskIndex( maskPatterns );
+            indexes.put( store.getKey(), index );
+        }
+
+        return index;
+    }
+
     public static String extractGroupIdPath(String metadataPath)
     {
         if (metadataPath == null || !metadataPath.endsWith("maven-metadata.xml"))
@@ -146,17 +144,11 @@ public class PathMaskChecker
             return true;
         }
 
-        for ( String pattern : maskPatterns )
+        // metadata patterns are listed as full paths, not use regex pattern
+        if ( getIndex( store, maskPatterns ).overlaps( path, true ) )
         {
-            if ( isRegexPattern( pattern ) )
-            {
-                continue; // metadata patterns are listed as full paths, not use regex pattern
-            }
-            else if ( path.startsWith( pattern ) || pattern.startsWith( path ) )
-            {
-                logger.trace( "Checking mask in: {}, pattern: {} - MATCH", store.getName(), pattern );
-                return true;
-            }
+            logger.trace( "Checking mask in: {}, path: {} - MATCH", store.getName(), path );
+            return true;
         }
 
         logger.debug( "Metadata patterns not matched, path: {}, patterns: {}, repo: {}", path, maskPatterns,
@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.commonjava.indy.core.content.PathMaskChecker.extractGroupIdPath;
+import static org.commonjava.indy.core.content.PathMaskChecker.isRegexPattern;
+
+/**
+ * Compiled form of the path mask patterns of one store, built once per pattern set and reused by
+ * {@link PathMaskChecker}. Literal patterns go into a prefix trie, so both "path starts with a pattern" and
+ * "a pattern starts with path" are answered in one walk over the path instead of one string comparison per pattern.
+ * Regex patterns are compiled once instead of on every {@link String#matches(String)} call.
+ */
+final class PathMaskIndex
+{
+    private static final Logger logger = LoggerFactory.getLogger( PathMaskIndex.class );
+
+    /**
+     * The pattern set this index was built from. Stores are replaced (not mutated) on update, so this instance and its
+     * size identify the revision of the store the index belongs to.
+     */
+    private final Set<String> source;
+
+    private final int sourceSize;
+
+    /**
+     * The patterns this index was built from, for the copies of the same store revision, e.g. the ones deserialized
+     * from a store cache on each lookup, which don't share the pattern set instance.
+     */
+    private final Set<String> sourcePatterns;
+
+    private final int sourceHash;
+
+    private final Trie patterns = new Trie();
+
+    private final Trie metadataGroupIdPaths = new Trie();
+
+    private final List<Pattern> regexes;
+
+    private final boolean hasMetadataPatterns;
+
+    PathMaskIndex( final Set<String> maskPatterns )
+    {
+        this.source = maskPatterns;
+        this.sourceSize = maskPatterns.size();
+        this.sourcePatterns = new HashSet<>( maskPatterns );
+        this.sourceHash = sourcePatterns.hashCode();
+
+        List<Pattern> compiled = new ArrayList<>();
+        boolean metadata = false;
+        for ( String pattern : maskPatterns )
+        {
+            boolean regex = isRegexPattern( pattern );
+            patterns.add( pattern, !regex );
+
+            if ( regex && pattern.length() < 3 )
+            {
+                logger.warn( "Empty path mask regex: {}, it will never match.", pattern );
+            }
+            else if ( regex )
+            {
+                final String realRegex = pattern.substring( 2, pattern.length() - 1 );
+                try
+                {
+                    compiled.add( Pattern.compile( realRegex ) );
+                }
+                catch ( PatternSyntaxException e )
+                {
+                    logger.warn( "Invalid path mask regex: {}, it will never match. Reason: {}", realRegex,
+                                 e.getMessage() );
+                }
+            }
+
+            if ( pattern.endsWith( "maven-metadata.xml" ) )
+            {
+                metadata = true;
+                String groupIdPath = extractGroupIdPath( pattern );
+                if ( groupIdPath != null )
+                {
+                    metadataGroupIdPaths.add( groupIdPath, true );
+                }
+            }
+        }
+
+        this.regexes = Collections.unmodifiableList( compiled );
+        this.hasMetadataPatterns = metadata;
+    }
+
+    boolean isBuiltFrom( final Set<String> maskPatterns )
+    {
+        if ( source == maskPatterns && sourceSize == maskPatterns.size() )
+        {
+            return true;
+        }
+
+        // the hash only rules out most changed sets cheaply, equal ones are still compared in full
+        return sourceSize == maskPatterns.size() && sourceHash == maskPatterns.hashCode() && sourcePatterns.equals(
+                maskPatterns );
+    }
+
+    /**
+     * Same as: any literal pattern is a prefix of path, or any regex pattern matches the whole path.
+     */
+    boolean matches( final String path )
+    {
+        if ( patterns.hasPrefixOf( path, true ) )
+        {
+            return true;
+        }
+
+        for ( Pattern regex : regexes )
+        {
+            if ( regex.matcher( path ).matches() )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    boolean hasRegexPatterns()
+    {
+        return patterns.regexCount > 0;
+    }
+
+    boolean hasMetadataPatterns()
+    {
+        return hasMetadataPatterns;
+    }
+
+    /**
+     * Same as: any groupId path extracted from a metadata pattern is a prefix of path, or path is a prefix of it.
+     */
+    boolean matchesMetadataGroupIdPath( final String path )
+    {
+        return metadataGroupIdPaths.hasPrefixOf( path, true ) || metadataGroupIdPaths.hasExtensionOf( path, true );
+    }
+
+    /**
+     * Same as: any pattern is a prefix of path, or path is a prefix of any pattern. With literalOnly, the raw text of
+     * regex patterns is left out.
+     */
+    boolean overlaps( final String path, final boolean literalOnly )
+    {
+        return patterns.hasPrefixOf( path, literalOnly ) || patterns.hasExtensionOf( path, literalOnly );
+    }
+
+    private static final class Trie
+    {
+        private final Node root = new Node();
+
+        private int regexCount;
+
+        void add( final String pattern, final boolean literal )
+        {
+            if ( !literal )
+            {
+                regexCount++;
+            }
+
+            Node node = root;
+            mark( node, literal );
+            for ( int i = 0; i < pattern.length(); i++ )
+            {
+                node = node.children.computeIfAbsent( pattern.charAt( i ), c -> new Node() );
+                mark( node, literal );
+            }
+
+            if ( literal )
+            {
+                node.literalEnd = true;
+            }
+            else
+            {
+                node.regexEnd = true;
+            }
+        }
+
+        private void mark( final Node node, final boolean literal )
+        {
+            if ( literal )
+            {
+                node.literalBelow = true;
+            }
+        }
+
+        boolean hasPrefixOf( final String path, final boolean literalOnly )
+        {
+            Node node = root;
+            for ( int i = 0; ; i++ )
+            {
+                if ( node.literalEnd || ( !literalOnly && node.regexEnd ) )
+                {
+                    return true;
+                }
+
+                if ( i == path.length() )
+                {
+                    return false;
+                }
+
+                node = node.children.get( path.charAt( i ) );
+                if ( node == null )
+                {
+                    return false;
+                }
+            }
+        }
+
+        boolean hasExtensionOf( final String path, final boolean literalOnly )
+        {
+            Node node = root;
+            for ( int i = 0; i < path.length(); i++ )
+            {
+                node = node.children.get( path.charAt( i ) );
+                if ( node == null )
+                {
+                    return false;
+                }
+            }
+
+            // every node reached this way has at least one pattern ending at or below it
+            return !literalOnly || node.literalBelow;
+        }
+    }
+
+    private static final class Node
+    {
+        private final Map<Character, Node> children = new HashMap<>( 4 );
+
+        private boolean literalEnd;
+
+        private boolean regexEnd;
+
+        private boolean literalBelow;
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.change.event.ArtifactStoreEnablementEvent;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.change.event.ArtifactStorePreUpdateEvent;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.data.StoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.spi.IndyMetricsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.commonjava.indy.model.core.StoreType.group;
+
+/**
+ * Keeps the flattened, ordered list of enabled concrete members per group, so the group content paths don't have to
+ * re-walk the group tree (one store lookup per member, recursively) on every request.
+ * <p>
+ * Entries are immutable and replaced as a whole. Any store change (update, delete, enable / disable) drops the entries
+ * of every group whose membership tree touches the changed store, including disabled and nested group members. The
+ * entry is rebuilt on next access. A generation counter keeps a lookup that raced with a store change from caching
+ * what it computed before the change. Changes made on other nodes arrive as the same store events (see
+ * RepoServiceEventHandler), or through {@link #invalidateKeys(Set)} when ServiceStoreDataManager reloads a store that
+ * changed without an event reaching this node.
+ */
+@ApplicationScoped
+public class GroupMembershipCache
+    implements IndyMetricsSource
+{
+    public static final String METRICS_NAME = "group-membership-cache";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private StoreDataManager storeManager;
+
+    private final Map<StoreKey, Membership> memberships = new ConcurrentHashMap<>();
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    protected GroupMembershipCache()
+    {
+    }
+
+    public GroupMembershipCache( final StoreDataManager storeManager )
+    {
+        this.storeManager = storeManager;
+    }
+
+    /**
+     * Same result as storeManager.query().enabledState( true ).getOrderedConcreteStoresInGroup(..) for the group. The
+     * returned list is shared and unmodifiable.
+     */
+    public List<ArtifactStore> getOrderedConcreteStores( final Group group )
+            throws IndyDataException
+    {
+        return getMembership( group ).members;
+    }
+
+    /**
+     * The members from the cache, or straight from the store manager where there is no cache, as with the managers
+     * built by hand in tests.
+     */
+    public static List<ArtifactStore> getOrderedConcreteStores( final GroupMembershipCache cache,
+                                                                final StoreDataManager storeManager,
+                                                                final Group group )
+            throws IndyDataException
+    {
+        if ( cache != null )
+        {
+            return cache.getOrderedConcreteStores( group );
+        }
+
+        return storeManager.query()
+                           .enabledState( true )
+                           .getOrderedConcreteStoresInGroup( group.getPackageType(), group.getName() );
+    }
+
+    /**
+     * Keys of every store in the group's membership tree (nested groups included), regardless of enabled state. The
+     * returned set is shared and unmodifiable.
+     */
+    public Set<StoreKey> getMembershipKeys( final Group group )
+            throws IndyDataException
+    {
+        return getMembership( group ).touched;
+    }
+
+    private Membership getMembership( final Group group )
+            throws IndyDataException
+    {
+        final StoreKey key = group.getKey();
+        Membership membership = memberships.get( key );
+        if ( membership != null )
+        {
+            hits.incrementAndGet();
+            return membership;
+        }
+
+        misses.incrementAndGet();
+
+        final long gen = generation.get();
+        membership = build( group );
+        synchronized ( this )
+        {
+            if ( gen == generation.get() )
+            {
+                memberships.put( key, membership );
+            }
+            else
+            {
+                logger.debug( "Membership of {} changed while resolving it, not caching the result", key );
+            }
+        }
+
+        return membership;
+    }
+
+    public void onStorePreUpdate( @Observes final ArtifactStorePreUpdateEvent event )
+    {
+        invalidate( event.getChanges() );
+    }
+
+    public void onStorePostUpdate( @Observes final ArtifactStorePostUpdateEvent event )
+    {
+        invalidate( event.getChanges() );
+    }
+
+    public void onStoreDeletion( @Observes final ArtifactStoreDeletePostEvent event )
+    {
+        invalidate( event.getStores() );
+    }
+
+    public void onStoreEnablement( @Observes final ArtifactStoreEnablementEvent event )
+    {
+        invalidate( event.getStores() );
+    }
+
+    public void invalidate( final Collection<? extends ArtifactStore> stores )
+    {
+        if ( stores == null || stores.isEmpty() )
+        {
+            return;
+        }
+
+        invalidateKeys( stores.stream().map( ArtifactStore::getKey ).collect( Collectors.toSet() ) );
+    }
+
+    /**
+     * Same as {@link #invalidate(Collection)}, for changes known by key only, eg. a store found changed when it was
+     * loaded again.
+     */
+    public void invalidateKeys( final Set<StoreKey> changed )
+    {
+        if ( changed == null || changed.isEmpty() )
+        {
+            return;
+        }
+
+        synchronized ( this )
+        {
+            generation.incrementAndGet();
+            memberships.entrySet().removeIf( e -> {
+                boolean affected = changed.contains( e.getKey() ) || changed.stream()
+                                                                            .anyMatch( e.getValue().touched::contains );
+                if ( affected )
+                {
+                    logger.debug( "Drop cached membership of {} on change of: {}", e.getKey(), changed );
+                    invalidations.incrementAndGet();
+                }
+                return affected;
+            } );
+        }
+    }
+
+    public void clear()
+    {
+        synchronized ( this )
+        {
+            generation.incrementAndGet();
+            memberships.clear();
+        }
+    }
+
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "size", (long) memberships.size() );
+        metrics.put( "hits", hits.get() );
+        metrics.put( "misses", misses.get() );
+        metrics.put( "invalidations", invalidations.get() );
+        return metrics;
+    }
+
+    private Membership build( final Group group )
+            throws IndyDataException
+    {
+        final List<ArtifactStore> members = storeManager.query()
+                                                        .enabledState( true )
+                                                        .getOrderedConcreteStoresInGroup( group.getPackageType(),
+                                                                                          group.getName() );
+
+        final Set<StoreKey> touched = new HashSet<>();
+        collectTouched( group, touched );
+
+        return new Membership( Collections.unmodifiableList( new ArrayList<>( members ) ),
+                               Collections.unmodifiableSet( touched ) );
+    }
+
+    /**
+     * Collect every key reachable from the group, regardless of enabled state, so enabling a member or changing a
+     * nested group invalidates the entry.
+     */
+    private void collectTouched( final Group g, final Set<StoreKey> touched )
+            throws IndyDataException
+    {
+        for ( StoreKey key : g.getConstituents() )
+        {
+            if ( touched.add( key ) && key.getType() == group )
+            {
+                ArtifactStore nested = storeManager.getArtifactStore( key );
+                if ( nested != null )
+                {
+                    collectTouched( (Group) nested, touched );
+                }
+            }
+        }
+    }
+
+    private static final class Membership
+    {
+        private final List<ArtifactStore> members;
+
+        private final Set<StoreKey> touched;
+
+        private Membership( final List<ArtifactStore> members, final Set<StoreKey> touched )
+        {
+            this.members = members;
+            this.touched = touched;
+        }
+    }
+}
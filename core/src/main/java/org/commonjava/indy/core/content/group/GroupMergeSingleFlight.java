@@ -0,0 +1,356 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.spi.IndyMetricsSource;
+import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
+import org.commonjava.indy.subsys.infinispan.CacheProducer;
+import org.commonjava.indy.subsys.infinispan.config.ISPNClusterConfiguration;
+import org.commonjava.indy.subsys.infinispan.config.ISPNRemoteConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Lets concurrent requests for the same merged group file wait for one merge instead of each running it.
+ * <p>
+ * On one node, the first caller for a key runs the merge and later callers wait for it. Across the cluster, the
+ * merging node claims the key in the group-merge-leases cache; callers on other nodes poll until the result shows up
+ * where all nodes can see it (the shared storage or the metadata cache, as checked by the caller's done check), or
+ * until the claim is released or expires and they can claim it themselves. The lease cache is only used with a remote
+ * or clustered infinispan; if it is not available, merges are coalesced per node as before.
+ * <p>
+ * Waiting is bounded by {@link IndyConfiguration#getGroupMergeWaitSeconds()}. A caller that waited that long for
+ * another node merges itself; one that waited that long for another thread on this node gives up, as the old node-local
+ * lock did.
+ */
+@ApplicationScoped
+public class GroupMergeSingleFlight
+        implements IndyMetricsSource
+{
+    public static final String METRICS_NAME = "group-merge-single-flight";
+
+    private static final String LEASE_CACHE = "group-merge-leases";
+
+    private static final long MIN_POLL_MILLIS = 50;
+
+    private static final long MAX_POLL_MILLIS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private IndyConfiguration config;
+
+    @Inject
+    private CacheProducer cacheProducer;
+
+    @Inject
+    private ISPNRemoteConfiguration remoteConfiguration;
+
+    @Inject
+    private ISPNClusterConfiguration clusterConfiguration;
+
+    private BasicCacheHandle<String, String> leases;
+
+    private final Map<String, CompletableFuture<Boolean>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong merges = new AtomicLong();
+
+    private final AtomicLong localWaits = new AtomicLong();
+
+    private final AtomicLong clusterWaits = new AtomicLong();
+
+    private final AtomicLong sharedResults = new AtomicLong();
+
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * A merge of one group file. It returns whether the merged file is now available.
+     */
+    @FunctionalInterface
+    public interface Merge
+    {
+        boolean merge()
+                throws IndyWorkflowException;
+    }
+
+    protected GroupMergeSingleFlight()
+    {
+    }
+
+    /**
+     * @param leases shared lease cache, or null to coalesce merges on this node only
+     */
+    public GroupMergeSingleFlight( final IndyConfiguration config, final BasicCacheHandle<String, String> leases )
+    {
+        this.config = config;
+        this.leases = leases;
+    }
+
+    @PostConstruct
+    public void init()
+    {
+        boolean clustered = ( remoteConfiguration != null && remoteConfiguration.isEnabled() ) || (
+                clusterConfiguration != null && clusterConfiguration.isEnabled() );
+        if ( !clustered )
+        {
+            return;
+        }
+
+        try
+        {
+            leases = cacheProducer.getBasicCache( LEASE_CACHE );
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Failed to get cache {}, group merges are coalesced on this node only. Reason: {}",
+                         LEASE_CACHE, e.getMessage() );
+        }
+
+        if ( leases == null )
+        {
+            logger.warn( "Cache {} not available, group merges are coalesced on this node only.", LEASE_CACHE );
+        }
+    }
+
+    /**
+     * Run the merge for the key, unless it is already running here or elsewhere in the cluster, in which case wait for
+     * that one.
+     *
+     * @param key identifies the merged file, e.g. group key and path
+     * @param done whether the merged file is available, as seen by any node (checked before merging and while waiting
+     * for another node)
+     * @param merge the merge
+     * @return true if the merged file is available (merged here or elsewhere); false if the merge did not produce it,
+     * or waiting for another thread on this node timed out
+     */
+    public boolean execute( final String key, final BooleanSupplier done, final Merge merge )
+            throws IndyWorkflowException
+    {
+        final CompletableFuture<Boolean> mine = new CompletableFuture<>();
+        final CompletableFuture<Boolean> running = inFlight.putIfAbsent( key, mine );
+        if ( running != null )
+        {
+            return awaitLocal( key, running, done );
+        }
+
+        try
+        {
+            final boolean result = lead( key, done, merge );
+            mine.complete( result );
+            return result;
+        }
+        catch ( IndyWorkflowException | RuntimeException e )
+        {
+            mine.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            inFlight.remove( key, mine );
+        }
+    }
+
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "inFlight", (long) inFlight.size() );
+        metrics.put( "merges", merges.get() );
+        metrics.put( "localWaits", localWaits.get() );
+        metrics.put( "clusterWaits", clusterWaits.get() );
+        metrics.put( "sharedResults", sharedResults.get() );
+        metrics.put( "fallbacks", fallbacks.get() );
+        metrics.put( "timeouts", timeouts.get() );
+        metrics.put( "clustered", leases == null ? 0L : 1L );
+        return metrics;
+    }
+
+    private boolean awaitLocal( final String key, final CompletableFuture<Boolean> running, final BooleanSupplier done )
+    {
+        localWaits.incrementAndGet();
+        logger.debug( "Merge of {} in progress on this node, waiting for it", key );
+        try
+        {
+            return running.get( config.getGroupMergeWaitSeconds(), TimeUnit.SECONDS );
+        }
+        catch ( TimeoutException e )
+        {
+            timeouts.incrementAndGet();
+            logger.warn( "Merge of {} still running after {}s, giving up waiting", key,
+                         config.getGroupMergeWaitSeconds() );
+        }
+        catch ( ExecutionException e )
+        {
+            logger.debug( "Merge of {} failed in the other thread: {}", key, e.getCause().getMessage() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        return done.getAsBoolean();
+    }
+
+    private boolean lead( final String key, final BooleanSupplier done, final Merge merge )
+            throws IndyWorkflowException
+    {
+        if ( done.getAsBoolean() )
+        {
+            sharedResults.incrementAndGet();
+            return true;
+        }
+
+        if ( leases == null )
+        {
+            merges.incrementAndGet();
+            return merge.merge();
+        }
+
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( config.getGroupMergeWaitSeconds() );
+        long pause = MIN_POLL_MILLIS;
+        boolean waited = false;
+        while ( true )
+        {
+            final Boolean acquired = tryAcquire( key );
+            if ( acquired == null )
+            {
+                fallbacks.incrementAndGet();
+                merges.incrementAndGet();
+                return merge.merge();
+            }
+
+            if ( acquired )
+            {
+                try
+                {
+                    // another node may have finished between our check and the claim
+                    if ( done.getAsBoolean() )
+                    {
+                        sharedResults.incrementAndGet();
+                        return true;
+                    }
+
+                    merges.incrementAndGet();
+                    return merge.merge();
+                }
+                finally
+                {
+                    release( key );
+                }
+            }
+
+            if ( !waited )
+            {
+                waited = true;
+                clusterWaits.incrementAndGet();
+                logger.debug( "Merge of {} in progress on another node, waiting for it", key );
+            }
+
+            try
+            {
+                Thread.sleep( pause );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return done.getAsBoolean();
+            }
+            pause = Math.min( pause * 2, MAX_POLL_MILLIS );
+
+            if ( done.getAsBoolean() )
+            {
+                sharedResults.incrementAndGet();
+                return true;
+            }
+
+            if ( System.currentTimeMillis() >= deadline )
+            {
+                logger.warn( "Merge of {} still running on another node after {}s, merging it here", key,
+                             config.getGroupMergeWaitSeconds() );
+                fallbacks.incrementAndGet();
+                merges.incrementAndGet();
+                return merge.merge();
+            }
+        }
+    }
+
+    /**
+     * @return true if this node now holds the lease, false if another node does, null if the lease cache failed
+     */
+    private Boolean tryAcquire( final String key )
+    {
+        final String node = config.getNodeId();
+        try
+        {
+            final String owner = leases.putIfAbsent( key, node, config.getGroupMergeLeaseSeconds(), TimeUnit.SECONDS );
+            if ( owner == null )
+            {
+                return true;
+            }
+
+            if ( owner.equals( node ) )
+            {
+                // only one thread per node gets here for a key, so this is left over from before a restart
+                leases.put( key, node, config.getGroupMergeLeaseSeconds(), TimeUnit.SECONDS );
+                return true;
+            }
+
+            return false;
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Failed to claim merge of {}, merging without claim. Reason: {}", key, e.getMessage() );
+            return null;
+        }
+    }
+
+    private void release( final String key )
+    {
+        try
+        {
+            // only if still ours: it may have expired and been claimed by another node meanwhile
+            leases.remove( key, config.getNodeId() );
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "Failed to release merge claim of {}, it expires in {}s. Reason: {}", key,
+                         config.getGroupMergeLeaseSeconds(), e.getMessage() );
+        }
+    }
+}
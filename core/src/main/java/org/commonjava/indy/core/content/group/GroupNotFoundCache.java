@@ -0,0 +1,411 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.change.event.ArtifactStoreEnablementEvent;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.change.event.ArtifactStorePreUpdateEvent;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.data.IndyDataException;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.spi.IndyMetricsSource;
+import org.commonjava.maven.galley.event.FileStorageEvent;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/**
+ * Remembers (group, path) pairs that no member of the group, and no group content generator, could provide, so a
+ * repeated request for such a path through the group costs one lookup instead of one not-found cache probe per member
+ * plus a generation attempt.
+ * <p>
+ * An entry is dropped when any store in the group's membership tree stores the path, when any store in the tree (or
+ * the group itself) is updated, deleted, enabled or disabled, and when the not-found cache of the group or of one of
+ * its members is cleared. It expires after {@link IndyConfiguration#getGroupNfcTimeoutSeconds()}, or earlier if a
+ * remote member has a shorter nfc timeout, so upstream content becomes visible no later than through the members.
+ * <p>
+ * Callers take a {@link #getStamp(String)} before probing the members and pass it to
+ * {@link #addMissing(Group, String, List, long)}; a miss is not recorded if an invalidation for the path happened in
+ * between. Callers must not record paths that content generators produce for the group, since storing the files they
+ * are generated from does not drop the entry.
+ */
+@ApplicationScoped
+public class GroupNotFoundCache
+    implements IndyMetricsSource
+{
+    public static final String METRICS_NAME = "group-nfc";
+
+    private static final int MAX_ENTRIES = 100000;
+
+    private static final int STAMP_STRIPES = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private IndyConfiguration config;
+
+    @Inject
+    private GroupMembershipCache membershipCache;
+
+    /**
+     * path -&gt; group key -&gt; entry, so a stored path only has to look at the groups that remember it as missing.
+     */
+    private final Map<String, Map<StoreKey, Entry>> missing = new ConcurrentHashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLongArray stamps = new AtomicLongArray( STAMP_STRIPES );
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong additions = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    protected GroupNotFoundCache()
+    {
+    }
+
+    public GroupNotFoundCache( final IndyConfiguration config, final GroupMembershipCache membershipCache )
+    {
+        this.config = config;
+        this.membershipCache = membershipCache;
+    }
+
+    public boolean isEnabled()
+    {
+        return config != null && config.isGroupNfcEnabled();
+    }
+
+    public boolean isMissing( final Group group, final String path )
+    {
+        final Map<StoreKey, Entry> groups = missing.get( normalize( path ) );
+        final Entry entry = groups == null ? null : groups.get( group.getKey() );
+        if ( entry != null )
+        {
+            if ( entry.expires > System.currentTimeMillis() )
+            {
+                hits.incrementAndGet();
+                return true;
+            }
+
+            remove( normalize( path ), group.getKey() );
+        }
+
+        misses.incrementAndGet();
+        return false;
+    }
+
+    public long getStamp( final String path )
+    {
+        return stamps.get( stripe( normalize( path ) ) );
+    }
+
+    /**
+     * Record that no member in the given list (and no generator) has the path. The stamp is the one taken before the
+     * members were probed.
+     */
+    public void addMissing( final Group group, final String path, final List<ArtifactStore> members, final long stamp )
+    {
+        final String p = normalize( path );
+        final int ttl = getTimeoutSeconds( members );
+        if ( ttl <= 0 )
+        {
+            return;
+        }
+
+        if ( size.get() >= MAX_ENTRIES )
+        {
+            sweep();
+            if ( size.get() >= MAX_ENTRIES )
+            {
+                logger.debug( "Group nfc is full, not recording {} in {}", p, group.getKey() );
+                return;
+            }
+        }
+
+        final Set<StoreKey> touched = new HashSet<>();
+        touched.add( group.getKey() );
+        try
+        {
+            touched.addAll( membershipCache.getMembershipKeys( group ) );
+        }
+        catch ( IndyDataException e )
+        {
+            logger.warn( "Failed to resolve membership of {}, not recording missing {}. Reason: {}", group.getKey(), p,
+                         e.getMessage() );
+            return;
+        }
+
+        final Entry entry = new Entry( System.currentTimeMillis() + ttl * 1000L, touched );
+        synchronized ( this )
+        {
+            if ( stamps.get( stripe( p ) ) != stamp )
+            {
+                logger.debug( "{} changed in members of {} while retrieving it, not recording it as missing", p,
+                              group.getKey() );
+                return;
+            }
+
+            if ( missing.computeIfAbsent( p, k -> new ConcurrentHashMap<>() ).put( group.getKey(), entry ) == null )
+            {
+                size.incrementAndGet();
+            }
+        }
+
+        additions.incrementAndGet();
+        logger.trace( "Recorded {} as missing from group {} for {}s", p, group.getKey(), ttl );
+    }
+
+    public void onFileStorage( @Observes final FileStorageEvent event )
+    {
+        final Transfer transfer = event.getTransfer();
+        if ( transfer == null || !( transfer.getLocation() instanceof KeyedLocation ) )
+        {
+            return;
+        }
+
+        invalidate( ( (KeyedLocation) transfer.getLocation() ).getKey(), transfer.getPath() );
+    }
+
+    public void onStorePreUpdate( @Observes final ArtifactStorePreUpdateEvent event )
+    {
+        invalidate( event.getChanges() );
+    }
+
+    public void onStorePostUpdate( @Observes final ArtifactStorePostUpdateEvent event )
+    {
+        invalidate( event.getChanges() );
+    }
+
+    public void onStoreDeletion( @Observes final ArtifactStoreDeletePostEvent event )
+    {
+        invalidate( event.getStores() );
+    }
+
+    public void onStoreEnablement( @Observes final ArtifactStoreEnablementEvent event )
+    {
+        invalidate( event.getStores() );
+    }
+
+    /**
+     * Drop the entries of the given path (or of all paths, if null) in every group whose membership includes the
+     * store.
+     */
+    public void invalidate( final StoreKey key, final String path )
+    {
+        if ( path == null )
+        {
+            invalidate( key == null ? null : Collections.singleton( key ) );
+            return;
+        }
+
+        final String p = normalize( path );
+        synchronized ( this )
+        {
+            stamps.incrementAndGet( stripe( p ) );
+
+            final Map<StoreKey, Entry> groups = missing.get( p );
+            if ( groups != null )
+            {
+                final Set<StoreKey> keys = key == null ? null : Collections.singleton( key );
+                groups.entrySet().removeIf( e -> drop( e, keys ) );
+                if ( groups.isEmpty() )
+                {
+                    missing.remove( p, groups );
+                }
+            }
+        }
+    }
+
+    public void clear()
+    {
+        synchronized ( this )
+        {
+            bumpAll();
+            missing.clear();
+            size.set( 0 );
+        }
+    }
+
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "size", (long) size.get() );
+        metrics.put( "hits", hits.get() );
+        metrics.put( "misses", misses.get() );
+        metrics.put( "additions", additions.get() );
+        metrics.put( "invalidations", invalidations.get() );
+        return metrics;
+    }
+
+    private void invalidate( final Collection<? extends ArtifactStore> stores )
+    {
+        if ( stores == null || stores.isEmpty() )
+        {
+            return;
+        }
+
+        invalidate( stores.stream().map( ArtifactStore::getKey ).collect( Collectors.toSet() ) );
+    }
+
+    /**
+     * Drop every entry whose membership includes one of the keys; all entries if keys is null.
+     */
+    private void invalidate( final Set<StoreKey> keys )
+    {
+        synchronized ( this )
+        {
+            bumpAll();
+            missing.entrySet().removeIf( pathEntry -> {
+                pathEntry.getValue().entrySet().removeIf( e -> drop( e, keys ) );
+                return pathEntry.getValue().isEmpty();
+            } );
+        }
+    }
+
+    private boolean drop( final Map.Entry<StoreKey, Entry> e, final Set<StoreKey> keys )
+    {
+        if ( keys == null || keys.stream().anyMatch( e.getValue().touched::contains ) )
+        {
+            logger.trace( "Drop group nfc entry of {} on change of: {}", e.getKey(), keys );
+            invalidations.incrementAndGet();
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void remove( final String path, final StoreKey group )
+    {
+        synchronized ( this )
+        {
+            final Map<StoreKey, Entry> groups = missing.get( path );
+            if ( groups != null && groups.remove( group ) != null )
+            {
+                size.decrementAndGet();
+                if ( groups.isEmpty() )
+                {
+                    missing.remove( path, groups );
+                }
+            }
+        }
+    }
+
+    private void sweep()
+    {
+        final long now = System.currentTimeMillis();
+        synchronized ( this )
+        {
+            missing.entrySet().removeIf( pathEntry -> {
+                pathEntry.getValue().entrySet().removeIf( e -> {
+                    boolean expired = e.getValue().expires <= now;
+                    if ( expired )
+                    {
+                        size.decrementAndGet();
+                    }
+                    return expired;
+                } );
+                return pathEntry.getValue().isEmpty();
+            } );
+        }
+    }
+
+    private void bumpAll()
+    {
+        for ( int i = 0; i < STAMP_STRIPES; i++ )
+        {
+            stamps.incrementAndGet( i );
+        }
+    }
+
+    private int getTimeoutSeconds( final List<ArtifactStore> members )
+    {
+        int timeout = config.getGroupNfcTimeoutSeconds();
+        final int nfcTimeout = config.getNotFoundCacheTimeoutSeconds();
+        if ( nfcTimeout > 0 )
+        {
+            timeout = Math.min( timeout, nfcTimeout );
+        }
+
+        for ( ArtifactStore member : members )
+        {
+            if ( member instanceof RemoteRepository )
+            {
+                final int memberTimeout = ( (RemoteRepository) member ).getNfcTimeoutSeconds();
+                if ( memberTimeout > 0 )
+                {
+                    timeout = Math.min( timeout, memberTimeout );
+                }
+            }
+        }
+
+        return timeout;
+    }
+
+    private static int stripe( final String path )
+    {
+        return ( path.hashCode() & Integer.MAX_VALUE ) % STAMP_STRIPES;
+    }
+
+    private static String normalize( final String path )
+    {
+        return path.startsWith( "/" ) ? path.substring( 1 ) : path;
+    }
+
+    private static final class Entry
+    {
+        private final long expires;
+
+        private final Set<StoreKey> touched;
+
+        private Entry( final long expires, final Set<StoreKey> touched )
+        {
+            this.expires = expires;
+            this.touched = touched;
+        }
+    }
+}
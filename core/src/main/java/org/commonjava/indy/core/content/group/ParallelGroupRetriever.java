@@ -0,0 +1,316 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import org.apache.commons.lang3.StringUtils;
+import org.commonjava.cdi.util.weft.ExecutorConfig;
+import org.commonjava.cdi.util.weft.WeftExecutorService;
+import org.commonjava.cdi.util.weft.WeftManaged;
+import org.commonjava.cdi.util.weft.exception.PoolOverloadException;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.spi.IndyMetricsSource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retrieves a path from the ordered members of a group by probing them in a bounded, hedged window instead of
+ * strictly one at a time. Group order is still honored: a member's result is only used once every member before it
+ * has missed. The head member is probed alone first; if it has not answered within the hedge delay, the following
+ * members are probed as well, up to the group's concurrency limit. Once a winner is found, probes for later members
+ * are counted as wasted and cancelled without interruption: queued probes never start, while running ones are left to
+ * finish so a remote download is not cut off halfway (its result is discarded, but the content still lands in the
+ * member's cache for the next request). When the probe pool is saturated, no further members are hedged, and a member
+ * that cannot be submitted is probed on the calling thread, as the sequential retrieval does.
+ */
+@ApplicationScoped
+public class ParallelGroupRetriever
+    implements IndyMetricsSource
+{
+    public static final String METRICS_NAME = "group-retrieval";
+
+    /**
+     * Group metadata key to override the global probe concurrency for one group.
+     */
+    public static final String GROUP_RETRIEVAL_CONCURRENCY = "group_retrieval_concurrency";
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private IndyConfiguration indyConfig;
+
+    @Inject
+    @WeftManaged
+    @ExecutorConfig( named = "group-member-probe", threads = 50, priority = 8, maxLoadFactor = 100, loadSensitive = ExecutorConfig.BooleanLiteral.TRUE )
+    private WeftExecutorService probeExecutor;
+
+    private final AtomicLong retrievals = new AtomicLong();
+
+    private final AtomicLong probes = new AtomicLong();
+
+    private final AtomicLong hedgedProbes = new AtomicLong();
+
+    private final AtomicLong wastedProbes = new AtomicLong();
+
+    private final AtomicLong cancelledProbes = new AtomicLong();
+
+    private final AtomicLong overloadedProbes = new AtomicLong();
+
+    protected ParallelGroupRetriever()
+    {
+    }
+
+    public ParallelGroupRetriever( final IndyConfiguration indyConfig, final WeftExecutorService probeExecutor )
+    {
+        this.indyConfig = indyConfig;
+        this.probeExecutor = probeExecutor;
+    }
+
+    public boolean isEnabled()
+    {
+        return indyConfig != null && indyConfig.isGroupParallelRetrievalEnabled();
+    }
+
+    /**
+     * Return the transfer from the first member (in the given order) that has the path, or null if none has it.
+     */
+    public Transfer retrieveFirst( final Group group, final List<ArtifactStore> members, final String path,
+                                   final MemberRetrieval retrieval )
+            throws IndyWorkflowException
+    {
+        retrievals.incrementAndGet();
+
+        final int size = members.size();
+        final int concurrency = getConcurrency( group );
+        final long hedgeDelay = indyConfig.getGroupRetrievalHedgeDelayMillis();
+
+        final Map<Integer, Future<Transfer>> inflight = new HashMap<>();
+        int next = 0;
+        try
+        {
+            for ( int cursor = 0; cursor < size; cursor++ )
+            {
+                Future<Transfer> head = inflight.get( cursor );
+                if ( head == null )
+                {
+                    head = submit( group, members.get( cursor ), path, retrieval, cursor, inflight );
+                    next = Math.max( next, cursor + 1 );
+                }
+
+                Transfer txfr;
+                if ( head == null )
+                {
+                    txfr = retrieveHere( group, members.get( cursor ), path, retrieval );
+                }
+                else
+                {
+                    try
+                    {
+                        txfr = head.get( hedgeDelay, TimeUnit.MILLISECONDS );
+                    }
+                    catch ( TimeoutException e )
+                    {
+                        // head member is slow; hedge by probing the following members while we keep waiting on it.
+                        // a hedge the pool cannot take is left for its turn in order.
+                        while ( next < size && next - cursor < concurrency
+                                        && submit( group, members.get( next ), path, retrieval, next, inflight ) != null )
+                        {
+                            hedgedProbes.incrementAndGet();
+                            next++;
+                        }
+
+                        txfr = waitFor( head, group, members.get( cursor ), path );
+                    }
+                    catch ( ExecutionException e )
+                    {
+                        logFailure( group, members.get( cursor ), path, e );
+                        txfr = null;
+                    }
+
+                    inflight.remove( cursor );
+                }
+
+                if ( txfr != null )
+                {
+                    logger.debug( "Retrieved {} from member {} (index: {}) of group {}", path,
+                                  members.get( cursor ).getKey(), cursor, group.getKey() );
+                    return txfr;
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IndyWorkflowException( "Retrieval of %s from group %s was interrupted", e, path,
+                                             group.getKey() );
+        }
+        finally
+        {
+            cancel( inflight );
+        }
+
+        return null;
+    }
+
+    private Transfer waitFor( final Future<Transfer> future, final Group group, final ArtifactStore member,
+                              final String path )
+            throws InterruptedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch ( ExecutionException e )
+        {
+            logFailure( group, member, path, e );
+            return null;
+        }
+    }
+
+    /**
+     * Probe the member on the calling thread, when the probe pool cannot take it.
+     */
+    private Transfer retrieveHere( final Group group, final ArtifactStore member, final String path,
+                                   final MemberRetrieval retrieval )
+    {
+        try
+        {
+            return retrieval.retrieve( member );
+        }
+        catch ( IndyWorkflowException e )
+        {
+            logFailure( group, member, path, e );
+            return null;
+        }
+    }
+
+    /**
+     * @return the running probe, or null if the probe pool is saturated
+     */
+    private Future<Transfer> submit( final Group group, final ArtifactStore member, final String path,
+                                     final MemberRetrieval retrieval, final int index,
+                                     final Map<Integer, Future<Transfer>> inflight )
+    {
+        logger.trace( "Probing member {} (index: {}) of group {} for {}", member.getKey(), index, group.getKey(),
+                      path );
+
+        final Future<Transfer> probe;
+        try
+        {
+            probe = probeExecutor.submit( () -> retrieval.retrieve( member ) );
+        }
+        catch ( PoolOverloadException | RejectedExecutionException e )
+        {
+            overloadedProbes.incrementAndGet();
+            logger.debug( "Probe pool is saturated, not probing member {} of group {} for {} in parallel: {}",
+                          member.getKey(), group.getKey(), path, e.getMessage() );
+            return null;
+        }
+
+        inflight.put( index, probe );
+        probes.incrementAndGet();
+        return probe;
+    }
+
+    private void cancel( final Map<Integer, Future<Transfer>> inflight )
+    {
+        if ( inflight.isEmpty() )
+        {
+            return;
+        }
+
+        wastedProbes.addAndGet( inflight.size() );
+        inflight.values().forEach( f -> {
+            if ( f.cancel( false ) )
+            {
+                cancelledProbes.incrementAndGet();
+            }
+        } );
+    }
+
+    private void logFailure( final Group group, final ArtifactStore member, final String path,
+                             final ExecutionException e )
+    {
+        logFailure( group, member, path, e.getCause() == null ? e : e.getCause() );
+    }
+
+    private void logFailure( final Group group, final ArtifactStore member, final String path, final Throwable e )
+    {
+        logger.error( "Failed to retrieve artifact from for path {} from {} in group {}, error is: {}", path, member,
+                      group, e.getMessage() );
+    }
+
+    private int getConcurrency( final Group group )
+    {
+        String override = group.getMetadata( GROUP_RETRIEVAL_CONCURRENCY );
+        if ( StringUtils.isNotBlank( override ) )
+        {
+            try
+            {
+                return Math.max( 1, Integer.parseInt( override.trim() ) );
+            }
+            catch ( NumberFormatException e )
+            {
+                logger.warn( "Invalid {} metadata: '{}' in group {}, using default", GROUP_RETRIEVAL_CONCURRENCY,
+                             override, group.getKey() );
+            }
+        }
+
+        return Math.max( 1, indyConfig.getGroupRetrievalConcurrency() );
+    }
+
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "retrievals", retrievals.get() );
+        metrics.put( "probes", probes.get() );
+        metrics.put( "hedgedProbes", hedgedProbes.get() );
+        metrics.put( "wastedProbes", wastedProbes.get() );
+        metrics.put( "cancelledProbes", cancelledProbes.get() );
+        metrics.put( "overloadedProbes", overloadedProbes.get() );
+        return metrics;
+    }
+
+    @FunctionalInterface
+    public interface MemberRetrieval
+    {
+        Transfer retrieve( ArtifactStore member )
+                throws IndyWorkflowException;
+    }
+}
@@ -34,6 +34,7 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.core.content.group.GroupNotFoundCache;
 import org.commonjava.indy.core.inject.AbstractNotFoundCache;
 import org.commonjava.indy.core.model.Page;
 import org.commonjava.indy.data.IndyDataException;
@@ -61,6 +62,9 @@ public class NfcController
     @Inject
     protected StoreDataManager storeManager;
 
+    @Inject
+    protected GroupNotFoundCache groupNotFoundCache;
+
     protected NfcController()
     {
     }
@@ -214,6 +218,10 @@ public class NfcController
     public void clear()
     {
         cache.clearAllMissing();
+        if ( groupNotFoundCache != null )
+        {
+            groupNotFoundCache.clear();
+        }
     }
 
     public void clear( final StoreKey key )
@@ -225,6 +233,11 @@ public class NfcController
     public void clear( final StoreKey key, final String path )
         throws IndyWorkflowException
     {
+        if ( groupNotFoundCache != null )
+        {
+            groupNotFoundCache.invalidate( key, path );
+        }
+
         try
         {
             switch ( key.getType() )
@@ -258,6 +271,11 @@ public class NfcController
 
     private void clear( final ArtifactStore store, final String path )
     {
+        if ( groupNotFoundCache != null )
+        {
+            groupNotFoundCache.invalidate( store.getKey(), path );
+        }
+
         if ( store.getKey().getType() == remote || store.getKey().getType() == hosted )
         {
             final Location loc = toLocation( store );
@@ -286,6 +304,11 @@ public class NfcController
     {
         NotFoundCacheInfoDTO dto = new NotFoundCacheInfoDTO();
         final AtomicLong size = new AtomicLong( 0);
+        if ( groupNotFoundCache != null )
+        {
+            groupNotFoundCache.invalidate( key, path );
+        }
+
         try
         {
             switch ( key.getType() )
@@ -40,6 +40,7 @@ import org.commonjava.indy.model.core.dto.EndpointViewListing;
 import org.commonjava.indy.model.spi.AddOnListing;
 import org.commonjava.indy.model.spi.IndyAddOnID;
 import org.commonjava.indy.spi.IndyAddOn;
+import org.commonjava.indy.spi.IndyMetricsSource;
 import org.commonjava.indy.stats.IndyVersioning;
 import org.commonjava.indy.subsys.template.IndyGroovyException;
 import org.commonjava.indy.subsys.template.TemplatingEngine;
@@ -78,6 +79,9 @@ public class StatsController
     @Inject
     private Instance<IndyAddOn> addonsInjected;
 
+    @Inject
+    private Instance<IndyMetricsSource> metricsSources;
+
     private Set<IndyAddOn> addons;
 
     protected StatsController()
@@ -131,6 +135,25 @@ public class StatsController
         return versioning;
     }
 
+    /**
+     * Metrics of the {@link IndyMetricsSource} with the given name, or null if there is none.
+     */
+    public Map<String, Long> getNamedMetrics( final String name )
+    {
+        if ( metricsSources != null )
+        {
+            for ( final IndyMetricsSource source : metricsSources )
+            {
+                if ( source.getMetricsName().equals( name ) )
+                {
+                    return source.getMetrics();
+                }
+            }
+        }
+
+        return null;
+    }
+
     /**
      * @deprecated In new microservice architecture, all repository management functions are managed by
      *             repository service, so this repository viewing functions should be triggered in
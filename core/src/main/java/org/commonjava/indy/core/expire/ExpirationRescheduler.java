@@ -0,0 +1,381 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.expire;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.indy.schedule.ScheduleDB;
+import org.commonjava.indy.schedule.conf.ScheduleDBConfig;
+import org.commonjava.indy.schedule.datastax.JobType;
+import org.commonjava.indy.schedule.datastax.model.DtxSchedule;
+import org.commonjava.indy.spi.IndyMetricsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers the content expirations moved by file accesses, so a hot path costs a few schedule writes per hour instead
+ * of two Cassandra writes per access.
+ * <p>
+ * Accesses are grouped into windows of the slack ({@link ScheduleDBConfig#getRescheduleSlackSeconds()}, at most a
+ * tenth of the timeout). All accesses of a path in one window yield the same expiration, at the window start plus the
+ * timeout plus the slack, so content is kept at least as long as before and at most the slack longer. An access whose
+ * expiration equals the one last written by this node is dropped; others wait in a striped map, where later accesses
+ * of the same path replace earlier ones, until the next flush writes them through
+ * {@link ScheduleDB#createSchedules(Collection, int)}.
+ * <p>
+ * Since the written rows only depend on the path, timeout and window, flushing the same expiration twice (from a retry
+ * or from another node) is harmless, and a flush that arrives late never moves an expiration set by a later window or
+ * by a direct write back in time.
+ */
+@ApplicationScoped
+public class ExpirationRescheduler
+        implements IndyMetricsSource
+{
+    public static final String METRICS_NAME = "timeout-rescheduler";
+
+    private static final int STRIPES = 64;
+
+    private static final int MAX_WRITTEN = 100000;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Inject
+    private ScheduleDBConfig config;
+
+    @Inject
+    private ScheduleDB scheduleDB;
+
+    @Inject
+    private IndyObjectMapper objectMapper;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * Expiration last written by this node per path, to drop accesses that would not move it.
+     */
+    private final Map<ScheduleKey, Long> written = new ConcurrentHashMap<>();
+
+    private final Object flushLock = new Object();
+
+    private ScheduledExecutorService flusher;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong flushes = new AtomicLong();
+
+    private final AtomicLong writes = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    protected ExpirationRescheduler()
+    {
+        for ( int i = 0; i < STRIPES; i++ )
+        {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    public ExpirationRescheduler( final ScheduleDBConfig config, final ScheduleDB scheduleDB,
+                                  final IndyObjectMapper objectMapper )
+    {
+        this();
+        this.config = config;
+        this.scheduleDB = scheduleDB;
+        this.objectMapper = objectMapper;
+    }
+
+    public boolean isEnabled()
+    {
+        return config.getRescheduleSlackSeconds() > 0 && config.getRescheduleFlushPeriodSeconds() > 0;
+    }
+
+    public synchronized void start()
+    {
+        if ( flusher != null || !isEnabled() )
+        {
+            return;
+        }
+
+        final int period = config.getRescheduleFlushPeriodSeconds();
+        logger.info( "Starting timeout rescheduler, slack: {}s, flush period: {}s", config.getRescheduleSlackSeconds(),
+                     period );
+
+        flusher = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, "timeout-rescheduler" );
+            t.setDaemon( true );
+            return t;
+        } );
+        flusher.scheduleWithFixedDelay( () -> {
+            try
+            {
+                flush();
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( "Failed to flush rescheduled timeouts.", e );
+            }
+        }, period, period, TimeUnit.SECONDS );
+    }
+
+    /**
+     * Stop the timer and write out what is still buffered.
+     */
+    public void stop()
+    {
+        synchronized ( this )
+        {
+            if ( flusher == null )
+            {
+                return;
+            }
+
+            flusher.shutdown();
+            flusher = null;
+        }
+
+        flush();
+    }
+
+    /**
+     * Move the expiration of the path to timeoutSeconds from now, at the next flush.
+     */
+    public void reschedule( final StoreKey key, final String path, final int timeoutSeconds )
+    {
+        requests.incrementAndGet();
+
+        final long slack = getSlackSeconds( timeoutSeconds ) * 1000L;
+        final long start = System.currentTimeMillis() / slack * slack;
+        final long lifespan = timeoutSeconds + slack / 1000;
+        final long expiration = start + lifespan * 1000;
+
+        final ScheduleKey scheduleKey = new ScheduleKey( key, JobType.CONTENT.getJobType(), path );
+        final Long last = written.get( scheduleKey );
+        if ( last != null && expiration >= last && expiration - last < slack )
+        {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        final Stripe stripe = stripeOf( scheduleKey );
+        synchronized ( stripe )
+        {
+            final Pending pending = stripe.pending.get( scheduleKey );
+            if ( pending != null )
+            {
+                coalesced.incrementAndGet();
+                if ( pending.start == start && pending.lifespan == lifespan )
+                {
+                    return;
+                }
+            }
+
+            stripe.pending.put( scheduleKey, new Pending( scheduleKey, start, lifespan ) );
+        }
+    }
+
+    /**
+     * Forget what is buffered or remembered for the path, because its expiration is being written directly.
+     */
+    public void discard( final StoreKey key, final String path )
+    {
+        final ScheduleKey scheduleKey = new ScheduleKey( key, JobType.CONTENT.getJobType(), path );
+        written.remove( scheduleKey );
+
+        final Stripe stripe = stripeOf( scheduleKey );
+        synchronized ( stripe )
+        {
+            stripe.pending.remove( scheduleKey );
+        }
+    }
+
+    /**
+     * Forget what is buffered or remembered for the store, e.g. because its timeouts changed.
+     */
+    public void discard( final StoreKey key )
+    {
+        written.keySet().removeIf( k -> key.equals( k.getStoreKey() ) );
+        for ( Stripe stripe : stripes )
+        {
+            synchronized ( stripe )
+            {
+                stripe.pending.keySet().removeIf( k -> key.equals( k.getStoreKey() ) );
+            }
+        }
+    }
+
+    public void flush()
+    {
+        synchronized ( flushLock )
+        {
+            final List<Pending> drained = new ArrayList<>();
+            for ( Stripe stripe : stripes )
+            {
+                synchronized ( stripe )
+                {
+                    if ( !stripe.pending.isEmpty() )
+                    {
+                        drained.addAll( stripe.pending.values() );
+                        stripe.pending = new HashMap<>();
+                    }
+                }
+            }
+
+            if ( drained.isEmpty() )
+            {
+                return;
+            }
+
+            flushes.incrementAndGet();
+
+            final Map<DtxSchedule, Pending> schedules = new IdentityHashMap<>( drained.size() );
+            for ( Pending pending : drained )
+            {
+                final ScheduleKey key = pending.key;
+                try
+                {
+                    final String payload = objectMapper.writeValueAsString(
+                            new ContentExpiration( key.getStoreKey(), key.getName() ) );
+                    schedules.put( new DtxSchedule( key.getStoreKey().toString(), key.getType(), key.getName(), null,
+                                                    new Date( pending.start ), payload, pending.lifespan ), pending );
+                }
+                catch ( final JsonProcessingException e )
+                {
+                    logger.error( "Failed to serialize expiration of: {} in: {}. Reason: {}", key.getName(),
+                                  key.getStoreKey(), e.getMessage() );
+                }
+            }
+
+            Collection<DtxSchedule> failed = scheduleDB.createSchedules( new ArrayList<>( schedules.keySet() ),
+                                                                         config.getRescheduleBatchSize() );
+            for ( DtxSchedule schedule : failed )
+            {
+                requeue( schedules.remove( schedule ) );
+            }
+
+            final long now = System.currentTimeMillis();
+            written.values().removeIf( expiration -> expiration <= now );
+            schedules.values().forEach( pending -> {
+                if ( written.size() < MAX_WRITTEN || written.containsKey( pending.key ) )
+                {
+                    written.put( pending.key, pending.start + pending.lifespan * 1000 );
+                }
+            } );
+
+            writes.addAndGet( schedules.size() );
+            failures.addAndGet( failed.size() );
+            logger.debug( "Flushed {} rescheduled timeouts, {} failed", schedules.size(), failed.size() );
+        }
+    }
+
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        long pending = 0;
+        for ( Stripe stripe : stripes )
+        {
+            synchronized ( stripe )
+            {
+                pending += stripe.pending.size();
+            }
+        }
+
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "requests", requests.get() );
+        metrics.put( "coalesced", coalesced.get() );
+        metrics.put( "dropped", dropped.get() );
+        metrics.put( "pending", pending );
+        metrics.put( "flushes", flushes.get() );
+        metrics.put( "writes", writes.get() );
+        metrics.put( "failures", failures.get() );
+        metrics.put( "tracked", (long) written.size() );
+        return metrics;
+    }
+
+    /**
+     * Put back a pending expiration whose write failed, unless a later access buffered a newer one meanwhile.
+     */
+    private void requeue( final Pending pending )
+    {
+        if ( pending == null )
+        {
+            return;
+        }
+
+        final Stripe stripe = stripeOf( pending.key );
+        synchronized ( stripe )
+        {
+            stripe.pending.putIfAbsent( pending.key, pending );
+        }
+    }
+
+    private long getSlackSeconds( final int timeoutSeconds )
+    {
+        return Math.max( 1, Math.min( config.getRescheduleSlackSeconds(), timeoutSeconds / 10 ) );
+    }
+
+    private Stripe stripeOf( final ScheduleKey key )
+    {
+        return stripes[( key.hashCode() & Integer.MAX_VALUE ) % STRIPES];
+    }
+
+    private static final class Stripe
+    {
+        private Map<ScheduleKey, Pending> pending = new HashMap<>();
+    }
+
+    private static final class Pending
+    {
+        private final ScheduleKey key;
+
+        private final long start;
+
+        private final long lifespan;
+
+        private Pending( final ScheduleKey key, final long start, final long lifespan )
+        {
+            this.key = key;
+            this.start = start;
+            this.lifespan = lifespan;
+        }
+    }
+}
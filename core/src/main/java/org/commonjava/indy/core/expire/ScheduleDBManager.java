@@ -109,6 +109,9 @@ public class ScheduleDBManager
     @Inject
     private IndySchedulerConfig schedulerConfig;
 
+    @Inject
+    private ExpirationRescheduler rescheduler;
+
     @PostConstruct
     public void init()
     {
@@ -117,6 +120,8 @@ public class ScheduleDBManager
             logger.info( "Scheduler disabled. Skipping initialization" );
             return;
         }
+
+        rescheduler.start();
     }
 
     public void rescheduleSnapshotTimeouts( final HostedRepository deploy )
@@ -136,6 +141,7 @@ public class ScheduleDBManager
 
         if ( timeout > 0 )
         {
+            rescheduler.discard( deploy.getKey() );
 
             final Collection<DtxSchedule> schedules = scheduleDB.querySchedules( deploy.getKey().toString(), JobType.CONTENT.getJobType(), Boolean.FALSE );
 
@@ -169,6 +175,7 @@ public class ScheduleDBManager
 
         if ( timeout > 0 )
         {
+            rescheduler.discard( repo.getKey() );
 
             final Collection<DtxSchedule> schedules =
                             scheduleDB.querySchedules( repo.getKey().toString(), JobType.CONTENT.getJobType(),
@@ -193,6 +200,35 @@ public class ScheduleDBManager
             return;
         }
 
+        final int timeout = getProxyTimeout( key, path );
+        if ( timeout > 0 )
+        {
+            //            logger.info( "[PROXY TIMEOUT SET] {}/{}; {}", repo.getKey(), path, new Date( System.currentTimeMillis()
+            //                + timeout ) );
+
+            scheduleContentExpiration( key, path, timeout );
+        }
+    }
+
+    @Override
+    public void refreshProxyTimeouts( final StoreKey key, final String path )
+            throws IndySchedulerException
+    {
+        if ( !schedulerConfig.isEnabled() )
+        {
+            logger.debug( "Scheduler disabled." );
+            return;
+        }
+
+        final int timeout = getProxyTimeout( key, path );
+        if ( timeout > 0 )
+        {
+            refreshContentExpiration( key, path, timeout );
+        }
+    }
+
+    private int getProxyTimeout( final StoreKey key, final String path )
+    {
         RemoteRepository repo = null;
         try
         {
@@ -205,7 +241,7 @@ public class ScheduleDBManager
 
         if ( repo == null )
         {
-            return;
+            return -1;
         }
 
         int timeout = config.getPassthroughTimeoutSeconds();
@@ -241,13 +277,7 @@ public class ScheduleDBManager
             }
         }
 
-        if ( timeout > 0 )
-        {
-            //            logger.info( "[PROXY TIMEOUT SET] {}/{}; {}", repo.getKey(), path, new Date( System.currentTimeMillis()
-            //                + timeout ) );
-
-            scheduleContentExpiration( key, path, timeout );
-        }
+        return timeout;
     }
 
     public void scheduleForStore( final StoreKey key, final String jobType, final String jobName,
@@ -287,9 +317,26 @@ public class ScheduleDBManager
         logger.info( "Scheduling timeout for: {} in: {} in: {} seconds (at: {}).", path, key, timeoutSeconds,
                      new Date( System.currentTimeMillis() + ( timeoutSeconds * 1000 ) ) );
 
+        rescheduler.discard( key, path );
         scheduleForStore( key, JobType.CONTENT.getJobType(), path, new ContentExpiration( key, path ), timeoutSeconds );
     }
 
+    /**
+     * Move the expiration of a path on access. Goes through the {@link ExpirationRescheduler} unless it is disabled.
+     */
+    private void refreshContentExpiration( final StoreKey key, final String path, final int timeoutSeconds )
+            throws IndySchedulerException
+    {
+        if ( !rescheduler.isEnabled() )
+        {
+            scheduleContentExpiration( key, path, timeoutSeconds );
+            return;
+        }
+
+        logger.debug( "Rescheduling timeout for: {} in: {} in: {} seconds.", path, key, timeoutSeconds );
+        rescheduler.reschedule( key, path, timeoutSeconds );
+    }
+
     public void setSnapshotTimeouts( final StoreKey key, final String path )
             throws IndySchedulerException
     {
@@ -299,13 +346,39 @@ public class ScheduleDBManager
             return;
         }
 
+        final int timeout = getSnapshotTimeout( key, path );
+        if ( timeout > 0 )
+        {
+            scheduleContentExpiration( key, path, timeout );
+        }
+    }
+
+    @Override
+    public void refreshSnapshotTimeouts( final StoreKey key, final String path )
+            throws IndySchedulerException
+    {
+        if ( !schedulerConfig.isEnabled() )
+        {
+            logger.debug( "Scheduler disabled." );
+            return;
+        }
+
+        final int timeout = getSnapshotTimeout( key, path );
+        if ( timeout > 0 )
+        {
+            refreshContentExpiration( key, path, timeout );
+        }
+    }
+
+    private int getSnapshotTimeout( final StoreKey key, final String path )
+    {
         HostedRepository deploy = null;
         try
         {
             final ArtifactStore store = dataManager.getArtifactStore( key );
             if ( store == null )
             {
-                return;
+                return -1;
             }
 
             if ( store instanceof HostedRepository )
@@ -326,7 +399,7 @@ public class ScheduleDBManager
 
         if ( deploy == null )
         {
-            return;
+            return -1;
         }
 
         final ContentAdvisor advisor = StreamSupport.stream(
@@ -337,18 +410,18 @@ public class ScheduleDBManager
         final ContentQuality quality = advisor == null ? null : advisor.getContentQuality( path );
         if ( quality == null )
         {
-            return;
+            return -1;
         }
 
         if ( ContentQuality.SNAPSHOT == quality && deploy.getSnapshotTimeoutSeconds() > 0 )
         {
-            final int timeout = deploy.getSnapshotTimeoutSeconds();
-
             //            //            logger.info( "[SNAPSHOT TIMEOUT SET] {}/{}; {}", deploy.getKey(), path, new Date( timeout ) );
             //            cancel( new StoreKeyMatcher( key, CONTENT_JOB_TYPE ), path );
 
-            scheduleContentExpiration( key, path, timeout );
+            return deploy.getSnapshotTimeoutSeconds();
         }
+
+        return -1;
     }
 
     public void rescheduleDisableTimeout( final StoreKey key )
@@ -602,6 +675,7 @@ public class ScheduleDBManager
             return;
         }
 
+        rescheduler.stop();
     }
 
 }
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.expire;
+
+import org.commonjava.indy.core.conf.IndyDurableStateConfig;
+import org.commonjava.indy.schedule.ScheduleDB;
+import org.commonjava.indy.spi.IndyMetricsSource;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Publishes the counters of the expiration processing of {@link ScheduleDB}. Nothing is published unless schedules
+ * are kept in cassandra, so looking the metrics up never connects to it.
+ */
+@ApplicationScoped
+public class ScheduleExpirationMetrics
+        implements IndyMetricsSource
+{
+    public static final String METRICS_NAME = "schedule-expiration";
+
+    @Inject
+    private IndyDurableStateConfig durableConfig;
+
+    @Inject
+    private ScheduleDB scheduleDB;
+
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        if ( !IndyDurableStateConfig.STORAGE_CASSANDRA.equals( durableConfig.getScheduleStorage() ) )
+        {
+            return Collections.emptyMap();
+        }
+
+        return scheduleDB.getExpirationMetrics();
+    }
+}
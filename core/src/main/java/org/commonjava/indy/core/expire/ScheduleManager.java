@@ -30,6 +30,26 @@ public interface ScheduleManager
     void setSnapshotTimeouts( final StoreKey key, final String path )
                     throws IndySchedulerException;
 
+    /**
+     * Same as {@link #setProxyTimeouts(StoreKey, String)}, for a file access. Implementations may defer and coalesce
+     * the update.
+     */
+    default void refreshProxyTimeouts( final StoreKey key, final String path )
+                    throws IndySchedulerException
+    {
+        setProxyTimeouts( key, path );
+    }
+
+    /**
+     * Same as {@link #setSnapshotTimeouts(StoreKey, String)}, for a file access. Implementations may defer and
+     * coalesce the update.
+     */
+    default void refreshSnapshotTimeouts( final StoreKey key, final String path )
+                    throws IndySchedulerException
+    {
+        setSnapshotTimeouts( key, path );
+    }
+
     void rescheduleSnapshotTimeouts( final HostedRepository deploy )
                     throws IndySchedulerException;
 
@@ -198,7 +198,7 @@ public class TimeoutEventListener
                 {
                     try
                     {
-                        scheduleManager.setSnapshotTimeouts( key, transfer.getPath() );
+                        scheduleManager.refreshSnapshotTimeouts( key, transfer.getPath() );
                     }
                     catch ( final IndySchedulerException e )
                     {
@@ -213,7 +213,7 @@ public class TimeoutEventListener
                         logger.debug( "Accessed resource {} timeout will be reset.", transfer );
                         try
                         {
-                            scheduleManager.setProxyTimeouts( key, transfer.getPath() );
+                            scheduleManager.refreshProxyTimeouts( key, transfer.getPath() );
                         }
                         catch ( final IndySchedulerException e )
                         {
@@ -25,14 +25,13 @@ import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.galley.KeyedLocation;
 import org.commonjava.indy.subsys.cassandra.CassandraClient;
-import org.commonjava.indy.subsys.infinispan.CacheHandle;
-import org.commonjava.indy.subsys.infinispan.CacheProducer;
 import org.commonjava.maven.galley.model.ConcreteResource;
 import org.commonjava.maven.galley.model.Location;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
 import javax.inject.Inject;
@@ -42,6 +41,8 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static org.commonjava.indy.conf.DefaultIndyConfiguration.DEFAULT_NOT_FOUND_CACHE_TIMEOUT_SECONDS;
@@ -56,6 +57,8 @@ public class CassandraNotFoundCache
 
     private static final String TIMEOUT_FORMAT = "yyyy-MM-dd HH:mm:ss z";
 
+    private static final long IN_MEMORY_TICK_MILLIS = TimeUnit.SECONDS.toMillis( 1 );
+
     private PreparedStatement preparedInsert;
 
     private PreparedStatement preparedExistQuery;
@@ -84,12 +87,10 @@ public class CassandraNotFoundCache
     @Inject
     private CassandraClient cassandraClient;
 
-    @Inject
-    private CacheProducer cacheProducer;
-
-    private CacheHandle<ConcreteResource, Object> inMemoryCache;
+    // keyed by store then path, so clearing a store does not scan the entries of the others
+    private ExpiringNotFoundIndex<StoreKey> inMemoryCache;
 
-    private final static Object DUMB_CACHE_VALUE = new Object();
+    private ScheduledExecutorService inMemoryExpiration;
 
     private int maxResultSetSize; // limit the max size for REST endpoint getMissing to avoid OOM
 
@@ -104,11 +105,9 @@ public class CassandraNotFoundCache
     {
     }
 
-    public CassandraNotFoundCache( final IndyConfiguration config, final CacheProducer cacheProducer,
-                                   final CassandraClient cassandraClient )
+    public CassandraNotFoundCache( final IndyConfiguration config, final CassandraClient cassandraClient )
     {
         this.config = config;
-        this.cacheProducer = cacheProducer;
         this.cassandraClient = cassandraClient;
         start();
     }
@@ -116,7 +115,8 @@ public class CassandraNotFoundCache
     @PostConstruct
     public void start()
     {
-        inMemoryCache = cacheProducer.getCache( "nfc-in-memory-cache" );
+        inMemoryCache = new ExpiringNotFoundIndex<>( IN_MEMORY_TICK_MILLIS, config.getNfcInMemoryMaxSize() );
+        startInMemoryExpiration();
 
         keyspace = config.getCacheKeyspace();
         maxResultSetSize = config.getNfcMaxResultSetSize();
@@ -146,6 +146,40 @@ public class CassandraNotFoundCache
                                                           + ".nfc (storekey,path,creation,expiration) VALUES (?,?,?,?) USING TTL ?;" ); // ttl in seconds
     }
 
+    private synchronized void startInMemoryExpiration()
+    {
+        if ( inMemoryExpiration != null )
+        {
+            return;
+        }
+
+        inMemoryExpiration = Executors.newSingleThreadScheduledExecutor( r -> {
+            Thread t = new Thread( r, "nfc-in-memory-expiration" );
+            t.setDaemon( true );
+            return t;
+        } );
+        inMemoryExpiration.scheduleWithFixedDelay( () -> {
+            try
+            {
+                inMemoryCache.expire( System.currentTimeMillis() );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.error( "Failed to clear expired entries from in-memory NFC", e );
+            }
+        }, IN_MEMORY_TICK_MILLIS, IN_MEMORY_TICK_MILLIS, TimeUnit.MILLISECONDS );
+    }
+
+    @PreDestroy
+    public synchronized void stop()
+    {
+        if ( inMemoryExpiration != null )
+        {
+            inMemoryExpiration.shutdownNow();
+            inMemoryExpiration = null;
+        }
+    }
+
     @Override
     protected IndyConfiguration getIndyConfiguration()
     {
@@ -177,17 +211,17 @@ public class CassandraNotFoundCache
         BoundStatement bound = preparedInsert.bind( key.toString(), resource.getPath(), curDate, timeoutDate,
                                                     timeoutInSeconds );
         executeSession( bound );
-        inMemoryCache.put( resource, DUMB_CACHE_VALUE, timeoutInSeconds, TimeUnit.SECONDS );
+        inMemoryCache.add( key, resource.getPath(), timeoutDate.getTime() );
     }
 
     @Override
     public boolean isMissing( final ConcreteResource resource )
     {
-        if ( inMemoryCache.get( resource ) != null )
+        StoreKey key = getResourceKey( resource );
+        if ( inMemoryCache.contains( key, resource.getPath(), System.currentTimeMillis() ) )
         {
             return true;
         }
-        StoreKey key = getResourceKey( resource );
         BoundStatement bound = preparedExistQuery.bind( key.toString(), resource.getPath() );
         ResultSet result = executeSession( bound );
         Row row = result.one();
@@ -203,7 +237,7 @@ public class CassandraNotFoundCache
             long timeout = expiration.getTime() - System.currentTimeMillis();
             if ( timeout > 1000 )
             {
-                inMemoryCache.put( resource, DUMB_CACHE_VALUE, new Long( timeout / 1000 ).intValue(), TimeUnit.SECONDS );
+                inMemoryCache.add( key, resource.getPath(), expiration.getTime() );
             }
         }
         return missing;
@@ -215,26 +249,7 @@ public class CassandraNotFoundCache
         StoreKey key = ( (KeyedLocation) location ).getKey();
         BoundStatement bound = preparedDeleteByStore.bind( key.toString() );
         executeSession( bound );
-        clearInMemoryCache( location );
-    }
-
-    private void clearInMemoryCache( final Location location )
-    {
-        inMemoryCache.executeCache( c -> {
-            c.entrySet()
-             .stream()
-             .filter( e -> e.getKey().getLocation().equals( location ) )
-             .forEach( ( cache, e ) -> cache.remove( e.getKey() ) );
-            return c;
-        } );
-    }
-
-    private void clearInMemoryCache()
-    {
-        inMemoryCache.executeCache( c -> {
-            c.clear();
-            return c;
-        } );
+        inMemoryCache.remove( key );
     }
 
     @Override
@@ -243,14 +258,14 @@ public class CassandraNotFoundCache
         StoreKey key = getResourceKey( resource );
         BoundStatement bound = preparedDelete.bind( key.toString(), resource.getPath() );
         executeSession( bound );
-        inMemoryCache.remove( resource );
+        inMemoryCache.remove( key, resource.getPath() );
     }
 
     @Override
     public void clearAllMissing()
     {
         session.execute( "TRUNCATE " + keyspace + ".nfc;" );
-        clearInMemoryCache();
+        inMemoryCache.clear();
     }
 
     @Override
@@ -21,7 +21,6 @@ import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.model.core.io.ModuleSet;
 import org.commonjava.indy.subsys.cassandra.CassandraClient;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
-import org.commonjava.indy.subsys.infinispan.CacheProducer;
 import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
 import org.commonjava.maven.galley.spi.proxy.ProxySitesCache;
 import org.slf4j.Logger;
@@ -47,9 +46,6 @@ public class CoreProvider
     @Inject
     private CassandraClient cassandraClient;
 
-    @Inject
-    private CacheProducer cacheProducer;
-
     @Inject
     @NfcCache
     private BasicCacheHandle<String, NfcConcreteResourceWrapper> nfcCache;
@@ -78,14 +74,19 @@ public class CoreProvider
         logger.info( "Apply nfc provider: {}", nfcProvider );
         if ( CASSANDRA_NFC_PROVIDER.equals( nfcProvider ) )
         {
-            notFoundCache = new CassandraNotFoundCache( indyConfiguration, cacheProducer,
-                                                        cassandraClient );
+            notFoundCache = new CassandraNotFoundCache( indyConfiguration, cassandraClient );
         }
         else
         {
             notFoundCache = new IspnNotFoundCache( indyConfiguration, nfcCache ); // default
         }
 
+        if ( indyConfiguration.isNfcFilterEnabled() )
+        {
+            logger.info( "Apply in-process filter in front of nfc provider: {}", nfcProvider );
+            notFoundCache = new FilteredNotFoundCache( indyConfiguration, (AbstractNotFoundCache) notFoundCache );
+        }
+
     }
 
     @Produces
@@ -19,17 +19,12 @@ import static org.commonjava.maven.galley.util.PathUtils.normalize;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
-import java.util.stream.Collectors;
-
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Alternative;
@@ -56,8 +51,8 @@ public class ExpiringMemoryNotFoundCache
     @Inject
     protected IndyConfiguration config;
 
-    // TODO: Now using a simple hashmap, need to take attention here to see if need ISPN instead if it is a mem eater.
-    protected final Map<ConcreteResource, Long> missingWithTimeout = new ConcurrentHashMap<>();
+    // keyed by location then path, so clearing a store does not scan the entries of the others
+    private ExpiringNotFoundIndex<Location> missingWithTimeout;
 
     private final ScheduledExecutorService evictionService = Executors.newScheduledThreadPool( 1 );
 
@@ -74,6 +69,10 @@ public class ExpiringMemoryNotFoundCache
     @PostConstruct
     public void start()
     {
+        missingWithTimeout = new ExpiringNotFoundIndex<>( TimeUnit.SECONDS.toMillis( 1 ), config.getNfcInMemoryMaxSize() );
+        // start the wheel, so new entries can be put in it before the first sweep
+        missingWithTimeout.expire( System.currentTimeMillis() );
+
         // schedule an expiration reaper thread to run according to some offset (in minutes) from the configuration
         final int sweepMins = config.getNfcExpirationSweepMinutes();
         evictionService.scheduleAtFixedRate( () -> clearAllExpiredMissing(), sweepMins, sweepMins, TimeUnit.MINUTES );
@@ -117,18 +116,14 @@ public class ExpiringMemoryNotFoundCache
             }
         } );
 
-        missingWithTimeout.put( resource, timeout );
+        missingWithTimeout.add( resource.getLocation(), resource.getPath(), timeout );
     }
 
     @Override
     public boolean isMissing( final ConcreteResource resource )
     {
-        final Long timeout = missingWithTimeout.get( resource );
-        boolean result = false;
-        if ( timeout != null && System.currentTimeMillis() < timeout )
-        {
-            result = true;
-        }
+        final boolean result =
+                        missingWithTimeout.contains( resource.getLocation(), resource.getPath(), System.currentTimeMillis() );
 
         logger.debug( "NFC check: {} result is: {}", resource, result );
         return result;
@@ -137,20 +132,13 @@ public class ExpiringMemoryNotFoundCache
     @Override
     public void clearMissing( final Location location )
     {
-        Set<ConcreteResource> paths = keys().stream()
-                    .filter( r -> r != null && r.getLocation().equals( location ) )
-                    .collect( Collectors.toSet() );
-
-        if ( !paths.isEmpty() )
-        {
-            paths.forEach( r -> missingWithTimeout.remove( r ) );
-        }
+        missingWithTimeout.remove( location );
     }
 
     @Override
     public void clearMissing( final ConcreteResource resource )
     {
-        missingWithTimeout.remove( resource );
+        missingWithTimeout.remove( resource.getLocation(), resource.getPath() );
     }
 
     @Override
@@ -162,58 +150,20 @@ public class ExpiringMemoryNotFoundCache
     @Override
     public Map<Location, Set<String>> getAllMissing()
     {
-        clearAllExpiredMissing();
-        Set<ConcreteResource> paths = keys();
-
-        final Map<Location, Set<String>> result = new HashMap<>();
-        paths.forEach( resource->{
-            final Location loc = resource.getLocation();
-            Set<String> locationPaths = result.computeIfAbsent( loc, k -> new HashSet<>() );
-
-            locationPaths.add( resource.getPath() );
-        } );
-
-        return result;
+        return missingWithTimeout.getAll( System.currentTimeMillis() );
     }
 
     @Override
     public Set<String> getMissing( final Location location )
     {
-        clearAllExpiredMissing();
-        return keys().stream()
-                    .filter( r -> r != null && r.getLocation().equals( location ) )
-                    .map( r -> r.getPath() )
-                    .collect( Collectors.toSet() );
+        return missingWithTimeout.get( location, System.currentTimeMillis() );
     }
 
-    private Set<ConcreteResource> keys()
-    {
-        Set<ConcreteResource> paths;
-        paths = new HashSet<>(missingWithTimeout.keySet());
-
-        return paths;
-    }
-
-    private synchronized void clearAllExpiredMissing()
+    private void clearAllExpiredMissing()
     {
         try
         {
-            long tstamp = System.currentTimeMillis();
-            Set<ConcreteResource> paths = keys().stream().filter( r ->
-                                   {
-                                       if ( r == null )
-                                       {
-                                           return false;
-                                       }
-
-                                       Long timeout = missingWithTimeout.get( r );
-                                       return timeout != null && timeout < tstamp;
-                                   } ).collect( Collectors.toSet() );
-
-            if ( !paths.isEmpty() )
-            {
-                paths.forEach( r -> missingWithTimeout.remove( r ) );
-            }
+            missingWithTimeout.expire( System.currentTimeMillis() );
         }
         catch ( Throwable error )
         {
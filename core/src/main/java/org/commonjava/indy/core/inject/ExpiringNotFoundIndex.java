@@ -0,0 +1,369 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory not-found entries, kept per store (or location) and then per path, so the entries of one store are
+ * dropped at once by detaching its map, whatever the total size of the cache.
+ * <p>
+ * Expired entries are reclaimed by a hierarchical timing wheel: {@link #expire(long)} only touches the entries that
+ * expire, instead of scanning all of them. Entries that were removed or replaced before they expire stay in the wheel
+ * until then, and are dropped without effect. Lookups check the expiration themselves, so they never return an
+ * expired entry, however late {@link #expire(long)} runs. New entries wait in a queue to be put in the wheel by
+ * {@link #expire(long)}; once the wheel is started and the queue passes {@link #SCHEDULING_DRAIN_THRESHOLD}, the
+ * adding thread moves them itself, unless the wheel is busy, so the queue doesn't grow with the time between runs.
+ * <p>
+ * The number of entries is capped: while the index is full, paths not in it yet are not added (this is a cache, so
+ * they are only looked up again). The count is updated along with the maps, so the cap may be passed by a few entries
+ * under concurrent adds.
+ */
+final class ExpiringNotFoundIndex<K>
+{
+    private static final int WHEEL_BITS = 6;
+
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    private static final int LEVELS = 4;
+
+    private static final long NEVER = Long.MAX_VALUE;
+
+    static final int SCHEDULING_DRAIN_THRESHOLD = 10000;
+
+    private final long tickMillis;
+
+    private final long maxSize;
+
+    private final AtomicLong size = new AtomicLong();
+
+    private final Map<K, Bucket<K>> buckets = new ConcurrentHashMap<>();
+
+    // entries are added to the wheel under the wheel lock only, so adding a missing path usually takes no lock
+    private final Queue<Entry<K>> scheduling = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger schedulingSize = new AtomicInteger();
+
+    private final ReentrantLock wheelLock = new ReentrantLock();
+
+    private final Entry<?>[][] wheel = new Entry<?>[LEVELS][WHEEL_SIZE];
+
+    private long currentTick = -1;
+
+    /**
+     * @param maxSize max number of entries, no limit if not positive
+     */
+    ExpiringNotFoundIndex( final long tickMillis, final long maxSize )
+    {
+        this.tickMillis = tickMillis;
+        this.maxSize = maxSize > 0 ? maxSize : NEVER;
+    }
+
+    /**
+     * @param expires time in millis the entry expires, {@link Long#MAX_VALUE} if it never does
+     * @return false if the path was not added because the index is full
+     */
+    boolean add( final K key, final String path, final long expires )
+    {
+        final long deadlineTick = expires > NEVER - tickMillis ? NEVER : ( expires + tickMillis - 1 ) / tickMillis;
+        final boolean[] added = { true };
+        buckets.compute( key, ( k, b ) -> {
+            if ( ( b == null || !b.paths.containsKey( path ) ) && size.get() >= maxSize )
+            {
+                added[0] = false;
+                return b;
+            }
+
+            final Bucket<K> bucket = b == null ? new Bucket<>( k ) : b;
+            final Entry<K> entry = new Entry<>( bucket, path, expires, deadlineTick );
+            if ( bucket.paths.put( path, entry ) == null )
+            {
+                size.incrementAndGet();
+            }
+            if ( deadlineTick != NEVER )
+            {
+                scheduling.add( entry );
+                schedulingSize.incrementAndGet();
+            }
+            return bucket;
+        } );
+
+        if ( schedulingSize.get() >= SCHEDULING_DRAIN_THRESHOLD && wheelLock.tryLock() )
+        {
+            try
+            {
+                if ( currentTick >= 0 )
+                {
+                    drainScheduling();
+                }
+            }
+            finally
+            {
+                wheelLock.unlock();
+            }
+        }
+        return added[0];
+    }
+
+    boolean contains( final K key, final String path, final long now )
+    {
+        final Bucket<K> bucket = buckets.get( key );
+        final Entry<K> entry = bucket == null ? null : bucket.paths.get( path );
+        return entry != null && now < entry.expires;
+    }
+
+    void remove( final K key, final String path )
+    {
+        buckets.computeIfPresent( key, ( k, bucket ) -> {
+            if ( bucket.paths.remove( path ) != null )
+            {
+                size.decrementAndGet();
+            }
+            return bucket.paths.isEmpty() ? null : bucket;
+        } );
+    }
+
+    void remove( final K key )
+    {
+        buckets.computeIfPresent( key, ( k, bucket ) -> {
+            size.addAndGet( -bucket.paths.size() );
+            return null;
+        } );
+    }
+
+    void clear()
+    {
+        buckets.keySet().forEach( this::remove );
+    }
+
+    Set<String> get( final K key, final long now )
+    {
+        final Bucket<K> bucket = buckets.get( key );
+        return bucket == null ? Collections.emptySet() : bucket.get( now );
+    }
+
+    Map<K, Set<String>> getAll( final long now )
+    {
+        final Map<K, Set<String>> result = new HashMap<>();
+        buckets.forEach( ( key, bucket ) -> {
+            final Set<String> paths = bucket.get( now );
+            if ( !paths.isEmpty() )
+            {
+                result.put( key, paths );
+            }
+        } );
+        return result;
+    }
+
+    long size()
+    {
+        return size.get();
+    }
+
+    /**
+     * Number of entries waiting to be put in the wheel.
+     */
+    int schedulingSize()
+    {
+        return schedulingSize.get();
+    }
+
+    long size( final K key )
+    {
+        final Bucket<K> bucket = buckets.get( key );
+        return bucket == null ? 0 : bucket.paths.size();
+    }
+
+    /**
+     * Drop the entries expired at the given time.
+     */
+    void expire( final long now )
+    {
+        wheelLock.lock();
+        try
+        {
+            final long nowTick = now / tickMillis;
+            if ( currentTick < 0 )
+            {
+                currentTick = nowTick;
+            }
+
+            drainScheduling();
+
+            while ( currentTick < nowTick )
+            {
+                currentTick++;
+
+                // a higher level slot is due when all the lower levels wrap, and spreads its entries over them
+                for ( int level = LEVELS - 1; level > 0; level-- )
+                {
+                    final int shift = level * WHEEL_BITS;
+                    if ( ( currentTick & ( ( 1L << shift ) - 1 ) ) == 0 )
+                    {
+                        reschedule( level, (int) ( ( currentTick >> shift ) & WHEEL_MASK ) );
+                    }
+                }
+                reschedule( 0, (int) ( currentTick & WHEEL_MASK ) );
+            }
+        }
+        finally
+        {
+            wheelLock.unlock();
+        }
+    }
+
+    /**
+     * Put the queued entries in the wheel, relative to the last {@link #expire(long)}. Holds the wheel lock.
+     */
+    private void drainScheduling()
+    {
+        Entry<K> entry;
+        while ( ( entry = scheduling.poll() ) != null )
+        {
+            schedulingSize.decrementAndGet();
+            schedule( entry );
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private void reschedule( final int level, final int slot )
+    {
+        Entry<K> entry = (Entry<K>) wheel[level][slot];
+        wheel[level][slot] = null;
+        while ( entry != null )
+        {
+            final Entry<K> next = entry.next;
+            entry.next = null;
+            schedule( entry );
+            entry = next;
+        }
+    }
+
+    private void schedule( final Entry<K> entry )
+    {
+        final long deadline = entry.deadlineTick;
+        if ( deadline <= currentTick )
+        {
+            drop( entry );
+            return;
+        }
+
+        if ( !isCurrent( entry ) )
+        {
+            return;
+        }
+
+        for ( int level = 0; level < LEVELS; level++ )
+        {
+            final int shift = level * WHEEL_BITS;
+            if ( ( deadline >> shift ) - ( currentTick >> shift ) < WHEEL_SIZE )
+            {
+                link( entry, level, (int) ( ( deadline >> shift ) & WHEEL_MASK ) );
+                return;
+            }
+        }
+
+        // beyond the wheel, park it in the farthest slot and schedule it again from there
+        final int shift = ( LEVELS - 1 ) * WHEEL_BITS;
+        link( entry, LEVELS - 1, (int) ( ( ( currentTick >> shift ) + WHEEL_SIZE - 1 ) & WHEEL_MASK ) );
+    }
+
+    private void link( final Entry<K> entry, final int level, final int slot )
+    {
+        @SuppressWarnings( "unchecked" )
+        final Entry<K> head = (Entry<K>) wheel[level][slot];
+        entry.next = head;
+        wheel[level][slot] = entry;
+    }
+
+    /**
+     * Whether the entry is still in the index, not replaced, removed, or detached with its store.
+     */
+    private boolean isCurrent( final Entry<K> entry )
+    {
+        return entry.bucket.paths.get( entry.path ) == entry && buckets.get( entry.bucket.key ) == entry.bucket;
+    }
+
+    private void drop( final Entry<K> entry )
+    {
+        final Bucket<K> bucket = entry.bucket;
+        buckets.computeIfPresent( bucket.key, ( k, b ) -> {
+            if ( b != bucket )
+            {
+                return b;
+            }
+            if ( b.paths.remove( entry.path, entry ) )
+            {
+                size.decrementAndGet();
+            }
+            return b.paths.isEmpty() ? null : b;
+        } );
+    }
+
+    private static final class Bucket<T>
+    {
+        private final T key;
+
+        private final Map<String, Entry<T>> paths = new ConcurrentHashMap<>();
+
+        private Bucket( final T key )
+        {
+            this.key = key;
+        }
+
+        private Set<String> get( final long now )
+        {
+            return paths.values()
+                        .stream()
+                        .filter( entry -> now < entry.expires )
+                        .map( entry -> entry.path )
+                        .collect( Collectors.toSet() );
+        }
+    }
+
+    private static final class Entry<T>
+    {
+        private final Bucket<T> bucket;
+
+        private final String path;
+
+        private final long expires;
+
+        private final long deadlineTick;
+
+        private Entry<T> next;
+
+        private Entry( final Bucket<T> bucket, final String path, final long expires, final long deadlineTick )
+        {
+            this.bucket = bucket;
+            this.path = path;
+            this.expires = expires;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
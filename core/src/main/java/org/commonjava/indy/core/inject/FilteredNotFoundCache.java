@@ -0,0 +1,431 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.commonjava.indy.conf.IndyConfiguration;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * In-process tier in front of another not-found cache implementation, to save the remote cache (or Cassandra) round
+ * trip that every negative probe of every group member costs.
+ * <ul>
+ *     <li>A Bloom filter per store ({@link NfcBloomFilter}) holds every path marked missing for that store. When the
+ *     filter says a path was never added, it is not missing and the delegate is not asked.</li>
+ *     <li>Optionally, a small LRU of recently confirmed missing paths answers repeated probes in process, for
+ *     {@link IndyConfiguration#getNfcFilterHotTtlSeconds()} (off by default).</li>
+ * </ul>
+ * A store's filter is loaded from the delegate in the background on first probe; until it is loaded, and if the store
+ * has more missing paths than one {@link #getMissing(Location)} call returns, probes go to the delegate as before.
+ * Filters of stores whose entries never expire are loaded again every
+ * {@link IndyConfiguration#getNfcExpirationSweepMinutes()}, so cleared paths don't pile up in them. Clearing a path
+ * drops it from the LRU (Bloom filters can't remove entries, which only costs a delegate probe), and clearing a
+ * location resets the store's filter.
+ * <p>
+ * The filter only errs towards "not missing", which costs an upstream request but never hides content. In a cluster,
+ * paths marked missing by other nodes after a filter was loaded are not seen by it. The LRU does err towards
+ * "missing": a path cleared on another node is still answered as missing here until its LRU entry expires, which is
+ * why it is off unless a TTL is configured.
+ */
+public class FilteredNotFoundCache
+        extends AbstractNotFoundCache
+{
+    private static final int LOADER_THREADS = 2;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final AbstractNotFoundCache delegate;
+
+    private final IndyConfiguration config;
+
+    private final Map<StoreKey, FilterHolder> filters = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> hot;
+
+    private final AtomicLong probes = new AtomicLong();
+
+    private final AtomicLong hotHits = new AtomicLong();
+
+    private final AtomicLong filterSkips = new AtomicLong();
+
+    private final AtomicLong delegateProbes = new AtomicLong();
+
+    private final AtomicLong delegateHits = new AtomicLong();
+
+    private final AtomicLong filterLoads = new AtomicLong();
+
+    private final Executor loader;
+
+    public FilteredNotFoundCache( final IndyConfiguration config, final AbstractNotFoundCache delegate )
+    {
+        this( config, delegate, Executors.newFixedThreadPool( LOADER_THREADS, r -> {
+            Thread t = new Thread( r, "nfc-filter-loader" );
+            t.setDaemon( true );
+            return t;
+        } ) );
+    }
+
+    FilteredNotFoundCache( final IndyConfiguration config, final AbstractNotFoundCache delegate,
+                           final Executor loader )
+    {
+        this.config = config;
+        this.delegate = delegate;
+        this.loader = loader;
+
+        final int hotSize = config.getNfcFilterHotSize();
+        this.hot = new LinkedHashMap<String, Long>( 16, 0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( final Map.Entry<String, Long> eldest )
+            {
+                return size() > hotSize;
+            }
+        };
+    }
+
+    @Override
+    protected IndyConfiguration getIndyConfiguration()
+    {
+        return config;
+    }
+
+    @Override
+    public void addMissing( final ConcreteResource resource )
+    {
+        delegate.addMissing( resource );
+        if ( isCacheDisabled( resource ) || !( resource.getLocation() instanceof KeyedLocation ) )
+        {
+            return;
+        }
+
+        // a store without a filter yet will load this path from the delegate along with the others
+        final long now = System.currentTimeMillis();
+        FilterHolder holder = filters.get( ( (KeyedLocation) resource.getLocation() ).getKey() );
+        if ( holder != null )
+        {
+            holder.filter.put( resource.getPath(), now );
+        }
+        putHot( resource, now );
+    }
+
+    @Override
+    public boolean isMissing( final ConcreteResource resource )
+    {
+        if ( !( resource.getLocation() instanceof KeyedLocation ) )
+        {
+            return delegate.isMissing( resource );
+        }
+
+        probes.incrementAndGet();
+
+        final long now = System.currentTimeMillis();
+        final String hotKey = getHotKey( resource );
+        synchronized ( hot )
+        {
+            Long expires = hot.get( hotKey );
+            if ( expires != null )
+            {
+                if ( expires > now )
+                {
+                    hotHits.incrementAndGet();
+                    return true;
+                }
+                hot.remove( hotKey );
+            }
+        }
+
+        FilterHolder holder = getFilter( resource );
+        if ( holder.isTrusted() && !holder.filter.mightContain( resource.getPath(), now ) )
+        {
+            filterSkips.incrementAndGet();
+            logger.trace( "[NFC] {} not in filter of {}, not missing", resource.getPath(), holder.key );
+            return false;
+        }
+
+        delegateProbes.incrementAndGet();
+        boolean missing = delegate.isMissing( resource );
+        if ( missing )
+        {
+            delegateHits.incrementAndGet();
+            putHot( resource, now );
+        }
+        return missing;
+    }
+
+    @Override
+    public void clearMissing( final Location location )
+    {
+        delegate.clearMissing( location );
+        if ( location instanceof KeyedLocation )
+        {
+            final StoreKey key = ( (KeyedLocation) location ).getKey();
+
+            // everything of the store is gone from the delegate, so an empty filter is exact
+            filters.put( key, FilterHolder.empty( key, newFilter( location ) ) );
+
+            final String prefix = key.toString() + ":";
+            synchronized ( hot )
+            {
+                hot.keySet().removeIf( k -> k.startsWith( prefix ) );
+            }
+        }
+    }
+
+    @Override
+    public void clearMissing( final ConcreteResource resource )
+    {
+        delegate.clearMissing( resource );
+        if ( resource.getLocation() instanceof KeyedLocation )
+        {
+            synchronized ( hot )
+            {
+                hot.remove( getHotKey( resource ) );
+            }
+        }
+    }
+
+    @Override
+    public void clearAllMissing()
+    {
+        delegate.clearAllMissing();
+        filters.clear();
+        synchronized ( hot )
+        {
+            hot.clear();
+        }
+    }
+
+    @Override
+    public Map<Location, Set<String>> getAllMissing()
+    {
+        return delegate.getAllMissing();
+    }
+
+    @Override
+    public Set<String> getMissing( final Location location )
+    {
+        return delegate.getMissing( location );
+    }
+
+    @Override
+    public Map<Location, Set<String>> getAllMissing( final int pageIndex, final int pageSize )
+    {
+        return delegate.getAllMissing( pageIndex, pageSize );
+    }
+
+    @Override
+    public Set<String> getMissing( final Location location, final int pageIndex, final int pageSize )
+    {
+        return delegate.getMissing( location, pageIndex, pageSize );
+    }
+
+    @Override
+    public long getSize( final StoreKey storeKey )
+    {
+        return delegate.getSize( storeKey );
+    }
+
+    @Override
+    public long getSize()
+    {
+        return delegate.getSize();
+    }
+
+    public AbstractNotFoundCache getDelegate()
+    {
+        return delegate;
+    }
+
+    public Map<String, Long> getMetrics()
+    {
+        final long p = probes.get();
+        final long avoided = hotHits.get() + filterSkips.get();
+
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "probes", p );
+        metrics.put( "hotHits", hotHits.get() );
+        metrics.put( "filterSkips", filterSkips.get() );
+        metrics.put( "delegateProbes", delegateProbes.get() );
+        metrics.put( "delegateHits", delegateHits.get() );
+        metrics.put( "roundTripsAvoided", avoided );
+        metrics.put( "hitRatioPercent", p == 0 ? 0 : avoided * 100 / p );
+        metrics.put( "filters", (long) filters.size() );
+        metrics.put( "filterLoads", filterLoads.get() );
+        synchronized ( hot )
+        {
+            metrics.put( "hotSize", (long) hot.size() );
+        }
+        return metrics;
+    }
+
+    private FilterHolder getFilter( final ConcreteResource resource )
+    {
+        final Location location = resource.getLocation();
+        final StoreKey key = ( (KeyedLocation) location ).getKey();
+        FilterHolder holder = filters.computeIfAbsent( key, k -> new FilterHolder( k, newFilter( location ) ) );
+        if ( holder.isStale( System.currentTimeMillis(), MINUTES.toMillis( config.getNfcExpirationSweepMinutes() ) ) )
+        {
+            // entries of the store never expire, so the filter only sheds the cleared ones by being loaded again
+            final FilterHolder fresh = new FilterHolder( key, newFilter( location ) );
+            holder = filters.replace( key, holder, fresh ) ? fresh : filters.getOrDefault( key, holder );
+        }
+        if ( holder.startLoading() )
+        {
+            final FilterHolder loading = holder;
+            try
+            {
+                loader.execute( () -> load( loading, location ) );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                logger.warn( "[NFC] Failed to schedule loading filter of {}, not filtering its probes", key );
+                loading.state = FilterHolder.INCOMPLETE;
+            }
+        }
+        return holder;
+    }
+
+    private void load( final FilterHolder holder, final Location location )
+    {
+        filterLoads.incrementAndGet();
+        try
+        {
+            final long now = System.currentTimeMillis();
+            holder.loaded = now;
+            final Set<String> missing = delegate.getMissing( location );
+            missing.forEach( path -> holder.filter.put( path, now ) );
+
+            final int max = config.getNfcMaxResultSetSize();
+            if ( max > 0 && missing.size() >= max )
+            {
+                logger.info( "[NFC] {} has at least {} missing paths, not filtering its probes", holder.key,
+                             missing.size() );
+                holder.state = FilterHolder.INCOMPLETE;
+            }
+            else
+            {
+                logger.debug( "[NFC] Loaded filter of {} with {} missing paths", holder.key, missing.size() );
+                holder.state = FilterHolder.LOADED;
+            }
+        }
+        catch ( RuntimeException e )
+        {
+            logger.warn( "[NFC] Failed to load filter of {}, not filtering its probes. Reason: {}", holder.key,
+                         e.getMessage() );
+            holder.state = FilterHolder.INCOMPLETE;
+        }
+    }
+
+    private NfcBloomFilter newFilter( final Location location )
+    {
+        return new NfcBloomFilter( config.getNfcFilterExpectedEntries(),
+                                   getTimeoutInSeconds( new ConcreteResource( location ) ) );
+    }
+
+    private void putHot( final ConcreteResource resource, final long now )
+    {
+        final int timeout = getTimeoutInSeconds( resource );
+        final int ttl = timeout > 0 ? Math.min( timeout, config.getNfcFilterHotTtlSeconds() ) :
+                config.getNfcFilterHotTtlSeconds();
+        if ( ttl <= 0 )
+        {
+            return;
+        }
+
+        synchronized ( hot )
+        {
+            hot.put( getHotKey( resource ), now + ttl * 1000L );
+        }
+    }
+
+    private String getHotKey( final ConcreteResource resource )
+    {
+        return ( (KeyedLocation) resource.getLocation() ).getKey().toString() + ":" + resource.getPath();
+    }
+
+    private static final class FilterHolder
+    {
+        private static final int PENDING = 0;
+
+        private static final int LOADING = 1;
+
+        private static final int LOADED = 2;
+
+        private static final int INCOMPLETE = 3;
+
+        private final StoreKey key;
+
+        private final NfcBloomFilter filter;
+
+        private volatile int state;
+
+        // when loading started, or the filter was reset
+        private volatile long loaded;
+
+        private FilterHolder( final StoreKey key, final NfcBloomFilter filter )
+        {
+            this.key = key;
+            this.filter = filter;
+        }
+
+        private static FilterHolder empty( final StoreKey key, final NfcBloomFilter filter )
+        {
+            FilterHolder holder = new FilterHolder( key, filter );
+            holder.state = LOADED;
+            holder.loaded = System.currentTimeMillis();
+            return holder;
+        }
+
+        private synchronized boolean startLoading()
+        {
+            if ( state == PENDING )
+            {
+                state = LOADING;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isTrusted()
+        {
+            return state == LOADED;
+        }
+
+        /**
+         * Whether the filter never sheds entries and was loaded longer ago than the given time.
+         */
+        private boolean isStale( final long now, final long maxAgeMillis )
+        {
+            return state == LOADED && !filter.isExpiring() && maxAgeMillis > 0 && loaded > 0
+                            && now - loaded >= maxAgeMillis;
+        }
+    }
+}
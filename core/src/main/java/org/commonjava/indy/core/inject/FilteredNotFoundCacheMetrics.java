@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.commonjava.indy.spi.IndyMetricsSource;
+import org.commonjava.maven.galley.spi.nfc.NotFoundCache;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Publishes the counters of the {@link FilteredNotFoundCache}, which is produced as the {@link NotFoundCache} by
+ * {@link CoreProvider} rather than being a bean itself. It is read from the provider, since the injected
+ * {@link NotFoundCache} is wrapped by {@link NFCMetricsDecorator}. Empty if the filter is disabled.
+ */
+@ApplicationScoped
+public class FilteredNotFoundCacheMetrics
+    implements IndyMetricsSource
+{
+    public static final String METRICS_NAME = "nfc-filter";
+
+    @Inject
+    private CoreProvider coreProvider;
+
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        final NotFoundCache notFoundCache = coreProvider.getNotFoundCache();
+        return notFoundCache instanceof FilteredNotFoundCache ?
+                ( (FilteredNotFoundCache) notFoundCache ).getMetrics() :
+                new HashMap<>();
+    }
+}
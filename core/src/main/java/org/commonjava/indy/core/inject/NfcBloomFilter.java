@@ -0,0 +1,224 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Time-bucketed, scalable Bloom filter of the missing paths of one store. A negative answer from
+ * {@link #mightContain(String, long)} means the path was not added within the retention time.
+ * <p>
+ * Paths go into the newest bucket. A new bucket is started every quarter of the retention time, and a bucket is dropped
+ * once every entry in it must have expired from the not-found cache, so the filter does not saturate over time. Within
+ * a bucket, a new segment of twice the capacity (and half the false positive rate) is added when the current one is
+ * full, so the total false positive rate stays bounded however many paths are added.
+ */
+final class NfcBloomFilter
+{
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private static final int BUCKETS = 4;
+
+    private static final int MIN_CAPACITY = 128;
+
+    private final int initialCapacity;
+
+    private final long retentionMillis;
+
+    private final long bucketSpanMillis;
+
+    private final Deque<Bucket> buckets = new ArrayDeque<>();
+
+    /**
+     * @param expectedEntries initial capacity over the whole retention time; it grows as needed.
+     * @param retentionSeconds how long an entry is kept in the not-found cache, zero or less if forever.
+     */
+    NfcBloomFilter( final int expectedEntries, final int retentionSeconds )
+    {
+        this.retentionMillis = retentionSeconds > 0 ? retentionSeconds * 1000L : 0;
+        this.bucketSpanMillis = retentionMillis > 0 ? Math.max( 1000, retentionMillis / BUCKETS ) : 0;
+        this.initialCapacity = Math.max( MIN_CAPACITY, retentionMillis > 0 ? expectedEntries / BUCKETS : expectedEntries );
+    }
+
+    /**
+     * Whether entries are dropped after the retention time; if not, the filter only grows.
+     */
+    boolean isExpiring()
+    {
+        return retentionMillis > 0;
+    }
+
+    synchronized void put( final String path, final long now )
+    {
+        expire( now );
+
+        Bucket current = buckets.peekLast();
+        if ( current == null || ( bucketSpanMillis > 0 && now - current.start >= bucketSpanMillis ) )
+        {
+            current = new Bucket( now );
+            buckets.addLast( current );
+        }
+
+        current.put( hash1( path ), hash2( path ), initialCapacity );
+    }
+
+    synchronized boolean mightContain( final String path, final long now )
+    {
+        expire( now );
+
+        final long h1 = hash1( path );
+        final long h2 = hash2( path );
+        for ( Bucket bucket : buckets )
+        {
+            if ( bucket.mightContain( h1, h2 ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void expire( final long now )
+    {
+        if ( retentionMillis <= 0 )
+        {
+            return;
+        }
+
+        while ( !buckets.isEmpty() && buckets.peekFirst().start + bucketSpanMillis + retentionMillis <= now )
+        {
+            buckets.removeFirst();
+        }
+    }
+
+    private static long hash1( final String path )
+    {
+        long h = 0xcbf29ce484222325L;
+        for ( int i = 0; i < path.length(); i++ )
+        {
+            h ^= path.charAt( i );
+            h *= 0x100000001b3L;
+        }
+        return mix( h );
+    }
+
+    private static long hash2( final String path )
+    {
+        // odd, so consecutive probes cycle through all bit positions
+        return mix( path.hashCode() ^ 0x9e3779b97f4a7c15L ) | 1;
+    }
+
+    private static long mix( long z )
+    {
+        z = ( z ^ ( z >>> 30 ) ) * 0xbf58476d1ce4e5b9L;
+        z = ( z ^ ( z >>> 27 ) ) * 0x94d049bb133111ebL;
+        return z ^ ( z >>> 31 );
+    }
+
+    private static final class Bucket
+    {
+        private final long start;
+
+        private final List<Segment> segments = new ArrayList<>( 2 );
+
+        private Bucket( final long start )
+        {
+            this.start = start;
+        }
+
+        private void put( final long h1, final long h2, final int initialCapacity )
+        {
+            Segment last = segments.isEmpty() ? null : segments.get( segments.size() - 1 );
+            if ( last == null )
+            {
+                last = new Segment( initialCapacity, FALSE_POSITIVE_RATE / 2 );
+                segments.add( last );
+            }
+            else if ( last.count >= last.capacity )
+            {
+                last = new Segment( last.capacity * 2, last.falsePositiveRate / 2 );
+                segments.add( last );
+            }
+
+            last.put( h1, h2 );
+        }
+
+        private boolean mightContain( final long h1, final long h2 )
+        {
+            for ( Segment segment : segments )
+            {
+                if ( segment.mightContain( h1, h2 ) )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Segment
+    {
+        private final long[] bits;
+
+        private final long numBits;
+
+        private final int numHashes;
+
+        private final int capacity;
+
+        private final double falsePositiveRate;
+
+        private int count;
+
+        private Segment( final int capacity, final double falsePositiveRate )
+        {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+
+            long m = (long) Math.ceil( -capacity * Math.log( falsePositiveRate ) / ( Math.log( 2 ) * Math.log( 2 ) ) );
+            this.bits = new long[(int) ( ( m + 63 ) / 64 )];
+            this.numBits = bits.length * 64L;
+            this.numHashes = Math.max( 1, (int) Math.round( (double) numBits / capacity * Math.log( 2 ) ) );
+        }
+
+        private void put( final long h1, final long h2 )
+        {
+            for ( int i = 0; i < numHashes; i++ )
+            {
+                long idx = Math.floorMod( h1 + i * h2, numBits );
+                bits[(int) ( idx >>> 6 )] |= 1L << idx;
+            }
+            count++;
+        }
+
+        private boolean mightContain( final long h1, final long h2 )
+        {
+            for ( int i = 0; i < numHashes; i++ )
+            {
+                long idx = Math.floorMod( h1 + i * h2, numBits );
+                if ( ( bits[(int) ( idx >>> 6 )] & ( 1L << idx ) ) == 0 )
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
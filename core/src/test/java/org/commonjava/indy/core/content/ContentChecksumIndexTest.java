@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.subsys.datafile.DataFileManager;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.GalleyCore;
+import org.commonjava.maven.galley.GalleyCoreBuilder;
+import org.commonjava.maven.galley.cache.FileCacheProviderFactory;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.commonjava.maven.galley.model.TransferOperation;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ContentChecksumIndexTest
+{
+    private static final String PATH = "/org/foo/bar/1/bar-1.jar";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private DefaultIndyConfiguration config;
+
+    private GalleyCore core;
+
+    private HostedRepository repo;
+
+    private File dataDir;
+
+    private ContentChecksumIndex index;
+
+    private Transfer transfer;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        core = new GalleyCoreBuilder( new FileCacheProviderFactory( temp.newFolder( "cache" ) ) ).build();
+
+        config = new DefaultIndyConfiguration();
+        config.setContentChecksumIndexEnabled( true );
+        dataDir = temp.newFolder( "data" );
+        index = new ContentChecksumIndex( config, new DataFileManager( dataDir, null ) );
+
+        repo = new HostedRepository( MAVEN_PKG_KEY, "test" );
+        transfer = transfer( PATH );
+        write( "some content" );
+    }
+
+    @Test
+    public void savedMetadataIsReadBackWhileTheFileIsUnchanged()
+    {
+        assertThat( index.load( transfer ), nullValue() );
+
+        index.save( transfer, metadata( 12L ) );
+
+        TransferMetadata loaded = index.load( transfer );
+        assertThat( loaded.getSize(), equalTo( 12L ) );
+        assertThat( loaded.getDigests(), equalTo( metadata( 12L ).getDigests() ) );
+        assertThat( index.getMetrics().get( "hits" ), equalTo( 1L ) );
+    }
+
+    @Test
+    public void recordIsIgnoredWhenTheFileChangesOrIsRemoved()
+            throws Exception
+    {
+        index.save( transfer, metadata( 12L ) );
+
+        write( "some other content" );
+        assertThat( index.load( transfer ), nullValue() );
+        assertThat( index.getMetrics().get( "stale" ), equalTo( 1L ) );
+
+        index.save( transfer, metadata( 18L ) );
+        index.remove( transfer );
+        assertThat( index.load( transfer ), nullValue() );
+    }
+
+    @Test
+    public void recordIsIgnoredWhenOnlyTheModificationTimeChanges()
+    {
+        index.save( transfer, metadata( 12L ) );
+
+        assertThat( cacheFile().setLastModified( cacheFile().lastModified() - 1000 ), equalTo( true ) );
+        assertThat( index.load( transfer ), nullValue() );
+        assertThat( index.getMetrics().get( "stale" ), equalTo( 1L ) );
+    }
+
+    @Test
+    public void largeDirectorySavedConcurrently()
+            throws Exception
+    {
+        List<Transfer> transfers = new ArrayList<>();
+        for ( int i = 0; i < 500; i++ )
+        {
+            Transfer t = transfer( "/org/foo/bar/1/bar-1-" + i + ".jar" );
+            write( t, "content " + i );
+            transfers.add( t );
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        try
+        {
+            List<Future<?>> saves = new ArrayList<>();
+            for ( int i = 0; i < transfers.size(); i++ )
+            {
+                final Transfer t = transfers.get( i );
+                final long size = i;
+                // every record written twice, by different threads
+                saves.add( executor.submit( () -> index.save( t, metadata( size ) ) ) );
+                saves.add( executor.submit( () -> index.save( t, metadata( size ) ) ) );
+            }
+            for ( Future<?> save : saves )
+            {
+                save.get();
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        for ( int i = 0; i < transfers.size(); i++ )
+        {
+            assertThat( index.load( transfers.get( i ) ).getSize(), equalTo( (long) i ) );
+        }
+
+        // one record per file, no temporary files left behind
+        assertThat( FileUtils.listFiles( dataDir, null, true ).size(), equalTo( transfers.size() ) );
+
+        index.remove( transfers.get( 0 ) );
+        assertThat( index.load( transfers.get( 0 ) ), nullValue() );
+        assertThat( index.load( transfers.get( 1 ) ).getSize(), equalTo( 1L ) );
+    }
+
+    @Test
+    public void onlyParentSegmentsAreRejected()
+    {
+        assertThat( ContentChecksumIndex.isIndexable( "/org/foo/bar/1/foo..bar.jar" ), equalTo( true ) );
+        assertThat( ContentChecksumIndex.isIndexable( "/org/foo/../bar/1/bar-1.jar" ), equalTo( false ) );
+        assertThat( ContentChecksumIndex.isIndexable( "/org/foo/bar/1/.." ), equalTo( false ) );
+    }
+
+    @Test
+    public void nothingIsPersistedWhenDisabled()
+    {
+        config.setContentChecksumIndexEnabled( false );
+        index.save( transfer, metadata( 12L ) );
+
+        config.setContentChecksumIndexEnabled( true );
+        assertThat( index.load( transfer ), nullValue() );
+    }
+
+    private Transfer transfer( final String path )
+    {
+        return core.getTransferManager()
+                   .getCacheReference( new ConcreteResource( LocationUtils.toLocation( repo ), path ) );
+    }
+
+    private File cacheFile()
+    {
+        return transfer.getDetachedFile();
+    }
+
+    private void write( final String content )
+            throws Exception
+    {
+        write( transfer, content );
+    }
+
+    private void write( final Transfer target, final String content )
+            throws Exception
+    {
+        try (OutputStream out = target.openOutputStream( TransferOperation.UPLOAD ))
+        {
+            out.write( content.getBytes() );
+        }
+    }
+
+    private TransferMetadata metadata( final long size )
+    {
+        Map<ContentDigest, String> digests = new EnumMap<>( ContentDigest.class );
+        digests.put( ContentDigest.MD5, "md5-" + size );
+        digests.put( ContentDigest.SHA_1, "sha1-" + size );
+        digests.put( ContentDigest.SHA_256, "sha256-" + size );
+        return new TransferMetadata( digests, size );
+    }
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.apache.commons.io.FileUtils;
+import org.commonjava.indy.IndyWorkflowException;
+import org.commonjava.indy.content.DirectContentAccess;
+import org.commonjava.indy.content.IndyPathGenerator;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.cache.FileCacheProvider;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.commonjava.maven.galley.event.NoOpFileEventManager;
+import org.commonjava.maven.galley.io.AbstractTransferDecorator;
+import org.commonjava.maven.galley.io.TransferDecoratorManager;
+import org.commonjava.maven.galley.io.checksum.ContentDigest;
+import org.commonjava.maven.galley.io.checksum.TransferMetadata;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.infinispan.Cache;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
+import static org.apache.commons.codec.digest.DigestUtils.sha1Hex;
+import static org.apache.commons.codec.digest.DigestUtils.sha256Hex;
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DefaultContentDigesterTest
+{
+    private static final String PATH = "/org/foo/bar/1/bar-1.jar";
+
+    private static final int CALLERS = 8;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private static DefaultCacheManager cacheManager;
+
+    private static Cache<String, TransferMetadata> contentMetadata;
+
+    private DigestingDecorator decorator;
+
+    private DefaultContentDigester digester;
+
+    private byte[] content;
+
+    private StoreKey key;
+
+    @BeforeClass
+    public static void setupClass()
+            throws IOException
+    {
+        cacheManager = new DefaultCacheManager(
+                Thread.currentThread().getContextClassLoader().getResourceAsStream( "infinispan-test.xml" ) );
+
+        contentMetadata = cacheManager.getCache( "content-metadata", true );
+    }
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        contentMetadata.clear();
+
+        decorator = new DigestingDecorator();
+        FileCacheProvider cacheProvider =
+                new FileCacheProvider( temp.newFolder( "cache" ), new IndyPathGenerator(), new NoOpFileEventManager(),
+                                       new TransferDecoratorManager( decorator ) );
+
+        HostedRepository repo = new HostedRepository( MAVEN_PKG_KEY, "test" );
+        key = repo.getKey();
+        Transfer transfer =
+                cacheProvider.getTransfer( new ConcreteResource( LocationUtils.toLocation( repo ), PATH ) );
+
+        // larger than the drain buffer, so the content is digested over several reads
+        content = new byte[200 * 1024 + 17];
+        for ( int i = 0; i < content.length; i++ )
+        {
+            content[i] = (byte) ( i * 31 );
+        }
+        FileUtils.writeByteArrayToFile( transfer.getDetachedFile(), content );
+
+        DirectContentAccess dca = (DirectContentAccess) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] { DirectContentAccess.class },
+                ( proxy, method, args ) -> "getTransfer".equals( method.getName() ) ? transfer : null );
+
+        digester = new DefaultContentDigester( dca, new CacheHandle<>( "content-metadata", contentMetadata ) );
+        decorator.digester = digester;
+    }
+
+    @Test
+    public void streamedDigestsMatchTheContent()
+            throws Exception
+    {
+        TransferMetadata metadata = digester.digest( key, PATH, new EventMetadata() );
+
+        assertThat( metadata.getSize(), equalTo( (long) content.length ) );
+        assertThat( metadata.getDigests().get( ContentDigest.MD5 ), equalTo( md5Hex( content ) ) );
+        assertThat( metadata.getDigests().get( ContentDigest.SHA_1 ), equalTo( sha1Hex( content ) ) );
+        assertThat( metadata.getDigests().get( ContentDigest.SHA_256 ), equalTo( sha256Hex( content ) ) );
+    }
+
+    @Test
+    public void concurrentCallersShareOneRead()
+            throws Exception
+    {
+        decorator.hold = new CountDownLatch( 1 );
+
+        List<Future<TransferMetadata>> results = digestConcurrently();
+        decorator.opened.await( 10, TimeUnit.SECONDS );
+        Thread.sleep( 100 );
+        decorator.hold.countDown();
+
+        for ( Future<TransferMetadata> result : results )
+        {
+            assertThat( result.get( 10, TimeUnit.SECONDS ).getDigests().get( ContentDigest.SHA_256 ),
+                        equalTo( sha256Hex( content ) ) );
+        }
+        assertThat( decorator.reads.get(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void failureIsPropagatedToEveryCaller()
+            throws Exception
+    {
+        decorator.hold = new CountDownLatch( 1 );
+        decorator.fail = true;
+
+        List<Future<TransferMetadata>> results = digestConcurrently();
+        decorator.opened.await( 10, TimeUnit.SECONDS );
+        Thread.sleep( 100 );
+        decorator.hold.countDown();
+
+        for ( Future<TransferMetadata> result : results )
+        {
+            try
+            {
+                result.get( 10, TimeUnit.SECONDS );
+                throw new AssertionError( "Digest should have failed" );
+            }
+            catch ( ExecutionException e )
+            {
+                assertThat( e.getCause(), instanceOf( IndyWorkflowException.class ) );
+            }
+        }
+
+        // nothing is left in progress, so the next caller calculates again
+        decorator.fail = false;
+        assertThat( digester.digest( key, PATH, new EventMetadata() ).getSize(), equalTo( (long) content.length ) );
+    }
+
+    private List<Future<TransferMetadata>> digestConcurrently()
+    {
+        ExecutorService executor = Executors.newFixedThreadPool( CALLERS );
+        List<Future<TransferMetadata>> results = new ArrayList<>();
+        for ( int i = 0; i < CALLERS; i++ )
+        {
+            results.add( executor.submit( () -> digester.digest( key, PATH, new EventMetadata() ) ) );
+        }
+        executor.shutdown();
+        return results;
+    }
+
+    /**
+     * Does what the checksumming decorator does on a forced read: digests the content as it is read and reports the
+     * result to the digester on close. Counts the reads, and can hold them (to let other callers pile up) or fail them.
+     */
+    private static final class DigestingDecorator
+            extends AbstractTransferDecorator
+    {
+        private final AtomicInteger reads = new AtomicInteger();
+
+        private final CountDownLatch opened = new CountDownLatch( 1 );
+
+        private volatile CountDownLatch hold = new CountDownLatch( 0 );
+
+        private volatile boolean fail;
+
+        private DefaultContentDigester digester;
+
+        @Override
+        public InputStream decorateRead( final InputStream stream, final Transfer transfer,
+                                         final EventMetadata metadata )
+                throws IOException
+        {
+            reads.incrementAndGet();
+            opened.countDown();
+            try
+            {
+                hold.await();
+            }
+            catch ( InterruptedException e )
+            {
+                throw new IOException( e );
+            }
+
+            if ( fail )
+            {
+                stream.close();
+                throw new IOException( "Simulated read failure" );
+            }
+
+            return new DigestingStream( stream, transfer, digester );
+        }
+    }
+
+    private static final class DigestingStream
+            extends FilterInputStream
+    {
+        private final Transfer transfer;
+
+        private final DefaultContentDigester digester;
+
+        private final Map<ContentDigest, MessageDigest> digests = new EnumMap<>( ContentDigest.class );
+
+        private long size;
+
+        private DigestingStream( final InputStream in, final Transfer transfer, final DefaultContentDigester digester )
+                throws IOException
+        {
+            super( in );
+            this.transfer = transfer;
+            this.digester = digester;
+            try
+            {
+                digests.put( ContentDigest.MD5, MessageDigest.getInstance( "MD5" ) );
+                digests.put( ContentDigest.SHA_1, MessageDigest.getInstance( "SHA-1" ) );
+                digests.put( ContentDigest.SHA_256, MessageDigest.getInstance( "SHA-256" ) );
+            }
+            catch ( NoSuchAlgorithmException e )
+            {
+                throw new IOException( e );
+            }
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            int b = super.read();
+            if ( b >= 0 )
+            {
+                digests.values().forEach( d -> d.update( (byte) b ) );
+                size++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len )
+                throws IOException
+        {
+            int read = super.read( b, off, len );
+            if ( read > 0 )
+            {
+                digests.values().forEach( d -> d.update( b, off, read ) );
+                size += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close()
+                throws IOException
+        {
+            super.close();
+            Map<ContentDigest, String> hex = new EnumMap<>( ContentDigest.class );
+            digests.forEach( ( type, d ) -> hex.put( type, toHex( d.digest() ) ) );
+            digester.addMetadata( transfer, new TransferMetadata( hex, size ) );
+        }
+
+        private static String toHex( final byte[] bytes )
+        {
+            StringBuilder sb = new StringBuilder();
+            for ( byte b : bytes )
+            {
+                sb.append( String.format( "%02x", b ) );
+            }
+            return sb.toString();
+        }
+    }
+}
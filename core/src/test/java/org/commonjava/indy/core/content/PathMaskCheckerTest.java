@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content;
+
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.commonjava.indy.core.content.PathMaskChecker.isRegexPattern;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PathMaskCheckerTest
+{
+    private static final List<String> PATHS =
+            Arrays.asList( "", "org/", "org/foo", "org/foo/", "org/foo/bar/1.0/bar-1.0.pom",
+                           "org/foo/bar/maven-metadata.xml", "org/foo/baz/1.0.redhat-1/baz-1.0.redhat-1.jar",
+                           "com/example/", "com/example/lib/2.0/lib-2.0.jar", "net/", "r|" );
+
+    @Test
+    public void compiledMasksMatchPlainPatternEvaluation()
+    {
+        RemoteRepository repo = new RemoteRepository( "koji-build", "http://example.url" );
+        repo.setPathMaskPatterns( new HashSet<>(
+                Arrays.asList( "org/foo/bar/", "org/foo/bar/maven-metadata.xml", "com/example/lib/2.0/",
+                               "r|org\\/foo\\/.+\\/1.0.redhat-1\\/.+|", "r|com\\/example\\/.+\\.jar|" ) ) );
+
+        for ( String path : PATHS )
+        {
+            Set<String> patterns = repo.getPathMaskPatterns();
+            assertThat( "mask: " + path, PathMaskChecker.checkMask( repo, path ), equalTo( plainMask( patterns, path ) ) );
+            assertThat( "metadata mask: " + path, PathMaskChecker.checkMavenMetadataMask( repo, path ),
+                        equalTo( plainMetadataMask( patterns, path ) ) );
+        }
+    }
+
+    @Test
+    public void replacedPatternsAreRecompiled()
+    {
+        RemoteRepository repo = new RemoteRepository( "koji-build", "http://example.url" );
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "org/foo/" ) ) );
+
+        assertTrue( PathMaskChecker.checkMask( repo, "org/foo/bar/1.0/bar-1.0.pom" ) );
+        assertFalse( PathMaskChecker.checkMask( repo, "com/example/lib/2.0/lib-2.0.jar" ) );
+
+        RemoteRepository updated = repo.copyOf();
+        updated.setPathMaskPatterns( new HashSet<>( Arrays.asList( "r|com\\/example\\/.+|" ) ) );
+
+        assertFalse( PathMaskChecker.checkMask( updated, "org/foo/bar/1.0/bar-1.0.pom" ) );
+        assertTrue( PathMaskChecker.checkMask( updated, "com/example/lib/2.0/lib-2.0.jar" ) );
+    }
+
+    @Test
+    public void copiesOfTheStoreShareTheIndex()
+    {
+        RemoteRepository repo = new RemoteRepository( "koji-build-copied", "http://example.url" );
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "org/foo/", "r|com\\/example\\/.+|" ) ) );
+        PathMaskIndex index = PathMaskChecker.getIndex( repo, repo.getPathMaskPatterns() );
+
+        // e.g. deserialized again from the store cache
+        RemoteRepository copy = repo.copyOf();
+        copy.setPathMaskPatterns( new HashSet<>( repo.getPathMaskPatterns() ) );
+        assertThat( PathMaskChecker.getIndex( copy, copy.getPathMaskPatterns() ) == index, equalTo( true ) );
+
+        copy.setPathMaskPatterns( new HashSet<>( Arrays.asList( "org/foo/", "com/example/" ) ) );
+        assertThat( PathMaskChecker.getIndex( copy, copy.getPathMaskPatterns() ) == index, equalTo( false ) );
+        assertFalse( PathMaskChecker.checkMask( copy, "com/example-other/lib-2.0.jar" ) );
+    }
+
+    @Test
+    public void invalidRegexNeverMatches()
+    {
+        RemoteRepository repo = new RemoteRepository( "koji-build", "http://example.url" );
+        repo.setPathMaskPatterns( new HashSet<>( Arrays.asList( "r|org/(foo|", "com/example/" ) ) );
+
+        assertFalse( PathMaskChecker.checkMask( repo, "org/foo/bar/1.0/bar-1.0.pom" ) );
+        assertTrue( PathMaskChecker.checkMask( repo, "com/example/lib/2.0/lib-2.0.jar" ) );
+    }
+
+    private boolean plainMask( final Set<String> patterns, final String path )
+    {
+        return patterns.stream()
+                       .anyMatch( p -> isRegexPattern( p ) ?
+                               path.matches( p.substring( 2, p.length() - 1 ) ) :
+                               path.startsWith( p ) );
+    }
+
+    private boolean plainMetadataMask( final Set<String> patterns, final String path )
+    {
+        return patterns.stream()
+                       .filter( p -> !isRegexPattern( p ) )
+                       .anyMatch( p -> path.startsWith( p ) || p.startsWith( path ) );
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.change.event.ArtifactStoreUpdateType;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GroupMembershipCacheTest
+{
+    private MemoryStoreDataManager storeManager;
+
+    private GroupMembershipCache cache;
+
+    private final ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "test" );
+
+    @Before
+    public void setup()
+    {
+        storeManager = new MemoryStoreDataManager( true );
+        cache = new GroupMembershipCache( storeManager );
+    }
+
+    @Test
+    public void nestedMemberChangeInvalidatesOuterGroup()
+            throws Exception
+    {
+        HostedRepository one = new HostedRepository( MAVEN_PKG_KEY, "one" );
+        HostedRepository two = new HostedRepository( MAVEN_PKG_KEY, "two" );
+        two.setDisabled( true );
+        Group inner = new Group( MAVEN_PKG_KEY, "inner", two.getKey() );
+        Group outer = new Group( MAVEN_PKG_KEY, "outer", one.getKey(), inner.getKey() );
+
+        store( one, two, inner, outer );
+
+        List<ArtifactStore> members = cache.getOrderedConcreteStores( outer );
+        assertThat( members.size(), equalTo( 1 ) );
+        assertThat( cache.getOrderedConcreteStores( outer ), sameInstance( members ) );
+
+        HostedRepository enabled = two.copyOf();
+        enabled.setDisabled( false );
+        store( enabled );
+        cache.onStorePostUpdate( new ArtifactStorePostUpdateEvent( ArtifactStoreUpdateType.UPDATE, new EventMetadata(),
+                                                                   Collections.singletonMap( enabled, two ) ) );
+
+        members = cache.getOrderedConcreteStores( outer );
+        assertThat( members.size(), equalTo( 2 ) );
+        assertThat( members.get( 1 ).getKey(), equalTo( two.getKey() ) );
+        assertThat( cache.getMetrics().get( "invalidations" ), equalTo( 1L ) );
+    }
+
+    @Test
+    public void changeKnownByKeyOnlyInvalidatesGroup()
+            throws Exception
+    {
+        HostedRepository one = new HostedRepository( MAVEN_PKG_KEY, "one" );
+        Group grp = new Group( MAVEN_PKG_KEY, "grp", one.getKey() );
+        store( one, grp );
+
+        List<ArtifactStore> members = cache.getOrderedConcreteStores( grp );
+        cache.invalidateKeys( Collections.singleton( one.getKey() ) );
+
+        assertThat( cache.getMetrics().get( "invalidations" ), equalTo( 1L ) );
+        assertThat( cache.getOrderedConcreteStores( grp ), equalTo( members ) );
+        assertThat( cache.getMetrics().get( "misses" ), equalTo( 2L ) );
+    }
+
+    private void store( ArtifactStore... stores )
+            throws Exception
+    {
+        for ( ArtifactStore store : stores )
+        {
+            storeManager.storeArtifactStore( store, summary, false, false, new EventMetadata() );
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.subsys.infinispan.CacheHandle;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GroupMergeSingleFlightTest
+{
+    private static final String KEY = "maven:group:public-org/foo/maven-metadata.xml";
+
+    private DefaultIndyConfiguration config;
+
+    private CacheHandle<String, String> leases;
+
+    @Before
+    public void setup()
+    {
+        config = new DefaultIndyConfiguration();
+        config.setNodeId( "node-1" );
+
+        DefaultCacheManager cacheManager =
+                new DefaultCacheManager( new ConfigurationBuilder().simpleCache( true ).build() );
+        leases = new CacheHandle<>( "group-merge-leases", cacheManager.getCache( "group-merge-leases" ) );
+    }
+
+    @Test
+    public void concurrentCallersShareOneMerge()
+            throws Exception
+    {
+        GroupMergeSingleFlight singleFlight = new GroupMergeSingleFlight( config, leases );
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger merges = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        List<Future<Boolean>> results = new ArrayList<>();
+        for ( int i = 0; i < 8; i++ )
+        {
+            results.add( executor.submit( () -> singleFlight.execute( KEY, done::get, () -> {
+                merges.incrementAndGet();
+                Thread.sleep( 200 );
+                done.set( true );
+                return true;
+            } ) ) );
+        }
+
+        for ( Future<Boolean> result : results )
+        {
+            assertThat( result.get( 10, TimeUnit.SECONDS ), equalTo( true ) );
+        }
+        executor.shutdown();
+
+        assertThat( merges.get(), equalTo( 1 ) );
+        assertThat( leases.get( KEY ) == null, equalTo( true ) );
+    }
+
+    @Test
+    public void keepLeaseTakenOverByAnotherNode()
+            throws Exception
+    {
+        GroupMergeSingleFlight singleFlight = new GroupMergeSingleFlight( config, leases );
+
+        boolean result = singleFlight.execute( KEY, () -> false, () -> {
+            // the lease of this node expired during a long merge, and another node claimed it
+            leases.put( KEY, "node-2" );
+            return true;
+        } );
+
+        assertThat( result, equalTo( true ) );
+        assertThat( leases.get( KEY ), equalTo( "node-2" ) );
+    }
+
+    @Test
+    public void waitForMergeClaimedByAnotherNode()
+            throws Exception
+    {
+        GroupMergeSingleFlight singleFlight = new GroupMergeSingleFlight( config, leases );
+        leases.put( KEY, "node-2" );
+
+        AtomicBoolean done = new AtomicBoolean();
+        new Thread( () -> {
+            try
+            {
+                Thread.sleep( 300 );
+            }
+            catch ( InterruptedException e )
+            {
+                return;
+            }
+            done.set( true );
+        } ).start();
+
+        boolean result = singleFlight.execute( KEY, done::get, () -> {
+            throw new AssertionError( "should not merge what another node is merging" );
+        } );
+
+        assertThat( result, equalTo( true ) );
+        assertThat( singleFlight.getMetrics().get( "clusterWaits" ), equalTo( 1L ) );
+        assertThat( singleFlight.getMetrics().get( "sharedResults" ), equalTo( 1L ) );
+    }
+
+    @Test
+    public void mergeHereWhenAnotherNodeTakesTooLong()
+            throws Exception
+    {
+        config.setGroupMergeWaitSeconds( 1 );
+        GroupMergeSingleFlight singleFlight = new GroupMergeSingleFlight( config, leases );
+        leases.put( KEY, "node-2" );
+
+        AtomicInteger merges = new AtomicInteger();
+        boolean result = singleFlight.execute( KEY, () -> false, () -> merges.incrementAndGet() > 0 );
+
+        assertThat( result, equalTo( true ) );
+        assertThat( merges.get(), equalTo( 1 ) );
+        assertThat( singleFlight.getMetrics().get( "fallbacks" ), equalTo( 1L ) );
+    }
+}
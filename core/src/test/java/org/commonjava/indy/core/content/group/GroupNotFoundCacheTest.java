@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
+import org.commonjava.indy.change.event.ArtifactStoreUpdateType;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.mem.data.MemoryStoreDataManager;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.maven.galley.event.EventMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class GroupNotFoundCacheTest
+{
+    private static final String PATH = "/org/foo/bar/1/bar-1-sources.jar";
+
+    private MemoryStoreDataManager storeManager;
+
+    private GroupNotFoundCache cache;
+
+    private HostedRepository one;
+
+    private HostedRepository two;
+
+    private Group inner;
+
+    private Group outer;
+
+    private final ChangeSummary summary = new ChangeSummary( ChangeSummary.SYSTEM_USER, "test" );
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        storeManager = new MemoryStoreDataManager( true );
+
+        DefaultIndyConfiguration config = new DefaultIndyConfiguration();
+        config.setGroupNfcEnabled( true );
+        cache = new GroupNotFoundCache( config, new GroupMembershipCache( storeManager ) );
+
+        one = new HostedRepository( MAVEN_PKG_KEY, "one" );
+        two = new HostedRepository( MAVEN_PKG_KEY, "two" );
+        inner = new Group( MAVEN_PKG_KEY, "inner", two.getKey() );
+        outer = new Group( MAVEN_PKG_KEY, "outer", one.getKey(), inner.getKey() );
+
+        for ( ArtifactStore store : new ArtifactStore[] { one, two, inner, outer } )
+        {
+            storeManager.storeArtifactStore( store, summary, false, false, new EventMetadata() );
+        }
+    }
+
+    @Test
+    public void nestedMemberStoringThePathDropsTheMiss()
+    {
+        record( outer );
+        record( inner );
+        assertThat( cache.isMissing( outer, PATH ), equalTo( true ) );
+        assertThat( cache.isMissing( inner, PATH ), equalTo( true ) );
+
+        // unrelated path and store
+        cache.invalidate( two.getKey(), "/org/foo/bar/1/bar-1.jar" );
+        cache.invalidate( new HostedRepository( MAVEN_PKG_KEY, "other" ).getKey(), PATH );
+        assertThat( cache.isMissing( outer, PATH ), equalTo( true ) );
+
+        cache.invalidate( one.getKey(), PATH.substring( 1 ) );
+        assertThat( cache.isMissing( outer, PATH ), equalTo( false ) );
+        assertThat( cache.isMissing( inner, PATH ), equalTo( true ) );
+    }
+
+    @Test
+    public void membershipChangeDropsTheMiss()
+    {
+        record( outer );
+
+        Group changed = inner.copyOf();
+        changed.removeConstituent( two.getKey() );
+        cache.onStorePostUpdate( new ArtifactStorePostUpdateEvent( ArtifactStoreUpdateType.UPDATE, new EventMetadata(),
+                                                                   Collections.singletonMap( changed, inner ) ) );
+
+        assertThat( cache.isMissing( outer, PATH ), equalTo( false ) );
+    }
+
+    @Test
+    public void missIsNotRecordedWhenThePathChangedDuringRetrieval()
+            throws Exception
+    {
+        long stamp = cache.getStamp( PATH );
+        cache.invalidate( two.getKey(), PATH );
+        cache.addMissing( outer, PATH, members( outer ), stamp );
+
+        assertThat( cache.isMissing( outer, PATH ), equalTo( false ) );
+    }
+
+    private void record( final Group group )
+    {
+        cache.addMissing( group, PATH, members( group ), cache.getStamp( PATH ) );
+    }
+
+    private List<ArtifactStore> members( final Group group )
+    {
+        try
+        {
+            return storeManager.query().getOrderedConcreteStoresInGroup( MAVEN_PKG_KEY, group.getName() );
+        }
+        catch ( Exception e )
+        {
+            throw new IllegalStateException( e );
+        }
+    }
+}
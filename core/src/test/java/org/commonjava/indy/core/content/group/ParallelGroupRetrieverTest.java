@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.content.group;
+
+import org.commonjava.cdi.util.weft.PoolWeftExecutorService;
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.model.galley.KeyedLocation;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.GalleyCore;
+import org.commonjava.maven.galley.GalleyCoreBuilder;
+import org.commonjava.maven.galley.cache.FileCacheProviderFactory;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Transfer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ParallelGroupRetrieverTest
+{
+    private static final String PATH = "/org/foo/bar/1/bar-1.pom";
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private GalleyCore core;
+
+    private DefaultIndyConfiguration config;
+
+    private ParallelGroupRetriever retriever;
+
+    private Group group;
+
+    private List<ArtifactStore> members;
+
+    @Before
+    public void setup()
+            throws Exception
+    {
+        core = new GalleyCoreBuilder( new FileCacheProviderFactory( temp.newFolder( "cache" ) ) ).build();
+
+        config = new DefaultIndyConfiguration();
+        config.setGroupParallelRetrievalEnabled( true );
+        config.setGroupRetrievalConcurrency( 3 );
+        config.setGroupRetrievalHedgeDelayMillis( 20 );
+
+        retriever = new ParallelGroupRetriever( config, new PoolWeftExecutorService( "test-group-member-probe",
+                                                                                     (ThreadPoolExecutor) Executors.newCachedThreadPool(),
+                                                                                     10, 10f, false ) );
+
+        members = new ArrayList<>();
+        for ( int i = 0; i < 3; i++ )
+        {
+            members.add( new HostedRepository( MAVEN_PKG_KEY, "hosted-" + i ) );
+        }
+
+        group = new Group( MAVEN_PKG_KEY, "test" );
+        members.forEach( m -> group.addConstituent( m ) );
+    }
+
+    @Test
+    public void slowHeadMemberStillWinsOverFasterLaterMember()
+            throws Exception
+    {
+        Transfer result = retriever.retrieveFirst( group, members, PATH, member -> {
+            if ( member == members.get( 0 ) )
+            {
+                sleep( 200 );
+            }
+            return transfer( member );
+        } );
+
+        assertThat( ( (KeyedLocation) result.getLocation() ).getKey(), equalTo( members.get( 0 ).getKey() ) );
+        assertThat( retriever.getMetrics().get( "hedgedProbes" ), equalTo( 2L ) );
+    }
+
+    @Test
+    public void firstHitInOrderWinsAndLaterProbesAreWasted()
+            throws Exception
+    {
+        Transfer result = retriever.retrieveFirst( group, members, PATH, member -> {
+            if ( member == members.get( 0 ) )
+            {
+                sleep( 100 );
+                return null;
+            }
+            if ( member == members.get( 2 ) )
+            {
+                sleep( 1000 );
+            }
+            return transfer( member );
+        } );
+
+        assertThat( ( (KeyedLocation) result.getLocation() ).getKey(), equalTo( members.get( 1 ).getKey() ) );
+        assertThat( retriever.getMetrics().get( "wastedProbes" ), equalTo( 1L ) );
+    }
+
+    @Test
+    public void groupConcurrencyOverrideLimitsInflightProbes()
+            throws Exception
+    {
+        group.setMetadata( ParallelGroupRetriever.GROUP_RETRIEVAL_CONCURRENCY, "1" );
+
+        AtomicInteger inflight = new AtomicInteger();
+        AtomicInteger maxInflight = new AtomicInteger();
+        Transfer result = retriever.retrieveFirst( group, members, PATH, member -> {
+            maxInflight.accumulateAndGet( inflight.incrementAndGet(), Math::max );
+            try
+            {
+                sleep( 50 );
+                return null;
+            }
+            finally
+            {
+                inflight.decrementAndGet();
+            }
+        } );
+
+        assertThat( result, nullValue() );
+        assertThat( maxInflight.get(), equalTo( 1 ) );
+        assertThat( retriever.getMetrics().get( "probes" ), equalTo( (long) members.size() ) );
+    }
+
+    @Test
+    public void saturatedPoolFallsBackToProbingInOrder()
+            throws Exception
+    {
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        pool.shutdown();
+        retriever = new ParallelGroupRetriever( config, new PoolWeftExecutorService( "test-saturated-probe", pool, 10,
+                                                                                     10f, false ) );
+
+        List<ArtifactStore> probed = new ArrayList<>();
+        Transfer result = retriever.retrieveFirst( group, members, PATH, member -> {
+            probed.add( member );
+            return member == members.get( 0 ) ? null : transfer( member );
+        } );
+
+        assertThat( ( (KeyedLocation) result.getLocation() ).getKey(), equalTo( members.get( 1 ).getKey() ) );
+        assertThat( probed, equalTo( members.subList( 0, 2 ) ) );
+        assertThat( retriever.getMetrics().get( "overloadedProbes" ), equalTo( 2L ) );
+        assertThat( retriever.getMetrics().get( "probes" ), equalTo( 0L ) );
+    }
+
+    private void sleep( final long millis )
+    {
+        try
+        {
+            Thread.sleep( millis );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Transfer transfer( final ArtifactStore member )
+    {
+        return core.getTransferManager()
+                   .getCacheReference( new ConcreteResource( LocationUtils.toLocation( member ), PATH ) );
+    }
+}
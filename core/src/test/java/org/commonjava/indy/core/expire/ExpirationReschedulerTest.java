@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.expire;
+
+import org.commonjava.indy.model.core.StoreKey;
+import org.commonjava.indy.model.core.StoreType;
+import org.commonjava.indy.model.core.io.IndyObjectMapper;
+import org.commonjava.indy.schedule.ScheduleDB;
+import org.commonjava.indy.schedule.conf.ScheduleDBConfig;
+import org.commonjava.indy.schedule.datastax.model.DtxSchedule;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ExpirationReschedulerTest
+{
+    private final StoreKey key = new StoreKey( MAVEN_PKG_KEY, StoreType.remote, "central" );
+
+    private RecordingScheduleDB scheduleDB;
+
+    private ExpirationRescheduler rescheduler;
+
+    @Before
+    public void setup()
+    {
+        ScheduleDBConfig config = new ScheduleDBConfig();
+        config.setRescheduleSlackSeconds( 300 );
+
+        scheduleDB = new RecordingScheduleDB();
+        rescheduler = new ExpirationRescheduler( config, scheduleDB, new IndyObjectMapper( true ) );
+    }
+
+    @Test
+    public void repeatedAccessesAreWrittenOnce()
+    {
+        for ( int i = 0; i < 1000; i++ )
+        {
+            rescheduler.reschedule( key, "org/foo/1/foo-1.jar", 86400 );
+            rescheduler.reschedule( key, "org/foo/1/foo-1.pom", 86400 );
+        }
+
+        rescheduler.flush();
+        assertThat( scheduleDB.written.size(), equalTo( 2 ) );
+
+        DtxSchedule schedule = scheduleDB.written.get( 0 );
+        long expiration = schedule.getScheduleTime().getTime() + schedule.getLifespan() * 1000;
+        assertThat( expiration >= System.currentTimeMillis() + 86400 * 1000L, equalTo( true ) );
+
+        // same window, the written expiration would not move
+        rescheduler.reschedule( key, "org/foo/1/foo-1.jar", 86400 );
+        rescheduler.flush();
+        assertThat( scheduleDB.written.size(), equalTo( 2 ) );
+        assertThat( rescheduler.getMetrics().get( "dropped" ), equalTo( 1L ) );
+
+        // a direct write makes it forget the path
+        rescheduler.discard( key, "org/foo/1/foo-1.jar" );
+        rescheduler.reschedule( key, "org/foo/1/foo-1.jar", 86400 );
+        rescheduler.flush();
+        assertThat( scheduleDB.written.size(), equalTo( 3 ) );
+    }
+
+    @Test
+    public void failedWritesAreRetried()
+    {
+        scheduleDB.failNext = true;
+        rescheduler.reschedule( key, "org/foo/1/foo-1.jar", 3600 );
+        rescheduler.flush();
+
+        assertThat( scheduleDB.written.size(), equalTo( 0 ) );
+        assertThat( rescheduler.getMetrics().get( "pending" ), equalTo( 1L ) );
+
+        rescheduler.flush();
+        assertThat( scheduleDB.written.size(), equalTo( 1 ) );
+        assertThat( rescheduler.getMetrics().get( "pending" ), equalTo( 0L ) );
+    }
+
+    private static final class RecordingScheduleDB
+            extends ScheduleDB
+    {
+        private final List<DtxSchedule> written = new ArrayList<>();
+
+        private boolean failNext;
+
+        @Override
+        public Collection<DtxSchedule> createSchedules( final Collection<DtxSchedule> schedules, final int batchSize )
+        {
+            if ( failNext )
+            {
+                failNext = false;
+                return schedules;
+            }
+
+            written.addAll( schedules );
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ExpiringNotFoundIndexTest
+{
+    @Test
+    public void removeStoreLeavesOthers()
+    {
+        ExpiringNotFoundIndex<String> index = new ExpiringNotFoundIndex<>( 1000, 0 );
+        index.add( "a", "/path/1", 10000 );
+        index.add( "a", "/path/2", 10000 );
+        index.add( "b", "/path/1", 10000 );
+
+        index.remove( "a" );
+        assertThat( index.contains( "a", "/path/1", 0 ), equalTo( false ) );
+        assertThat( index.contains( "b", "/path/1", 0 ), equalTo( true ) );
+        assertThat( index.size(), equalTo( 1L ) );
+
+        // entries of the removed store are dropped without effect when they expire
+        index.add( "a", "/path/2", 20000 );
+        index.expire( 0 );
+        index.expire( 15000 );
+        assertThat( index.contains( "a", "/path/2", 15000 ), equalTo( true ) );
+        assertThat( index.getAll( 15000 ), equalTo( Collections.singletonMap( "a", Collections.singleton( "/path/2" ) ) ) );
+    }
+
+    @Test
+    public void expireMatchesDeadlines()
+    {
+        ExpiringNotFoundIndex<String> index = new ExpiringNotFoundIndex<>( 1, 0 );
+        Map<String, Long> expected = new HashMap<>();
+        Random random = new Random( 42 );
+        index.expire( 0 );
+        for ( int i = 0; i < 5000; i++ )
+        {
+            // spread over all the levels of the wheel, and beyond it
+            long expires = 1 + (long) Math.pow( 2, random.nextDouble() * 26 );
+            String path = "/path/" + random.nextInt( 4000 );
+            index.add( "store", path, expires );
+            expected.put( path, expires );
+        }
+        index.add( "store", "/never", Long.MAX_VALUE );
+
+        for ( long now = 1; now < ( 1 << 26 ); now = now * 3 / 2 + 1 )
+        {
+            index.expire( now );
+            final long time = now;
+            long alive = expected.values().stream().filter( expires -> time < expires ).count();
+            assertThat( index.size(), equalTo( alive + 1 ) );
+        }
+    }
+
+    @Test
+    public void replacedEntryKeepsLatestExpiration()
+    {
+        ExpiringNotFoundIndex<String> index = new ExpiringNotFoundIndex<>( 1000, 0 );
+        index.expire( 0 );
+        index.add( "a", "/path", 5000 );
+        index.add( "a", "/path", 60000 );
+
+        index.expire( 10000 );
+        assertThat( index.contains( "a", "/path", 10000 ), equalTo( true ) );
+
+        index.expire( 60000 );
+        assertThat( index.contains( "a", "/path", 60000 ), equalTo( false ) );
+        assertThat( index.size(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void fullIndexRefusesNewPaths()
+    {
+        ExpiringNotFoundIndex<String> index = new ExpiringNotFoundIndex<>( 1000, 2 );
+        index.expire( 0 );
+        assertThat( index.add( "a", "/path/1", 5000 ), equalTo( true ) );
+        assertThat( index.add( "b", "/path/1", 60000 ), equalTo( true ) );
+        assertThat( index.add( "b", "/path/2", 60000 ), equalTo( false ) );
+        assertThat( index.contains( "b", "/path/2", 0 ), equalTo( false ) );
+
+        // paths already in the index are still refreshed
+        assertThat( index.add( "b", "/path/1", 90000 ), equalTo( true ) );
+        assertThat( index.size(), equalTo( 2L ) );
+
+        index.expire( 10000 );
+        assertThat( index.add( "b", "/path/2", 60000 ), equalTo( true ) );
+
+        index.clear();
+        assertThat( index.size(), equalTo( 0L ) );
+    }
+
+    @Test
+    public void schedulingQueueIsDrainedBetweenExpirations()
+    {
+        ExpiringNotFoundIndex<String> index = new ExpiringNotFoundIndex<>( 1000, 0 );
+        index.expire( 0 );
+
+        // the same paths marked missing again and again, as after a store is cleared many times
+        for ( int i = 0; i < ExpiringNotFoundIndex.SCHEDULING_DRAIN_THRESHOLD * 3; i++ )
+        {
+            index.add( "a", "/path/" + ( i % 100 ), 5000 + i );
+        }
+
+        assertThat( index.schedulingSize() < ExpiringNotFoundIndex.SCHEDULING_DRAIN_THRESHOLD, equalTo( true ) );
+        assertThat( index.size(), equalTo( 100L ) );
+
+        index.expire( 5000 + ExpiringNotFoundIndex.SCHEDULING_DRAIN_THRESHOLD * 3 );
+        assertThat( index.size(), equalTo( 0L ) );
+        assertThat( index.schedulingSize(), equalTo( 0 ) );
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.core.inject;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.model.core.RemoteRepository;
+import org.commonjava.indy.util.LocationUtils;
+import org.commonjava.maven.galley.model.ConcreteResource;
+import org.commonjava.maven.galley.model.Location;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.commonjava.indy.pkg.maven.model.MavenPackageTypeDescriptor.MAVEN_PKG_KEY;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class FilteredNotFoundCacheTest
+{
+    private DefaultIndyConfiguration config;
+
+    private ExpiringMemoryNotFoundCache delegate;
+
+    private Location location;
+
+    @Before
+    public void setup()
+    {
+        config = new DefaultIndyConfiguration();
+        config.setNfcFilterEnabled( true );
+        config.setNfcFilterHotTtlSeconds( 60 );
+
+        delegate = new ExpiringMemoryNotFoundCache( config );
+        location = LocationUtils.toLocation( new RemoteRepository( MAVEN_PKG_KEY, "central", "http://repo.example/" ) );
+    }
+
+    @Test
+    public void pathsNeverMarkedMissingSkipTheDelegate()
+    {
+        ConcreteResource known = new ConcreteResource( location, "/org/foo/1/foo-1.pom" );
+        delegate.addMissing( known );
+
+        FilteredNotFoundCache nfc = new FilteredNotFoundCache( config, delegate, Runnable::run );
+
+        assertThat( nfc.isMissing( known ), equalTo( true ) );
+        assertThat( nfc.isMissing( known ), equalTo( true ) );
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertThat( nfc.isMissing( new ConcreteResource( location, "/org/bar/" + i + "/bar.pom" ) ),
+                        equalTo( false ) );
+        }
+
+        assertThat( nfc.getMetrics().get( "filterLoads" ), equalTo( 1L ) );
+        assertThat( nfc.getMetrics().get( "hotHits" ), equalTo( 1L ) );
+        // one delegate probe to confirm the known path, plus at most a couple of Bloom filter false positives
+        assertThat( nfc.getMetrics().get( "delegateProbes" ) <= 3, equalTo( true ) );
+    }
+
+    @Test
+    public void clearedPathsAreNotAnsweredFromTheHotTier()
+    {
+        FilteredNotFoundCache nfc = new FilteredNotFoundCache( config, delegate, Runnable::run );
+        ConcreteResource res = new ConcreteResource( location, "/org/foo/1/foo-1.pom" );
+        ConcreteResource other = new ConcreteResource( location, "/org/foo/2/foo-2.pom" );
+
+        // load the store's filter first, so the adds below go through it
+        assertThat( nfc.isMissing( res ), equalTo( false ) );
+
+        nfc.addMissing( res );
+        nfc.addMissing( other );
+        assertThat( nfc.isMissing( res ), equalTo( true ) );
+
+        nfc.clearMissing( res );
+        assertThat( nfc.isMissing( res ), equalTo( false ) );
+        assertThat( nfc.isMissing( other ), equalTo( true ) );
+
+        nfc.clearMissing( location );
+        assertThat( nfc.isMissing( other ), equalTo( false ) );
+    }
+
+    @Test
+    public void probesGoToTheDelegateWhileTheFilterLoads()
+    {
+        ConcreteResource known = new ConcreteResource( location, "/org/foo/1/foo-1.pom" );
+        delegate.addMissing( known );
+
+        List<Runnable> loads = new ArrayList<>();
+        FilteredNotFoundCache nfc = new FilteredNotFoundCache( config, delegate, loads::add );
+        ConcreteResource other = new ConcreteResource( location, "/org/bar/1/bar-1.pom" );
+
+        assertThat( nfc.isMissing( other ), equalTo( false ) );
+        assertThat( nfc.getMetrics().get( "delegateProbes" ), equalTo( 1L ) );
+
+        loads.forEach( Runnable::run );
+        assertThat( nfc.isMissing( other ), equalTo( false ) );
+        assertThat( nfc.isMissing( known ), equalTo( true ) );
+        assertThat( loads.size(), equalTo( 1 ) );
+        assertThat( nfc.getMetrics().get( "filterSkips" ) >= 1, equalTo( true ) );
+    }
+
+    @Test
+    public void hotTierIsOffByDefault()
+    {
+        FilteredNotFoundCache nfc =
+                new FilteredNotFoundCache( new DefaultIndyConfiguration(), delegate, Runnable::run );
+        ConcreteResource res = new ConcreteResource( location, "/org/foo/1/foo-1.pom" );
+        nfc.addMissing( res );
+
+        // cleared behind the filter's back, as by another node
+        delegate.clearMissing( res );
+        assertThat( nfc.isMissing( res ), equalTo( false ) );
+        assertThat( nfc.getMetrics().get( "hotHits" ), equalTo( 0L ) );
+    }
+}
@@ -579,6 +579,25 @@ public abstract class AbstractStoreDataManager
         } );
     }
 
+    /**
+     * Keys of the groups directly containing the given store, for data managers that maintain a reverse membership
+     * index (see {@link AffectedByIndex}). Returns null when there is no index, in which case callers scan all groups.
+     */
+    protected Set<StoreKey> getIndexedGroupsContaining( final StoreKey key )
+    {
+        return null;
+    }
+
+    /**
+     * Keys of the groups transitively containing any of the given stores, for data managers that maintain a reverse
+     * membership index (see {@link AffectedByIndex}). Returns null when there is no index, in which case
+     * {@link #affectedByFromStores(Collection)} scans all groups.
+     */
+    protected Set<StoreKey> getIndexedAffectedBy( final Collection<StoreKey> keys )
+    {
+        return null;
+    }
+
     protected Set<Group> affectedByFromStores( final Collection<StoreKey> keys )
     {
         Logger logger = LoggerFactory.getLogger( getClass() );
@@ -592,6 +611,17 @@ public abstract class AbstractStoreDataManager
             return groups;
         }
 
+        Set<StoreKey> indexed = getIndexedAffectedBy( toProcess );
+        if ( indexed != null )
+        {
+            indexed.stream()
+                   .map( this::getArtifactStoreInternal )
+                   .filter( Objects::nonNull )
+                   .forEach( store -> groups.add( (Group) store ) );
+
+            return filterAffectedGroups( groups );
+        }
+
         Set<StoreKey> processed = new HashSet<>();
         final String packageType = toProcess.get( 0 ).getPackageType();
 
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.common;
+
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.StoreKey;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.Collections.emptySet;
+
+/**
+ * Reverse group membership index: member key -&gt; keys of the groups that list it as a constituent. It is kept up to
+ * date by the data manager whenever a group is stored or removed, so affected-by and groups-containing queries don't
+ * have to scan every group.
+ * <p>
+ * The transitive affected-by set of a key is computed from the index on first use and memoized. A membership change
+ * of group G on member M only drops the memoized sets of M and of the keys whose set contains M, since those are the
+ * only ones that can reach G through M.
+ * <p>
+ * The index diffs a stored group against the constituents it recorded last time for that group (not against the
+ * previous store instance), so storing a group instance that was modified in place is handled correctly.
+ */
+public class AffectedByIndex
+{
+    private final Map<StoreKey, Set<StoreKey>> containingGroups = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, Set<StoreKey>> indexedConstituents = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, Set<StoreKey>> affectedBy = new ConcurrentHashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void updateGroup( final Group group )
+    {
+        final Set<StoreKey> updated =
+                group.getConstituents() == null ? emptySet() : new HashSet<>( group.getConstituents() );
+
+        lock.writeLock().lock();
+        try
+        {
+            applyMembership( group.getKey(), updated );
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop the membership edges of a removed group. For a removed concrete store nothing changes: groups that still
+     * list it as a constituent still contain it.
+     */
+    public void removeStore( final StoreKey key )
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if ( indexedConstituents.containsKey( key ) )
+            {
+                applyMembership( key, emptySet() );
+                indexedConstituents.remove( key );
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            containingGroups.clear();
+            indexedConstituents.clear();
+            affectedBy.clear();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Keys of the groups that directly list the given key as a constituent.
+     */
+    public Set<StoreKey> getGroupsContaining( final StoreKey key )
+    {
+        Set<StoreKey> groups = containingGroups.get( key );
+        return groups == null ? emptySet() : Collections.unmodifiableSet( new HashSet<>( groups ) );
+    }
+
+    /**
+     * Keys of all the groups that contain any of the given keys, directly or through nested groups.
+     */
+    public Set<StoreKey> getAffectedBy( final Collection<StoreKey> keys )
+    {
+        final Set<StoreKey> result = new HashSet<>();
+        lock.readLock().lock();
+        try
+        {
+            for ( StoreKey key : keys )
+            {
+                result.addAll( affectedBy.computeIfAbsent( key, this::computeAffectedBy ) );
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+    private Set<StoreKey> computeAffectedBy( final StoreKey key )
+    {
+        final Set<StoreKey> result = new HashSet<>();
+        final Set<StoreKey> processed = new HashSet<>();
+        final LinkedList<StoreKey> toProcess = new LinkedList<>();
+        toProcess.add( key );
+
+        while ( !toProcess.isEmpty() )
+        {
+            StoreKey next = toProcess.removeFirst();
+            if ( !processed.add( next ) )
+            {
+                continue;
+            }
+
+            Set<StoreKey> groups = containingGroups.get( next );
+            if ( groups != null )
+            {
+                for ( StoreKey gKey : groups )
+                {
+                    // a group affected by itself through a membership cycle is still not in its own result
+                    if ( !gKey.equals( key ) )
+                    {
+                        result.add( gKey );
+                    }
+                    toProcess.addLast( gKey );
+                }
+            }
+        }
+
+        return Collections.unmodifiableSet( result );
+    }
+
+    private void applyMembership( final StoreKey groupKey, final Set<StoreKey> updated )
+    {
+        final Set<StoreKey> original = indexedConstituents.getOrDefault( groupKey, emptySet() );
+
+        final Set<StoreKey> changed = new HashSet<>();
+        for ( StoreKey key : original )
+        {
+            if ( !updated.contains( key ) )
+            {
+                Set<StoreKey> groups = containingGroups.get( key );
+                if ( groups != null )
+                {
+                    groups.remove( groupKey );
+                    if ( groups.isEmpty() )
+                    {
+                        containingGroups.remove( key );
+                    }
+                }
+                changed.add( key );
+            }
+        }
+
+        for ( StoreKey key : updated )
+        {
+            if ( !original.contains( key ) )
+            {
+                containingGroups.computeIfAbsent( key, k -> ConcurrentHashMap.newKeySet() ).add( groupKey );
+                changed.add( key );
+            }
+        }
+
+        indexedConstituents.put( groupKey, updated );
+
+        if ( !changed.isEmpty() )
+        {
+            affectedBy.entrySet()
+                      .removeIf( e -> changed.contains( e.getKey() ) || !Collections.disjoint( e.getValue(),
+                                                                                              changed ) );
+        }
+    }
+}
@@ -243,6 +243,20 @@ public class DefaultArtifactStoreQuery<T extends ArtifactStore>
     @Override
     public Set<Group> getGroupsContaining( StoreKey storeKey, Boolean enabled )
     {
+        if ( dataManager instanceof AbstractStoreDataManager )
+        {
+            AbstractStoreDataManager manager = (AbstractStoreDataManager) dataManager;
+            Set<StoreKey> indexed = manager.getIndexedGroupsContaining( storeKey );
+            if ( indexed != null )
+            {
+                return indexed.stream()
+                              .map( manager::getArtifactStoreInternal )
+                              .filter( store -> store != null && enabled.equals( !store.isDisabled() ) )
+                              .map( store -> (Group) store )
+                              .collect( Collectors.toSet() );
+            }
+        }
+
         return getAllGroups( storeKey.getPackageType(), enabled ).stream().filter( g -> g.getConstituents().contains( storeKey ) ).collect( Collectors.toSet() );
     }
 
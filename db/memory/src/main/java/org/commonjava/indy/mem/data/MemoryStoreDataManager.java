@@ -22,8 +22,10 @@ import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.NoOpStoreEventDispatcher;
 import org.commonjava.indy.data.StoreEventDispatcher;
 import org.commonjava.indy.db.common.AbstractStoreDataManager;
+import org.commonjava.indy.db.common.AffectedByIndex;
 import org.commonjava.indy.db.common.inject.Standalone;
 import org.commonjava.indy.model.core.ArtifactStore;
+import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.slf4j.Logger;
@@ -32,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -49,6 +52,8 @@ public class MemoryStoreDataManager
 
     private final Map<StoreKey, ArtifactStore> stores = new ConcurrentHashMap<>();
 
+    private final AffectedByIndex affectedByIndex = new AffectedByIndex();
+
     @Inject
     private StoreEventDispatcher dispatcher;
 
@@ -102,10 +107,24 @@ public class MemoryStoreDataManager
 
     }
 
+    @Override
+    protected Set<StoreKey> getIndexedGroupsContaining( final StoreKey key )
+    {
+        return affectedByIndex.getGroupsContaining( key );
+    }
+
+    @Override
+    protected Set<StoreKey> getIndexedAffectedBy( final Collection<StoreKey> keys )
+    {
+        return affectedByIndex.getAffectedBy( keys );
+    }
+
     @Override
     protected ArtifactStore removeArtifactStoreInternal( StoreKey key )
     {
-        return stores.remove( key );
+        ArtifactStore removed = stores.remove( key );
+        affectedByIndex.removeStore( key );
+        return removed;
     }
 
     @Override
@@ -119,6 +138,7 @@ public class MemoryStoreDataManager
             throws IndyDataException
     {
         stores.clear();
+        affectedByIndex.clear();
     }
 
     @Override
@@ -177,7 +197,12 @@ public class MemoryStoreDataManager
     @Override
     protected ArtifactStore putArtifactStoreInternal( StoreKey storeKey, ArtifactStore store )
     {
-        return stores.put( storeKey, store );
+        ArtifactStore old = stores.put( storeKey, store );
+        if ( store instanceof Group )
+        {
+            affectedByIndex.updateGroup( (Group) store );
+        }
+        return old;
     }
 
     @Override
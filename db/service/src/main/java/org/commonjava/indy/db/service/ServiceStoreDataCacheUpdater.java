@@ -23,7 +23,7 @@ import org.commonjava.indy.model.core.Group;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
-import org.commonjava.indy.subsys.infinispan.CacheProducer;
+import org.commonjava.indy.subsys.infinispan.inject.qualifer.NamedCache;
 import org.infinispan.commons.api.BasicCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,7 +55,12 @@ public class ServiceStoreDataCacheUpdater
     private final Logger logger = LoggerFactory.getLogger( getClass() );
 
     @Inject
-    private CacheProducer cacheProducer;
+    @NamedCache( ServiceStoreDataManager.ARTIFACT_STORE )
+    private BasicCacheHandle<StoreKey, ArtifactStore> storeCache;
+
+    @Inject
+    @NamedCache( ServiceStoreQuery.ARTIFACT_STORE_QUERY )
+    private BasicCacheHandle<Object, Collection<ArtifactStore>> queryCache;
 
     private final ExecutorService cacheUpdateExecutor = Executors.newFixedThreadPool( 2, new NamedThreadFactory(
             "service-data-cache-update-executor", new ThreadGroup( "service-data-cache-update-executor" ), true, 3 ) );
@@ -63,8 +68,6 @@ public class ServiceStoreDataCacheUpdater
     public void onStoreUpdate( @Observes ArtifactStorePostUpdateEvent updateEvent )
     {
         logger.info( "Start cache updater for store post update event: {}", updateEvent );
-        final BasicCacheHandle<StoreKey, ArtifactStore> storeCache =
-                cacheProducer.getBasicCache( ServiceStoreDataManager.ARTIFACT_STORE );
         cacheUpdateExecutor.execute( () -> {
             if ( updateEvent.getType().equals( ADD ) )
             {
@@ -101,8 +104,6 @@ public class ServiceStoreDataCacheUpdater
     public void onStoreDelete( @Observes ArtifactStoreDeletePostEvent deleteEvent )
     {
         logger.info( "Start cache updater for store delete post event: {}", deleteEvent );
-        final BasicCacheHandle<StoreKey, ArtifactStore> storeCache =
-                cacheProducer.getBasicCache( ServiceStoreDataManager.ARTIFACT_STORE );
         cacheUpdateExecutor.execute( () -> {
             for ( ArtifactStore deleted : deleteEvent.getStores() )
             {
@@ -135,8 +136,6 @@ public class ServiceStoreDataCacheUpdater
      */
     private void obsoleteQueryCache( StoreKey storeKey )
     {
-        final BasicCacheHandle<Object, Collection<ArtifactStore>> queryCache =
-                cacheProducer.getBasicCache( ServiceStoreQuery.ARTIFACT_STORE_QUERY );
         queryCache.execute( ( cache ) -> {
             Collection<ArtifactStore> affectedGroups = new HashSet<>();
             for ( Map.Entry<Object, Collection<ArtifactStore>> entry : cache.entrySet() )
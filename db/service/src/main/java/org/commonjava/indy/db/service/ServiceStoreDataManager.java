@@ -15,11 +15,15 @@
  */
 package org.commonjava.indy.db.service;
 
+import org.commonjava.cdi.util.weft.NamedThreadFactory;
 import org.commonjava.indy.IndyWorkflowException;
 import org.commonjava.indy.audit.ChangeSummary;
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
+import org.commonjava.indy.change.event.ArtifactStorePostUpdateEvent;
 import org.commonjava.indy.client.core.Indy;
 import org.commonjava.indy.client.core.IndyClientException;
 import org.commonjava.indy.client.core.module.IndyStoresClientModule;
+import org.commonjava.indy.core.content.group.GroupMembershipCache;
 import org.commonjava.indy.data.ArtifactStoreQuery;
 import org.commonjava.indy.data.IndyDataException;
 import org.commonjava.indy.data.NoOpStoreEventDispatcher;
@@ -41,15 +45,29 @@ import org.commonjava.maven.galley.event.EventMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.Reception;
 import javax.inject.Inject;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -76,12 +94,50 @@ public class ServiceStoreDataManager
     @Inject
     private CacheProducer cacheProducer;
 
+    @Inject
+    private GroupMembershipCache membershipCache;
+
     private ServiceStoreQuery<ArtifactStore> serviceStoreQuery;
 
     final static String ARTIFACT_STORE = "artifact-store";
 
     private final Integer STORE_EXPIRATION_IN_MINS = 15;
 
+    // stores are reloaded in the background once they are this old, a bit before they expire from the cache
+    private static final long STORE_REFRESH_AFTER_MILLIS = TimeUnit.MINUTES.toMillis( 12 );
+
+    // the snapshot of all stores is kept current by the store events, but reloaded this often in case one is missed
+    private static final long SNAPSHOT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
+
+    private static final long SNAPSHOT_REFRESH_AFTER_MILLIS = TimeUnit.SECONDS.toMillis( 45 );
+
+    private final Map<StoreKey, CompletableFuture<ArtifactStore>> loadingStores = new ConcurrentHashMap<>();
+
+    private final Map<StoreKey, Long> storeLoadTimes = new ConcurrentHashMap<>();
+
+    // ticks on every store change; a store loaded since a tick is not put in the cache if it changed after that tick
+    private final AtomicLong storeChangeClock = new AtomicLong();
+
+    // the tick of the last change of each store changed on this node
+    private final Map<StoreKey, Long> storeChanges = new ConcurrentHashMap<>();
+
+    // the tick of the last change of all stores
+    private volatile long storesClearedAt;
+
+    private final AtomicReference<CompletableFuture<StoreSnapshot>> loadingSnapshot = new AtomicReference<>();
+
+    private final AtomicBoolean refreshingSnapshot = new AtomicBoolean();
+
+    private final Object snapshotLock = new Object();
+
+    private volatile StoreSnapshot storeSnapshot;
+
+    // the store changes seen while a snapshot is loading, replayed on it once loaded
+    private List<Consumer<Map<StoreKey, ArtifactStore>>> snapshotChanges;
+
+    private final ExecutorService storeRefreshExecutor = Executors.newFixedThreadPool( 2, new NamedThreadFactory(
+            "service-store-refresh-executor", new ThreadGroup( "service-store-refresh-executor" ), true, 3 ) );
+
     @SuppressWarnings( "unused" )
     ServiceStoreDataManager()
     {
@@ -98,6 +154,19 @@ public class ServiceStoreDataManager
         this.client = client;
     }
 
+    protected ServiceStoreDataManager( final CacheProducer cacheProducer, final Indy client,
+                                       final GroupMembershipCache membershipCache )
+    {
+        this( cacheProducer, client );
+        this.membershipCache = membershipCache;
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        storeRefreshExecutor.shutdownNow();
+    }
+
     @Override
     protected StoreEventDispatcher getStoreEventDispatcher()
     {
@@ -117,6 +186,79 @@ public class ServiceStoreDataManager
     }
 
     private ArtifactStore doQueryArtifactStoreInternal( StoreKey key, boolean forceQuery )
+    {
+        if ( forceQuery )
+        {
+            // a forced query must see the state after it was issued, so it does not join a running lookup
+            return loadArtifactStore( key, true );
+        }
+
+        BasicCacheHandle<StoreKey, ArtifactStore> cache = cacheProducer.getBasicCache( ARTIFACT_STORE );
+        ArtifactStore store = cache.get( key );
+        if ( store != null )
+        {
+            refreshIfStale( key );
+            return store;
+        }
+
+        final long since = storeChangeClock.get();
+        StoreSnapshot snapshot = storeSnapshot;
+        if ( snapshot != null && !snapshot.isExpired( System.currentTimeMillis() ) )
+        {
+            store = snapshot.stores.get( key );
+            if ( store != null )
+            {
+                logger.trace( "Found {} in the store snapshot", key );
+                putUnlessChanged( cache, key, store, snapshot.loadedAt, since );
+                return store;
+            }
+        }
+
+        return coalescedLoad( key, false );
+    }
+
+    /**
+     * Load the store from the repository service, or wait for the lookup of the same key that is running already,
+     * so that a burst of requests for an expired store results in one remote call.
+     */
+    private ArtifactStore coalescedLoad( StoreKey key, boolean refresh )
+    {
+        CompletableFuture<ArtifactStore> mine = new CompletableFuture<>();
+        CompletableFuture<ArtifactStore> running = loadingStores.putIfAbsent( key, mine );
+        if ( running != null )
+        {
+            logger.trace( "Waiting for the running lookup of {}", key );
+            return join( running );
+        }
+
+        try
+        {
+            ArtifactStore store = null;
+            if ( !refresh )
+            {
+                // the lookup that ran before may have finished between the cache check and here
+                store = cacheProducer.<StoreKey, ArtifactStore>getBasicCache( ARTIFACT_STORE ).get( key );
+            }
+            if ( store == null )
+            {
+                store = loadUnlessChanged( key );
+                prefetchGroupMembers( store );
+            }
+            mine.complete( store );
+            return store;
+        }
+        catch ( RuntimeException e )
+        {
+            mine.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            loadingStores.remove( key, mine );
+        }
+    }
+
+    private ArtifactStore loadArtifactStore( StoreKey key, boolean forceQuery )
     {
         AtomicReference<IndyDataException> eHolder = new AtomicReference<>();
         ArtifactStore store = computeIfAbsent( key, () -> {
@@ -135,9 +277,258 @@ public class ServiceStoreDataManager
             logger.error( "Can not get ArtifactStore for {} due to: {}", key, eHolder.get().getMessage() );
             throw new RuntimeException( eHolder.get() );
         }
+        if ( store == null && forceQuery )
+        {
+            // gone from the repository service, so do not keep serving the cached copy until it expires
+            cacheProducer.getBasicCache( ARTIFACT_STORE ).remove( key );
+            storeLoadTimes.remove( key );
+        }
+        return store;
+    }
+
+    /**
+     * Load the store from the repository service and cache it, unless it changed meanwhile: the loaded copy may
+     * predate the change, and the event of the change updates the cache itself.
+     */
+    private ArtifactStore loadUnlessChanged( StoreKey key )
+    {
+        final long since = storeChangeClock.get();
+        final long loadedAt = System.currentTimeMillis();
+        final ArtifactStore store;
+        try
+        {
+            store = client.module( IndyStoresClientModule.class ).load( key, key.getType().getStoreClass() );
+        }
+        catch ( IndyClientException e )
+        {
+            IndyDataException error = new IndyDataException( "Failed to get store %s", e, key );
+            logger.error( "Can not get ArtifactStore for {} due to: {}", key, error.getMessage() );
+            throw new RuntimeException( error );
+        }
+
+        final BasicCacheHandle<StoreKey, ArtifactStore> cache = cacheProducer.getBasicCache( ARTIFACT_STORE );
+        reloaded( key, cache.get( key ), store );
+        if ( store != null )
+        {
+            putUnlessChanged( cache, key, store, loadedAt, since );
+        }
+        else
+        {
+            unlessChangedSince( key, since, () -> {
+                // gone from the repository service, so do not keep serving the cached copy until it expires
+                cache.remove( key );
+                storeLoadTimes.remove( key );
+            } );
+        }
         return store;
     }
 
+    /**
+     * Serve the cached store, but reload it in the background once it is close to expiry, so that it is replaced
+     * before requests have to wait for the repository service. Only the first request seeing the stale entry does so.
+     */
+    private void refreshIfStale( StoreKey key )
+    {
+        Long loadedAt = storeLoadTimes.get( key );
+        long now = System.currentTimeMillis();
+        if ( loadedAt == null || now - loadedAt < STORE_REFRESH_AFTER_MILLIS || loadingStores.containsKey( key )
+                || !storeLoadTimes.replace( key, loadedAt, now ) )
+        {
+            return;
+        }
+
+        logger.debug( "Refreshing store {} ahead of its expiry", key );
+        storeRefreshExecutor.execute( () -> {
+            try
+            {
+                coalescedLoad( key, true );
+            }
+            catch ( RuntimeException e )
+            {
+                logger.warn( "Failed to refresh store {}, the cached one is kept until it expires: {}", key,
+                             e.getMessage() );
+            }
+        } );
+    }
+
+    /**
+     * A group is almost always followed by the lookups of its members, so load the members that are not cached yet
+     * with one query instead of one call per member.
+     */
+    private void prefetchGroupMembers( ArtifactStore store )
+    {
+        if ( !( store instanceof Group ) )
+        {
+            return;
+        }
+
+        final Group group = (Group) store;
+        final BasicCacheHandle<StoreKey, ArtifactStore> cache = cacheProducer.getBasicCache( ARTIFACT_STORE );
+        final long missing = group.getConstituents()
+                                  .stream()
+                                  .filter( k -> k.getType() != StoreType.group && !cache.containsKey( k ) )
+                                  .count();
+        if ( missing < 2 )
+        {
+            return;
+        }
+
+        storeRefreshExecutor.execute( () -> {
+            try
+            {
+                final long since = storeChangeClock.get();
+                final long loadedAt = System.currentTimeMillis();
+                final List<ArtifactStore> members =
+                        queryInternal().getOrderedConcreteStoresInGroup( group.getPackageType(), group.getName() );
+                members.forEach( member -> {
+                    if ( !cache.containsKey( member.getKey() ) )
+                    {
+                        putUnlessChanged( cache, member.getKey(), member, loadedAt, since );
+                    }
+                } );
+                logger.debug( "Prefetched {} members of {}", members.size(), group.getKey() );
+            }
+            catch ( IndyDataException | RuntimeException e )
+            {
+                logger.warn( "Failed to prefetch members of {}: {}", group.getKey(), e.getMessage() );
+            }
+        } );
+    }
+
+    private void putLoadedStore( BasicCacheHandle<StoreKey, ArtifactStore> cache, StoreKey key, ArtifactStore store,
+                                 long loadedAt )
+    {
+        cache.put( key, store, STORE_EXPIRATION_IN_MINS, TimeUnit.MINUTES );
+        storeLoadTimes.put( key, loadedAt );
+    }
+
+    /**
+     * @param since the {@link #storeChangeClock} read before the store was loaded
+     */
+    private void putUnlessChanged( BasicCacheHandle<StoreKey, ArtifactStore> cache, StoreKey key,
+                                   ArtifactStore store, long loadedAt, long since )
+    {
+        unlessChangedSince( key, since, () -> {
+            putLoadedStore( cache, key, store, loadedAt );
+            if ( storesClearedAt > since )
+            {
+                // cleared between the check and the put, and maybe before the clear reached the cache
+                cache.remove( key );
+                storeLoadTimes.remove( key );
+            }
+        } );
+    }
+
+    /**
+     * Update the cache with a store loaded from the repository service, unless the store changed since the load
+     * started. Runs under the lock of the key in {@link #storeChanges}, so a change of the same store waits for it,
+     * while loads of other stores are not held back.
+     *
+     * @param since the {@link #storeChangeClock} read before the store was loaded
+     */
+    private void unlessChangedSince( StoreKey key, long since, Runnable update )
+    {
+        storeChanges.compute( key, ( k, changedAt ) -> {
+            if ( Math.max( changedAt == null ? 0 : changedAt, storesClearedAt ) > since )
+            {
+                logger.debug( "{} changed while it was loaded, not caching the loaded copy", key );
+            }
+            else
+            {
+                update.run();
+            }
+            return changedAt;
+        } );
+    }
+
+    /**
+     * Drop the cached group memberships that a reloaded store changes. Without the kafka subsystem, a change made
+     * through another node fires no event here, and is only seen when the store is loaded again.
+     *
+     * @param previous the cached copy, if any; the one of the snapshot is used otherwise
+     */
+    private void reloaded( StoreKey key, ArtifactStore previous, ArtifactStore loaded )
+    {
+        if ( previous == null )
+        {
+            final StoreSnapshot snapshot = storeSnapshot;
+            previous = snapshot == null ? null : snapshot.stores.get( key );
+        }
+
+        if ( previous != null && membershipChanged( previous, loaded ) )
+        {
+            invalidateMemberships( Collections.singleton( key ) );
+        }
+    }
+
+    private void reloaded( Map<StoreKey, ArtifactStore> previous, Map<StoreKey, ArtifactStore> loaded )
+    {
+        final Set<StoreKey> changed = previous.values()
+                                              .stream()
+                                              .filter( store -> membershipChanged( store,
+                                                                                   loaded.get( store.getKey() ) ) )
+                                              .map( ArtifactStore::getKey )
+                                              .collect( Collectors.toSet() );
+        invalidateMemberships( changed );
+    }
+
+    private void invalidateMemberships( Set<StoreKey> changed )
+    {
+        if ( changed.isEmpty() )
+        {
+            return;
+        }
+
+        logger.debug( "Stores changed since they were last loaded: {}", changed );
+        // seldom happens, so drop all the cached queries rather than finding the ones of the groups affected
+        cacheProducer.getBasicCache( ServiceStoreQuery.ARTIFACT_STORE_QUERY ).clear();
+        if ( membershipCache != null )
+        {
+            membershipCache.invalidateKeys( changed );
+        }
+    }
+
+    /**
+     * Whether the change can alter the membership of a group: a store gone, enabled or disabled, or the members of a
+     * group changed.
+     */
+    private static boolean membershipChanged( ArtifactStore previous, ArtifactStore loaded )
+    {
+        if ( loaded == null || previous.isDisabled() != loaded.isDisabled() )
+        {
+            return true;
+        }
+
+        return previous instanceof Group && loaded instanceof Group && !Objects.equals(
+                ( (Group) previous ).getConstituents(), ( (Group) loaded ).getConstituents() );
+    }
+
+    private void storeChanged( StoreKey key )
+    {
+        storeChanges.compute( key, ( k, changedAt ) -> storeChangeClock.incrementAndGet() );
+    }
+
+    private void storesChanged( Collection<ArtifactStore> stores )
+    {
+        stores.forEach( store -> storeChanged( store.getKey() ) );
+    }
+
+    private static <T> T join( CompletableFuture<T> running )
+    {
+        try
+        {
+            return running.join();
+        }
+        catch ( CompletionException e )
+        {
+            if ( e.getCause() instanceof RuntimeException )
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     protected ArtifactStore putArtifactStoreInternal( StoreKey key, ArtifactStore store )
     {
         return computeIfAbsent( key, () -> {
@@ -162,7 +553,13 @@ public class ServiceStoreDataManager
     @Override
     public void clear( ChangeSummary summary )
     {
+        storesClearedAt = storeChangeClock.incrementAndGet();
         cacheProducer.getBasicCache( ARTIFACT_STORE ).clear();
+        storeLoadTimes.clear();
+        synchronized ( snapshotLock )
+        {
+            storeSnapshot = null;
+        }
         // I don't think we should call this on remote repository service level, so just log here
         logger.warn( "Will not call this clear method on remote repository service for safety consideration." );
     }
@@ -181,12 +578,17 @@ public class ServiceStoreDataManager
         logger.warn( "This is controlled by remote repository service and should not be called here!" );
     }
 
+    /**
+     * All the stores come from a snapshot of the repository service, which is kept current by the store events, see
+     * {@link #onStoreUpdate(ArtifactStorePostUpdateEvent)}, and reloaded in the background before it expires. It is
+     * never served more than a minute old, so a missed event is not seen for longer than that.
+     */
     @Override
     public Set<ArtifactStore> getAllArtifactStores()
             throws IndyDataException
     {
         // TODO: Need to check all usage of this method and optimize to use more specific query methods.
-        return new HashSet<>( queryInternal().noPackageType().getAll() );
+        return new HashSet<>( getStoreSnapshot().stores.values() );
     }
 
     @Override
@@ -194,7 +596,141 @@ public class ServiceStoreDataManager
             throws IndyDataException
     {
         // TODO: Need to check all usage of this method and optimize to use more specific query methods.
-        return getAllArtifactStores().stream();
+        return new ArrayList<>( getStoreSnapshot().stores.values() ).stream();
+    }
+
+    public void onStoreUpdate( @Observes( notifyObserver = Reception.IF_EXISTS ) ArtifactStorePostUpdateEvent event )
+    {
+        final Collection<ArtifactStore> changes = event.getChanges();
+        storesChanged( changes );
+        updateSnapshot( stores -> changes.forEach( store -> stores.put( store.getKey(), store ) ) );
+    }
+
+    public void onStoreDelete( @Observes( notifyObserver = Reception.IF_EXISTS ) ArtifactStoreDeletePostEvent event )
+    {
+        final Collection<ArtifactStore> deleted = event.getStores();
+        storesChanged( deleted );
+        updateSnapshot( stores -> deleted.forEach( store -> stores.remove( store.getKey() ) ) );
+    }
+
+    private StoreSnapshot getStoreSnapshot()
+            throws IndyDataException
+    {
+        final long now = System.currentTimeMillis();
+        final StoreSnapshot snapshot = storeSnapshot;
+        if ( snapshot == null || snapshot.isExpired( now ) )
+        {
+            return loadSnapshot();
+        }
+
+        if ( now - snapshot.loadedAt >= SNAPSHOT_REFRESH_AFTER_MILLIS && refreshingSnapshot.compareAndSet( false, true ) )
+        {
+            storeRefreshExecutor.execute( () -> {
+                try
+                {
+                    loadSnapshot();
+                }
+                catch ( IndyDataException | RuntimeException e )
+                {
+                    logger.warn( "Failed to refresh the store snapshot, keep the current one until it expires: {}",
+                                 e.getMessage() );
+                }
+                finally
+                {
+                    refreshingSnapshot.set( false );
+                }
+            } );
+        }
+        return snapshot;
+    }
+
+    /**
+     * Load all the stores from the repository service, or wait for the load that is running already.
+     */
+    private StoreSnapshot loadSnapshot()
+            throws IndyDataException
+    {
+        final CompletableFuture<StoreSnapshot> mine = new CompletableFuture<>();
+        while ( !loadingSnapshot.compareAndSet( null, mine ) )
+        {
+            final CompletableFuture<StoreSnapshot> running = loadingSnapshot.get();
+            if ( running != null )
+            {
+                try
+                {
+                    return running.join();
+                }
+                catch ( CompletionException e )
+                {
+                    if ( e.getCause() instanceof IndyDataException )
+                    {
+                        throw (IndyDataException) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
+
+        try
+        {
+            synchronized ( snapshotLock )
+            {
+                snapshotChanges = new ArrayList<>();
+            }
+
+            final long loadedAt = System.currentTimeMillis();
+            // a query of its own, the shared one may still hold the criteria of another caller
+            final List<ArtifactStore> all = query().noPackageType().getAll();
+
+            final Map<StoreKey, ArtifactStore> stores = new ConcurrentHashMap<>();
+            all.forEach( store -> stores.put( store.getKey(), store ) );
+            final StoreSnapshot snapshot = new StoreSnapshot( stores, loadedAt );
+            final StoreSnapshot previous;
+            synchronized ( snapshotLock )
+            {
+                snapshotChanges.forEach( change -> change.accept( stores ) );
+                snapshotChanges = null;
+                previous = storeSnapshot;
+                storeSnapshot = snapshot;
+            }
+            if ( previous != null )
+            {
+                reloaded( previous.stores, stores );
+            }
+            logger.debug( "Loaded snapshot of {} stores", stores.size() );
+
+            mine.complete( snapshot );
+            return snapshot;
+        }
+        catch ( IndyDataException | RuntimeException e )
+        {
+            synchronized ( snapshotLock )
+            {
+                snapshotChanges = null;
+            }
+            mine.completeExceptionally( e );
+            throw e;
+        }
+        finally
+        {
+            loadingSnapshot.compareAndSet( mine, null );
+        }
+    }
+
+    private void updateSnapshot( final Consumer<Map<StoreKey, ArtifactStore>> change )
+    {
+        synchronized ( snapshotLock )
+        {
+            final StoreSnapshot snapshot = storeSnapshot;
+            if ( snapshot != null )
+            {
+                change.accept( snapshot.stores );
+            }
+            if ( snapshotChanges != null )
+            {
+                snapshotChanges.add( change );
+            }
+        }
     }
 
     @Override
@@ -398,6 +934,8 @@ public class ServiceStoreDataManager
         try
         {
             client.module( IndyStoresClientModule.class ).delete( key, String.format( "Remove store %s", key ) );
+            storeChanged( key );
+            updateSnapshot( stores -> stores.remove( key ) );
         }
         catch ( IndyClientException e )
         {
@@ -429,8 +967,11 @@ public class ServiceStoreDataManager
     {
         super.postStore( store, original, summary, exists, fireEvents, eventMetadata );
         logger.info( "Remove from store cache, {}", store.getKey() );
+        storeChanged( store.getKey() );
         BasicCacheHandle<StoreKey, ArtifactStore> cache = cacheProducer.getBasicCache( ARTIFACT_STORE );
         cache.remove( store.getKey() );
+        storeLoadTimes.remove( store.getKey() );
+        updateSnapshot( stores -> stores.put( store.getKey(), store ) );
     }
 
     private ArtifactStore computeIfAbsent( StoreKey key, Supplier<ArtifactStore> storeProvider, int expirationMins,
@@ -444,7 +985,9 @@ public class ServiceStoreDataManager
         {
             logger.trace( "Entry not found, run put, expirationMins: {}", expirationMins );
 
+            final ArtifactStore previous = store;
             store = storeProvider.get();
+            reloaded( key, previous, store );
 
             if ( store != null )
             {
@@ -456,6 +999,8 @@ public class ServiceStoreDataManager
                 {
                     cache.put( key, store );
                 }
+
+                storeLoadTimes.put( key, System.currentTimeMillis() );
             }
         }
 
@@ -506,4 +1051,22 @@ public class ServiceStoreDataManager
                                              e.getMessage() );
         }
     }
+
+    private final class StoreSnapshot
+    {
+        private final Map<StoreKey, ArtifactStore> stores;
+
+        private final long loadedAt;
+
+        private StoreSnapshot( final Map<StoreKey, ArtifactStore> stores, final long loadedAt )
+        {
+            this.stores = stores;
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean isExpired( final long now )
+        {
+            return now - loadedAt >= SNAPSHOT_MAX_AGE_MILLIS;
+        }
+    }
 }
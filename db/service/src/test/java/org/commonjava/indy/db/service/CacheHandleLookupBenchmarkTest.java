@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.db.service;
+
+import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.subsys.infinispan.BasicCacheHandle;
+import org.commonjava.indy.subsys.infinispan.CacheProducer;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Measures how cache handle lookups through {@link CacheProducer} scale with the number of threads, as in
+ * {@link ServiceStoreQuery} and {@link ServiceStoreDataManager}, which look the handle up on every operation. The
+ * lookups are compared with the same lookups serialized on one monitor, as they were when the producer methods were
+ * synchronized. Run it manually, on a machine with many cores; -Dcache.lookup.benchmark.threads=N sets the largest
+ * number of threads (default: twice the available processors).
+ */
+@Ignore( "Benchmark, run manually" )
+public class CacheHandleLookupBenchmarkTest
+{
+    private static final int LOOKUPS = 2000000;
+
+    private static final String[] NAMES =
+            { ServiceStoreDataManager.ARTIFACT_STORE, ServiceStoreQuery.ARTIFACT_STORE_QUERY, "nfc", "koji-tags" };
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    @Test
+    public void run()
+            throws Exception
+    {
+        DefaultCacheManager cacheManager =
+                new DefaultCacheManager( new ConfigurationBuilder().simpleCache( true ).build() );
+        CacheProducer producer = new CacheProducer( new DefaultIndyConfiguration(), cacheManager, null );
+        producer.start();
+
+        final Object monitor = new Object();
+        final Function<String, BasicCacheHandle<Object, Object>> lockFree = producer::getBasicCache;
+        final Function<String, BasicCacheHandle<Object, Object>> synchronizedLookup = name -> {
+            synchronized ( monitor )
+            {
+                return producer.getBasicCache( name );
+            }
+        };
+
+        final int maxThreads = Integer.getInteger( "cache.lookup.benchmark.threads",
+                                                   Runtime.getRuntime().availableProcessors() * 2 );
+        try
+        {
+            // warm up
+            measure( "synchronized", maxThreads, synchronizedLookup, false );
+            measure( "lock-free", maxThreads, lockFree, false );
+
+            for ( int threads = 1; threads <= maxThreads; threads *= 2 )
+            {
+                measure( "synchronized", threads, synchronizedLookup, true );
+                measure( "lock-free", threads, lockFree, true );
+            }
+        }
+        finally
+        {
+            producer.stop();
+        }
+    }
+
+    private void measure( final String name, final int threads,
+                          final Function<String, BasicCacheHandle<Object, Object>> lookup, final boolean report )
+            throws Exception
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final List<Future<Integer>> results = new ArrayList<>();
+        final int perThread = LOOKUPS / threads;
+        for ( int t = 0; t < threads; t++ )
+        {
+            final int offset = t;
+            results.add( executor.submit( () -> {
+                start.await();
+                int found = 0;
+                for ( int i = 0; i < perThread; i++ )
+                {
+                    // touch the cache, as the callers do, so the lookup is not optimized away
+                    if ( lookup.apply( NAMES[( i + offset ) % NAMES.length] ).getName() != null )
+                    {
+                        found++;
+                    }
+                }
+                return found;
+            } ) );
+        }
+
+        final long begin = System.nanoTime();
+        start.countDown();
+        for ( Future<Integer> result : results )
+        {
+            result.get();
+        }
+        final long nanos = System.nanoTime() - begin;
+        executor.shutdown();
+
+        if ( report )
+        {
+            logger.info( "{}: {} threads, {} lookups per ms", name, threads, (long) perThread * threads * 1000000 / nanos );
+        }
+    }
+}
@@ -15,11 +15,14 @@
  */
 package org.commonjava.indy.db.service;
 
+import org.commonjava.indy.change.event.ArtifactStoreDeletePostEvent;
 import org.commonjava.indy.client.core.Indy;
 import org.commonjava.indy.client.core.util.UrlUtils;
 import org.commonjava.indy.conf.DefaultIndyConfiguration;
+import org.commonjava.indy.core.content.group.GroupMembershipCache;
 import org.commonjava.indy.model.core.ArtifactStore;
 import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.RemoteRepository;
 import org.commonjava.indy.model.core.StoreKey;
 import org.commonjava.indy.model.core.StoreType;
 import org.commonjava.indy.model.core.dto.SimpleBooleanResultDTO;
@@ -27,6 +30,7 @@ import org.commonjava.indy.model.core.io.IndyObjectMapper;
 import org.commonjava.indy.subsys.infinispan.CacheProducer;
 import org.commonjava.indy.subsys.service.IndyClientProducer;
 import org.commonjava.indy.subsys.service.config.RepositoryServiceConfig;
+import org.commonjava.maven.galley.event.EventMetadata;
 import org.commonjava.test.http.expect.ExpectationServer;
 import org.infinispan.configuration.cache.ConfigurationBuilder;
 import org.infinispan.manager.DefaultCacheManager;
@@ -37,10 +41,17 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static javax.ws.rs.HttpMethod.GET;
@@ -229,4 +240,153 @@ public class ServiceStoreDataManagerTest
         assertThat( groups.size(), equalTo( 3 ) );
     }
 
+    @Test
+    public void concurrentLookupsShareOneRequest()
+            throws Exception
+    {
+        final String path = normalizePath( BASE_STORE_PATH, "maven/remote/coalesced" );
+        final AtomicInteger requests = new AtomicInteger();
+        server.expect( GET, path, ( req, res ) -> {
+            requests.incrementAndGet();
+            try
+            {
+                Thread.sleep( 300 );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            res.setStatus( 200 );
+            res.getWriter().write( readResource( "repo-service/remote-central.json" ) );
+        } );
+
+        final StoreKey key = StoreKey.fromString( "maven:remote:coalesced" );
+        final ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        final List<Future<ArtifactStore>> results = new ArrayList<>();
+        for ( int i = 0; i < 8; i++ )
+        {
+            results.add( executor.submit( () -> dataManager.getArtifactStore( key ) ) );
+        }
+        for ( Future<ArtifactStore> result : results )
+        {
+            assertNotNull( result.get( 10, TimeUnit.SECONDS ) );
+        }
+        executor.shutdown();
+
+        assertThat( requests.get(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void keepStoreSnapshotCurrentWithEvents()
+            throws Exception
+    {
+        final String path = normalizePath( BASE_QUERY_PATH, "all/" );
+        final AtomicInteger requests = new AtomicInteger();
+        server.expect( GET, path, ( req, res ) -> {
+            requests.incrementAndGet();
+            res.setStatus( 200 );
+            res.getWriter().write( Utils.generateStoreListingContent( "repo-service/group-static.json",
+                                                                      "repo-service/remote-central.json" ) );
+        } );
+
+        final Set<ArtifactStore> stores = dataManager.getAllArtifactStores();
+        assertThat( stores.size(), equalTo( 2 ) );
+
+        final ArtifactStore central = stores.stream()
+                                            .filter( s -> s.getType() == StoreType.remote )
+                                            .findFirst()
+                                            .orElseThrow( IllegalStateException::new );
+        dataManager.onStoreDelete( new ArtifactStoreDeletePostEvent( new EventMetadata(),
+                                                                     Collections.singletonMap( central, null ) ) );
+
+        assertThat( dataManager.getAllArtifactStores().size(), equalTo( 1 ) );
+        assertThat( dataManager.streamArtifactStores().count(), equalTo( 1L ) );
+        assertThat( requests.get(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void storeDeletedWhileLoadingIsNotCached()
+            throws Exception
+    {
+        final String path = normalizePath( BASE_STORE_PATH, "maven/remote/deleted-while-loading" );
+        final StoreKey key = StoreKey.fromString( "maven:remote:deleted-while-loading" );
+        final AtomicInteger requests = new AtomicInteger();
+        server.expect( GET, path, ( req, res ) -> {
+            if ( requests.incrementAndGet() == 1 )
+            {
+                dataManager.onStoreDelete( new ArtifactStoreDeletePostEvent( new EventMetadata(),
+                                                                             Collections.singletonMap(
+                                                                                     new RemoteRepository(
+                                                                                             "maven",
+                                                                                             key.getName(),
+                                                                                             "http://foo.com" ),
+                                                                                     null ) ) );
+            }
+            res.setStatus( 200 );
+            res.getWriter().write( readResource( "repo-service/remote-central.json" ) );
+        } );
+
+        assertNotNull( dataManager.getArtifactStore( key ) );
+        assertNotNull( dataManager.getArtifactStore( key ) );
+        assertThat( requests.get(), equalTo( 2 ) );
+
+        assertNotNull( dataManager.getArtifactStore( key ) );
+        assertThat( requests.get(), equalTo( 2 ) );
+    }
+
+    @Test
+    public void otherStoreChangedWhileLoadingStillCaches()
+            throws Exception
+    {
+        final String path = normalizePath( BASE_STORE_PATH, "maven/remote/loaded-while-other-deleted" );
+        final StoreKey key = StoreKey.fromString( "maven:remote:loaded-while-other-deleted" );
+        final AtomicInteger requests = new AtomicInteger();
+        server.expect( GET, path, ( req, res ) -> {
+            requests.incrementAndGet();
+            dataManager.onStoreDelete( new ArtifactStoreDeletePostEvent( new EventMetadata(), Collections.singletonMap(
+                    new RemoteRepository( "maven", "other", "http://foo.com" ), null ) ) );
+            res.setStatus( 200 );
+            res.getWriter().write( readResource( "repo-service/remote-central.json" ) );
+        } );
+
+        assertNotNull( dataManager.getArtifactStore( key ) );
+        assertNotNull( dataManager.getArtifactStore( key ) );
+        assertThat( requests.get(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void groupChangedElsewhereDropsCachedMemberships()
+            throws Exception
+    {
+        final StoreKey key = StoreKey.fromString( "maven:group:changed-elsewhere" );
+        final StoreKey one = StoreKey.fromString( "maven:hosted:one" );
+        final StoreKey two = StoreKey.fromString( "maven:hosted:two" );
+        final List<Group> versions = new ArrayList<>(
+                Arrays.asList( new Group( "maven", key.getName(), one ), new Group( "maven", key.getName(), one ),
+                               new Group( "maven", key.getName(), one, two ) ) );
+        server.expect( GET, normalizePath( BASE_STORE_PATH, "maven/group/" + key.getName() ), ( req, res ) -> {
+            res.setStatus( 200 );
+            res.getWriter().write( mapper.writeValueAsString( versions.remove( 0 ) ) );
+        } );
+
+        final Set<StoreKey> invalidated = new HashSet<>();
+        final ServiceStoreDataManager manager =
+                new ServiceStoreDataManager( producer, dataManager.getIndyClient(), new GroupMembershipCache()
+                {
+                    @Override
+                    public void invalidateKeys( final Set<StoreKey> changed )
+                    {
+                        invalidated.addAll( changed );
+                    }
+                } );
+
+        manager.getArtifactStore( key );
+        manager.getArtifactStore( key, true );
+        assertThat( invalidated.isEmpty(), equalTo( true ) );
+
+        // constituents changed through another node, without an event reaching this one
+        manager.getArtifactStore( key, true );
+        assertThat( invalidated, equalTo( Collections.singleton( key ) ) );
+    }
+
 }
@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.ftest.core.content;
+
+import org.apache.commons.io.IOUtils;
+import org.commonjava.indy.ftest.core.AbstractContentManagementTest;
+import org.commonjava.indy.model.core.Group;
+import org.commonjava.indy.model.core.HostedRepository;
+import org.commonjava.indy.test.fixture.core.CoreServerFixture;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * GIVEN:
+ * <ul>
+ *     <li>The group not-found cache is enabled</li>
+ *     <li>Group G contains the empty hosted repo A</li>
+ *     <li>Path org/foo/bar/maven-metadata.xml has been requested from G, and was not found</li>
+ * </ul>
+ *
+ * WHEN:
+ * <ul>
+ *     <li>A pom of org.foo:bar is uploaded to A</li>
+ * </ul>
+ *
+ * THEN:
+ * <ul>
+ *    <li>org/foo/bar/maven-metadata.xml is generated for G, rather than answered as missing</li>
+ * </ul>
+ */
+public class GroupNfcMetadataAfterMemberUploadTest
+        extends AbstractContentManagementTest
+{
+    private static final String META_PATH = "org/foo/bar/maven-metadata.xml";
+
+    private static final String POM_PATH = "org/foo/bar/1.0/bar-1.0.pom";
+
+    /* @formatter:off */
+    private static final String POM_CONTENT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<project>\n" +
+        "  <modelVersion>4.0.0</modelVersion>\n" +
+        "  <groupId>org.foo</groupId>\n" +
+        "  <artifactId>bar</artifactId>\n" +
+        "  <version>1.0</version>\n" +
+        "</project>\n";
+    /* @formatter:on */
+
+    @Test
+    public void run()
+            throws Exception
+    {
+        HostedRepository hostedA = client.stores()
+                                         .create( new HostedRepository( "hostedA" ), "adding hosted",
+                                                  HostedRepository.class );
+
+        Group g = client.stores().create( new Group( "G", hostedA.getKey() ), "adding group", Group.class );
+
+        try (InputStream stream = client.content().get( g.getKey(), META_PATH ))
+        {
+            assertThat( stream, nullValue() );
+        }
+
+        client.content().store( hostedA.getKey(), POM_PATH, new ByteArrayInputStream( POM_CONTENT.getBytes() ) );
+
+        waitForEventPropagation();
+
+        try (InputStream stream = client.content().get( g.getKey(), META_PATH ))
+        {
+            assertThat( stream, notNullValue() );
+            assertThat( IOUtils.toString( stream ), containsString( "<version>1.0</version>" ) );
+        }
+    }
+
+    @Override
+    protected boolean createStandardTestStructures()
+    {
+        return false;
+    }
+
+    @Override
+    protected void initTestConfig( CoreServerFixture fixture )
+            throws IOException
+    {
+        writeConfigFile( "main.conf", "group.nfc.enabled=true\n" + readTestResource( "default-test-main.conf" ) );
+    }
+}
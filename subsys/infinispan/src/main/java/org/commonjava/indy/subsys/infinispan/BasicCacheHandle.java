@@ -116,6 +116,11 @@ public class BasicCacheHandle<K,V>
         return doExecute( "putIfAbsent", ( c ) -> c.putIfAbsent( key, value ) );
     }
 
+    public V putIfAbsent( K key, V value, int expiration, TimeUnit timeUnit )
+    {
+        return doExecute( "putIfAbsent-with-expiration", c -> c.putIfAbsent( key, value, expiration, timeUnit ) );
+    }
+
     public V computeIfAbsent( K key, Function<? super K, ? extends V> mappingFunction )
     {
         return doExecute( "computeIfAbsent", c -> c.computeIfAbsent( key, mappingFunction ) );
@@ -126,6 +131,14 @@ public class BasicCacheHandle<K,V>
         return doExecute("remove", cache -> cache.remove( key ) );
     }
 
+    /**
+     * Remove the entry only if it still maps to the value.
+     */
+    public boolean remove( K key, V value )
+    {
+        return doExecute( "remove-if-value", cache -> cache.remove( key, value ) );
+    }
+
     public V get( K key )
     {
         return doExecute( "get", cache -> cache.get( key ) );
@@ -25,6 +25,7 @@ import org.commonjava.indy.action.ShutdownAction;
 import org.commonjava.indy.conf.IndyConfiguration;
 import org.commonjava.indy.subsys.infinispan.config.ISPNClusterConfiguration;
 import org.commonjava.indy.subsys.infinispan.config.ISPNRemoteConfiguration;
+import org.commonjava.indy.subsys.infinispan.inject.qualifer.NamedCache;
 import org.infinispan.Cache;
 import org.infinispan.client.hotrod.RemoteCache;
 import org.infinispan.client.hotrod.RemoteCacheManager;
@@ -54,6 +55,8 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Produces;
+import javax.enterprise.inject.spi.InjectionPoint;
 import javax.inject.Inject;
 import java.io.ByteArrayInputStream;
 import java.io.Externalizable;
@@ -86,7 +89,7 @@ public class CacheProducer
     private static final String ISPN_XML = "infinispan.xml";
     private static final String ISPN_CLUSTER_XML = "infinispan-cluster.xml";
 
-    private EmbeddedCacheManager cacheManager;
+    private volatile EmbeddedCacheManager cacheManager;
 
     @Inject
     private ISPNRemoteConfiguration remoteConfiguration;
@@ -97,7 +100,7 @@ public class CacheProducer
     @Inject
     private ISPNClusterConfiguration clusterConfiguration;
 
-    private Map<String, BasicCacheHandle> caches = new ConcurrentHashMap<>(); // hold embedded and remote caches
+    private final Map<String, BasicCacheHandle> caches = new ConcurrentHashMap<>(); // hold embedded and remote caches
 
     private Map<String, StrongCounter> counters = new ConcurrentHashMap<>();
 
@@ -120,9 +123,9 @@ public class CacheProducer
         startClusterManager();
     }
 
-    private RemoteCacheManager remoteCacheManager;
+    private volatile RemoteCacheManager remoteCacheManager;
 
-    private EmbeddedCacheManager clusterCacheManager;
+    private volatile EmbeddedCacheManager clusterCacheManager;
 
     private void startRemoteManager()
     {
@@ -237,58 +240,83 @@ public class CacheProducer
     /**
      * Get a BasicCache instance. If the remote cache is enabled, it will match the named with remote.patterns.
      * If matched, it will create/return a RemoteCache. If not matched, an embedded cache will be created/returned to the caller.
+     * <p>
+     * Handles are looked up without locking once created; only the creation of a missing handle is serialized, per
+     * name.
      */
-    public synchronized <K, V> BasicCacheHandle<K, V> getBasicCache( String named )
+    public <K, V> BasicCacheHandle<K, V> getBasicCache( String named )
     {
-        BasicCacheHandle handle = caches.computeIfAbsent( named, ( k ) -> {
-            if ( remoteConfiguration != null && remoteConfiguration.isEnabled() )
+        BasicCacheHandle handle = caches.get( named );
+        if ( handle != null )
+        {
+            return handle;
+        }
+
+        return caches.computeIfAbsent( named, ( k ) -> {
+            BasicCacheHandle remote = createRemoteCache( k );
+            return remote != null ? remote : createEmbeddedCache( k );
+        } );
+    }
+
+    private <K, V> RemoteCacheHandle<K, V> createRemoteCache( String named )
+    {
+        if ( remoteConfiguration == null || !remoteConfiguration.isEnabled() )
+        {
+            return null;
+        }
+
+        RemoteCache<K, V> cache;
+        try
+        {
+            // For infinispan 9.x, it needs to load the specific cache configuration to create it
+            // For infinispan 11.x, there is no need to load this configuration here, instead, declaring it
+            // in hotrod-client.properties and get the cache by remoteCacheManager.getCache( "cacheName" )
+            File confDir = indyConfiguration.getIndyConfDir();
+            File cacheConf = new File( confDir, "caches/cache-" + named + ".xml" );
+            if ( !cacheConf.exists() )
             {
-                RemoteCache<K, V> cache;
-                try
-                {
-                    // For infinispan 9.x, it needs to load the specific cache configuration to create it
-                    // For infinispan 11.x, there is no need to load this configuration here, instead, declaring it
-                    // in hotrod-client.properties and get the cache by remoteCacheManager.getCache( "cacheName" )
-                    File confDir = indyConfiguration.getIndyConfDir();
-                    File cacheConf = new File( confDir, "caches/cache-" + named + ".xml" );
-                    if ( !cacheConf.exists() )
-                    {
-                        logger.warn( "Invalid conf path, name: {}, path: {}", named, cacheConf );
-                        return null;
-                    }
-                    String confStr;
-                    try (InputStream confStream = FileUtils.openInputStream( cacheConf ))
-                    {
-                        confStr = interpolateStrFromStream( confStream, cacheConf.getPath() );
-                    }
-                    catch ( IOException e )
-                    {
-                        throw new RuntimeException( "Cannot read cache configuration from file: " + cacheConf, e );
-                    }
-                    cache = remoteCacheManager.administration().getOrCreateCache( named, new XMLStringConfiguration( confStr ) );
-                    if ( cache == null )
-                    {
-                        logger.warn( "Can not get remote cache, name: {}", k );
-                        return null;
-                    }
-                }
-                catch ( Exception e )
-                {
-                    logger.warn( "Get remote cache failed", e );
-                    return null;
-                }
-                logger.info( "Get remote cache, name: {}", k );
-                return new RemoteCacheHandle( k, cache );
+                logger.warn( "Invalid conf path, name: {}, path: {}", named, cacheConf );
+                return null;
+            }
+            String confStr;
+            try (InputStream confStream = FileUtils.openInputStream( cacheConf ))
+            {
+                confStr = interpolateStrFromStream( confStream, cacheConf.getPath() );
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Cannot read cache configuration from file: " + cacheConf, e );
+            }
+            cache = remoteCacheManager.administration().getOrCreateCache( named, new XMLStringConfiguration( confStr ) );
+            if ( cache == null )
+            {
+                logger.warn( "Can not get remote cache, name: {}", named );
+                return null;
             }
+        }
+        catch ( Exception e )
+        {
+            logger.warn( "Get remote cache failed", e );
             return null;
-        } );
+        }
+        logger.info( "Get remote cache, name: {}", named );
+        return new RemoteCacheHandle( named, cache );
+    }
 
-        if ( handle == null )
+    /**
+     * Produces the handle of the cache named by the {@link NamedCache} qualifier of the injection point, so that
+     * beans get the handle resolved once when they are created instead of looking it up on every operation.
+     */
+    @Produces
+    @NamedCache( "" )
+    public <K, V> BasicCacheHandle<K, V> getNamedCache( InjectionPoint injectionPoint )
+    {
+        NamedCache named = injectionPoint.getAnnotated().getAnnotation( NamedCache.class );
+        if ( named == null || named.value().isEmpty() )
         {
-            handle = getCache( named );
+            throw new IllegalStateException( "No cache name given for injection point: " + injectionPoint );
         }
-
-        return handle;
+        return getBasicCache( named.value() );
     }
 
     public synchronized <K> void registerProtoSchema( Class<K> kClass, String packageName, String fileName )
@@ -353,7 +381,7 @@ public class CacheProducer
      * Get named cache and verify that the cache obeys our expectations for clustering.
      * There is no way to find out the runtime type of generic type parameters and we need to pass the k/v class types.
      */
-    public synchronized <K, V> CacheHandle<K, V> getClusterizableCache( String named, Class<K> kClass, Class<V> vClass )
+    public <K, V> CacheHandle<K, V> getClusterizableCache( String named, Class<K> kClass, Class<V> vClass )
     {
         verifyClusterizable( kClass, vClass );
         return getCache( named );
@@ -372,51 +400,58 @@ public class CacheProducer
     /**
      * Retrieve an embedded cache with a pre-defined configuration (from infinispan.xml) or the default cache configuration.
      */
-    public synchronized <K, V> CacheHandle<K, V> getCache( String named )
+    public <K, V> CacheHandle<K, V> getCache( String named )
     {
-        logger.debug( "Get embedded cache, name: {}", named );
-        return (CacheHandle) caches.computeIfAbsent( named, ( k ) -> {
-            Cache<K, V> cache;
-            if ( clusterConfiguration != null
-                            && clusterConfiguration.isEnabled()
-                            && clusterCacheManager.cacheExists( k ) )
-            {
-                cache = clusterCacheManager.getCache( k );
-            }
-            else
-            {
-                cache = cacheManager.getCache( k );
-            }
-            return new CacheHandle( k, cache );
-        } );
+        BasicCacheHandle handle = caches.get( named );
+        if ( handle != null )
+        {
+            return (CacheHandle) handle;
+        }
+
+        return (CacheHandle) caches.computeIfAbsent( named, this::createEmbeddedCache );
     }
 
-    public synchronized Configuration getCacheConfiguration( String name )
+    private <K, V> CacheHandle<K, V> createEmbeddedCache( String named )
     {
-        if ( cacheManager == null )
+        logger.debug( "Get embedded cache, name: {}", named );
+        Cache<K, V> cache;
+        EmbeddedCacheManager clusterManager = clusterCacheManager;
+        if ( clusterConfiguration != null
+                        && clusterConfiguration.isEnabled()
+                        && clusterManager.cacheExists( named ) )
         {
-            throw new IllegalStateException( "Cannot access CacheManager. Indy seems to be in a state of shutdown." );
+            cache = clusterManager.getCache( named );
         }
-        return cacheManager.getCacheConfiguration( name );
+        else
+        {
+            cache = getRunningCacheManager().getCache( named );
+        }
+        return new CacheHandle( named, cache );
     }
 
-    public synchronized Configuration getDefaultCacheConfiguration()
+    public Configuration getCacheConfiguration( String name )
     {
-        if ( cacheManager == null )
-        {
-            throw new IllegalStateException( "Cannot access CacheManager. Indy seems to be in a state of shutdown." );
-        }
+        return getRunningCacheManager().getCacheConfiguration( name );
+    }
 
-        return cacheManager.getDefaultCacheConfiguration();
+    public Configuration getDefaultCacheConfiguration()
+    {
+        return getRunningCacheManager().getDefaultCacheConfiguration();
     }
 
     public synchronized Configuration setCacheConfiguration( String name, Configuration config )
     {
-        if ( cacheManager == null )
+        return getRunningCacheManager().defineConfiguration( name, config );
+    }
+
+    private EmbeddedCacheManager getRunningCacheManager()
+    {
+        EmbeddedCacheManager manager = cacheManager;
+        if ( manager == null )
         {
             throw new IllegalStateException( "Cannot access CacheManager. Indy seems to be in a state of shutdown." );
         }
-        return cacheManager.defineConfiguration( name, config );
+        return manager;
     }
 
     @Override
@@ -549,12 +584,18 @@ public class CacheProducer
         return cacheManager;
     }
 
-    public synchronized StrongCounter getStrongCounter( String counter )
+    public StrongCounter getStrongCounter( String counter )
     {
         if ( remoteConfiguration == null || !remoteConfiguration.isEnabled() )
         {
             return null;
         }
+
+        StrongCounter strongCounter = counters.get( counter );
+        if ( strongCounter != null )
+        {
+            return strongCounter;
+        }
         return counters.computeIfAbsent( counter, ( k )->{
             CounterManager cm = RemoteCounterManagerFactory.asCounterManager( remoteCacheManager );
             if ( !cm.isDefined( k ) )
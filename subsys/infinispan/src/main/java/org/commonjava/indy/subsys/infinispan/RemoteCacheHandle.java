@@ -15,8 +15,11 @@
  */
 package org.commonjava.indy.subsys.infinispan;
 
+import org.infinispan.client.hotrod.MetadataValue;
 import org.infinispan.client.hotrod.RemoteCache;
 
+import java.util.Objects;
+
 public class RemoteCacheHandle<K,V> extends BasicCacheHandle<K, V>
 {
 
@@ -25,4 +28,18 @@ public class RemoteCacheHandle<K,V> extends BasicCacheHandle<K, V>
         super( named, cache );
     }
 
+    /**
+     * The hot rod client doesn't remove by value, so remove the version of the entry that holds the value.
+     */
+    @Override
+    public boolean remove( K key, V value )
+    {
+        return doExecute( "remove-if-value", cache -> {
+            final RemoteCache<K, V> remote = (RemoteCache<K, V>) cache;
+            final MetadataValue<V> current = remote.getWithMetadata( key );
+            return current != null && Objects.equals( current.getValue(), value )
+                    && remote.removeWithVersion( key, current.getVersion() );
+        } );
+    }
+
 }
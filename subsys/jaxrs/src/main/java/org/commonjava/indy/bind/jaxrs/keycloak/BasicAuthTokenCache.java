@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.bind.jaxrs.keycloak;
+
+import org.commonjava.indy.subsys.http.util.UserPass;
+import org.keycloak.representations.AccessTokenResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the tokens looked up for BASIC credentials until they expire, as given by expires_in of the token response.
+ * <p>
+ * Entries are keyed by a hash of the credentials salted with a random value chosen at startup, so neither the
+ * password nor a reusable hash of it is kept. The first request that arrives within the refresh window before expiry
+ * looks up a new token, while concurrent requests keep using the cached one. Concurrent lookups for credentials that
+ * have no token yet share one request. A failed lookup is not cached.
+ */
+final class BasicAuthTokenCache
+{
+    private static final long LOOKUP_WAIT_SECONDS = 60;
+
+    private final Logger logger = LoggerFactory.getLogger( getClass() );
+
+    private final int maxEntries;
+
+    private final long refreshMillis;
+
+    private final LongSupplier clock;
+
+    private final byte[] salt = new byte[16];
+
+    private final Map<String, Entry> tokens = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<AccessTokenResponse>> lookups = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    BasicAuthTokenCache( final int maxEntries, final int refreshSeconds )
+    {
+        this( maxEntries, refreshSeconds, System::currentTimeMillis );
+    }
+
+    BasicAuthTokenCache( final int maxEntries, final int refreshSeconds, final LongSupplier clock )
+    {
+        this.maxEntries = maxEntries;
+        this.refreshMillis = TimeUnit.SECONDS.toMillis( refreshSeconds );
+        this.clock = clock;
+        new SecureRandom().nextBytes( salt );
+    }
+
+    /**
+     * Return the cached token for the credentials, or look one up with the given function.
+     */
+    AccessTokenResponse get( final UserPass userPass, final Function<UserPass, AccessTokenResponse> lookup )
+    {
+        final String key = hash( userPass );
+        final long now = clock.getAsLong();
+
+        final Entry entry = tokens.get( key );
+        if ( entry != null && now < entry.expires )
+        {
+            hits.incrementAndGet();
+            if ( now >= entry.refreshAt && entry.refreshing.compareAndSet( false, true ) )
+            {
+                refreshes.incrementAndGet();
+                logger.debug( "Refreshing token of {} before it expires", userPass.getUser() );
+                final AccessTokenResponse token = lookup( key, userPass, lookup );
+                if ( token != null )
+                {
+                    return token;
+                }
+                entry.refreshing.set( false );
+            }
+            return entry.token;
+        }
+
+        misses.incrementAndGet();
+        if ( entry != null )
+        {
+            tokens.remove( key, entry );
+        }
+
+        final CompletableFuture<AccessTokenResponse> mine = new CompletableFuture<>();
+        final CompletableFuture<AccessTokenResponse> running = lookups.putIfAbsent( key, mine );
+        if ( running != null )
+        {
+            coalesced.incrementAndGet();
+            try
+            {
+                return running.get( LOOKUP_WAIT_SECONDS, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            catch ( ExecutionException | TimeoutException e )
+            {
+                logger.debug( "Waiting for token lookup of {} failed: {}", userPass.getUser(), e.getMessage() );
+                return null;
+            }
+        }
+
+        AccessTokenResponse token = null;
+        try
+        {
+            token = lookup( key, userPass, lookup );
+        }
+        finally
+        {
+            mine.complete( token );
+            lookups.remove( key, mine );
+        }
+        return token;
+    }
+
+    Map<String, Long> getMetrics()
+    {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put( "size", (long) tokens.size() );
+        metrics.put( "hits", hits.get() );
+        metrics.put( "misses", misses.get() );
+        metrics.put( "coalesced", coalesced.get() );
+        metrics.put( "refreshes", refreshes.get() );
+        metrics.put( "failures", failures.get() );
+        metrics.put( "evictions", evictions.get() );
+        return metrics;
+    }
+
+    private AccessTokenResponse lookup( final String key, final UserPass userPass,
+                                        final Function<UserPass, AccessTokenResponse> lookup )
+    {
+        final long requested = clock.getAsLong();
+        final AccessTokenResponse token = lookup.apply( userPass );
+        if ( token == null || token.getToken() == null )
+        {
+            failures.incrementAndGet();
+            return null;
+        }
+
+        if ( token.getExpiresIn() > 0 )
+        {
+            // count the lifetime from the request, so the cached token never outlives the real one
+            final long lifetime = TimeUnit.SECONDS.toMillis( token.getExpiresIn() );
+            final long expires = requested + lifetime;
+            final long refreshAt = expires - Math.min( refreshMillis, lifetime / 2 );
+            put( key, new Entry( token, expires, refreshAt ) );
+        }
+
+        return token;
+    }
+
+    private void put( final String key, final Entry entry )
+    {
+        if ( !tokens.containsKey( key ) && tokens.size() >= maxEntries )
+        {
+            evict();
+        }
+        tokens.put( key, entry );
+    }
+
+    /**
+     * Drop the expired entries; if none is, drop the one expiring first.
+     */
+    private synchronized void evict()
+    {
+        final long now = clock.getAsLong();
+        String first = null;
+        long firstExpires = Long.MAX_VALUE;
+        for ( Iterator<Map.Entry<String, Entry>> it = tokens.entrySet().iterator(); it.hasNext(); )
+        {
+            final Map.Entry<String, Entry> e = it.next();
+            if ( e.getValue().expires <= now )
+            {
+                it.remove();
+                evictions.incrementAndGet();
+            }
+            else if ( e.getValue().expires < firstExpires )
+            {
+                first = e.getKey();
+                firstExpires = e.getValue().expires;
+            }
+        }
+
+        if ( tokens.size() >= maxEntries && first != null && tokens.remove( first ) != null )
+        {
+            evictions.incrementAndGet();
+        }
+    }
+
+    private String hash( final UserPass userPass )
+    {
+        try
+        {
+            final MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+            digest.update( salt );
+            digest.update( String.valueOf( userPass.getUser() ).getBytes( StandardCharsets.UTF_8 ) );
+            digest.update( (byte) 0 );
+            digest.update( String.valueOf( userPass.getPassword() ).getBytes( StandardCharsets.UTF_8 ) );
+            return Base64.getEncoder().encodeToString( digest.digest() );
+        }
+        catch ( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "SHA-256 is not available", e );
+        }
+    }
+
+    private static final class Entry
+    {
+        private final AccessTokenResponse token;
+
+        private final long expires;
+
+        private final long refreshAt;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry( final AccessTokenResponse token, final long expires, final long refreshAt )
+        {
+            this.token = token;
+            this.expires = expires;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
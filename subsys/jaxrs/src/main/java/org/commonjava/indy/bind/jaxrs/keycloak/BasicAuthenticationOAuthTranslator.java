@@ -27,7 +27,9 @@ import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
@@ -40,6 +42,7 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.message.BasicNameValuePair;
+import org.commonjava.indy.spi.IndyMetricsSource;
 import org.commonjava.indy.subsys.http.IndyHttpException;
 import org.commonjava.indy.subsys.http.IndyHttpProvider;
 import org.commonjava.indy.subsys.keycloak.conf.KeycloakConfig;
@@ -63,8 +66,10 @@ import org.slf4j.LoggerFactory;
  * @author jdcasey
  */
 public class BasicAuthenticationOAuthTranslator
-    implements AuthenticationMechanism
+    implements AuthenticationMechanism, IndyMetricsSource
 {
+    public static final String METRICS_NAME = "basic-auth-token-cache";
+
     private static final String USERNAME = "username";
 
     private static final String PASSWORD = "password";
@@ -93,6 +98,8 @@ public class BasicAuthenticationOAuthTranslator
 
     private boolean enabled;
 
+    private BasicAuthTokenCache tokenCache;
+
     protected BasicAuthenticationOAuthTranslator()
     {
     }
@@ -114,6 +121,11 @@ public class BasicAuthenticationOAuthTranslator
         else
         {
             enabled = true;
+            if ( config.isTokenCacheEnabled() )
+            {
+                tokenCache = new BasicAuthTokenCache( config.getTokenCacheMaxEntries(),
+                                                      config.getTokenCacheRefreshSeconds() );
+            }
         }
     }
 
@@ -176,7 +188,8 @@ public class BasicAuthenticationOAuthTranslator
             logger.debug( "Parsed BASIC authorization: {}", userPass );
             if ( userPass != null )
             {
-                final AccessTokenResponse token = lookupToken( userPass );
+                final AccessTokenResponse token =
+                        tokenCache == null ? lookupToken( userPass ) : tokenCache.get( userPass, this::lookupToken );
                 if ( token != null )
                 {
                     final String encodedToken = token.getToken();
@@ -258,6 +271,18 @@ public class BasicAuthenticationOAuthTranslator
         return tokenResponse;
     }
 
+    @Override
+    public String getMetricsName()
+    {
+        return METRICS_NAME;
+    }
+
+    @Override
+    public Map<String, Long> getMetrics()
+    {
+        return tokenCache == null ? Collections.emptyMap() : tokenCache.getMetrics();
+    }
+
     @Override
     public ChallengeResult sendChallenge( final HttpServerExchange exchange, final SecurityContext securityContext )
     {
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2011-2023 Red Hat, Inc. (https://github.com/Commonjava/indy)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.commonjava.indy.bind.jaxrs.keycloak;
+
+import org.commonjava.indy.subsys.http.util.UserPass;
+import org.junit.Test;
+import org.keycloak.representations.AccessTokenResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BasicAuthTokenCacheTest
+{
+    private final AtomicLong now = new AtomicLong( 1000000L );
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private final Function<UserPass, AccessTokenResponse> lookup = userPass -> {
+        AccessTokenResponse token = new AccessTokenResponse();
+        token.setToken( userPass.getUser() + "-" + lookups.incrementAndGet() );
+        token.setExpiresIn( 300 );
+        return token;
+    };
+
+    @Test
+    public void reuseTokenUntilRefreshWindow()
+    {
+        BasicAuthTokenCache cache = new BasicAuthTokenCache( 10, 30, now::get );
+        UserPass user = new UserPass( "user", "pass" );
+
+        assertThat( cache.get( user, lookup ).getToken(), equalTo( "user-1" ) );
+        now.addAndGet( TimeUnit.SECONDS.toMillis( 200 ) );
+        assertThat( cache.get( user, lookup ).getToken(), equalTo( "user-1" ) );
+
+        // another password is another entry
+        assertThat( cache.get( new UserPass( "user", "other" ), lookup ).getToken(), equalTo( "user-2" ) );
+
+        now.addAndGet( TimeUnit.SECONDS.toMillis( 80 ) );
+        assertThat( cache.get( user, lookup ).getToken(), equalTo( "user-3" ) );
+        assertThat( cache.get( user, lookup ).getToken(), equalTo( "user-3" ) );
+
+        assertThat( cache.getMetrics().get( "refreshes" ), equalTo( 1L ) );
+        assertThat( cache.getMetrics().get( "hits" ), equalTo( 3L ) );
+    }
+
+    @Test
+    public void concurrentLookupsShareOneRequest()
+            throws Exception
+    {
+        BasicAuthTokenCache cache = new BasicAuthTokenCache( 10, 30, now::get );
+        UserPass user = new UserPass( "ci", "secret" );
+        Function<UserPass, AccessTokenResponse> slowLookup = userPass -> {
+            try
+            {
+                Thread.sleep( 200 );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+            return lookup.apply( userPass );
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        List<Future<AccessTokenResponse>> results = new ArrayList<>();
+        for ( int i = 0; i < 8; i++ )
+        {
+            results.add( executor.submit( () -> cache.get( user, slowLookup ) ) );
+        }
+
+        for ( Future<AccessTokenResponse> result : results )
+        {
+            assertThat( result.get( 10, TimeUnit.SECONDS ).getToken(), equalTo( "ci-1" ) );
+        }
+        executor.shutdown();
+
+        assertThat( lookups.get(), equalTo( 1 ) );
+    }
+
+    @Test
+    public void evictWhenFull()
+    {
+        BasicAuthTokenCache cache = new BasicAuthTokenCache( 2, 30, now::get );
+        cache.get( new UserPass( "a", "pass" ), lookup );
+        cache.get( new UserPass( "b", "pass" ), lookup );
+        cache.get( new UserPass( "c", "pass" ), lookup );
+
+        assertThat( cache.getMetrics().get( "size" ), equalTo( 2L ) );
+        assertThat( cache.getMetrics().get( "evictions" ), equalTo( 1L ) );
+    }
+}
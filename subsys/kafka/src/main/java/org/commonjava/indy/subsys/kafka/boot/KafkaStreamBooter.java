@@ -36,6 +36,8 @@ import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Properties;
 
 @ApplicationScoped
@@ -127,6 +129,13 @@ public class KafkaStreamBooter
         return 100;
     }
 
+    @Override
+    public Collection<String> getBootDependencies()
+    {
+        // connecting to the brokers may take a while, nothing else waits for the consumers to be running
+        return Collections.singleton( "parallel streams common pool" );
+    }
+
     private Properties setKafkaProps()
     {
         final Properties props = new Properties();
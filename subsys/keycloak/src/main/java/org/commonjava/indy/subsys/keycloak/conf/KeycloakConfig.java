@@ -46,6 +46,12 @@ public class KeycloakConfig
 
     private static final String DEFAULT_UI_RESOURCE = "indy-ui";
 
+    private static final boolean DEFAULT_TOKEN_CACHE_ENABLED = true;
+
+    private static final int DEFAULT_TOKEN_CACHE_MAX_ENTRIES = 1000;
+
+    private static final int DEFAULT_TOKEN_CACHE_REFRESH_SECONDS = 30;
+
     public static final String KEYCLOAK_REALM = "keycloak.realm";
 
     public static final String KEYCLOAK_URL = "keycloak.url";
@@ -78,6 +84,12 @@ public class KeycloakConfig
 
     private String realmPublicKey;
 
+    private Boolean tokenCacheEnabled;
+
+    private Integer tokenCacheMaxEntries;
+
+    private Integer tokenCacheRefreshSeconds;
+
     public boolean isEnabled()
     {
         return enabled == null ? DEFAULT_ENABLED : enabled;
@@ -248,6 +260,49 @@ public class KeycloakConfig
         this.realmPublicKey = realmPublicKey;
     }
 
+    /**
+     * Whether tokens looked up for BASIC authentication are cached until they expire, instead of asking Keycloak for a
+     * new token on every request.
+     */
+    public boolean isTokenCacheEnabled()
+    {
+        return tokenCacheEnabled == null ? DEFAULT_TOKEN_CACHE_ENABLED : tokenCacheEnabled;
+    }
+
+    @ConfigName( "token.cache.enabled" )
+    public void setTokenCacheEnabled( final Boolean tokenCacheEnabled )
+    {
+        this.tokenCacheEnabled = tokenCacheEnabled;
+    }
+
+    /**
+     * Maximum number of credentials whose tokens are cached.
+     */
+    public int getTokenCacheMaxEntries()
+    {
+        return tokenCacheMaxEntries == null ? DEFAULT_TOKEN_CACHE_MAX_ENTRIES : tokenCacheMaxEntries;
+    }
+
+    @ConfigName( "token.cache.max.entries" )
+    public void setTokenCacheMaxEntries( final Integer tokenCacheMaxEntries )
+    {
+        this.tokenCacheMaxEntries = tokenCacheMaxEntries;
+    }
+
+    /**
+     * How many seconds before a cached token expires a request refreshes it, while the others keep using it.
+     */
+    public int getTokenCacheRefreshSeconds()
+    {
+        return tokenCacheRefreshSeconds == null ? DEFAULT_TOKEN_CACHE_REFRESH_SECONDS : tokenCacheRefreshSeconds;
+    }
+
+    @ConfigName( "token.cache.refresh.seconds" )
+    public void setTokenCacheRefreshSeconds( final Integer tokenCacheRefreshSeconds )
+    {
+        this.tokenCacheRefreshSeconds = tokenCacheRefreshSeconds;
+    }
+
     @Override
     public String getDefaultConfigFileName()
     {
@@ -26,6 +26,7 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -384,6 +385,99 @@ public abstract class GroupDataManagerTCK
         assertAffectedBy( hosted2.getKey(), groupF, groupC, groupA );
     }
 
+    @Test
+    public void affectedByAndGroupsContainingMatchFullScanAfterMutations()
+            throws Exception
+    {
+        final HostedRepository hosted1 = new HostedRepository( PKG_TYPE_MAVEN, "hosted1" );
+        final HostedRepository hosted2 = new HostedRepository( PKG_TYPE_MAVEN, "hosted2" );
+        final Group groupA = new Group( PKG_TYPE_MAVEN, "groupA" );
+        final Group groupB = new Group( PKG_TYPE_MAVEN, "groupB" );
+        final Group groupC = new Group( PKG_TYPE_MAVEN, "groupC" );
+        groupA.setConstituents( asList( groupB.getKey(), hosted1.getKey() ) );
+        groupB.setConstituents( asList( groupC.getKey(), hosted2.getKey() ) );
+        groupC.setConstituents( asList( hosted1.getKey() ) );
+
+        store( hosted1, hosted2, groupA, groupB, groupC );
+        final List<StoreKey> keys =
+                asList( hosted1.getKey(), hosted2.getKey(), groupA.getKey(), groupB.getKey(), groupC.getKey() );
+        assertMatchesFullScan( keys );
+
+        // membership change through a copy
+        Group groupCCopy = groupC.copyOf();
+        groupCCopy.addConstituent( hosted2 );
+        store( groupCCopy );
+        assertMatchesFullScan( keys );
+
+        // membership change on the stored instance itself
+        final Group storedB = manager.query().getGroup( PKG_TYPE_MAVEN, groupB.getName() );
+        storedB.removeConstituent( groupC );
+        store( storedB );
+        assertMatchesFullScan( keys );
+
+        // a membership cycle
+        groupCCopy = groupCCopy.copyOf();
+        groupCCopy.addConstituent( groupA );
+        store( groupCCopy );
+        assertMatchesFullScan( keys );
+
+        removeStore( groupB );
+        assertMatchesFullScan( keys );
+
+        removeStore( hosted1 );
+        assertMatchesFullScan( keys );
+    }
+
+    private void assertMatchesFullScan( final Collection<StoreKey> keys )
+            throws Exception
+    {
+        final Set<Group> allGroups = manager.getAllArtifactStores()
+                                            .stream()
+                                            .filter( store -> store instanceof Group )
+                                            .map( store -> (Group) store )
+                                            .collect( Collectors.toSet() );
+
+        for ( final StoreKey key : keys )
+        {
+            final Set<StoreKey> containing = allGroups.stream()
+                                                      .filter( g -> g.getConstituents().contains( key ) )
+                                                      .map( Group::getKey )
+                                                      .collect( Collectors.toSet() );
+
+            assertThat( "groups containing " + key, manager.query()
+                                                           .getGroupsContaining( key )
+                                                           .stream()
+                                                           .map( Group::getKey )
+                                                           .collect( Collectors.toSet() ), equalTo( containing ) );
+
+            final Set<StoreKey> affected = new HashSet<>();
+            final Set<StoreKey> processed = new HashSet<>();
+            final List<StoreKey> toProcess = new ArrayList<>( Collections.singleton( key ) );
+            while ( !toProcess.isEmpty() )
+            {
+                final StoreKey next = toProcess.remove( 0 );
+                if ( processed.add( next ) )
+                {
+                    allGroups.stream()
+                             .filter( g -> g.getConstituents().contains( next ) )
+                             .forEach( g -> {
+                                 if ( !g.getKey().equals( key ) )
+                                 {
+                                     affected.add( g.getKey() );
+                                 }
+                                 toProcess.add( g.getKey() );
+                             } );
+                }
+            }
+
+            assertThat( "groups affected by " + key, manager.query()
+                                                            .getGroupsAffectedBy( Collections.singletonList( key ) )
+                                                            .stream()
+                                                            .map( Group::getKey )
+                                                            .collect( Collectors.toSet() ), equalTo( affected ) );
+        }
+    }
+
     private void assertAffectedBy( StoreKey affectedByKey, ArtifactStore... expectedStores )
             throws Exception
     {